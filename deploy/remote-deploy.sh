@@ -41,14 +41,17 @@ resolve_spring_user_ids() {
 prepare_backend_logs_dir() {
   VOLUME_ROOT="$(resolve_volume_root)"
   LOG_DIR="${VOLUME_ROOT}/volumes/backend/logs"
+  DATA_DIR="${VOLUME_ROOT}/volumes/backend/data"
 
-  mkdir -p "$LOG_DIR"
+  mkdir -p "$LOG_DIR" "$DATA_DIR"
 
   resolve_spring_user_ids
 
   # Run permission fix through Docker daemon to avoid requiring root shell user.
-  docker run --rm -v "$LOG_DIR":/target alpine:3.20 sh -c \
-    "chown -R ${SPRING_UID}:${SPRING_GID} /target && chmod -R ug+rwX /target"
+  for dir in "$LOG_DIR" "$DATA_DIR"; do
+    docker run --rm -v "$dir":/target alpine:3.20 sh -c \
+      "chown -R ${SPRING_UID}:${SPRING_GID} /target && chmod -R ug+rwX /target"
+  done
 }
 
 require_env() {
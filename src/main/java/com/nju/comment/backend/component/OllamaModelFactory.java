@@ -13,8 +13,11 @@ import org.springframework.ai.ollama.api.OllamaApi;
 import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -26,6 +29,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * <p>
  * 按 (apiKeyHash + modelName) 缓存 ChatClient 实例，
  * 不同用户使用各自的 API Key 调用云端 Ollama 服务。
+ * 所有 OllamaApi 共用同一个 HTTP 客户端（连接池），启动预热建立的连接对所有用户可复用。
  */
 @Slf4j
 @Component
@@ -47,6 +51,8 @@ public class OllamaModelFactory {
      */
     private final Map<String, OllamaApi> apiCache = new ConcurrentHashMap<>();
 
+    private final ClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory();
+
     /**
      * 获取当前用户的 ChatClient（需确保 {@link UserApiContext} 已设置 API Key）
      */
@@ -119,6 +125,33 @@ public class OllamaModelFactory {
         }
     }
 
+    /**
+     * 启动预热：与 Ollama 服务建立连接（TLS 握手），并为给定模型各构建一次 ChatClient，完成相关类的加载与初始化。
+     * 预热用的 ChatClient 不带 API Key、不进入缓存；任何响应（包括 401）都视为连接已建立。
+     */
+    public void warmUp(List<String> modelNames) {
+        RestClient restClient = RestClient.builder()
+                .requestFactory(requestFactory)
+                .baseUrl(chatBaseUrl)
+                .build();
+        try {
+            restClient.get().uri("/api/version").retrieve().toBodilessEntity();
+        } catch (RestClientResponseException e) {
+            log.debug("Ollama 预热请求返回 {}", e.getStatusCode());
+        }
+        OllamaApi ollamaApi = OllamaApi.builder()
+                .baseUrl(chatBaseUrl)
+                .restClientBuilder(RestClient.builder().requestFactory(requestFactory).baseUrl(chatBaseUrl))
+                .build();
+        for (String modelName : modelNames) {
+            OllamaChatModel chatModel = OllamaChatModel.builder()
+                    .ollamaApi(ollamaApi)
+                    .defaultOptions(OllamaOptions.builder().model(modelName).build())
+                    .build();
+            ChatClient.builder(chatModel).build().prompt().system("warm-up").user("warm-up");
+        }
+    }
+
     /**
      * 按 API Key 获取或创建 OllamaApi 实例（带 Bearer 认证头）
      */
@@ -127,6 +160,7 @@ public class OllamaModelFactory {
             String baseUrl = this.chatBaseUrl;
             log.info("创建 OllamaApi: baseUrl={}, keyHash={}", baseUrl, keyHash);
             RestClient.Builder builder = RestClient.builder()
+                    .requestFactory(requestFactory)
                     .baseUrl(baseUrl)
                     .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey.trim());
             return OllamaApi.builder()
@@ -0,0 +1,173 @@
+package com.nju.comment.backend.component;
+
+import com.nju.comment.backend.component.vectorstore.HybridRetriever;
+import com.nju.comment.backend.dto.request.CommentReqTag;
+import com.nju.comment.backend.dto.request.CommentRequest;
+import com.nju.comment.backend.service.PromptService;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.collection.LoadCollectionParam;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动预热：在应用开始接收流量之前依次加载 Milvus collection、调用一次 Embedding、执行若干次合成 RAG 检索与提示词构建
+ * （含示例挑选与渲染），并与 Ollama 建立连接、为常用模型构建 ChatClient。
+ * <p>
+ * 以 {@link ApplicationRunner} 执行：Spring Boot 在所有 Runner 返回后才把 readiness 切换为 ACCEPTING_TRAFFIC，
+ * 因此 {@code /actuator/health/readiness} 在预热完成前返回 503，nginx / compose 据此等待。
+ * 各步骤的耗时记录在本健康指标的 details 中；单步失败只记录错误，整体超过 timeout-ms 后不再等待，直接放行。
+ */
+@Slf4j
+@Component
+public class StartupWarmup implements ApplicationRunner, HealthIndicator {
+
+    private static final String OLD_METHOD = """
+            public int size() {
+                return items.size();
+            }""";
+    private static final String NEW_METHOD = """
+            public int size(boolean includeDeleted) {
+                return includeDeleted ? items.size() + deleted.size() : items.size();
+            }""";
+    private static final String OLD_COMMENT = "/**\n * Returns the number of items.\n */";
+
+    private final VectorStore vectorStore;
+    private final EmbeddingModel embeddingModel;
+    private final HybridRetriever hybridRetriever;
+    private final PromptService promptService;
+    private final OllamaModelFactory ollamaModelFactory;
+    private final boolean enabled;
+    private final int searches;
+    private final List<String> models;
+    private final long timeoutMs;
+    private final String databaseName;
+    private final String collectionName;
+
+    private final Map<String, Object> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile boolean completed;
+
+    public StartupWarmup(VectorStore vectorStore,
+                         EmbeddingModel embeddingModel,
+                         HybridRetriever hybridRetriever,
+                         PromptService promptService,
+                         OllamaModelFactory ollamaModelFactory,
+                         @Value("${app.warmup.enabled:true}") boolean enabled,
+                         @Value("${app.warmup.searches:20}") int searches,
+                         @Value("${app.warmup.models:}") String models,
+                         @Value("${app.warmup.timeout-ms:120000}") long timeoutMs,
+                         @Value("${spring.ai.vectorstore.milvus.databaseName:default}") String databaseName,
+                         @Value("${spring.ai.vectorstore.milvus.collectionName:vector_store}") String collectionName) {
+        this.vectorStore = vectorStore;
+        this.embeddingModel = embeddingModel;
+        this.hybridRetriever = hybridRetriever;
+        this.promptService = promptService;
+        this.ollamaModelFactory = ollamaModelFactory;
+        this.enabled = enabled;
+        this.searches = Math.max(0, searches);
+        this.models = Arrays.stream(models.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+        this.timeoutMs = timeoutMs;
+        this.databaseName = databaseName;
+        this.collectionName = collectionName;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        if (!enabled) {
+            completed = true;
+            log.info("启动预热未启用");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Thread worker = new Thread(this::warmUp, "startup-warmup");
+        worker.setDaemon(true);
+        worker.start();
+        worker.join(timeoutMs);
+        if (worker.isAlive()) {
+            timings.put("timedOut", true);
+            log.warn("启动预热超过 {}ms 未完成，不再等待，开始接收流量", timeoutMs);
+        }
+        timings.put("totalMs", System.currentTimeMillis() - start);
+        completed = true;
+        log.info("启动预热结束: {}", timings);
+    }
+
+    private void warmUp() {
+        step("vectorStoreLoad", this::loadCollection);
+        step("embedding", () -> embeddingModel.embed(NEW_METHOD));
+        String methodText = OLD_METHOD + "\n" + NEW_METHOD;
+        step("similaritySearch", () -> {
+            for (int i = 0; i < searches; i++) {
+                hybridRetriever.retrieve(NEW_METHOD, methodText, 5, null);
+            }
+        });
+        step("prompt", () -> {
+            for (int i = 0; i < searches; i++) {
+                promptService.buildUserPrompt(syntheticRequest(i));
+            }
+        });
+        step("chatClient", () -> ollamaModelFactory.warmUp(models));
+    }
+
+    private void step(String name, Runnable action) {
+        long start = System.currentTimeMillis();
+        try {
+            action.run();
+            timings.put(name + "Ms", System.currentTimeMillis() - start);
+            log.info("启动预热步骤完成: {}，耗时 {}ms", name, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            timings.put(name + "Error", String.valueOf(e.getMessage()));
+            log.warn("启动预热步骤失败: {}，耗时 {}ms", name, System.currentTimeMillis() - start, e);
+        }
+    }
+
+    private void loadCollection() {
+        vectorStore.<Object>getNativeClient().ifPresent(nativeClient -> {
+            if (!(nativeClient instanceof MilvusServiceClient client)) {
+                return;
+            }
+            R<RpcStatus> response = client.loadCollection(LoadCollectionParam.newBuilder()
+                    .withDatabaseName(databaseName)
+                    .withCollectionName(collectionName)
+                    .withSyncLoad(true)
+                    .build());
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                throw new IllegalStateException("加载 Milvus collection 失败: " + response.getMessage());
+            }
+        });
+    }
+
+    private static CommentRequest syntheticRequest(int i) {
+        return CommentRequest.builder()
+                .requestId("warmup-" + i)
+                .tag(CommentReqTag.UPDATE_WITH_RAG)
+                .ragExampleNum(3)
+                .oldMethod(OLD_METHOD)
+                .newMethod(NEW_METHOD)
+                .oldComment(OLD_COMMENT)
+                .build();
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> details;
+        synchronized (timings) {
+            details = new LinkedHashMap<>(timings);
+        }
+        return (completed ? Health.up() : Health.outOfService()).withDetails(details).build();
+    }
+}
@@ -0,0 +1,299 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.VectorStoreException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * EmbeddingModel 包装器：合并并发的单文本向量化请求（RAG 检索查询）。
+ * <p>
+ * 某个窗口内第一个到达的调用者成为“领队”，等待 windowMs 或攒满 maxItems 条后，
+ * 在自己的线程上把整批文本作为一次 EmbeddingRequest 发出，再按下标把向量分发给各调用者；
+ * 其余调用者只等待自己的 future，不占用额外线程。一批只消耗一次 RPM 额度。
+ * <p>
+ * 批量请求因非法输入（4xx）失败时逐条重试，避免一条坏输入拖垮同批的其他查询；
+ * 其他失败（限流、超时、5xx）整批直接失败，不放大请求量。
+ * 文档批量向量化（入库）与带自定义选项的请求直接透传。
+ * <p>
+ * {@link #embedAsync} 供查询向量预取与在线查询合并到同一批次。
+ */
+@Slf4j
+public class CoalescingEmbeddingModel implements EmbeddingModel {
+
+    /**
+     * Spring AI 把 4xx 响应包装为 "400 - ..." 形式的异常消息
+     */
+    private static final Pattern CLIENT_ERROR_STATUS = Pattern.compile("(4\\d\\d)\\b");
+
+    private final EmbeddingModel delegate;
+    private final long windowNanos;
+    private final int maxItems;
+    private final long awaitTimeoutMs;
+
+    private final Object monitor = new Object();
+    private PendingBatch current;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer waitTimer;
+    private final Counter fallbackCounter;
+
+    /**
+     * @param awaitTimeoutMs 同步调用者等待本批结果的上限，含领队等待限流额度的时间
+     */
+    public CoalescingEmbeddingModel(EmbeddingModel delegate, long windowMs, int maxItems, long awaitTimeoutMs,
+                                    MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, windowMs));
+        this.maxItems = Math.max(1, maxItems);
+        this.awaitTimeoutMs = Math.max(1L, awaitTimeoutMs);
+        this.batchSizeSummary = DistributionSummary.builder("embedding.coalesce.batch.size")
+                .description("合并后每次 Embedding 请求包含的查询条数")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("embedding.coalesce.wait")
+                .description("查询因合并而额外等待的时间")
+                .register(meterRegistry);
+        this.fallbackCounter = Counter.builder("embedding.coalesce.fallback")
+                .description("批量请求因非法输入失败后逐条重试的批次数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+        List<String> inputs = request.getInstructions();
+        if (inputs.size() != 1 || !isDefaultOptions(request.getOptions())) {
+            return delegate.call(request);
+        }
+        float[] embedding = embedCoalesced(inputs.get(0));
+        return new EmbeddingResponse(List.of(new Embedding(embedding, 0)));
+    }
+
+    @Override
+    public float @NonNull [] embed(@NonNull String text) {
+        return embedCoalesced(text);
+    }
+
+    @Override
+    public float @NonNull [] embed(@NonNull Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public @NonNull List<float[]> embed(@NonNull List<Document> documents,
+                                        @NonNull EmbeddingOptions options,
+                                        @NonNull BatchingStrategy batchingStrategy) {
+        return delegate.embed(documents, options, batchingStrategy);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * 异步入队：与同步调用者共用同一批次；成为领队时在 executor 上发出整批请求，
+     * 其余调用者不占用线程，一批最多占用一个工作线程
+     */
+    public CompletableFuture<float[]> embedAsync(String text, Executor executor) {
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        PendingBatch batch = enqueue(text, future);
+        if (batch != null) {
+            try {
+                executor.execute(() -> lead(batch, enqueuedAt));
+            } catch (RejectedExecutionException e) {
+                // 领队任务无法提交时当前线程代为发出，避免同批其他调用者一直等待
+                lead(batch, enqueuedAt);
+            }
+        }
+        return future;
+    }
+
+    private float[] embedCoalesced(String text) {
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        PendingBatch batch = enqueue(text, future);
+        if (batch != null) {
+            lead(batch, enqueuedAt);
+        }
+        return await(future);
+    }
+
+    /**
+     * 把文本加入当前批次
+     *
+     * @return 调用者成为领队时返回其批次，否则为 null
+     */
+    private PendingBatch enqueue(String text, CompletableFuture<float[]> future) {
+        synchronized (monitor) {
+            boolean leader = false;
+            if (current == null) {
+                current = new PendingBatch();
+                leader = true;
+            }
+            PendingBatch batch = current;
+            batch.add(text, future);
+            if (batch.size() >= maxItems) {
+                current = null;
+                batch.full.complete(null);
+            }
+            return leader ? batch : null;
+        }
+    }
+
+    /**
+     * 领队等待窗口结束或批次攒满后发出请求；等待期间被中断也先完成本批，再恢复中断标记
+     */
+    private void lead(PendingBatch batch, long enqueuedAt) {
+        boolean interrupted = false;
+        try {
+            batch.full.get(windowNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+            // 窗口结束
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        synchronized (monitor) {
+            if (current == batch) {
+                current = null;
+            }
+        }
+
+        batchSizeSummary.record(batch.size());
+        waitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+        try {
+            execute(batch);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void execute(PendingBatch batch) {
+        if (batch.size() == 1) {
+            executeSingle(batch.texts.get(0), batch.futures.get(0));
+            return;
+        }
+        try {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(batch.texts, null));
+            List<Embedding> results = response.getResults();
+            float[][] vectors = new float[batch.size()][];
+            for (int i = 0; i < results.size(); i++) {
+                Embedding result = results.get(i);
+                int index = result.getIndex() != null ? result.getIndex() : i;
+                if (index >= 0 && index < vectors.length) {
+                    vectors[index] = result.getOutput();
+                }
+            }
+            for (int i = 0; i < vectors.length; i++) {
+                if (vectors[i] != null) {
+                    batch.futures.get(i).complete(vectors[i]);
+                } else {
+                    executeSingle(batch.texts.get(i), batch.futures.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            if (!isBadInput(e)) {
+                // 限流、超时、服务端错误逐条重试只会放大请求量，整批直接失败
+                log.warn("合并 Embedding 请求失败: size={}, error={}", batch.size(), e.getMessage());
+                batch.futures.forEach(future -> future.completeExceptionally(e));
+                return;
+            }
+            fallbackCounter.increment();
+            log.warn("合并 Embedding 请求含非法输入，逐条重试: size={}, error={}", batch.size(), e.getMessage());
+            for (int i = 0; i < batch.size(); i++) {
+                executeSingle(batch.texts.get(i), batch.futures.get(i));
+            }
+        }
+    }
+
+    /**
+     * 服务端以 4xx（429 除外）拒绝请求，说明批内有非法输入
+     */
+    private static boolean isBadInput(Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            if (current instanceof HttpClientErrorException clientError) {
+                return clientError.getStatusCode().value() != 429;
+            }
+            String message = current.getMessage();
+            if (message != null) {
+                Matcher matcher = CLIENT_ERROR_STATUS.matcher(message);
+                if (matcher.lookingAt()) {
+                    return !"429".equals(matcher.group(1));
+                }
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    private void executeSingle(String text, CompletableFuture<float[]> future) {
+        try {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(List.of(text), null));
+            future.complete(response.getResult().getOutput());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private float[] await(CompletableFuture<float[]> future) {
+        try {
+            return future.get(awaitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new VectorStoreException(ErrorCode.TIMEOUT_ERROR, "等待合并 Embedding 请求超时", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INTERRUPTED, "Embedding 请求被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Embedding 请求失败", e.getCause());
+        }
+    }
+
+    private static boolean isDefaultOptions(EmbeddingOptions options) {
+        return options == null || (options.getModel() == null && options.getDimensions() == null);
+    }
+
+    private static final class PendingBatch {
+
+        private final List<String> texts = new ArrayList<>();
+        private final List<CompletableFuture<float[]>> futures = new ArrayList<>();
+        private final CompletableFuture<Void> full = new CompletableFuture<>();
+
+        private void add(String text, CompletableFuture<float[]> future) {
+            texts.add(text);
+            futures.add(future);
+        }
+
+        private int size() {
+            return texts.size();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.nju.comment.backend.component.embedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedding 服务端限流反馈。
+ * <p>
+ * 作为 Embedding API RestClient 的拦截器读取每个响应的限流头：
+ * <ul>
+ *     <li>{@code x-ratelimit-limit-requests/tokens}：服务端实际配额，低于本地配置时下调限流器预算；</li>
+ *     <li>{@code x-ratelimit-remaining-*} 为 0 时，按 {@code x-ratelimit-reset-*} 暂停所有请求直到额度重置；</li>
+ *     <li>429 响应的 {@code Retry-After}（秒或 HTTP 日期）/ {@code retry-after-ms}：暂停所有请求，
+ *     并由触发的调用线程按服务端给出的时长精确等待后重试。</li>
+ * </ul>
+ * 学习到的配额、剩余额度与暂停次数以 {@code embedding.ratelimit.*} 指标暴露。
+ */
+@Slf4j
+@Component
+public class EmbeddingRateLimitFeedback implements ClientHttpRequestInterceptor {
+
+    private static final String LIMIT_REQUESTS = "x-ratelimit-limit-requests";
+    private static final String LIMIT_TOKENS = "x-ratelimit-limit-tokens";
+    private static final String REMAINING_REQUESTS = "x-ratelimit-remaining-requests";
+    private static final String REMAINING_TOKENS = "x-ratelimit-remaining-tokens";
+    private static final String RESET_REQUESTS = "x-ratelimit-reset-requests";
+    private static final String RESET_TOKENS = "x-ratelimit-reset-tokens";
+    private static final String RETRY_AFTER_MS = "retry-after-ms";
+
+    /**
+     * 重置时长形如 {@code 1s}、{@code 6m0s}、{@code 20ms}、{@code 0.5s}
+     */
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+    private final EmbeddingRateLimiter rateLimiter;
+    private final long maxRetryAfterMs;
+
+    private final AtomicLong pausedUntilMs = new AtomicLong();
+    private final ThreadLocal<Long> throttledRetryAfterMs = new ThreadLocal<>();
+
+    private volatile int serverRequestLimit = -1;
+    private volatile int serverTokenLimit = -1;
+    private volatile long remainingRequests = -1;
+    private volatile long remainingTokens = -1;
+
+    private final Counter throttledCounter;
+    private final Counter pauseCounter;
+
+    public EmbeddingRateLimitFeedback(EmbeddingRateLimiter rateLimiter,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${app.ai.siliconflow.embedding.max-retry-after-ms:60000}") long maxRetryAfterMs) {
+        this.rateLimiter = rateLimiter;
+        this.maxRetryAfterMs = Math.max(0L, maxRetryAfterMs);
+
+        Gauge.builder("embedding.ratelimit.server.limit", this, f -> f.serverRequestLimit)
+                .tag("type", "requests").description("服务端响应头报告的 RPM 配额，-1 表示未知").register(meterRegistry);
+        Gauge.builder("embedding.ratelimit.server.limit", this, f -> f.serverTokenLimit)
+                .tag("type", "tokens").description("服务端响应头报告的 TPM 配额，-1 表示未知").register(meterRegistry);
+        Gauge.builder("embedding.ratelimit.server.remaining", this, f -> f.remainingRequests)
+                .tag("type", "requests").register(meterRegistry);
+        Gauge.builder("embedding.ratelimit.server.remaining", this, f -> f.remainingTokens)
+                .tag("type", "tokens").register(meterRegistry);
+        Gauge.builder("embedding.ratelimit.effective.limit", rateLimiter, EmbeddingRateLimiter::getRpmLimit)
+                .tag("type", "requests").description("限流器当前生效的 RPM 预算").register(meterRegistry);
+        Gauge.builder("embedding.ratelimit.effective.limit", rateLimiter, EmbeddingRateLimiter::getTpmLimit)
+                .tag("type", "tokens").description("限流器当前生效的 TPM 预算").register(meterRegistry);
+        this.throttledCounter = Counter.builder("embedding.ratelimit.server.throttled")
+                .description("服务端返回 429 的次数").register(meterRegistry);
+        this.pauseCounter = Counter.builder("embedding.ratelimit.server.pauses")
+                .description("按服务端反馈暂停请求的次数").register(meterRegistry);
+    }
+
+    @Override
+    public @NonNull ClientHttpResponse intercept(@NonNull HttpRequest request,
+                                                 byte @NonNull [] body,
+                                                 @NonNull ClientHttpRequestExecution execution) throws IOException {
+        ClientHttpResponse response = execution.execute(request, body);
+        try {
+            onResponse(response.getStatusCode().value(), response.getHeaders());
+        } catch (RuntimeException e) {
+            log.debug("解析 Embedding 限流响应头失败: {}", e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * 在发起请求前调用：服务端要求暂停期间阻塞等待
+     */
+    public void awaitClearance() throws InterruptedException {
+        long waitMs = getClearanceDelayMs();
+        if (waitMs > 0) {
+            log.debug("Embedding 服务端限流暂停中，等待 {}ms", waitMs);
+            Thread.sleep(waitMs);
+        }
+    }
+
+    /**
+     * 服务端要求的剩余暂停时长，0 表示可立即请求；供异步路径调度
+     */
+    public long getClearanceDelayMs() {
+        return Math.max(0L, pausedUntilMs.get() - System.currentTimeMillis());
+    }
+
+    /**
+     * 取出当前线程最近一次请求收到的 429 所要求的等待时长并清除
+     *
+     * @return 等待毫秒数；未收到 429 返回 null，收到 429 但未给出 Retry-After 返回 -1
+     */
+    public Long takeRetryAfterMs() {
+        Long retryAfterMs = throttledRetryAfterMs.get();
+        throttledRetryAfterMs.remove();
+        return retryAfterMs;
+    }
+
+    public long getMaxRetryAfterMs() {
+        return maxRetryAfterMs;
+    }
+
+    void onResponse(int status, HttpHeaders headers) {
+        learnLimits(headers);
+
+        if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            throttledCounter.increment();
+            long retryAfterMs = parseRetryAfterMs(headers);
+            throttledRetryAfterMs.set(retryAfterMs);
+            if (retryAfterMs > 0) {
+                pauseFor(retryAfterMs, "Retry-After");
+            }
+            return;
+        }
+
+        long requestsLeft = parseLong(headers.getFirst(REMAINING_REQUESTS));
+        long tokensLeft = parseLong(headers.getFirst(REMAINING_TOKENS));
+        remainingRequests = requestsLeft;
+        remainingTokens = tokensLeft;
+        if (requestsLeft == 0) {
+            pauseFor(parseDurationMs(headers.getFirst(RESET_REQUESTS)), RESET_REQUESTS);
+        }
+        if (tokensLeft == 0) {
+            pauseFor(parseDurationMs(headers.getFirst(RESET_TOKENS)), RESET_TOKENS);
+        }
+    }
+
+    private void learnLimits(HttpHeaders headers) {
+        int requestLimit = (int) Math.min(Integer.MAX_VALUE, parseLong(headers.getFirst(LIMIT_REQUESTS)));
+        int tokenLimit = (int) Math.min(Integer.MAX_VALUE, parseLong(headers.getFirst(LIMIT_TOKENS)));
+        if (requestLimit <= 0 && tokenLimit <= 0) {
+            return;
+        }
+        boolean changed = false;
+        if (requestLimit > 0 && requestLimit != serverRequestLimit) {
+            serverRequestLimit = requestLimit;
+            changed = true;
+        }
+        if (tokenLimit > 0 && tokenLimit != serverTokenLimit) {
+            serverTokenLimit = tokenLimit;
+            changed = true;
+        }
+        if (changed) {
+            rateLimiter.applyServerLimits(serverRequestLimit, serverTokenLimit);
+            log.info("Embedding 服务端配额更新: rpm={}, tpm={}, 生效预算 rpm={}, tpm={}",
+                    serverRequestLimit, serverTokenLimit, rateLimiter.getRpmLimit(), rateLimiter.getTpmLimit());
+        }
+    }
+
+    private void pauseFor(long durationMs, String reason) {
+        if (durationMs <= 0) {
+            return;
+        }
+        long until = System.currentTimeMillis() + durationMs;
+        long previous = pausedUntilMs.getAndAccumulate(until, Math::max);
+        if (until > previous) {
+            pauseCounter.increment();
+            log.warn("Embedding 服务端要求暂停 {}ms（{}）", durationMs, reason);
+        }
+    }
+
+    private long parseRetryAfterMs(HttpHeaders headers) {
+        long retryAfterMs = parseLong(headers.getFirst(RETRY_AFTER_MS));
+        if (retryAfterMs >= 0) {
+            return retryAfterMs;
+        }
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (!StringUtils.hasText(retryAfter)) {
+            return -1L;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            return Math.round(Double.parseDouble(retryAfter) * 1000);
+        } catch (NumberFormatException ignored) {
+            // HTTP 日期格式
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0L, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
+    static long parseDurationMs(String value) {
+        if (!StringUtils.hasText(value)) {
+            return -1L;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.round(Double.parseDouble(trimmed) * 1000);
+        } catch (NumberFormatException ignored) {
+            // 带单位的时长
+        }
+        Matcher matcher = DURATION_PART.matcher(trimmed);
+        double totalMs = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            totalMs += switch (matcher.group(2)) {
+                case "ms" -> amount;
+                case "s" -> amount * 1000;
+                case "m" -> amount * TimeUnit.MINUTES.toMillis(1);
+                default -> amount * TimeUnit.HOURS.toMillis(1);
+            };
+        }
+        return matched ? Math.round(totalMs) : -1L;
+    }
+
+    private static long parseLong(String value) {
+        if (!StringUtils.hasText(value)) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
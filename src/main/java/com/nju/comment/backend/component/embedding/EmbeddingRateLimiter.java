@@ -0,0 +1,42 @@
+package com.nju.comment.backend.component.embedding;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Embedding 调用的 RPM/TPM 限流器。
+ * 实现由 {@code app.ai.siliconflow.embedding.rate-limit.algorithm} 选择：
+ * {@code sliding-window}（默认）、{@code gcra} 或集群共享额度的 {@code redis}。
+ */
+public interface EmbeddingRateLimiter {
+
+    /**
+     * 根据输入文本的近似 token 数申请额度，必要时阻塞等待。
+     */
+    void acquire(List<String> inputs) throws InterruptedException;
+
+    /**
+     * 异步申请：额度可用时由 scheduler 完成返回的 future，等待期间不占用调用线程
+     */
+    CompletableFuture<Void> acquireAsync(List<String> inputs, ScheduledExecutorService scheduler);
+
+    /**
+     * 非阻塞申请：额度立即可用时占用并返回 true，否则不占用任何额度并返回 false。
+     */
+    boolean tryAcquire(List<String> inputs);
+
+    /**
+     * 应用服务端响应头报告的配额：低于本地配置时按服务端配额限流；参数 <= 0 表示未知
+     */
+    void applyServerLimits(int rpmLimit, int tpmLimit);
+
+    /**
+     * 当前生效的 RPM 预算
+     */
+    int getRpmLimit();
+
+    int getTpmLimit();
+
+    long getWindowMs();
+}
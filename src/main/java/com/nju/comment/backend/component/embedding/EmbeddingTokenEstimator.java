@@ -0,0 +1,168 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Embedding 输入 token 统计，供限流器、入库批次打包与超长判定共用。
+ * <p>
+ * 词表（bge-m3 / XLM-R 的 tokenizer.json，可 gzip 压缩，默认为随项目打包的 {@link #DEFAULT_TOKENIZER_LOCATION}）
+ * 存在时用 {@link UnigramTokenizer} 精确计数，
+ * 并按字符长度加权缓存重复文本（入库时打包与限流会对同一批文本各统计一次，RAG 查询也常重复）；
+ * 词表缺失时退化为按 Unicode code point 的保守估算，超长判定也随之退回字符上限。
+ */
+@Slf4j
+@Component
+public class EmbeddingTokenEstimator {
+
+    private static final int DEFAULT_MAX_INPUT_TOKENS = 8192;
+    private static final int DEFAULT_MAX_INPUT_CHARS = 8000;
+
+    /**
+     * 随项目打包的 bge-m3 词表
+     */
+    public static final String DEFAULT_TOKENIZER_LOCATION = "classpath:tokenizer/bge-m3/tokenizer.json.gz";
+
+    private final UnigramTokenizer tokenizer;
+    private final Cache<String, Integer> cache;
+    private final int maxInputTokens;
+    private final int maxInputChars;
+
+    /**
+     * 无词表的估算器：按 code point 计数
+     */
+    public EmbeddingTokenEstimator() {
+        this(null, 0, DEFAULT_MAX_INPUT_TOKENS, DEFAULT_MAX_INPUT_CHARS);
+    }
+
+    public EmbeddingTokenEstimator(UnigramTokenizer tokenizer, long cacheMaxChars, int maxInputTokens, int maxInputChars) {
+        this.tokenizer = tokenizer;
+        this.cache = tokenizer != null && cacheMaxChars > 0
+                ? Caffeine.newBuilder()
+                .maximumWeight(cacheMaxChars)
+                .weigher((String key, Integer value) -> key.length())
+                .build()
+                : null;
+        this.maxInputTokens = Math.max(16, maxInputTokens);
+        this.maxInputChars = Math.max(256, maxInputChars);
+    }
+
+    @Autowired
+    public EmbeddingTokenEstimator(ResourceLoader resourceLoader,
+                                   @Value("${app.ai.siliconflow.embedding.tokenizer.location:" + DEFAULT_TOKENIZER_LOCATION + "}") String location,
+                                   @Value("${app.ai.siliconflow.embedding.tokenizer.cache-max-chars:8000000}") long cacheMaxChars,
+                                   @Value("${app.ai.siliconflow.embedding.max-input-tokens:8192}") int maxInputTokens,
+                                   @Value("${app.vectorstore.embedding-max-input-chars:7000}") int maxInputChars) {
+        this(loadTokenizer(resourceLoader, location), cacheMaxChars, maxInputTokens, maxInputChars);
+    }
+
+    /**
+     * 是否使用真实词表计数；否则为按字符的保守估算
+     */
+    public boolean isExact() {
+        return tokenizer != null;
+    }
+
+    public int getMaxInputTokens() {
+        return maxInputTokens;
+    }
+
+    public int getMaxInputChars() {
+        return maxInputChars;
+    }
+
+    /**
+     * 统计单条文本的 token 数，空文本返回 0
+     */
+    public int estimate(String input) {
+        if (input == null || input.isBlank()) {
+            return 0;
+        }
+        if (tokenizer == null) {
+            return input.codePointCount(0, input.length());
+        }
+        if (cache == null) {
+            return tokenizer.countTokens(input);
+        }
+        return cache.get(input, tokenizer::countTokens);
+    }
+
+    /**
+     * 统计一批输入的总 token 数，至少为 1
+     */
+    public int estimate(List<String> inputs) {
+        if (inputs == null || inputs.isEmpty()) {
+            return 1;
+        }
+
+        long total = 0;
+        for (String input : inputs) {
+            total += estimate(input);
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1L, total));
+    }
+
+    /**
+     * 文本是否超过 Embedding 模型的单条输入上限
+     */
+    public boolean exceedsInputLimit(String input) {
+        if (input == null || input.isEmpty()) {
+            return false;
+        }
+        if (tokenizer == null) {
+            return input.codePointCount(0, input.length()) > maxInputChars;
+        }
+        return estimate(input) > maxInputTokens;
+    }
+
+    /**
+     * 已统计过 token 数与字符数时的超长判定，避免重复计算
+     */
+    public boolean exceedsInputLimit(int tokens, int chars) {
+        return tokenizer != null ? tokens > maxInputTokens : chars > maxInputChars;
+    }
+
+    /**
+     * 超长判定所用的上限描述，用于日志
+     */
+    public String describeInputLimit() {
+        return tokenizer != null ? maxInputTokens + " tokens" : maxInputChars + " chars";
+    }
+
+    private static UnigramTokenizer loadTokenizer(ResourceLoader resourceLoader, String location) {
+        if (!StringUtils.hasText(location)) {
+            log.info("未配置 Embedding 分词词表（app.ai.siliconflow.embedding.tokenizer.location），token 数按字符估算");
+            return null;
+        }
+        Resource resource = resourceLoader.getResource(location.trim());
+        if (!resource.exists()) {
+            log.warn("Embedding 分词词表不存在: {}，token 数按字符估算（代码文本会高估 3~4 倍）", location);
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try (InputStream raw = resource.getInputStream();
+             InputStream in = location.endsWith(".gz") ? new GZIPInputStream(raw, 64 * 1024) : raw) {
+            UnigramTokenizer tokenizer = UnigramTokenizer.load(new JsonFactory(), in);
+            log.info("Embedding 分词词表已加载: location={}, pieces={}, 耗时={}ms",
+                    location, tokenizer.vocabularySize(), System.currentTimeMillis() - start);
+            return tokenizer;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Embedding 分词词表加载失败: {}，token 数按字符估算", location, e);
+            return null;
+        }
+    }
+}
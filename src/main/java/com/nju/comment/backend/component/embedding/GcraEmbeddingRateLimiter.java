@@ -0,0 +1,187 @@
+package com.nju.comment.backend.component.embedding;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SiliconFlow Embedding 速率限制器（GCRA，双令牌桶）。
+ * <p>
+ * RPM 与 TPM 各自维护一个理论到达时间（TAT），桶容量为一个窗口内的额度，按窗口匀速回填。
+ * 两个 TAT 放在同一个不可变快照中以 CAS 整体替换，每次申请 O(1)、无锁。
+ * <p>
+ * 阻塞申请先以 CAS 预约自己的放行时刻，再休眠到该时刻：预约顺序即放行顺序，等待者严格先到先得；
+ * 已有等待者时 TAT 已被推到未来，{@link #tryAcquire} 不会插队。
+ * 等待期间被中断时已预约的额度不归还，保守地多让出一次额度。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.ai.siliconflow.embedding.rate-limit.algorithm", havingValue = "gcra")
+public class GcraEmbeddingRateLimiter implements EmbeddingRateLimiter {
+
+    private static final long DEFAULT_WINDOW_MS = 60_000L;
+
+    private final EmbeddingTokenEstimator tokenEstimator;
+
+    /**
+     * 时间以构造时刻为原点，初始 TAT 为 0 即两个桶都是满的
+     */
+    private final long origin = System.nanoTime();
+    private final AtomicReference<Schedule> schedule = new AtomicReference<>(new Schedule(0L, 0L));
+
+    @Value("${app.ai.siliconflow.embedding.rate-limit.rpm:2000}")
+    private int rpmLimit;
+
+    @Value("${app.ai.siliconflow.embedding.rate-limit.tpm:500000}")
+    private int tpmLimit;
+
+    @Value("${app.ai.siliconflow.embedding.rate-limit.window-ms:60000}")
+    private long windowMs;
+
+    /**
+     * 服务端响应头报告的配额，低于本地配置时生效；-1 表示未知
+     */
+    private volatile int serverRpmLimit = -1;
+    private volatile int serverTpmLimit = -1;
+
+    /**
+     * 非 Spring 管理的实例，如分布式限流器在 Redis 不可用时的本地兜底
+     */
+    static GcraEmbeddingRateLimiter withLimits(EmbeddingTokenEstimator tokenEstimator,
+                                               int rpmLimit,
+                                               int tpmLimit,
+                                               long windowMs) {
+        GcraEmbeddingRateLimiter limiter = new GcraEmbeddingRateLimiter(tokenEstimator);
+        limiter.rpmLimit = rpmLimit;
+        limiter.tpmLimit = tpmLimit;
+        limiter.windowMs = windowMs;
+        return limiter;
+    }
+
+    @Override
+    public int getRpmLimit() {
+        return effectiveLimit(rpmLimit, serverRpmLimit);
+    }
+
+    @Override
+    public int getTpmLimit() {
+        return effectiveLimit(tpmLimit, serverTpmLimit);
+    }
+
+    @Override
+    public void applyServerLimits(int rpmLimit, int tpmLimit) {
+        this.serverRpmLimit = rpmLimit;
+        this.serverTpmLimit = tpmLimit;
+    }
+
+    @Override
+    public long getWindowMs() {
+        return windowMs > 0 ? windowMs : DEFAULT_WINDOW_MS;
+    }
+
+    @Override
+    public void acquire(List<String> inputs) throws InterruptedException {
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
+        long start = reserve(estimatedTokens, Long.MAX_VALUE);
+
+        long waitNanos = start - now();
+        if (waitNanos <= 0) {
+            return;
+        }
+        log.debug("Embedding 限流等待: wait={}ms, estimatedTokens={}, rpmLimit={}, tpmLimit={}",
+                TimeUnit.NANOSECONDS.toMillis(waitNanos), estimatedTokens, getRpmLimit(), getTpmLimit());
+        while (waitNanos > 0) {
+            LockSupport.parkNanos(this, waitNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Embedding 限流等待被中断");
+            }
+            waitNanos = start - now();
+        }
+    }
+
+    /**
+     * 与阻塞申请相同先预约放行时刻，再由 scheduler 在该时刻完成 future
+     */
+    @Override
+    public CompletableFuture<Void> acquireAsync(List<String> inputs, ScheduledExecutorService scheduler) {
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
+        long waitNanos = reserve(estimatedTokens, Long.MAX_VALUE) - now();
+        if (waitNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.schedule(() -> future.complete(null), waitNanos, TimeUnit.NANOSECONDS);
+        return future;
+    }
+
+    @Override
+    public boolean tryAcquire(List<String> inputs) {
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
+        return reserve(estimatedTokens, 0L) >= 0;
+    }
+
+    /**
+     * 预约一次请求的放行时刻（相对原点的纳秒）；需要等待超过 maxWaitNanos 时不预约，返回 -1
+     */
+    private long reserve(int tokens, long maxWaitNanos) {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(getWindowMs());
+        long requestInterval = windowNanos / getRpmLimit();
+        long requestTolerance = windowNanos - requestInterval;
+        long tokenCost = (long) ((double) tokens * windowNanos / getTpmLimit());
+        long tokenTolerance = windowNanos - tokenCost;
+
+        while (true) {
+            Schedule current = schedule.get();
+            long now = now();
+            long start = Math.max(now, Math.max(
+                    current.requestTat - requestTolerance,
+                    current.tokenTat - tokenTolerance));
+            if (start - now > maxWaitNanos) {
+                return -1L;
+            }
+            Schedule next = new Schedule(
+                    Math.max(current.requestTat, start) + requestInterval,
+                    Math.max(current.tokenTat, start) + tokenCost);
+            if (schedule.compareAndSet(current, next)) {
+                return start;
+            }
+        }
+    }
+
+    private long now() {
+        return System.nanoTime() - origin;
+    }
+
+    private static int effectiveLimit(int configured, int server) {
+        int safeConfigured = Math.max(1, configured);
+        return server > 0 ? Math.min(safeConfigured, server) : safeConfigured;
+    }
+
+    private int sanitizeEstimatedTokens(int estimatedTokens) {
+        int safeTpmLimit = getTpmLimit();
+        int safeEstimatedTokens = Math.max(1, estimatedTokens);
+        if (safeEstimatedTokens > safeTpmLimit) {
+            log.warn("单次 embedding 估算 token({}) 超过 TPM 限制({})，已按 TPM 上限参与限流，请考虑减小批次大小",
+                    safeEstimatedTokens, safeTpmLimit);
+            return safeTpmLimit;
+        }
+        return safeEstimatedTokens;
+    }
+
+    /**
+     * @param requestTat RPM 桶的理论到达时间
+     * @param tokenTat   TPM 桶的理论到达时间
+     */
+    private record Schedule(long requestTat, long tokenTat) {
+    }
+}
@@ -0,0 +1,119 @@
+package com.nju.comment.backend.component.embedding;
+
+import org.jspecify.annotations.NonNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 确定性的特征哈希 Embedding，用于测试与离线基准，不依赖模型文件与网络。
+ * <p>
+ * 文本按非字母数字切词，标识符再按驼峰拆分；每个词及相邻词对哈希到一个维度并按哈希符号位 ±1 累加，
+ * 最后 L2 归一化。词面重合越多的文本余弦相似度越高，足以驱动检索链路，但不具备语义能力。
+ */
+public class HashEmbeddingModel implements EmbeddingModel {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int dimensions;
+
+    public HashEmbeddingModel(int dimensions) {
+        this.dimensions = Math.max(8, dimensions);
+    }
+
+    @Override
+    public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+        List<String> inputs = request.getInstructions();
+        List<Embedding> embeddings = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            embeddings.add(new Embedding(embedText(inputs.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float @NonNull [] embed(@NonNull Document document) {
+        return embedText(document.getFormattedContent(MetadataMode.NONE));
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public float[] embedText(String text) {
+        float[] vector = new float[dimensions];
+        List<String> words = words(text);
+        String previous = null;
+        for (String word : words) {
+            accumulate(vector, hash(word));
+            if (previous != null) {
+                accumulate(vector, hash(previous + ' ' + word));
+            }
+            previous = word;
+        }
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private void accumulate(float[] vector, long hash) {
+        int index = (int) Long.remainderUnsigned(hash, dimensions);
+        vector[index] += (hash >>> 63) == 0 ? 1f : -1f;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            boolean wordChar = Character.isLetterOrDigit(c);
+            // 驼峰边界：小写/数字后紧跟大写
+            boolean camelBoundary = wordChar && start >= 0 && Character.isUpperCase(c)
+                    && !Character.isUpperCase(text.charAt(i - 1));
+            if (start >= 0 && (!wordChar || camelBoundary)) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            if (wordChar && start < 0) {
+                start = i;
+            }
+        }
+        return words;
+    }
+
+    private static long hash(String token) {
+        long hash = FNV_OFFSET;
+        for (byte b : token.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        // FNV 低位扩散较差，再做一次 64 位混合
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
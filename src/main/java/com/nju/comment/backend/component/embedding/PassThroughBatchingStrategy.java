@@ -0,0 +1,20 @@
+package com.nju.comment.backend.component.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+
+import java.util.List;
+
+/**
+ * 不再二次拆分的批处理策略：VectorStore.add 收到的文档列表即一次 Embedding 请求。
+ * <p>
+ * 入库时批次已由 EmbeddingBatchPacker 按 token 预算打包，
+ * 默认的 TokenCountBatchingStrategy 会按 cl100k 重新切分并对超长单条直接抛异常。
+ */
+public class PassThroughBatchingStrategy implements BatchingStrategy {
+
+    @Override
+    public List<List<Document>> batch(List<Document> documents) {
+        return List.of(documents);
+    }
+}
@@ -0,0 +1,444 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.VectorStoreException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 本地持久化 Embedding 存储，按 (embedding 模型, docId) 复用已计算的向量，
+ * 使重建 Milvus 集合、更换索引类型或灾备恢复时无需再次调用 Embedding API。
+ * <p>
+ * 目录结构：{@code <path>/<model>/vectors.f32} 为按槽位排列的 float32（小端）向量文件，
+ * 按段内存映射读取；{@code <path>/<model>/index.bin} 为追加写的 docId → 槽位索引。
+ * 单写多读：每批写入先把向量所在页刷盘（force），再追加并刷新索引，
+ * 因此索引中的条目总指向已落盘的向量；崩溃时未写索引的槽位被忽略，写了一半的索引尾部在下次打开时截断。
+ */
+@Slf4j
+@Component
+public class PersistentEmbeddingStore {
+
+    private static final int INDEX_MAGIC = 0x43434549; // "CCEI"
+    private static final int EXPORT_MAGIC = 0x43434558; // "CCEX"
+    private static final int FORMAT_VERSION = 1;
+    private static final long TARGET_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int IMPORT_BATCH = 1024;
+
+    @Value("${app.vectorstore.embedding-store.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.vectorstore.embedding-store.path:data/embedding-store}")
+    private String storePath;
+
+    @Value("${app.ai.siliconflow.embedding.model:BAAI/bge-m3}")
+    private String modelName;
+
+    @Value("${app.ai.embedding.provider:siliconflow}")
+    private String provider;
+
+    @Value("${app.ai.embedding.local.model-name:local-onnx}")
+    private String localModelName;
+
+    @Value("${spring.ai.vectorstore.milvus.embeddingDimension:1024}")
+    private int dimension;
+
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private final Object writeMonitor = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private FileChannel vectorChannel;
+    private DataOutputStream indexOutput;
+    private int vectorsPerSegment;
+    private int nextSlot;
+
+    @PostConstruct
+    public void open() {
+        // 本地模型与远程模型的向量空间不同，按实际使用的模型分目录
+        if ("onnx".equalsIgnoreCase(provider)) {
+            modelName = localModelName;
+        } else if ("hash".equalsIgnoreCase(provider)) {
+            modelName = "hash-" + dimension;
+        }
+        if (!enabled) {
+            log.info("Embedding 持久化存储未启用");
+            return;
+        }
+
+        vectorsPerSegment = (int) Math.max(1L, TARGET_SEGMENT_BYTES / vectorBytes());
+        Path dir = resolveModelDir();
+        try {
+            Files.createDirectories(dir);
+            vectorChannel = FileChannel.open(dir.resolve("vectors.f32"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            loadIndex(dir.resolve("index.bin"));
+            log.info("Embedding 持久化存储已加载: dir={}, model={}, dimension={}, vectors={}",
+                    dir, modelName, dimension, slots.size());
+        } catch (IOException e) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "打开 Embedding 持久化存储失败: " + dir, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (writeMonitor) {
+            try {
+                if (indexOutput != null) {
+                    indexOutput.close();
+                }
+                if (vectorChannel != null) {
+                    for (MappedByteBuffer segment : segments) {
+                        segment.force();
+                    }
+                    vectorChannel.close();
+                }
+            } catch (IOException e) {
+                log.warn("关闭 Embedding 持久化存储失败", e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 读取已持久化的向量，不存在时返回 null
+     */
+    public float[] get(String docId) {
+        if (!enabled || docId == null) {
+            return null;
+        }
+        Integer slot = slots.get(docId);
+        if (slot == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return readSlot(slot);
+    }
+
+    public boolean contains(String docId) {
+        return enabled && docId != null && slots.containsKey(docId);
+    }
+
+    /**
+     * 持久化向量；docId 已存在时忽略（docId 由内容哈希得到，相同 docId 的向量相同）
+     */
+    public void put(String docId, float[] vector) {
+        putAll(List.of(docId), List.of(vector));
+    }
+
+    /**
+     * 批量持久化，与 docIds 按下标对应；整批只刷一次盘
+     */
+    public void putAll(List<String> docIds, List<float[]> vectors) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (writeMonitor) {
+            Set<String> written = new LinkedHashSet<>();
+            int firstSlot = nextSlot;
+            int slot = firstSlot;
+            for (int i = 0; i < docIds.size(); i++) {
+                String docId = docIds.get(i);
+                float[] vector = vectors.get(i);
+                if (docId == null || vector == null || slots.containsKey(docId) || written.contains(docId)) {
+                    continue;
+                }
+                if (vector.length != dimension) {
+                    log.warn("向量维度与存储不一致，跳过持久化: docId={}, dimension={}, expected={}",
+                            docId, vector.length, dimension);
+                    continue;
+                }
+                writeSlot(slot++, vector);
+                written.add(docId);
+            }
+            if (written.isEmpty()) {
+                return;
+            }
+            try {
+                forceSlots(firstSlot, slot);
+                int next = firstSlot;
+                for (String docId : written) {
+                    indexOutput.writeUTF(docId);
+                    indexOutput.writeInt(next++);
+                }
+                indexOutput.flush();
+            } catch (IOException e) {
+                throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "写入 Embedding 持久化存储失败", e);
+            }
+            nextSlot = slot;
+            int next = firstSlot;
+            for (String docId : written) {
+                slots.put(docId, next++);
+            }
+        }
+    }
+
+    // ==================== 导出/导入 ====================
+
+    /**
+     * 导出为可移植的 gzip 格式：header(magic, version, model, dimension, count) + N × (docId, float32[dimension])。
+     *
+     * @return 导出的向量条数
+     */
+    public long exportTo(OutputStream target) throws IOException {
+        requireEnabled();
+        GZIPOutputStream gzip = new GZIPOutputStream(target, 1 << 16);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip, 1 << 16));
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(slots.entrySet());
+        out.writeInt(EXPORT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(modelName);
+        out.writeInt(dimension);
+        out.writeLong(entries.size());
+        for (Map.Entry<String, Integer> entry : entries) {
+            out.writeUTF(entry.getKey());
+            float[] vector = readSlot(entry.getValue());
+            for (float v : vector) {
+                out.writeFloat(v);
+            }
+        }
+        out.flush();
+        gzip.finish();
+        return entries.size();
+    }
+
+    /**
+     * 从 {@link #exportTo(OutputStream)} 产生的文件导入，已存在的 docId 跳过。
+     *
+     * @return 新导入的向量条数
+     */
+    public long importFrom(InputStream source) throws IOException {
+        requireEnabled();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(source), 1 << 16));
+        if (in.readInt() != EXPORT_MAGIC) {
+            throw new VectorStoreException(ErrorCode.PARAMETER_ERROR, "不是有效的 Embedding 导出文件");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new VectorStoreException(ErrorCode.PARAMETER_ERROR, "不支持的 Embedding 导出文件版本: " + version);
+        }
+        String exportedModel = in.readUTF();
+        int exportedDimension = in.readInt();
+        if (!modelName.equals(exportedModel) || exportedDimension != dimension) {
+            throw new VectorStoreException(ErrorCode.PARAMETER_ERROR,
+                    "导出文件的模型或维度不匹配: model=" + exportedModel + ", dimension=" + exportedDimension);
+        }
+
+        long count = in.readLong();
+        long imported = 0;
+        List<String> docIds = new ArrayList<>(IMPORT_BATCH);
+        List<float[]> vectors = new ArrayList<>(IMPORT_BATCH);
+        for (long i = 0; i < count; i++) {
+            String docId = in.readUTF();
+            float[] vector = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = in.readFloat();
+            }
+            if (!slots.containsKey(docId)) {
+                docIds.add(docId);
+                vectors.add(vector);
+                imported++;
+            }
+            if (docIds.size() >= IMPORT_BATCH || i == count - 1) {
+                putAll(docIds, vectors);
+                docIds.clear();
+                vectors.clear();
+            }
+        }
+        log.info("Embedding 导入完成: total={}, imported={}", count, imported);
+        return imported;
+    }
+
+    // ==================== 文件读写 ====================
+
+    private void loadIndex(Path indexPath) throws IOException {
+        boolean exists = Files.exists(indexPath) && Files.size(indexPath) > 0;
+        int maxSlot = -1;
+        long validBytes = 0;
+        if (exists) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != FORMAT_VERSION) {
+                    throw new IOException("Embedding 索引文件格式不正确: " + indexPath);
+                }
+                String storedModel = in.readUTF();
+                int storedDimension = in.readInt();
+                if (!modelName.equals(storedModel) || storedDimension != dimension) {
+                    throw new IOException("Embedding 索引文件与当前配置不匹配: model=" + storedModel
+                            + ", dimension=" + storedDimension);
+                }
+                validBytes = headerBytes();
+                while (true) {
+                    String docId;
+                    int slot;
+                    try {
+                        docId = in.readUTF();
+                        slot = in.readInt();
+                    } catch (EOFException eof) {
+                        break;
+                    }
+                    slots.put(docId, slot);
+                    maxSlot = Math.max(maxSlot, slot);
+                    validBytes += 2 + docId.getBytes(StandardCharsets.UTF_8).length + 4;
+                }
+            }
+            // 截断崩溃时写了一半的尾部记录
+            if (Files.size(indexPath) != validBytes) {
+                log.warn("Embedding 索引文件尾部不完整，已截断: file={}, validBytes={}", indexPath, validBytes);
+                try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+                    channel.truncate(validBytes);
+                }
+            }
+        }
+
+        nextSlot = maxSlot + 1;
+        indexOutput = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (!exists) {
+            indexOutput.writeInt(INDEX_MAGIC);
+            indexOutput.writeInt(FORMAT_VERSION);
+            indexOutput.writeUTF(modelName);
+            indexOutput.writeInt(dimension);
+            indexOutput.flush();
+        }
+    }
+
+    private long headerBytes() {
+        return 4 + 4 + 2 + modelName.getBytes(StandardCharsets.UTF_8).length + 4;
+    }
+
+    private float[] readSlot(int slot) {
+        MappedByteBuffer segment = segmentFor(slot);
+        int base = (slot % vectorsPerSegment) * vectorBytes();
+        float[] vector = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            vector[d] = segment.getFloat(base + d * Float.BYTES);
+        }
+        return vector;
+    }
+
+    private void writeSlot(int slot, float[] vector) {
+        MappedByteBuffer segment = segmentFor(slot);
+        int base = (slot % vectorsPerSegment) * vectorBytes();
+        for (int d = 0; d < dimension; d++) {
+            segment.putFloat(base + d * Float.BYTES, vector[d]);
+        }
+    }
+
+    /**
+     * 把 [fromSlot, toSlot) 槽位所在的映射页刷到磁盘
+     */
+    private void forceSlots(int fromSlot, int toSlot) {
+        int slot = fromSlot;
+        while (slot < toSlot) {
+            int segmentEnd = Math.min(toSlot, (slot / vectorsPerSegment + 1) * vectorsPerSegment);
+            int base = (slot % vectorsPerSegment) * vectorBytes();
+            segmentFor(slot).force(base, (segmentEnd - slot) * vectorBytes());
+            slot = segmentEnd;
+        }
+    }
+
+    /**
+     * 读路径无锁：segments 以写时复制数组发布，仅在需要映射新段时加锁
+     */
+    private MappedByteBuffer segmentFor(int slot) {
+        int segmentIndex = slot / vectorsPerSegment;
+        MappedByteBuffer[] snapshot = segments;
+        if (segmentIndex < snapshot.length) {
+            return snapshot[segmentIndex];
+        }
+
+        synchronized (this) {
+            MappedByteBuffer[] current = segments;
+            if (segmentIndex < current.length) {
+                return current[segmentIndex];
+            }
+            MappedByteBuffer[] grown = Arrays.copyOf(current, segmentIndex + 1);
+            for (int i = current.length; i <= segmentIndex; i++) {
+                long position = (long) i * vectorsPerSegment * vectorBytes();
+                try {
+                    MappedByteBuffer mapped = vectorChannel.map(
+                            FileChannel.MapMode.READ_WRITE, position, (long) vectorsPerSegment * vectorBytes());
+                    mapped.order(ByteOrder.LITTLE_ENDIAN);
+                    grown[i] = mapped;
+                } catch (IOException e) {
+                    throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "映射 Embedding 向量文件失败", e);
+                }
+            }
+            segments = grown;
+            return grown[segmentIndex];
+        }
+    }
+
+    private int vectorBytes() {
+        return dimension * Float.BYTES;
+    }
+
+    private void requireEnabled() {
+        if (!enabled) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "Embedding 持久化存储未启用");
+        }
+    }
+
+    private Path resolveModelDir() {
+        Path path = Paths.get(storePath);
+        if (!path.isAbsolute()) {
+            path = Paths.get("").toAbsolutePath().resolve(path).normalize();
+        }
+        return path.resolve(modelName.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.VectorStoreException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jspecify.annotations.NonNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地模型实例池：固定数量的 EmbeddingModel 实例（各自持有一个推理会话），调用时借出、用完归还。
+ * <p>
+ * 实例数即并行推理数的上限，避免在线请求各自创建会话或无限并发把 CPU 打满；
+ * 跨线程的批量合并由外层 {@link CoalescingEmbeddingModel} 完成，池内每次调用处理一整批文本。
+ */
+public class PooledEmbeddingModel implements EmbeddingModel {
+
+    private final BlockingQueue<EmbeddingModel> idle;
+    private final int dimensions;
+    private final Timer borrowTimer;
+
+    public PooledEmbeddingModel(List<? extends EmbeddingModel> instances, MeterRegistry meterRegistry) {
+        if (instances.isEmpty()) {
+            throw new IllegalArgumentException("本地 Embedding 实例池不能为空");
+        }
+        this.idle = new ArrayBlockingQueue<>(instances.size(), true, instances);
+        this.dimensions = instances.get(0).dimensions();
+        Gauge.builder("embedding.local.pool.idle", idle, BlockingQueue::size)
+                .description("空闲的本地 Embedding 模型实例数")
+                .register(meterRegistry);
+        this.borrowTimer = Timer.builder("embedding.local.pool.wait")
+                .description("等待空闲本地 Embedding 模型实例的时间")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+        EmbeddingModel instance = borrow();
+        try {
+            return instance.call(request);
+        } finally {
+            idle.offer(instance);
+        }
+    }
+
+    @Override
+    public float @NonNull [] embed(@NonNull Document document) {
+        String content = document.getFormattedContent(MetadataMode.NONE);
+        return call(new EmbeddingRequest(List.of(content), null)).getResult().getOutput();
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private EmbeddingModel borrow() {
+        long start = System.nanoTime();
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INTERRUPTED, "等待本地 Embedding 模型实例被中断", e);
+        } finally {
+            borrowTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
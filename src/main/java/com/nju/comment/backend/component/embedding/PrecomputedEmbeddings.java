@@ -0,0 +1,55 @@
+package com.nju.comment.backend.component.embedding;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 当前线程上预先算好的文档向量（docId → 向量）。
+ * <p>
+ * 向量库写入时会自行对文档正文做 Embedding；当写入向量库的文档不再携带原文（payload 精简模式只写 docId），
+ * 调用方先按原文算好向量并在 {@link #with} 范围内写入，{@link QueryCachedEmbeddingModel} 据此直接返回。
+ */
+public final class PrecomputedEmbeddings {
+
+    private static final ThreadLocal<Map<String, float[]>> CURRENT = new ThreadLocal<>();
+
+    private PrecomputedEmbeddings() {
+    }
+
+    public static <T> T with(Map<String, float[]> vectors, Supplier<T> action) {
+        Map<String, float[]> previous = CURRENT.get();
+        CURRENT.set(vectors);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 所有文档都有预计算向量时按顺序返回，否则返回 null
+     */
+    static List<float[]> lookup(List<Document> documents) {
+        Map<String, float[]> vectors = CURRENT.get();
+        if (vectors == null) {
+            return null;
+        }
+        List<float[]> result = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            float[] vector = vectors.get(document.getId());
+            if (vector == null) {
+                return null;
+            }
+            result.add(vector);
+        }
+        return result;
+    }
+}
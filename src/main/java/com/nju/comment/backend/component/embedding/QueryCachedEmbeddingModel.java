@@ -0,0 +1,84 @@
+package com.nju.comment.backend.component.embedding;
+
+import lombok.RequiredArgsConstructor;
+import org.jspecify.annotations.NonNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * EmbeddingModel 包装器：单文本查询先查 {@link QueryEmbeddingCache}，命中则不再调用下游模型。
+ * 文档批量向量化优先使用 {@link PrecomputedEmbeddings} 中的预计算向量，其余与带自定义选项的请求直接透传。
+ */
+@RequiredArgsConstructor
+public class QueryCachedEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final QueryEmbeddingCache queryCache;
+
+    @Override
+    public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+        List<String> inputs = request.getInstructions();
+        if (inputs.size() == 1 && isDefaultOptions(request.getOptions())) {
+            float[] cached = queryCache.get(inputs.get(0));
+            if (cached != null) {
+                return new EmbeddingResponse(List.of(new Embedding(cached, 0)));
+            }
+        }
+        return delegate.call(request);
+    }
+
+    @Override
+    public float @NonNull [] embed(@NonNull String text) {
+        float[] cached = queryCache.get(text);
+        return cached != null ? cached : delegate.embed(text);
+    }
+
+    /**
+     * 异步计算单条查询向量：命中缓存直接返回；下游为 {@link CoalescingEmbeddingModel} 时加入合并批次，
+     * 否则在 executor 上同步调用
+     */
+    public CompletableFuture<float[]> embedAsync(String text, Executor executor) {
+        float[] cached = queryCache.get(text);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (delegate instanceof CoalescingEmbeddingModel coalescing) {
+            return coalescing.embedAsync(text, executor);
+        }
+        return CompletableFuture.supplyAsync(() -> delegate.embed(text), executor);
+    }
+
+    @Override
+    public float @NonNull [] embed(@NonNull Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public @NonNull List<float[]> embed(@NonNull List<Document> documents,
+                                        @NonNull EmbeddingOptions options,
+                                        @NonNull BatchingStrategy batchingStrategy) {
+        List<float[]> precomputed = PrecomputedEmbeddings.lookup(documents);
+        if (precomputed != null) {
+            return precomputed;
+        }
+        return delegate.embed(documents, options, batchingStrategy);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private static boolean isDefaultOptions(EmbeddingOptions options) {
+        return options == null || (options.getModel() == null && options.getDimensions() == null);
+    }
+}
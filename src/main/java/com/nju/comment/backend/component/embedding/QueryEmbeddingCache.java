@@ -0,0 +1,38 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 检索查询向量的短期缓存。
+ * <p>
+ * 在线请求在进入工作线程前经异步路径预取查询向量并写入此处，
+ * 随后 VectorStore 检索时由 {@link QueryCachedEmbeddingModel} 直接命中，不再同步等待限流额度。
+ */
+@Component
+public class QueryEmbeddingCache {
+
+    private final Cache<String, float[]> cache;
+
+    public QueryEmbeddingCache(@Value("${app.ai.siliconflow.embedding.query-cache.ttl-ms:60000}") long ttlMs,
+                               @Value("${app.ai.siliconflow.embedding.query-cache.max-size:1000}") long maxSize) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(Math.max(1L, ttlMs)))
+                .maximumSize(Math.max(1L, maxSize))
+                .build();
+    }
+
+    public float[] get(String query) {
+        return query == null ? null : cache.getIfPresent(query);
+    }
+
+    public void put(String query, float[] embedding) {
+        if (query != null && embedding != null && embedding.length > 0) {
+            cache.put(query, embedding);
+        }
+    }
+}
@@ -12,19 +12,28 @@ import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * EmbeddingModel 包装器：
  * 1) 在调用前执行 RPM/TPM 限流；
- * 2) 命中 429/限流错误时指数退避重试。
+ * 2) 服务端通过响应头要求暂停时先等待（见 {@link EmbeddingRateLimitFeedback}）；
+ * 3) 命中 429 时按 Retry-After 精确等待后重试，未给出时指数退避。
+ * <p>
+ * {@link #callAsync} 提供不阻塞线程的等价路径，供在线 RAG 请求在等待额度期间释放工作线程。
  */
 @Slf4j
 @RequiredArgsConstructor
 public class RateLimitedEmbeddingModel implements EmbeddingModel {
 
     private final EmbeddingModel delegate;
-    private final SiliconFlowEmbeddingRateLimiter rateLimiter;
+    private final EmbeddingRateLimiter rateLimiter;
+    private final EmbeddingRateLimitFeedback rateLimitFeedback;
     private final int maxRetries;
     private final long initialBackoffMs;
     private final long maxBackoffMs;
@@ -36,28 +45,15 @@ public class RateLimitedEmbeddingModel implements EmbeddingModel {
 
         for (int attempt = 1; attempt <= attempts; attempt++) {
             try {
+                rateLimitFeedback.awaitClearance();
                 rateLimiter.acquire(inputs);
+                rateLimitFeedback.takeRetryAfterMs();
                 return delegate.call(request);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw new VectorStoreException(ErrorCode.VECTOR_STORE_INTERRUPTED, "Embedding 请求被中断", e);
-            } catch (Exception e) {
-                if (!isRateLimitError(e)) {
-                    throw e;
-                }
-
-                if (attempt >= attempts) {
-                    throw new VectorStoreException(
-                            ErrorCode.RATE_LIMIT_EXCEEDED,
-                            "Embedding 请求触发限流，已超过最大重试次数",
-                            e
-                    );
-                }
-
-                long delayMs = computeBackoffDelay(attempt);
-                log.warn("Embedding 请求触发限流，准备重试: attempt={}/{}, delay={}ms",
-                        attempt, attempts, delayMs);
-
+            } catch (RuntimeException e) {
+                long delayMs = resolveRetryDelay(e, rateLimitFeedback.takeRetryAfterMs(), attempt, attempts);
                 try {
                     Thread.sleep(delayMs);
                 } catch (InterruptedException ie) {
@@ -70,6 +66,92 @@ public class RateLimitedEmbeddingModel implements EmbeddingModel {
         throw new VectorStoreException(ErrorCode.RATE_LIMIT_EXCEEDED, "Embedding 请求触发限流");
     }
 
+    /**
+     * 异步调用：服务端暂停、限流等待与 429 退避都交给 scheduler 计时，不占用任何线程；
+     * 额度就绪后才在 executor 上发起 HTTP 请求。
+     */
+    public CompletableFuture<EmbeddingResponse> callAsync(EmbeddingRequest request,
+                                                          Executor executor,
+                                                          ScheduledExecutorService scheduler) {
+        CompletableFuture<EmbeddingResponse> result = new CompletableFuture<>();
+        attemptAsync(request, 1, Math.max(1, maxRetries + 1), executor, scheduler, result);
+        return result;
+    }
+
+    private void attemptAsync(EmbeddingRequest request,
+                              int attempt,
+                              int attempts,
+                              Executor executor,
+                              ScheduledExecutorService scheduler,
+                              CompletableFuture<EmbeddingResponse> result) {
+        if (result.isDone()) {
+            return;
+        }
+        long clearanceMs = rateLimitFeedback.getClearanceDelayMs();
+        if (clearanceMs > 0) {
+            scheduler.schedule(() -> attemptAsync(request, attempt, attempts, executor, scheduler, result),
+                    clearanceMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        rateLimiter.acquireAsync(request.getInstructions(), scheduler)
+                .thenRunAsync(() -> {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    rateLimitFeedback.takeRetryAfterMs();
+                    try {
+                        result.complete(delegate.call(request));
+                    } catch (RuntimeException e) {
+                        long delayMs = resolveRetryDelay(e, rateLimitFeedback.takeRetryAfterMs(), attempt, attempts);
+                        scheduler.schedule(() -> attemptAsync(request, attempt + 1, attempts, executor, scheduler, result),
+                                delayMs, TimeUnit.MILLISECONDS);
+                    }
+                }, executor)
+                .exceptionally(ex -> {
+                    result.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null
+                            ? ex.getCause() : ex);
+                    return null;
+                });
+    }
+
+    /**
+     * 判断失败是否可重试并给出等待时长；非限流错误或超过重试上限时直接抛出
+     *
+     * @param retryAfterMs 本次请求收到的 Retry-After，未收到 429 为 null
+     */
+    private long resolveRetryDelay(RuntimeException e, Long retryAfterMs, int attempt, int attempts) {
+        if (retryAfterMs == null && !isRateLimitError(e)) {
+            throw e;
+        }
+
+        if (attempt >= attempts) {
+            throw new VectorStoreException(
+                    ErrorCode.RATE_LIMIT_EXCEEDED,
+                    "Embedding 请求触发限流，已超过最大重试次数",
+                    e
+            );
+        }
+
+        if (retryAfterMs != null && retryAfterMs >= 0) {
+            if (retryAfterMs > rateLimitFeedback.getMaxRetryAfterMs()) {
+                throw new VectorStoreException(
+                        ErrorCode.RATE_LIMIT_EXCEEDED,
+                        "Embedding 服务端要求等待 " + retryAfterMs + "ms，超过允许的最长等待",
+                        e
+                );
+            }
+            log.warn("Embedding 请求触发限流，按服务端 Retry-After 重试: attempt={}/{}, delay={}ms",
+                    attempt, attempts, retryAfterMs);
+            return retryAfterMs;
+        }
+
+        long delayMs = computeBackoffDelay(attempt);
+        log.warn("Embedding 请求触发限流，准备重试: attempt={}/{}, delay={}ms",
+                attempt, attempts, delayMs);
+        return delayMs;
+    }
+
     @Override
     public float @NonNull [] embed(@NonNull Document document) {
         String content = document.getFormattedContent(MetadataMode.NONE);
@@ -0,0 +1,355 @@
+package com.nju.comment.backend.component.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 集群级 Embedding 速率限制器（Redis GCRA）。
+ * <p>
+ * 所有副本共享同一组 RPM/TPM 理论到达时间（TAT），预约在 Lua 脚本中原子完成，时间取 Redis 服务端时钟，
+ * 不受各实例时钟偏差影响。为避免每次请求一次 Redis 往返，实例一次预约一小块额度（若干请求 + 若干 token），
+ * 在租期内本地消耗；下次预约时把上一块未用完的额度在同一脚本中退还给集群。
+ * 块大小随用量自适应：上一块用完则翻倍（不超过 prefetch-requests），没用完则缩到实际用量，低负载实例每次只占一个请求的额度。
+ * <p>
+ * 实例内以公平锁排队，持锁者休眠到预约的放行时刻，等待者先到先得。
+ * Redis 不可用时退化为本地 GCRA 限流（额度按 fallback-replicas 均分），并在 fallback-retry-ms 后重试 Redis。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.ai.siliconflow.embedding.rate-limit.algorithm", havingValue = "redis")
+public class RedisEmbeddingRateLimiter implements EmbeddingRateLimiter {
+
+    private static final long DEFAULT_WINDOW_MS = 60_000L;
+
+    /**
+     * KEYS: RPM TAT, TPM TAT；ARGV: 窗口(ms), RPM, TPM, 预约请求数, 预约 token 数, 最长等待(ms), 键过期(ms),
+     * 退还请求数, 退还 token 数。
+     * 先把上一块租约未用完的额度从 TAT 中退还（不早于当前时刻），再预约新的一块；
+     * 返回需等待的毫秒数，超过最长等待时只退还不预约并返回 -1。
+     */
+    private static final DefaultRedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('time') "
+                    + "local now = tonumber(t[1]) * 1000 + tonumber(t[2]) / 1000 "
+                    + "local window = tonumber(ARGV[1]) "
+                    + "local requestCost = tonumber(ARGV[4]) * window / tonumber(ARGV[2]) "
+                    + "local tokenCost = tonumber(ARGV[5]) * window / tonumber(ARGV[3]) "
+                    + "local requestTat = tonumber(redis.call('get', KEYS[1]) or now) "
+                    + "local tokenTat = tonumber(redis.call('get', KEYS[2]) or now) "
+                    + "requestTat = math.max(now, requestTat - tonumber(ARGV[8]) * window / tonumber(ARGV[2])) "
+                    + "tokenTat = math.max(now, tokenTat - tonumber(ARGV[9]) * window / tonumber(ARGV[3])) "
+                    + "local start = math.max(now, requestTat - (window - requestCost), tokenTat - (window - tokenCost)) "
+                    + "local wait = start - now "
+                    + "if wait > tonumber(ARGV[6]) then "
+                    + "redis.call('set', KEYS[1], string.format('%.3f', requestTat), 'PX', ARGV[7]) "
+                    + "redis.call('set', KEYS[2], string.format('%.3f', tokenTat), 'PX', ARGV[7]) "
+                    + "return -1 end "
+                    + "redis.call('set', KEYS[1], string.format('%.3f', math.max(requestTat, start) + requestCost), 'PX', ARGV[7]) "
+                    + "redis.call('set', KEYS[2], string.format('%.3f', math.max(tokenTat, start) + tokenCost), 'PX', ARGV[7]) "
+                    + "return math.ceil(wait)",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final EmbeddingTokenEstimator tokenEstimator;
+    private final int rpmLimit;
+    private final int tpmLimit;
+    private final long windowMs;
+    private final List<String> keys;
+    private final int prefetchRequests;
+    private final int prefetchTokens;
+    private final long leaseNanos;
+    private final long fallbackRetryNanos;
+    private final int fallbackReplicas;
+    private final GcraEmbeddingRateLimiter fallback;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    // 以下状态由 lock 保护
+    private int leaseSize = 0;
+    private int leaseRequests = 0;
+    private long leaseTokens = 0;
+    private long leaseReadyAtNanos = 0;
+    private long leaseExpiresAtNanos = 0;
+
+    private volatile int serverRpmLimit = -1;
+    private volatile int serverTpmLimit = -1;
+    private volatile long fallbackUntilNanos = 0;
+    private volatile boolean fallbackActive = false;
+
+    public RedisEmbeddingRateLimiter(StringRedisTemplate redisTemplate,
+                                     EmbeddingTokenEstimator tokenEstimator,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.rpm:2000}") int rpmLimit,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.tpm:500000}") int tpmLimit,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.window-ms:60000}") long windowMs,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.redis.key-prefix:embedding:ratelimit:siliconflow}") String keyPrefix,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.redis.prefetch-requests:5}") int prefetchRequests,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.redis.prefetch-tokens:20000}") int prefetchTokens,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.redis.lease-ms:2000}") long leaseMs,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.redis.fallback-retry-ms:10000}") long fallbackRetryMs,
+                                     @Value("${app.ai.siliconflow.embedding.rate-limit.redis.fallback-replicas:1}") int fallbackReplicas) {
+        this.redisTemplate = redisTemplate;
+        this.tokenEstimator = tokenEstimator;
+        this.rpmLimit = Math.max(1, rpmLimit);
+        this.tpmLimit = Math.max(1, tpmLimit);
+        this.windowMs = windowMs > 0 ? windowMs : DEFAULT_WINDOW_MS;
+        this.keys = List.of(keyPrefix + ":rpm", keyPrefix + ":tpm");
+        this.prefetchRequests = Math.min(this.rpmLimit, Math.max(1, prefetchRequests));
+        this.prefetchTokens = Math.min(this.tpmLimit, Math.max(1, prefetchTokens));
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(100L, leaseMs));
+        this.fallbackRetryNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1000L, fallbackRetryMs));
+
+        this.fallbackReplicas = Math.max(1, fallbackReplicas);
+        this.fallback = GcraEmbeddingRateLimiter.withLimits(tokenEstimator,
+                Math.max(1, this.rpmLimit / this.fallbackReplicas),
+                Math.max(1, this.tpmLimit / this.fallbackReplicas),
+                this.windowMs);
+        log.info("Embedding 集群限流已启用: keyPrefix={}, rpm={}, tpm={}, prefetchRequests={}, prefetchTokens={}, leaseMs={}",
+                keyPrefix, this.rpmLimit, this.tpmLimit, this.prefetchRequests, this.prefetchTokens, leaseMs);
+    }
+
+    @Override
+    public int getRpmLimit() {
+        return serverRpmLimit > 0 ? Math.min(rpmLimit, serverRpmLimit) : rpmLimit;
+    }
+
+    @Override
+    public int getTpmLimit() {
+        return serverTpmLimit > 0 ? Math.min(tpmLimit, serverTpmLimit) : tpmLimit;
+    }
+
+    /**
+     * 服务端配额是账号级的，各副本看到的是同一个值，直接作为集群预算
+     */
+    @Override
+    public void applyServerLimits(int rpmLimit, int tpmLimit) {
+        this.serverRpmLimit = rpmLimit;
+        this.serverTpmLimit = tpmLimit;
+        fallback.applyServerLimits(
+                rpmLimit > 0 ? Math.max(1, rpmLimit / fallbackReplicas) : -1,
+                tpmLimit > 0 ? Math.max(1, tpmLimit / fallbackReplicas) : -1);
+    }
+
+    @Override
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public boolean isFallbackActive() {
+        return fallbackActive;
+    }
+
+    @Override
+    public void acquire(List<String> inputs) throws InterruptedException {
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
+        boolean acquired = false;
+        if (useRedis()) {
+            lock.lockInterruptibly();
+            try {
+                acquired = acquireFromLease(estimatedTokens);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!acquired) {
+            fallback.acquire(inputs);
+        }
+    }
+
+    /**
+     * 异步申请不经过本地租约（持锁者可能正在休眠），直接向 Redis 预约本次请求所需的额度
+     */
+    @Override
+    public CompletableFuture<Void> acquireAsync(List<String> inputs, ScheduledExecutorService scheduler) {
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
+        if (!useRedis()) {
+            return fallback.acquireAsync(inputs, scheduler);
+        }
+        long waitMs;
+        try {
+            waitMs = execute(1, estimatedTokens, Integer.MAX_VALUE);
+        } catch (DataAccessException e) {
+            enterFallback(e);
+            return fallback.acquireAsync(inputs, scheduler);
+        }
+        if (waitMs <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.schedule(() -> future.complete(null), waitMs, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    @Override
+    public boolean tryAcquire(List<String> inputs) {
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
+        if (!useRedis()) {
+            return fallback.tryAcquire(inputs);
+        }
+        // 锁被占用说明已有等待者，非阻塞申请不插队
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            long now = System.nanoTime();
+            if (leaseCovers(estimatedTokens, now)) {
+                if (leaseReadyAtNanos > now) {
+                    return false;
+                }
+            } else {
+                long waitMs;
+                try {
+                    waitMs = reserve(estimatedTokens, 0L);
+                } catch (DataAccessException e) {
+                    enterFallback(e);
+                    return fallback.tryAcquire(inputs);
+                }
+                if (waitMs != 0) {
+                    return false;
+                }
+            }
+            consume(estimatedTokens);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 持锁调用：租约不足时向 Redis 预约，休眠到放行时刻后扣减额度
+     *
+     * @return Redis 不可用时返回 false，由调用方走本地限流
+     */
+    private boolean acquireFromLease(int estimatedTokens) throws InterruptedException {
+        if (!leaseCovers(estimatedTokens, System.nanoTime())) {
+            long waitMs;
+            try {
+                waitMs = reserve(estimatedTokens, Long.MAX_VALUE);
+            } catch (DataAccessException e) {
+                enterFallback(e);
+                return false;
+            }
+            if (waitMs < 0) {
+                return false;
+            }
+            if (waitMs > 0) {
+                log.debug("Embedding 集群限流等待: wait={}ms, estimatedTokens={}, rpmLimit={}, tpmLimit={}",
+                        waitMs, estimatedTokens, getRpmLimit(), getTpmLimit());
+            }
+        }
+        long remainingNanos = leaseReadyAtNanos - System.nanoTime();
+        if (remainingNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(remainingNanos);
+        }
+        consume(estimatedTokens);
+        return true;
+    }
+
+    /**
+     * 向 Redis 预约一块额度并退还旧租约的剩余额度；无论预约是否成功旧租约都已失效
+     *
+     * @return 需等待的毫秒数；超过 maxWaitMs 时返回 -1 且不预约
+     */
+    private long reserve(int estimatedTokens, long maxWaitMs) {
+        int requests = Math.min(nextLeaseSize(), getRpmLimit());
+        long scaledTokens = (long) prefetchTokens * requests / prefetchRequests;
+        int tokens = (int) Math.min(getTpmLimit(), Math.max(scaledTokens, estimatedTokens));
+        int refundRequests = Math.max(0, leaseRequests);
+        long refundTokens = Math.max(0L, leaseTokens);
+        long waitMs = execute(requests, tokens, maxWaitMs, refundRequests, refundTokens);
+        leaseRequests = 0;
+        leaseTokens = 0;
+        if (waitMs < 0) {
+            return -1L;
+        }
+        long readyAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        leaseSize = requests;
+        leaseRequests = requests;
+        leaseTokens = tokens;
+        leaseReadyAtNanos = readyAt;
+        leaseExpiresAtNanos = readyAt + leaseNanos;
+        return waitMs;
+    }
+
+    /**
+     * 上一块用完则翻倍，没用完则缩到实际用量；首次预约按 prefetch-requests
+     */
+    private int nextLeaseSize() {
+        if (leaseSize == 0) {
+            return prefetchRequests;
+        }
+        if (leaseRequests <= 0) {
+            return Math.min(prefetchRequests, leaseSize * 2);
+        }
+        return Math.max(1, leaseSize - leaseRequests);
+    }
+
+    private long execute(int requests, int tokens, long maxWaitMs) {
+        return execute(requests, tokens, maxWaitMs, 0, 0L);
+    }
+
+    /**
+     * 执行预约脚本（先退还 refund 额度），返回需等待的毫秒数；超过 maxWaitMs 时返回 -1 且不预约
+     */
+    private long execute(int requests, int tokens, long maxWaitMs, int refundRequests, long refundTokens) {
+        Long waitMs = redisTemplate.execute(RESERVE_SCRIPT, keys,
+                String.valueOf(windowMs),
+                String.valueOf(getRpmLimit()),
+                String.valueOf(getTpmLimit()),
+                String.valueOf(requests),
+                String.valueOf(tokens),
+                String.valueOf(Math.min(maxWaitMs, Integer.MAX_VALUE)),
+                String.valueOf(windowMs * 2),
+                String.valueOf(refundRequests),
+                String.valueOf(refundTokens));
+        if (waitMs == null || waitMs < 0) {
+            return -1L;
+        }
+        if (fallbackActive) {
+            fallbackActive = false;
+            log.info("Redis 已恢复，Embedding 限流切回集群模式");
+        }
+        return waitMs;
+    }
+
+    private boolean leaseCovers(int estimatedTokens, long now) {
+        return leaseRequests > 0 && leaseTokens >= estimatedTokens && now < leaseExpiresAtNanos;
+    }
+
+    private void consume(int estimatedTokens) {
+        leaseRequests--;
+        leaseTokens -= estimatedTokens;
+    }
+
+    private boolean useRedis() {
+        return !fallbackActive || System.nanoTime() - fallbackUntilNanos >= 0;
+    }
+
+    private void enterFallback(DataAccessException e) {
+        fallbackUntilNanos = System.nanoTime() + fallbackRetryNanos;
+        if (!fallbackActive) {
+            fallbackActive = true;
+            log.warn("Redis 不可用，Embedding 限流退化为本地模式: {}", e.getMessage());
+        }
+    }
+
+    private int sanitizeEstimatedTokens(int estimatedTokens) {
+        int safeEstimatedTokens = Math.max(1, estimatedTokens);
+        int safeTpmLimit = getTpmLimit();
+        if (safeEstimatedTokens > safeTpmLimit) {
+            log.warn("单次 embedding 估算 token({}) 超过 TPM 限制({})，已按 TPM 上限参与限流，请考虑减小批次大小",
+                    safeEstimatedTokens, safeTpmLimit);
+            return safeTpmLimit;
+        }
+        return safeEstimatedTokens;
+    }
+}
@@ -1,12 +1,17 @@
 package com.nju.comment.backend.component.embedding;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SiliconFlow Embedding 速率限制器（滑动窗口）。
@@ -14,10 +19,15 @@ import java.util.List;
  */
 @Slf4j
 @Component
-public class SiliconFlowEmbeddingRateLimiter {
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.ai.siliconflow.embedding.rate-limit.algorithm",
+        havingValue = "sliding-window", matchIfMissing = true)
+public class SiliconFlowEmbeddingRateLimiter implements EmbeddingRateLimiter {
 
     private static final long DEFAULT_WINDOW_MS = 60_000L;
 
+    private final EmbeddingTokenEstimator tokenEstimator;
+
     private final Object monitor = new Object();
     private final Deque<WindowRecord> records = new ArrayDeque<>();
 
@@ -33,10 +43,35 @@ public class SiliconFlowEmbeddingRateLimiter {
     private long windowMs;
 
     /**
-     * 根据输入文本的近似 token 数申请额度，必要时阻塞等待。
+     * 服务端响应头报告的配额，低于本地配置时生效；-1 表示未知
      */
+    private volatile int serverRpmLimit = -1;
+    private volatile int serverTpmLimit = -1;
+
+    @Override
+    public int getRpmLimit() {
+        return effectiveLimit(rpmLimit, serverRpmLimit);
+    }
+
+    @Override
+    public int getTpmLimit() {
+        return effectiveLimit(tpmLimit, serverTpmLimit);
+    }
+
+    @Override
+    public void applyServerLimits(int rpmLimit, int tpmLimit) {
+        this.serverRpmLimit = rpmLimit;
+        this.serverTpmLimit = tpmLimit;
+    }
+
+    @Override
+    public long getWindowMs() {
+        return windowMs > 0 ? windowMs : DEFAULT_WINDOW_MS;
+    }
+
+    @Override
     public void acquire(List<String> inputs) throws InterruptedException {
-        int estimatedTokens = sanitizeEstimatedTokens(estimateTokens(inputs));
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
 
         while (true) {
             long waitMs;
@@ -52,32 +87,63 @@ public class SiliconFlowEmbeddingRateLimiter {
             }
 
             log.debug("Embedding 限流等待: wait={}ms, estimatedTokens={}, rpmLimit={}, tpmLimit={}",
-                    waitMs, estimatedTokens, rpmLimit, tpmLimit);
+                    waitMs, estimatedTokens, getRpmLimit(), getTpmLimit());
             Thread.sleep(waitMs);
         }
     }
 
+    @Override
+    public CompletableFuture<Void> acquireAsync(List<String> inputs, ScheduledExecutorService scheduler) {
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        attemptAsync(estimatedTokens, future, scheduler);
+        return future;
+    }
+
+    @Override
+    public boolean tryAcquire(List<String> inputs) {
+        int estimatedTokens = sanitizeEstimatedTokens(tokenEstimator.estimate(inputs));
+        return tryRecord(estimatedTokens, System.currentTimeMillis()) <= 0;
+    }
+
     /**
-     * 对文本进行保守 token 估算：按 Unicode code point 近似。
+     * 额度不足时按计算出的等待时间重新调度，与阻塞版本的 sleep 循环等价
      */
-    int estimateTokens(List<String> inputs) {
-        if (inputs == null || inputs.isEmpty()) {
-            return 1;
+    private void attemptAsync(int estimatedTokens, CompletableFuture<Void> future, ScheduledExecutorService scheduler) {
+        if (future.isDone()) {
+            return;
+        }
+        long waitMs = tryRecord(estimatedTokens, System.currentTimeMillis());
+        if (waitMs <= 0) {
+            future.complete(null);
+            return;
         }
+        scheduler.schedule(() -> attemptAsync(estimatedTokens, future, scheduler), waitMs, TimeUnit.MILLISECONDS);
+    }
 
-        long total = 0;
-        for (String input : inputs) {
-            if (input == null || input.isBlank()) {
-                continue;
+    /**
+     * 额度足够时记录本次请求并返回 0，否则返回需等待的毫秒数
+     */
+    private long tryRecord(int estimatedTokens, long now) {
+        synchronized (monitor) {
+            evictExpired(now);
+            long waitMs = computeWaitMs(now, estimatedTokens);
+            if (waitMs > 0) {
+                return waitMs;
             }
-            total += input.codePointCount(0, input.length());
+            records.addLast(new WindowRecord(now, estimatedTokens));
+            rollingTokens += estimatedTokens;
+            return 0L;
         }
+    }
 
-        return (int) Math.max(1L, total);
+    private static int effectiveLimit(int configured, int server) {
+        int safeConfigured = Math.max(1, configured);
+        return server > 0 ? Math.min(safeConfigured, server) : safeConfigured;
     }
 
     private int sanitizeEstimatedTokens(int estimatedTokens) {
-        int safeTpmLimit = Math.max(1, tpmLimit);
+        int safeTpmLimit = getTpmLimit();
         int safeEstimatedTokens = Math.max(1, estimatedTokens);
         if (safeEstimatedTokens > safeTpmLimit) {
             log.warn("单次 embedding 估算 token({}) 超过 TPM 限制({})，已按 TPM 上限参与限流，请考虑减小批次大小",
@@ -88,7 +154,7 @@ public class SiliconFlowEmbeddingRateLimiter {
     }
 
     private long computeWaitMs(long now, int estimatedTokens) {
-        int safeRpmLimit = Math.max(1, rpmLimit);
+        int safeRpmLimit = getRpmLimit();
         long safeWindowMs = windowMs > 0 ? windowMs : DEFAULT_WINDOW_MS;
 
         long rpmWait = 0;
@@ -100,7 +166,7 @@ public class SiliconFlowEmbeddingRateLimiter {
         }
 
         long tpmWait = 0;
-        long overflow = rollingTokens + estimatedTokens - Math.max(1, tpmLimit);
+        long overflow = rollingTokens + estimatedTokens - getTpmLimit();
         if (overflow > 0) {
             long released = 0;
             for (WindowRecord record : records) {
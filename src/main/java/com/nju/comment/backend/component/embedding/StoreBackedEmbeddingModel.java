@@ -0,0 +1,82 @@
+package com.nju.comment.backend.component.embedding;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EmbeddingModel 包装器：文档向量化前先查询 {@link PersistentEmbeddingStore}，
+ * 仅对未命中的文档调用下游模型，并将新结果写回存储。
+ * <p>
+ * 只有带 docId 的文档批量向量化（VectorStore.add 路径）会走存储；
+ * 检索查询等纯文本请求直接透传。
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class StoreBackedEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final PersistentEmbeddingStore embeddingStore;
+
+    @Override
+    public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float @NonNull [] embed(@NonNull Document document) {
+        float[] stored = embeddingStore.get(document.getId());
+        if (stored != null) {
+            return stored;
+        }
+        float[] embedding = delegate.embed(document);
+        embeddingStore.put(document.getId(), embedding);
+        return embedding;
+    }
+
+    @Override
+    public @NonNull List<float[]> embed(@NonNull List<Document> documents,
+                                        @NonNull EmbeddingOptions options,
+                                        @NonNull BatchingStrategy batchingStrategy) {
+        List<float[]> results = new ArrayList<>(documents.size());
+        List<Document> missing = new ArrayList<>();
+        List<Integer> missingPositions = new ArrayList<>();
+
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            float[] stored = embeddingStore.get(document.getId());
+            results.add(stored);
+            if (stored == null) {
+                missing.add(document);
+                missingPositions.add(i);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            log.debug("Embedding 全部命中持久化存储: size={}", documents.size());
+            return results;
+        }
+
+        List<float[]> computed = delegate.embed(missing, options, batchingStrategy);
+        for (int i = 0; i < missing.size(); i++) {
+            results.set(missingPositions.get(i), computed.get(i));
+        }
+        embeddingStore.putAll(missing.stream().map(Document::getId).toList(), computed);
+        log.debug("Embedding 持久化存储命中 {}/{}，其余已调用模型计算", documents.size() - missing.size(), documents.size());
+        return results;
+    }
+
+    @Override
+    public int dimensions() {
+        return embeddingStore.isEnabled() ? embeddingStore.getDimension() : delegate.dimensions();
+    }
+}
@@ -0,0 +1,282 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * SentencePiece Unigram 分词器（XLM-RoBERTa / bge-m3 词表），只用于统计 token 数。
+ * <p>
+ * 词表从 HuggingFace {@code tokenizer.json}（{@code model.type = Unigram}）加载。分词流程与
+ * XLM-R 一致：NFKC 规范化，按空白切词并加 {@code ▁} 前缀，每个词用 Viterbi 求得分最高的切分；
+ * 词表未覆盖的字符按一个 {@code <unk>} 计。结果额外计入 {@code <s>}、{@code </s>}。
+ * <p>
+ * 词片存放在开放寻址表中，以 64 位多项式哈希定位槽位，命中后再逐字符比对词片原文，因此哈希碰撞
+ * 只影响探测长度，不会把未登录子串误认为词片；Viterbi 内层循环增量计算子串哈希，不分配字符串。
+ * 实例不可变，可多线程共享。
+ */
+public class UnigramTokenizer {
+
+    private static final char WORD_PREFIX = '▁';
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final int SPECIAL_TOKENS = 2;
+    private static final float UNK_PENALTY = 10f;
+    private static final Set<String> CONTROL_PIECES = Set.of("<s>", "</s>", "<pad>", "<unk>", "<mask>");
+
+    private final long[] keys;
+    private final String[] pieces;
+    private final float[] scores;
+    private final boolean[] used;
+    private final int mask;
+    private final int maxPieceLength;
+    private final float unkScore;
+    private final int size;
+
+    private UnigramTokenizer(long[] keys, String[] pieces, float[] scores, boolean[] used, int maxPieceLength,
+                             float unkScore, int size) {
+        this.keys = keys;
+        this.pieces = pieces;
+        this.scores = scores;
+        this.used = used;
+        this.mask = keys.length - 1;
+        this.maxPieceLength = maxPieceLength;
+        this.unkScore = unkScore;
+        this.size = size;
+    }
+
+    /**
+     * 从 tokenizer.json 流加载，调用方负责关闭流（及解压）
+     */
+    public static UnigramTokenizer load(JsonFactory jsonFactory, InputStream tokenizerJson) throws IOException {
+        Builder builder = new Builder();
+        try (JsonParser parser = jsonFactory.createParser(tokenizerJson)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("tokenizer.json 格式错误：根节点不是对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("model".equals(field)) {
+                    readModel(parser, builder);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (builder.size == 0) {
+            throw new IOException("tokenizer.json 中未找到 Unigram 词表");
+        }
+        return builder.build();
+    }
+
+    public int vocabularySize() {
+        return size;
+    }
+
+    /**
+     * 统计文本编码后的 token 数（含首尾特殊 token），空文本返回 0
+     */
+    public int countTokens(String text) {
+        if (text == null || text.isBlank()) {
+            return 0;
+        }
+        String normalized = Normalizer.isNormalized(text, Normalizer.Form.NFKC)
+                ? text
+                : Normalizer.normalize(text, Normalizer.Form.NFKC);
+
+        char[] word = new char[64];
+        float[] best = new float[65];
+        int[] counts = new int[65];
+        int total = SPECIAL_TOKENS;
+        int length = normalized.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(normalized.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(normalized.charAt(i))) {
+                i++;
+            }
+            if (i == start) {
+                break;
+            }
+            int wordLength = i - start + 1;
+            if (word.length < wordLength) {
+                word = new char[Math.max(wordLength, word.length * 2)];
+                best = new float[word.length + 1];
+                counts = new int[word.length + 1];
+            }
+            word[0] = WORD_PREFIX;
+            normalized.getChars(start, i, word, 1);
+            total += viterbi(word, wordLength, best, counts);
+        }
+        return total;
+    }
+
+    private int viterbi(char[] word, int length, float[] best, int[] counts) {
+        Arrays.fill(best, 0, length + 1, Float.NEGATIVE_INFINITY);
+        best[0] = 0f;
+        counts[0] = 0;
+        for (int i = 0; i < length; i++) {
+            float base = best[i];
+            if (base == Float.NEGATIVE_INFINITY) {
+                continue;
+            }
+            // 未登录字符按一个 <unk> 计，步长为一个 code point
+            int unkEnd = Character.isHighSurrogate(word[i]) && i + 1 < length ? i + 2 : i + 1;
+            relax(best, counts, i, unkEnd, base + unkScore);
+
+            long hash = 0;
+            int limit = Math.min(length, i + maxPieceLength);
+            for (int j = i; j < limit; j++) {
+                hash = hash * HASH_MULTIPLIER + word[j];
+                int slot = find(hash, word, i, j + 1);
+                if (slot >= 0) {
+                    relax(best, counts, i, j + 1, base + scores[slot]);
+                }
+            }
+        }
+        return counts[length];
+    }
+
+    private static void relax(float[] best, int[] counts, int from, int to, float score) {
+        if (score > best[to]) {
+            best[to] = score;
+            counts[to] = counts[from] + 1;
+        }
+    }
+
+    private int find(long hash, char[] word, int from, int to) {
+        long key = mix(hash);
+        int slot = (int) key & mask;
+        while (used[slot]) {
+            if (keys[slot] == key && matches(pieces[slot], word, from, to)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean matches(String piece, char[] word, int from, int to) {
+        if (piece.length() != to - from) {
+            return false;
+        }
+        for (int k = 0; k < piece.length(); k++) {
+            if (piece.charAt(k) != word[from + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static void readModel(JsonParser parser, Builder builder) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("type".equals(field) && value == JsonToken.VALUE_STRING && !"Unigram".equals(parser.getText())) {
+                throw new IOException("仅支持 Unigram 分词模型，实际为 " + parser.getText());
+            }
+            if ("vocab".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_ARRAY) {
+                    parser.nextToken();
+                    String piece = parser.getText();
+                    parser.nextToken();
+                    float score = parser.getFloatValue();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                    }
+                    builder.add(piece, score);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static final class Builder {
+
+        private long[] keys = new long[1 << 16];
+        private String[] pieces = new String[1 << 16];
+        private float[] scores = new float[1 << 16];
+        private boolean[] used = new boolean[1 << 16];
+        private int size = 0;
+        private int maxPieceLength = 1;
+        private float minScore = 0f;
+
+        private void add(String piece, float score) {
+            if (piece == null || piece.isEmpty() || CONTROL_PIECES.contains(piece)) {
+                return;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                rehash(keys.length * 2);
+            }
+            long hash = 0;
+            for (int i = 0; i < piece.length(); i++) {
+                hash = hash * HASH_MULTIPLIER + piece.charAt(i);
+            }
+            if (insert(keys, pieces, scores, used, mix(hash), piece, score)) {
+                size++;
+            }
+            maxPieceLength = Math.max(maxPieceLength, piece.length());
+            minScore = Math.min(minScore, score);
+        }
+
+        private void rehash(int capacity) {
+            long[] newKeys = new long[capacity];
+            String[] newPieces = new String[capacity];
+            float[] newScores = new float[capacity];
+            boolean[] newUsed = new boolean[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (used[i]) {
+                    insert(newKeys, newPieces, newScores, newUsed, keys[i], pieces[i], scores[i]);
+                }
+            }
+            keys = newKeys;
+            pieces = newPieces;
+            scores = newScores;
+            used = newUsed;
+        }
+
+        private static boolean insert(long[] keys, String[] pieces, float[] scores, boolean[] used,
+                                      long key, String piece, float score) {
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (used[slot]) {
+                if (keys[slot] == key && pieces[slot].equals(piece)) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            pieces[slot] = piece;
+            scores[slot] = score;
+            return true;
+        }
+
+        private UnigramTokenizer build() {
+            return new UnigramTokenizer(keys, pieces, scores, used, maxPieceLength, minScore - UNK_PENALTY, size);
+        }
+    }
+}
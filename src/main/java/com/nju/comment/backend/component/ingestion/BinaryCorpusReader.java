@@ -0,0 +1,217 @@
+package com.nju.comment.backend.component.ingestion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+
+/**
+ * 紧凑二进制语料读取器，格式见 {@link BinaryCorpusWriter}。
+ * <p>
+ * 本地文件按窗口 mmap，记录直接在映射缓冲区上切片，跳过记录不产生任何拷贝；
+ * 非文件资源（如 jar 内 classpath 资源）退化为通道读入复用的堆缓冲区。
+ * 实例非线程安全。
+ */
+public class BinaryCorpusReader implements CorpusReader {
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final long MAP_WINDOW_BYTES = 64L * 1024 * 1024;
+    private static final int STREAM_BUFFER_BYTES = 1024 * 1024;
+
+    private final CorpusRecordParser parser;
+    private final FileChannel fileChannel;
+    private final ReadableByteChannel streamChannel;
+    private final long recordCount;
+
+    private ByteBuffer window;
+    private long windowOffset = 0;
+    private int recordStart = -1;
+    private byte[] scratch = new byte[16 * 1024];
+
+    /**
+     * 以 mmap 方式读取本地文件
+     */
+    public BinaryCorpusReader(Path file, CorpusRecordParser parser) throws IOException {
+        this.parser = parser;
+        this.fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        this.streamChannel = null;
+        this.window = ByteBuffer.allocate(0);
+        try {
+            this.recordCount = readHeader();
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 以 mmap 方式读取本地文件，从 offset 处的记录开始（offset 取自 {@link #position()}）
+     */
+    public BinaryCorpusReader(Path file, CorpusRecordParser parser, long offset) throws IOException {
+        this(file, parser);
+        if (offset < BinaryCorpusWriter.HEADER_BYTES) {
+            close();
+            throw new IOException("二进制语料记录偏移不合法: " + offset);
+        }
+        this.window = ByteBuffer.allocate(0);
+        this.windowOffset = offset;
+    }
+
+    /**
+     * 以流方式读取（无法 mmap 的资源）
+     */
+    public BinaryCorpusReader(InputStream in, CorpusRecordParser parser) throws IOException {
+        this.parser = parser;
+        this.fileChannel = null;
+        this.streamChannel = Channels.newChannel(in);
+        this.window = ByteBuffer.allocate(STREAM_BUFFER_BYTES).flip();
+        try {
+            this.recordCount = readHeader();
+        } catch (IOException e) {
+            streamChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 文件头中记录的总记录数
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * 下一条记录在文件中的字节偏移；流模式不支持定位，返回 -1
+     */
+    public long position() {
+        return fileChannel != null ? windowOffset + window.position() : -1L;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        recordStart = -1;
+        if (!ensure(Integer.BYTES)) {
+            return false;
+        }
+        int recordLength = window.getInt(window.position());
+        if (recordLength < BinaryCorpusWriter.DOC_ID_BYTES + BinaryCorpusWriter.FIELD_COUNT * Integer.BYTES) {
+            throw new IOException("二进制语料记录长度不合法: " + recordLength);
+        }
+        if (!ensure(Integer.BYTES + recordLength)) {
+            throw new IOException("二进制语料文件被截断");
+        }
+        recordStart = window.position() + Integer.BYTES;
+        window.position(recordStart + recordLength);
+        return true;
+    }
+
+    @Override
+    public CorpusRecord read() throws IOException {
+        if (recordStart < 0) {
+            throw new IllegalStateException("没有当前记录");
+        }
+        int pos = recordStart;
+        window.get(pos, ensureScratch(BinaryCorpusWriter.DOC_ID_BYTES), 0, BinaryCorpusWriter.DOC_ID_BYTES);
+        String docId = HEX.formatHex(scratch, 0, BinaryCorpusWriter.DOC_ID_BYTES);
+        pos += BinaryCorpusWriter.DOC_ID_BYTES;
+
+        String srcMethod = decodeField(pos);
+        pos += Integer.BYTES + window.getInt(pos);
+        String dstMethod = decodeField(pos);
+        pos += Integer.BYTES + window.getInt(pos);
+        String srcJavadoc = decodeField(pos);
+        pos += Integer.BYTES + window.getInt(pos);
+        String dstJavadoc = decodeField(pos);
+
+        return parser.toRecord(srcMethod, dstMethod, srcJavadoc, dstJavadoc, docId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+        if (streamChannel != null) {
+            streamChannel.close();
+        }
+    }
+
+    private long readHeader() throws IOException {
+        if (!ensure(BinaryCorpusWriter.HEADER_BYTES)) {
+            throw new IOException("二进制语料文件头不完整");
+        }
+        int magic = window.getInt();
+        int version = window.getInt();
+        long count = window.getLong();
+        if (magic != BinaryCorpusWriter.MAGIC) {
+            throw new IOException("不是二进制语料文件");
+        }
+        if (version != BinaryCorpusWriter.VERSION) {
+            throw new IOException("不支持的二进制语料版本: " + version);
+        }
+        return count;
+    }
+
+    private String decodeField(int pos) throws IOException {
+        int length = window.getInt(pos);
+        if (length < 0 || pos + Integer.BYTES + length > window.limit()) {
+            throw new IOException("二进制语料字段长度不合法: " + length);
+        }
+        if (length == 0) {
+            return "";
+        }
+        if (window.hasArray()) {
+            return new String(window.array(), window.arrayOffset() + pos + Integer.BYTES, length, StandardCharsets.UTF_8);
+        }
+        window.get(pos + Integer.BYTES, ensureScratch(length), 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private byte[] ensureScratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return scratch;
+    }
+
+    /**
+     * 保证当前位置起至少有 n 个字节可读；mmap 模式下重新映射窗口，流模式下压缩并补充缓冲区
+     */
+    private boolean ensure(int n) throws IOException {
+        if (window.remaining() >= n) {
+            return true;
+        }
+        if (fileChannel != null) {
+            long position = windowOffset + window.position();
+            long remaining = fileChannel.size() - position;
+            if (remaining < n) {
+                return false;
+            }
+            long length = Math.min(remaining, Math.max(MAP_WINDOW_BYTES, n));
+            window = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowOffset = position;
+            return true;
+        }
+
+        if (window.capacity() < n) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(n, window.capacity() * 2));
+            larger.put(window);
+            window = larger;
+        } else {
+            window.compact();
+        }
+        while (window.position() < n) {
+            if (streamChannel.read(window) < 0) {
+                break;
+            }
+        }
+        window.flip();
+        return window.remaining() >= n;
+    }
+}
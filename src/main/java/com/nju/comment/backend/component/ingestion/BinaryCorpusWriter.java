@@ -0,0 +1,87 @@
+package com.nju.comment.backend.component.ingestion;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+
+/**
+ * 紧凑二进制语料写入器（.ccr）。
+ * <p>
+ * 文件布局（大端序）：
+ * <pre>
+ * header: int magic | int version | long recordCount
+ * record: int recordLength | byte[16] docId | 4 × (int length | UTF-8 bytes)
+ * </pre>
+ * 字段顺序为 src_method、dst_method、src_javadoc、dst_javadoc；docId 预先计算，
+ * 读取时无需 JSON 解析与 SHA-256，跳过记录只需按 recordLength 移动位置。
+ */
+public class BinaryCorpusWriter implements Closeable {
+
+    static final int MAGIC = 0x43435231;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int DOC_ID_BYTES = 16;
+    static final int FIELD_COUNT = 4;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path target;
+    private final DataOutputStream out;
+    private long recordCount = 0;
+
+    public BinaryCorpusWriter(Path target) throws IOException {
+        this.target = target;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 256 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        // 记录数在 close 时回填
+        out.writeLong(0L);
+    }
+
+    public void write(CorpusRecord record) throws IOException {
+        byte[] docId = HEX.parseHex(record.docId());
+        if (docId.length != DOC_ID_BYTES) {
+            throw new IOException("docId 长度不合法: " + record.docId());
+        }
+        byte[] srcMethod = record.srcMethod().getBytes(StandardCharsets.UTF_8);
+        byte[] dstMethod = record.dstMethod().getBytes(StandardCharsets.UTF_8);
+        byte[] srcJavadoc = record.srcJavadoc().getBytes(StandardCharsets.UTF_8);
+        byte[] dstJavadoc = record.dstJavadoc().getBytes(StandardCharsets.UTF_8);
+
+        int recordLength = DOC_ID_BYTES + FIELD_COUNT * Integer.BYTES
+                + srcMethod.length + dstMethod.length + srcJavadoc.length + dstJavadoc.length;
+        out.writeInt(recordLength);
+        out.write(docId);
+        writeField(srcMethod);
+        writeField(dstMethod);
+        writeField(srcJavadoc);
+        writeField(dstJavadoc);
+        recordCount++;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            ByteBuffer count = ByteBuffer.allocate(Long.BYTES).putLong(0, recordCount);
+            channel.write(count, 8);
+        }
+    }
+
+    private void writeField(byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
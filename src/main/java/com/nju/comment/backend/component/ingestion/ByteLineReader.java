@@ -0,0 +1,113 @@
+package com.nju.comment.backend.component.ingestion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * 以字节为单位按行读取输入流，行内容保存在复用缓冲区中，避免逐行解码为 String。
+ * <p>
+ * 行分隔符为 {@code \n}，并去除行尾的 {@code \r}，与 BufferedReader#readLine 的行划分一致。
+ */
+public class ByteLineReader implements Closeable {
+
+    private final InputStream in;
+    private final byte[] readBuffer;
+    private int readPos = 0;
+    private int readLimit = 0;
+    private boolean eof = false;
+    private long filled = 0;
+
+    private byte[] line = new byte[8 * 1024];
+    private int lineLength = 0;
+
+    public ByteLineReader(InputStream in) {
+        this(in, 64 * 1024);
+    }
+
+    public ByteLineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.readBuffer = new byte[Math.max(1024, bufferSize)];
+    }
+
+    /**
+     * 读取下一行到内部缓冲区
+     *
+     * @return false 表示已到达流末尾
+     */
+    public boolean nextLine() throws IOException {
+        lineLength = 0;
+        boolean readAny = false;
+        while (true) {
+            if (readPos >= readLimit) {
+                if (eof || !fill()) {
+                    return readAny;
+                }
+            }
+            readAny = true;
+            int start = readPos;
+            int end = start;
+            while (end < readLimit && readBuffer[end] != '\n') {
+                end++;
+            }
+            append(start, end - start);
+            if (end < readLimit) {
+                readPos = end + 1;
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return true;
+            }
+            readPos = readLimit;
+        }
+    }
+
+    /**
+     * 当前行缓冲区，有效范围 [0, {@link #length()})，下一次 {@link #nextLine()} 前有效
+     */
+    public byte[] buffer() {
+        return line;
+    }
+
+    public int length() {
+        return lineLength;
+    }
+
+    /**
+     * 已消费的字节数，即下一行在输入流中的起始偏移
+     */
+    public long position() {
+        return filled - (readLimit - readPos);
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(readBuffer, 0, readBuffer.length);
+        if (n <= 0) {
+            eof = true;
+            readPos = 0;
+            readLimit = 0;
+            return false;
+        }
+        readPos = 0;
+        readLimit = n;
+        filled += n;
+        return true;
+    }
+
+    private void append(int start, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(readBuffer, start, line, lineLength, length);
+        lineLength += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,99 @@
+package com.nju.comment.backend.component.ingestion;
+
+/**
+ * 分段加锁的 long 开放寻址哈希集合，每个元素约 16 字节，用于千万级 docId 指纹去重。
+ * 0 作为空槽标记，元素 0 单独记录。
+ */
+public class ConcurrentLongHashSet {
+
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private volatile boolean containsZero = false;
+
+    public ConcurrentLongHashSet(long expectedSize) {
+        int perStripe = (int) Math.min(1 << 28, Math.max(16, expectedSize / STRIPES * 2));
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(Integer.highestOneBit(perStripe - 1) << 1);
+        }
+    }
+
+    /**
+     * @return true 表示元素此前不存在
+     */
+    public boolean add(long value) {
+        if (value == 0L) {
+            synchronized (this) {
+                boolean added = !containsZero;
+                containsZero = true;
+                return added;
+            }
+        }
+        long hash = mix(value);
+        Stripe stripe = stripes[(int) (hash >>> 58) & (STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.add(value, hash);
+        }
+    }
+
+    public long size() {
+        long size = containsZero ? 1 : 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    private static long mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static final class Stripe {
+
+        private long[] table;
+        private int size = 0;
+
+        private Stripe(int capacity) {
+            this.table = new long[capacity];
+        }
+
+        private boolean add(long value, long hash) {
+            if ((size + 1) * 4L > table.length * 3L) {
+                resize();
+            }
+            int mask = table.length - 1;
+            int index = (int) hash & mask;
+            while (true) {
+                long current = table[index];
+                if (current == 0L) {
+                    table[index] = value;
+                    size++;
+                    return true;
+                }
+                if (current == value) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        private void resize() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long value : old) {
+                if (value == 0L) {
+                    continue;
+                }
+                int index = (int) mix(value) & mask;
+                while (table[index] != 0L) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.nju.comment.backend.component.ingestion;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * 入库预演分析器：不调用 Embedding API，按与正式入库相同的过长/去重/打包规则扫描语料。
+ * <p>
+ * 单个读取线程按顺序读取（并解压）原始行并切成块，工作线程池（默认每核一个）并行解析与统计，
+ * 读取与解析之间以信号量限制在途块数，内存占用与语料大小无关。
+ * 二进制语料的记录解析本身很轻，由读取线程直接解析后再分发统计。
+ */
+public class CorpusDryRunAnalyzer {
+
+    private static final int CHUNK_MAX_LINES = 2048;
+    private static final int CHUNK_MAX_BYTES = 4 * 1024 * 1024;
+
+    private final EmbeddingTokenEstimator tokenEstimator;
+    private final int batchMaxItems;
+    private final int batchMaxTokens;
+    private final Predicate<String> alreadyEmbedded;
+    private final int threads;
+
+    private final ThreadLocal<CorpusRecordParser> parsers;
+
+    public CorpusDryRunAnalyzer(JsonFactory jsonFactory,
+                                EmbeddingTextFormat textFormat,
+                                EmbeddingTokenEstimator tokenEstimator,
+                                int batchMaxItems,
+                                int batchMaxTokens,
+                                Predicate<String> alreadyEmbedded,
+                                int threads) {
+        this.tokenEstimator = tokenEstimator;
+        this.batchMaxItems = Math.max(1, batchMaxItems);
+        this.batchMaxTokens = Math.max(1, batchMaxTokens);
+        this.alreadyEmbedded = alreadyEmbedded;
+        this.threads = Math.max(1, threads);
+        this.parsers = ThreadLocal.withInitial(() -> new CorpusRecordParser(jsonFactory, textFormat));
+    }
+
+    public CorpusDryRunStats analyze(List<CorpusSource> sources) throws IOException, InterruptedException {
+        // 来源行数可能未知（只读一遍），去重集合从小容量开始按需扩容
+        ConcurrentLongHashSet seenDocIds = new ConcurrentLongHashSet(0);
+        CorpusDryRunStats total = new CorpusDryRunStats();
+        Semaphore inFlight = new Semaphore(threads * 4);
+        List<Future<?>> futures = new ArrayList<>();
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "vectorstore-dryrun-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (CorpusSource source : sources) {
+                if (source.format().isText()) {
+                    produceLines(source, workers, inFlight, futures, seenDocIds, total);
+                } else {
+                    produceRecords(source, workers, inFlight, futures, seenDocIds, total);
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("语料预演失败", cause);
+        } finally {
+            workers.shutdownNow();
+        }
+        return total;
+    }
+
+    private void produceLines(CorpusSource source,
+                              ExecutorService workers,
+                              Semaphore inFlight,
+                              List<Future<?>> futures,
+                              ConcurrentLongHashSet seenDocIds,
+                              CorpusDryRunStats total) throws IOException, InterruptedException {
+        try (ByteLineReader reader = source.openLines()) {
+            long remaining = source.lineCount();
+            LineChunk chunk = new LineChunk();
+            while (remaining > 0 && reader.nextLine()) {
+                remaining--;
+                chunk.add(reader.buffer(), reader.length());
+                if (chunk.count >= CHUNK_MAX_LINES || chunk.size >= CHUNK_MAX_BYTES) {
+                    submit(chunk, workers, inFlight, futures, seenDocIds, total);
+                    chunk = new LineChunk();
+                }
+            }
+            if (chunk.count > 0) {
+                submit(chunk, workers, inFlight, futures, seenDocIds, total);
+            }
+        }
+    }
+
+    private void produceRecords(CorpusSource source,
+                                ExecutorService workers,
+                                Semaphore inFlight,
+                                List<Future<?>> futures,
+                                ConcurrentLongHashSet seenDocIds,
+                                CorpusDryRunStats total) throws IOException, InterruptedException {
+        try (CorpusReader reader = source.open(parsers.get())) {
+            List<CorpusRecord> chunk = new ArrayList<>(CHUNK_MAX_LINES);
+            while (reader.next()) {
+                chunk.add(reader.read());
+                if (chunk.size() >= CHUNK_MAX_LINES) {
+                    submitRecords(chunk, workers, inFlight, futures, seenDocIds, total);
+                    chunk = new ArrayList<>(CHUNK_MAX_LINES);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submitRecords(chunk, workers, inFlight, futures, seenDocIds, total);
+            }
+        }
+    }
+
+    private void submit(LineChunk chunk,
+                        ExecutorService workers,
+                        Semaphore inFlight,
+                        List<Future<?>> futures,
+                        ConcurrentLongHashSet seenDocIds,
+                        CorpusDryRunStats total) throws InterruptedException {
+        inFlight.acquire();
+        futures.add(workers.submit(() -> {
+            try {
+                CorpusDryRunStats local = new CorpusDryRunStats();
+                BatchSimulator simulator = new BatchSimulator();
+                CorpusRecordParser parser = parsers.get();
+                int offset = 0;
+                for (int i = 0; i < chunk.count; i++) {
+                    int end = chunk.ends[i];
+                    local.recordLine();
+                    CorpusRecord record;
+                    try {
+                        record = parser.parse(chunk.data, offset, end - offset);
+                    } catch (IOException | RuntimeException e) {
+                        local.recordParseError();
+                        offset = end;
+                        continue;
+                    }
+                    offset = end;
+                    analyzeRecord(record, local, simulator, seenDocIds);
+                }
+                local.recordRequests(simulator.finish());
+                total.merge(local);
+            } finally {
+                inFlight.release();
+            }
+        }));
+    }
+
+    private void submitRecords(List<CorpusRecord> records,
+                               ExecutorService workers,
+                               Semaphore inFlight,
+                               List<Future<?>> futures,
+                               ConcurrentLongHashSet seenDocIds,
+                               CorpusDryRunStats total) throws InterruptedException {
+        inFlight.acquire();
+        futures.add(workers.submit(() -> {
+            try {
+                CorpusDryRunStats local = new CorpusDryRunStats();
+                BatchSimulator simulator = new BatchSimulator();
+                for (CorpusRecord record : records) {
+                    local.recordLine();
+                    analyzeRecord(record, local, simulator, seenDocIds);
+                }
+                local.recordRequests(simulator.finish());
+                total.merge(local);
+            } finally {
+                inFlight.release();
+            }
+        }));
+    }
+
+    /**
+     * 与 VectorStoreInitializer 相同的判定顺序：先过长，再按 docId 去重
+     */
+    private void analyzeRecord(CorpusRecord record,
+                               CorpusDryRunStats local,
+                               BatchSimulator simulator,
+                               ConcurrentLongHashSet seenDocIds) {
+        String vectorText = record.vectorText();
+        int tokens = tokenEstimator.estimate(vectorText);
+        int chars = vectorText.codePointCount(0, vectorText.length());
+        local.recordSize(tokens, chars);
+        if (tokenEstimator.exceedsInputLimit(tokens, chars) || tokens > batchMaxTokens) {
+            local.recordOverlong();
+            return;
+        }
+
+        // docId 为 SHA-256 前缀，取前 64 位作为指纹，千万级数据下碰撞概率可忽略
+        long fingerprint = HexFormat.fromHexDigitsToLong(record.docId(), 0, 16);
+        if (!seenDocIds.add(fingerprint)) {
+            local.recordDuplicate();
+            return;
+        }
+
+        boolean stored = alreadyEmbedded.test(record.docId());
+        local.recordUnique(stored, tokens);
+        if (!stored) {
+            simulator.add(tokens);
+        }
+    }
+
+    /**
+     * 块内按 EmbeddingBatchPacker 的规则模拟打包；块边界额外封批，请求数为略偏大的估计
+     */
+    private final class BatchSimulator {
+
+        private int items = 0;
+        private long tokens = 0;
+        private long requests = 0;
+
+        private void add(int documentTokens) {
+            if (items > 0 && (items >= batchMaxItems || tokens + documentTokens > batchMaxTokens)) {
+                requests++;
+                items = 0;
+                tokens = 0;
+            }
+            items++;
+            tokens += documentTokens;
+        }
+
+        private long finish() {
+            return items > 0 ? requests + 1 : requests;
+        }
+    }
+
+    private static final class LineChunk {
+
+        private byte[] data = new byte[64 * 1024];
+        private int[] ends = new int[256];
+        private int count = 0;
+        private int size = 0;
+
+        private void add(byte[] line, int length) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            }
+            System.arraycopy(line, 0, data, size, length);
+            size += length;
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+            ends[count++] = size;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.nju.comment.backend.component.ingestion;
+
+import lombok.Getter;
+
+/**
+ * 入库预演统计。工作线程各自累计一个块的统计，再合并到全局实例。
+ * <p>
+ * 直方图按 2 的幂分桶：{@code < 64, < 128, ..., < 32768, >= 32768}。
+ */
+@Getter
+public class CorpusDryRunStats {
+
+    private static final int FIRST_BOUND_SHIFT = 6;
+    public static final int BUCKET_COUNT = 11;
+
+    private long lines;
+    private long parseErrors;
+    private long overlong;
+    private long duplicates;
+    private long uniqueDocs;
+    /**
+     * 本地 Embedding 存储中已有向量、无需调用 API 的文档数
+     */
+    private long storedDocs;
+    private long tokensToEmbed;
+    /**
+     * 按批次打包规则模拟出的 Embedding 请求数
+     */
+    private long estimatedRequests;
+    private long totalTokens;
+    private long totalChars;
+    private long maxTokens;
+    private long maxChars;
+    private final long[] tokenHistogram = new long[BUCKET_COUNT];
+    private final long[] charHistogram = new long[BUCKET_COUNT];
+
+    /**
+     * 第 i 个桶的上界（不含），最后一个桶返回 -1 表示无上界
+     */
+    public static long bucketUpperBound(int index) {
+        return index >= BUCKET_COUNT - 1 ? -1 : 1L << (FIRST_BOUND_SHIFT + index);
+    }
+
+    void recordLine() {
+        lines++;
+    }
+
+    void recordParseError() {
+        parseErrors++;
+    }
+
+    void recordSize(int tokens, int chars) {
+        totalTokens += tokens;
+        totalChars += chars;
+        maxTokens = Math.max(maxTokens, tokens);
+        maxChars = Math.max(maxChars, chars);
+        tokenHistogram[bucketOf(tokens)]++;
+        charHistogram[bucketOf(chars)]++;
+    }
+
+    void recordOverlong() {
+        overlong++;
+    }
+
+    void recordDuplicate() {
+        duplicates++;
+    }
+
+    void recordUnique(boolean stored, int tokens) {
+        uniqueDocs++;
+        if (stored) {
+            storedDocs++;
+        } else {
+            tokensToEmbed += tokens;
+        }
+    }
+
+    void recordRequests(long requests) {
+        estimatedRequests += requests;
+    }
+
+    synchronized void merge(CorpusDryRunStats other) {
+        lines += other.lines;
+        parseErrors += other.parseErrors;
+        overlong += other.overlong;
+        duplicates += other.duplicates;
+        uniqueDocs += other.uniqueDocs;
+        storedDocs += other.storedDocs;
+        tokensToEmbed += other.tokensToEmbed;
+        estimatedRequests += other.estimatedRequests;
+        totalTokens += other.totalTokens;
+        totalChars += other.totalChars;
+        maxTokens = Math.max(maxTokens, other.maxTokens);
+        maxChars = Math.max(maxChars, other.maxChars);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            tokenHistogram[i] += other.tokenHistogram[i];
+            charHistogram[i] += other.charHistogram[i];
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < (1L << FIRST_BOUND_SHIFT)) {
+            return 0;
+        }
+        int bit = 63 - Long.numberOfLeadingZeros(value);
+        return Math.min(BUCKET_COUNT - 1, bit - FIRST_BOUND_SHIFT + 1);
+    }
+}
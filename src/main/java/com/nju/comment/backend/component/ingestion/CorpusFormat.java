@@ -0,0 +1,66 @@
+package com.nju.comment.backend.component.ingestion;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 入库语料文件格式，按文件扩展名识别
+ */
+public enum CorpusFormat {
+
+    JSONL(".jsonl"),
+    JSONL_GZIP(".jsonl.gz"),
+    JSONL_ZSTD(".jsonl.zst"),
+    /**
+     * 紧凑二进制记录格式，见 {@link BinaryCorpusWriter}
+     */
+    BINARY(".ccr");
+
+    private static final int DECOMPRESS_BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+
+    CorpusFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public boolean isText() {
+        return this != BINARY;
+    }
+
+    /**
+     * 根据文件名识别格式，不支持的文件返回 null
+     */
+    public static CorpusFormat fromFileName(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        String normalized = fileName.toLowerCase(Locale.ROOT);
+        for (CorpusFormat format : values()) {
+            if (normalized.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 为文本格式包装解压流
+     */
+    InputStream decode(InputStream raw) throws IOException {
+        return switch (this) {
+            case JSONL -> raw;
+            case JSONL_GZIP -> new GZIPInputStream(raw, DECOMPRESS_BUFFER_SIZE);
+            case JSONL_ZSTD -> new ZstdInputStream(raw);
+            case BINARY -> throw new IllegalStateException("二进制语料不是文本格式");
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package com.nju.comment.backend.component.ingestion;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 语料记录游标。{@link #next()} 只移动到下一条记录而不解析，
+ * 断点续跑与分片定位时跳过记录的成本仅为 I/O。
+ */
+public interface CorpusReader extends Closeable {
+
+    /**
+     * 移动到下一条记录
+     *
+     * @return false 表示已读完
+     */
+    boolean next() throws IOException;
+
+    /**
+     * 解析当前记录，下一次 {@link #next()} 前有效
+     */
+    CorpusRecord read() throws IOException;
+}
@@ -0,0 +1,16 @@
+package com.nju.comment.backend.component.ingestion;
+
+/**
+ * 语料中的一条注释演化样本
+ *
+ * @param vectorText 用于向量化的文本：完整格式为规范 JSON {"src_method":..,"dst_method":..,"src_javadoc":..}，
+ *                   差异格式见 {@link MethodDiffText}
+ * @param docId      vectorText 的 SHA-256 前 32 位十六进制
+ */
+public record CorpusRecord(String srcMethod,
+                           String dstMethod,
+                           String srcJavadoc,
+                           String dstJavadoc,
+                           String vectorText,
+                           String docId) {
+}
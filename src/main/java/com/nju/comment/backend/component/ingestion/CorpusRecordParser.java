@@ -0,0 +1,175 @@
+package com.nju.comment.backend.component.ingestion;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 基于 Jackson 流式 {@link JsonParser} 的语料行解析器。
+ * <p>
+ * 直接从行字节中拉取 src_method / dst_method / src_javadoc / dst_javadoc 四个字段，
+ * 不构建 JsonNode 树；规范向量文本由复用的 StringBuilder 拼接（转义规则与 ObjectMapper 一致），
+ * docId 由复用的 MessageDigest 计算。实例非线程安全，每个入库线程持有一个。
+ * <p>
+ * {@link EmbeddingTextFormat#DIFF} 下向量文本改为 {@link MethodDiffText}，docId 随之按差异文本计算，
+ * 避免与完整格式的 collection 共用持久化向量。
+ */
+public class CorpusRecordParser {
+
+    private static final String SRC_METHOD = "src_method";
+    private static final String DST_METHOD = "dst_method";
+    private static final String SRC_JAVADOC = "src_javadoc";
+    private static final String DST_JAVADOC = "dst_javadoc";
+
+    private static final int DOC_ID_BYTES = 16;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final JsonFactory jsonFactory;
+    private final EmbeddingTextFormat textFormat;
+    private final JsonStringEncoder stringEncoder = JsonStringEncoder.getInstance();
+    private final StringBuilder textBuilder = new StringBuilder(4096);
+    private final CharsetEncoder utf8Encoder = StandardCharsets.UTF_8.newEncoder();
+    private final MessageDigest digest;
+    private ByteBuffer utf8Buffer = ByteBuffer.allocate(16 * 1024);
+
+    public CorpusRecordParser(JsonFactory jsonFactory, EmbeddingTextFormat textFormat) {
+        this.jsonFactory = jsonFactory;
+        this.textFormat = textFormat;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm is unavailable", e);
+        }
+    }
+
+    public CorpusRecordParser(JsonFactory jsonFactory) {
+        this(jsonFactory, EmbeddingTextFormat.FULL);
+    }
+
+    public CorpusRecordParser() {
+        this(new JsonFactory());
+    }
+
+    public EmbeddingTextFormat getTextFormat() {
+        return textFormat;
+    }
+
+    public CorpusRecord parse(byte[] buffer, int offset, int length) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(buffer, offset, length)) {
+            return parse(parser);
+        }
+    }
+
+    public CorpusRecord parse(String line) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            return parse(parser);
+        }
+    }
+
+    /**
+     * 构建规范向量文本，格式与 ObjectMapper 序列化 {src_method, dst_method, src_javadoc} 完全一致。
+     * 返回的 StringBuilder 为内部复用对象，下一次调用前有效。
+     */
+    public StringBuilder buildVectorText(String srcMethod, String dstMethod, String srcJavadoc) {
+        StringBuilder sb = textBuilder;
+        sb.setLength(0);
+        sb.append("{\"").append(SRC_METHOD).append("\":\"");
+        stringEncoder.quoteAsString(srcMethod, sb);
+        sb.append("\",\"").append(DST_METHOD).append("\":\"");
+        stringEncoder.quoteAsString(dstMethod, sb);
+        sb.append("\",\"").append(SRC_JAVADOC).append("\":\"");
+        stringEncoder.quoteAsString(srcJavadoc, sb);
+        sb.append("\"}");
+        return sb;
+    }
+
+    /**
+     * 计算文本 UTF-8 字节的 SHA-256，取前 16 字节的十六进制作为 docId
+     */
+    public String docIdOf(CharSequence text) {
+        ByteBuffer bytes = encodeUtf8(text);
+        digest.reset();
+        digest.update(bytes.array(), 0, bytes.limit());
+        byte[] hash = digest.digest();
+        return HEX.formatHex(hash, 0, DOC_ID_BYTES);
+    }
+
+    /**
+     * 按当前格式组装记录
+     *
+     * @param fullDocId 已预先计算的完整格式 docId（二进制语料），没有时传 null
+     */
+    public CorpusRecord toRecord(String srcMethod, String dstMethod, String srcJavadoc, String dstJavadoc, String fullDocId) {
+        if (textFormat == EmbeddingTextFormat.DIFF) {
+            String diffText = MethodDiffText.render(srcMethod, dstMethod, srcJavadoc);
+            return new CorpusRecord(srcMethod, dstMethod, srcJavadoc, dstJavadoc, diffText, docIdOf(diffText));
+        }
+        StringBuilder vectorText = buildVectorText(srcMethod, dstMethod, srcJavadoc);
+        String docId = fullDocId != null ? fullDocId : docIdOf(vectorText);
+        return new CorpusRecord(srcMethod, dstMethod, srcJavadoc, dstJavadoc, vectorText.toString(), docId);
+    }
+
+    private CorpusRecord parse(JsonParser parser) throws IOException {
+        String srcMethod = "";
+        String dstMethod = "";
+        String srcJavadoc = "";
+        String dstJavadoc = "";
+
+        if (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                String text;
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    text = "";
+                } else if (value == null || value == JsonToken.VALUE_NULL) {
+                    text = "";
+                } else {
+                    text = parser.getText();
+                }
+
+                switch (field) {
+                    case SRC_METHOD -> srcMethod = text;
+                    case DST_METHOD -> dstMethod = text;
+                    case SRC_JAVADOC -> srcJavadoc = text;
+                    case DST_JAVADOC -> dstJavadoc = text;
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        return toRecord(srcMethod, dstMethod, srcJavadoc, dstJavadoc, null);
+    }
+
+    private ByteBuffer encodeUtf8(CharSequence text) {
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, (long) text.length() * 3);
+        if (utf8Buffer.capacity() < maxBytes) {
+            utf8Buffer = ByteBuffer.allocate(Math.max(maxBytes, utf8Buffer.capacity() * 2));
+        }
+        ByteBuffer out = utf8Buffer;
+        out.clear();
+        utf8Encoder.reset();
+        CoderResult result = utf8Encoder.encode(CharBuffer.wrap(text), out, true);
+        if (result.isError()) {
+            // 非法代理对等情况退回 String.getBytes 的替换语义，与原实现保持一致
+            byte[] fallback = text.toString().getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.wrap(fallback);
+        }
+        utf8Encoder.flush(out);
+        out.flip();
+        return out;
+    }
+}
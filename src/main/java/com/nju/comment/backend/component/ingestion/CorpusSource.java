@@ -0,0 +1,157 @@
+package com.nju.comment.backend.component.ingestion;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 一个入库单元：语料文件中 [startLine, endLine) 的记录区间。
+ * 未分片时区间覆盖整个文件，断点 key 与原先的文件名保持一致；行数未知时 endLine 为 {@link Long#MAX_VALUE}，读到文件末尾。
+ * <p>
+ * 切分时记下的 startLine 字节偏移可用时（未压缩 JSONL、本地二进制文件）直接定位，
+ * 否则（gzip / zstd）从文件头逐行跳过。
+ *
+ * @param name        文件名
+ * @param startOffset startLine 在文件中的字节偏移，未知为 -1
+ * @param sharded     是否为大文件按行切出的分片
+ */
+public record CorpusSource(Resource resource,
+                           String name,
+                           CorpusFormat format,
+                           long startLine,
+                           long endLine,
+                           long startOffset,
+                           boolean sharded) {
+
+    public long lineCount() {
+        return Math.max(0, endLine - startLine);
+    }
+
+    /**
+     * 断点文件中的 key，分片以行区间区分
+     */
+    public String progressKey() {
+        return sharded ? name + "#" + startLine + "-" + endLine : name;
+    }
+
+    /**
+     * 打开该区间的读取器：已定位到 startLine，读到 endLine 为止
+     */
+    public CorpusReader open(CorpusRecordParser parser) throws IOException {
+        if (seekable()) {
+            if (format == CorpusFormat.BINARY) {
+                return new RangeReader(new BinaryCorpusReader(resource.getFile().toPath(), parser, startOffset), lineCount());
+            }
+            return new RangeReader(new JsonlCorpusReader(openAtOffset(), parser), lineCount());
+        }
+        CorpusReader reader = openRaw(resource, format, parser);
+        try {
+            for (long i = 0; i < startLine; i++) {
+                if (!reader.next()) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return new RangeReader(reader, lineCount());
+    }
+
+    /**
+     * 文本格式按行读取原始字节，已定位到 startLine；调用方按 {@link #lineCount()} 控制读取行数
+     */
+    public ByteLineReader openLines() throws IOException {
+        if (!format.isText()) {
+            throw new IllegalStateException("二进制语料不支持按行读取: " + name);
+        }
+        if (seekable()) {
+            return new ByteLineReader(openAtOffset());
+        }
+        InputStream raw = resource.getInputStream();
+        ByteLineReader reader;
+        try {
+            reader = new ByteLineReader(format.decode(raw));
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+        try {
+            for (long i = 0; i < startLine; i++) {
+                if (!reader.nextLine()) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    private boolean seekable() {
+        return startLine > 0 && startOffset >= 0
+                && (format == CorpusFormat.JSONL || (format == CorpusFormat.BINARY && resource.isFile()));
+    }
+
+    /**
+     * 未压缩 JSONL 跳到 startOffset（文件流的 skip 直接移动读取位置，不读取跳过的内容）
+     */
+    private InputStream openAtOffset() throws IOException {
+        InputStream raw = resource.getInputStream();
+        try {
+            raw.skipNBytes(startOffset);
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+        return raw;
+    }
+
+    static CorpusReader openRaw(Resource resource, CorpusFormat format, CorpusRecordParser parser) throws IOException {
+        if (format == CorpusFormat.BINARY) {
+            if (resource.isFile()) {
+                return new BinaryCorpusReader(resource.getFile().toPath(), parser);
+            }
+            return new BinaryCorpusReader(resource.getInputStream(), parser);
+        }
+        InputStream raw = resource.getInputStream();
+        try {
+            return new JsonlCorpusReader(format.decode(raw), parser);
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    private static final class RangeReader implements CorpusReader {
+
+        private final CorpusReader delegate;
+        private long remaining;
+
+        private RangeReader(CorpusReader delegate, long limit) {
+            this.delegate = delegate;
+            this.remaining = limit;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (remaining <= 0) {
+                return false;
+            }
+            remaining--;
+            return delegate.next();
+        }
+
+        @Override
+        public CorpusRecord read() throws IOException {
+            return delegate.read();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.nju.comment.backend.component.ingestion;
+
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.VectorStoreException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 解析入库语料位置并切分为入库单元。
+ * <p>
+ * 语料位置支持 classpath 与文件系统模式（如 {@code file:/data/corpus/**}），
+ * 可识别 .jsonl / .jsonl.gz / .jsonl.zst / .ccr。超过 {@code shard-lines} 行的文件按行区间切分，
+ * 配合 {@code shard-count} / {@code shard-index} 由多个实例各取一部分分片。
+ * 统计行数的同一遍扫描记下各分片起点的字节偏移，读取分片时直接定位；文件未变化时不重复扫描。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CorpusSourceResolver {
+
+    private final ResourcePatternResolver resourcePatternResolver;
+
+    private final Map<String, CorpusIndex> indexCache = new ConcurrentHashMap<>();
+
+    @Value("${app.vectorstore.corpus.locations:classpath*:/docs/**/*.jsonl}")
+    private String locations;
+
+    @Value("${app.vectorstore.corpus.shard-lines:0}")
+    private long shardLines;
+
+    @Value("${app.vectorstore.corpus.shard-count:1}")
+    private int shardCount;
+
+    @Value("${app.vectorstore.corpus.shard-index:0}")
+    private int shardIndex;
+
+    public String getLocations() {
+        return locations;
+    }
+
+    /**
+     * 解析全部语料并返回本实例负责的入库单元，顺序稳定
+     */
+    public List<CorpusSource> resolve() {
+        List<CorpusSource> all = resolveAll();
+        List<CorpusSource> own = new ArrayList<>(all.size());
+        for (int ordinal = 0; ordinal < all.size(); ordinal++) {
+            if (isOwnShard(ordinal)) {
+                own.add(all.get(ordinal));
+            }
+        }
+        return own;
+    }
+
+    /**
+     * 解析全部语料的入库单元，不做静态分工；分布式入库时各实例据此得到相同的分区列表
+     */
+    public List<CorpusSource> resolveAll() {
+        List<CorpusSource> sources = new ArrayList<>();
+        for (Resource resource : loadResources()) {
+            String name = resolveResourceName(resource);
+            CorpusFormat format = CorpusFormat.fromFileName(name);
+            CorpusIndex index = index(resource, format);
+            long lines = index.records();
+            boolean split = shardLines > 0 && lines > shardLines;
+            long start = 0;
+            int shard = 0;
+            do {
+                long end = split ? Math.min(lines, start + shardLines) : lines;
+                long offset = shard < index.shardOffsets().length ? index.shardOffsets()[shard] : -1L;
+                sources.add(new CorpusSource(resource, name, format, start, end, offset, split));
+                start = end;
+                shard++;
+            } while (start < lines);
+        }
+        return sources;
+    }
+
+    /**
+     * 每个语料文件一个覆盖全文件的读取单元，不预先统计行数、不切分；供只需顺序读一遍的场景（入库预演）使用
+     */
+    public List<CorpusSource> resolveFiles() {
+        List<CorpusSource> sources = new ArrayList<>();
+        for (Resource resource : loadResources()) {
+            String name = resolveResourceName(resource);
+            sources.add(new CorpusSource(resource, name, CorpusFormat.fromFileName(name), 0L, Long.MAX_VALUE, 0L, false));
+        }
+        return sources;
+    }
+
+    private boolean isOwnShard(int ordinal) {
+        int count = Math.max(1, shardCount);
+        return Math.floorMod(ordinal, count) == Math.floorMod(shardIndex, count);
+    }
+
+    private List<Resource> loadResources() {
+        List<Resource> resources = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String location : StringUtils.commaDelimitedListToStringArray(locations)) {
+            String pattern = location.trim();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            Resource[] matched;
+            try {
+                matched = resourcePatternResolver.getResources(pattern);
+            } catch (IOException e) {
+                log.warn("Failed to resolve documents with pattern {}, skip.", pattern, e);
+                continue;
+            }
+            Arrays.stream(matched)
+                    .filter(Resource::exists)
+                    .filter(resource -> CorpusFormat.fromFileName(resource.getFilename()) != null)
+                    .sorted(Comparator.comparing(CorpusSourceResolver::resolveResourceName))
+                    .filter(resource -> seen.add(resource.getDescription()))
+                    .forEach(resources::add);
+        }
+        return resources;
+    }
+
+    /**
+     * 取文件的记录数与分片起点偏移；文件未变化（大小与修改时间相同）时复用上次扫描结果
+     */
+    private CorpusIndex index(Resource resource, CorpusFormat format) {
+        String key = resource.getDescription();
+        long lastModified;
+        long length;
+        try {
+            lastModified = resource.lastModified();
+            length = resource.contentLength();
+        } catch (IOException e) {
+            return scan(resource, format, -1L, -1L);
+        }
+        CorpusIndex cached = indexCache.get(key);
+        if (cached != null && cached.matches(lastModified, length, shardLines)) {
+            return cached;
+        }
+        CorpusIndex index = scan(resource, format, lastModified, length);
+        indexCache.put(key, index);
+        return index;
+    }
+
+    /**
+     * 统计记录数，并在每 shard-lines 条记录处记下字节偏移供分片直接定位：
+     * 二进制格式读取文件头（需分片时再按记录长度跳读一遍），未压缩 JSONL 扫描换行符，
+     * 压缩文本需完整解压一遍且无法记录可定位的偏移
+     */
+    private CorpusIndex scan(Resource resource, CorpusFormat format, long lastModified, long length) {
+        try {
+            if (format == CorpusFormat.JSONL) {
+                try (ByteLineReader reader = new ByteLineReader(resource.getInputStream())) {
+                    OffsetCollector offsets = new OffsetCollector(shardLines);
+                    long count = 0;
+                    while (true) {
+                        long position = reader.position();
+                        if (!reader.nextLine()) {
+                            break;
+                        }
+                        offsets.record(count, position);
+                        count++;
+                    }
+                    return new CorpusIndex(lastModified, length, shardLines, count, offsets.toArray());
+                }
+            }
+            try (CorpusReader reader = CorpusSource.openRaw(resource, format, null)) {
+                if (reader instanceof BinaryCorpusReader binaryReader) {
+                    long count = binaryReader.getRecordCount();
+                    if (shardLines <= 0 || count <= shardLines || binaryReader.position() < 0) {
+                        return new CorpusIndex(lastModified, length, shardLines, count, new long[0]);
+                    }
+                    OffsetCollector offsets = new OffsetCollector(shardLines);
+                    for (long i = 0; i < count; i++) {
+                        offsets.record(i, binaryReader.position());
+                        if (!binaryReader.next()) {
+                            break;
+                        }
+                    }
+                    return new CorpusIndex(lastModified, length, shardLines, count, offsets.toArray());
+                }
+                long count = 0;
+                while (reader.next()) {
+                    count++;
+                }
+                return new CorpusIndex(lastModified, length, shardLines, count, new long[0]);
+            }
+        } catch (IOException e) {
+            log.error("向量数据库初始化失败: file={}", resolveResourceName(resource), e);
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "向量数据库初始化失败", e);
+        }
+    }
+
+    /**
+     * @param shardOffsets 第 i 个分片起点（第 i × shardLines 条记录）的字节偏移，无法定位时为空
+     */
+    private record CorpusIndex(long lastModified, long length, long shardLines, long records, long[] shardOffsets) {
+
+        private boolean matches(long lastModified, long length, long shardLines) {
+            return this.lastModified == lastModified && this.length == length && this.shardLines == shardLines;
+        }
+    }
+
+    private static final class OffsetCollector {
+
+        private final long shardLines;
+        private long[] offsets = new long[16];
+        private int size;
+
+        private OffsetCollector(long shardLines) {
+            this.shardLines = shardLines;
+        }
+
+        private void record(long recordIndex, long position) {
+            if (shardLines <= 0 || recordIndex % shardLines != 0) {
+                return;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = position;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(offsets, size);
+        }
+    }
+
+    private static String resolveResourceName(Resource resource) {
+        String fileName = resource.getFilename();
+        return fileName != null ? fileName : resource.getDescription();
+    }
+}
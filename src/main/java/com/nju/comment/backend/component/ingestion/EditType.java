@@ -0,0 +1,191 @@
+package com.nju.comment.backend.component.ingestion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 新旧方法对的编辑类型，入库时写入文档元数据 {@value #METADATA_KEY}，RAG 检索时按请求的编辑类型过滤示例。
+ * <p>
+ * 只比较方法签名（第一个左花括号之前的部分）：参数个数变化、参数改名或改类型、返回类型、throws 子句、方法名，
+ * 按此优先级取第一个命中的类型；签名不变时为 {@link #BODY_ONLY}，签名无法解析或只改了修饰符等为 {@link #OTHER}。
+ */
+public enum EditType {
+
+    PARAMETER_ADDED,
+    PARAMETER_REMOVED,
+    PARAMETER_CHANGED,
+    RETURN_TYPE_CHANGED,
+    EXCEPTION_CHANGED,
+    METHOD_RENAMED,
+    BODY_ONLY,
+    OTHER;
+
+    public static final String METADATA_KEY = "edit_type";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern BLOCK_COMMENT = Pattern.compile("(?s)/\\*.*?\\*/");
+    private static final Pattern LINE_COMMENT = Pattern.compile("//[^\\n]*");
+    private static final Set<String> MODIFIERS = Set.of(
+            "public", "protected", "private", "static", "final", "abstract", "synchronized",
+            "native", "default", "strictfp");
+
+    public static EditType classify(String srcMethod, String dstMethod) {
+        Signature src = Signature.parse(srcMethod);
+        Signature dst = Signature.parse(dstMethod);
+        if (src == null || dst == null) {
+            return OTHER;
+        }
+        if (src.parameterTypes.size() != dst.parameterTypes.size()) {
+            return dst.parameterTypes.size() > src.parameterTypes.size() ? PARAMETER_ADDED : PARAMETER_REMOVED;
+        }
+        if (!src.parameterTypes.equals(dst.parameterTypes) || !src.parameterNames.equals(dst.parameterNames)) {
+            return PARAMETER_CHANGED;
+        }
+        if (!src.returnType.equals(dst.returnType)) {
+            return RETURN_TYPE_CHANGED;
+        }
+        if (!src.throwsClause.equals(dst.throwsClause)) {
+            return EXCEPTION_CHANGED;
+        }
+        if (!src.name.equals(dst.name)) {
+            return METHOD_RENAMED;
+        }
+        if (!src.text.equals(dst.text)) {
+            return OTHER;
+        }
+        return BODY_ONLY;
+    }
+
+    /**
+     * 解析失败或无法识别时返回 null
+     */
+    public static EditType parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private record Signature(String text, String returnType, String name,
+                             List<String> parameterTypes, List<String> parameterNames, String throwsClause) {
+
+        private static Signature parse(String method) {
+            if (method == null || method.isBlank()) {
+                return null;
+            }
+            String code = LINE_COMMENT.matcher(BLOCK_COMMENT.matcher(method).replaceAll(" ")).replaceAll(" ");
+            int end = code.indexOf('{');
+            if (end < 0) {
+                end = code.indexOf(';');
+            }
+            String header = WHITESPACE.matcher(end >= 0 ? code.substring(0, end) : code).replaceAll(" ").trim();
+            header = stripAnnotations(header);
+            int open = header.indexOf('(');
+            int close = matchingParen(header, open);
+            if (open <= 0 || close < 0) {
+                return null;
+            }
+
+            List<String> head = splitTopLevel(header.substring(0, open).trim(), ' ');
+            if (head.isEmpty()) {
+                return null;
+            }
+            String name = head.get(head.size() - 1);
+            StringBuilder returnType = new StringBuilder();
+            for (int i = 0; i < head.size() - 1; i++) {
+                String token = head.get(i);
+                if (MODIFIERS.contains(token) || token.startsWith("<")) {
+                    continue;
+                }
+                returnType.append(token);
+            }
+
+            List<String> parameterTypes = new ArrayList<>();
+            List<String> parameterNames = new ArrayList<>();
+            for (String parameter : splitTopLevel(header.substring(open + 1, close), ',')) {
+                List<String> tokens = new ArrayList<>(splitTopLevel(parameter.trim(), ' '));
+                tokens.removeIf(token -> token.equals("final") || token.startsWith("@"));
+                if (tokens.isEmpty()) {
+                    continue;
+                }
+                parameterNames.add(tokens.remove(tokens.size() - 1));
+                parameterTypes.add(String.join("", tokens));
+            }
+
+            String rest = header.substring(close + 1).trim();
+            String throwsClause = rest.startsWith("throws ") ? rest.substring(7).replace(" ", "") : "";
+            return new Signature(header, returnType.toString(), name, parameterTypes, parameterNames, throwsClause);
+        }
+
+        private static String stripAnnotations(String header) {
+            String result = header;
+            while (result.startsWith("@")) {
+                int i = 1;
+                while (i < result.length() && (Character.isJavaIdentifierPart(result.charAt(i)) || result.charAt(i) == '.')) {
+                    i++;
+                }
+                if (i < result.length() && result.charAt(i) == '(') {
+                    int close = matchingParen(result, i);
+                    if (close < 0) {
+                        return result;
+                    }
+                    i = close + 1;
+                }
+                result = result.substring(i).trim();
+            }
+            return result;
+        }
+
+        private static int matchingParen(String text, int open) {
+            if (open < 0) {
+                return -1;
+            }
+            int depth = 0;
+            for (int i = open; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 按分隔符切分，忽略尖括号、圆括号内的分隔符
+         */
+        private static List<String> splitTopLevel(String text, char separator) {
+            List<String> parts = new ArrayList<>();
+            int depth = 0;
+            int start = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '<' || c == '(') {
+                    depth++;
+                } else if (c == '>' || c == ')') {
+                    depth--;
+                } else if (c == separator && depth == 0) {
+                    addPart(parts, text.substring(start, i));
+                    start = i + 1;
+                }
+            }
+            addPart(parts, text.substring(start));
+            return parts;
+        }
+
+        private static void addPart(List<String> parts, String part) {
+            String trimmed = part.trim();
+            if (!trimmed.isEmpty()) {
+                parts.add(trimmed);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.nju.comment.backend.component.ingestion;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 token 预算与条数上限动态打包 Embedding 批次。
+ * <p>
+ * 短文档会被尽量多地装入同一请求以节省 RPM；长文档则提前封批，避免单次请求触发 TPM 或 400。
+ * 单条即超出预算的文档应由调用方通过 {@link #exceedsBudget(int)} 提前分流。
+ */
+public class EmbeddingBatchPacker {
+
+    private final int maxItems;
+    private final int maxTokens;
+
+    private List<Document> documents;
+    private long tokens = 0;
+
+    public EmbeddingBatchPacker(int maxItems, int maxTokens) {
+        this.maxItems = Math.max(1, maxItems);
+        this.maxTokens = Math.max(1, maxTokens);
+        this.documents = new ArrayList<>(this.maxItems);
+    }
+
+    /**
+     * 单条文档是否超出每批 token 预算（无法放入任何批次）
+     */
+    public boolean exceedsBudget(int documentTokens) {
+        return documentTokens > maxTokens;
+    }
+
+    /**
+     * 当前批次能否再放入一条指定 token 数的文档
+     */
+    public boolean canAccept(int documentTokens) {
+        return documents.isEmpty()
+                || (documents.size() < maxItems && tokens + documentTokens <= maxTokens);
+    }
+
+    public void add(Document document, int documentTokens) {
+        documents.add(document);
+        tokens += Math.max(0, documentTokens);
+    }
+
+    /**
+     * 当前批次是否已达到条数上限
+     */
+    public boolean isFull() {
+        return documents.size() >= maxItems || tokens >= maxTokens;
+    }
+
+    public boolean isEmpty() {
+        return documents.isEmpty();
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    public long tokens() {
+        return tokens;
+    }
+
+    /**
+     * 取出当前批次并开始新批次
+     */
+    public PackedBatch drain() {
+        PackedBatch batch = new PackedBatch(documents, tokens);
+        documents = new ArrayList<>(maxItems);
+        tokens = 0;
+        return batch;
+    }
+
+    public record PackedBatch(List<Document> documents, long tokens) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.nju.comment.backend.component.ingestion;
+
+import java.util.Locale;
+
+/**
+ * 样本向量化文本的表示方式，入库与检索查询必须一致，因此按 collection 配置
+ */
+public enum EmbeddingTextFormat {
+
+    /**
+     * 完整 JSON：{"src_method":..,"dst_method":..,"src_javadoc":..}
+     */
+    FULL,
+    /**
+     * 新旧方法的行级差异加旧注释，见 {@link MethodDiffText}
+     */
+    DIFF;
+
+    /**
+     * 按名称（不区分大小写）解析，不支持的名称返回 null
+     */
+    public static EmbeddingTextFormat fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
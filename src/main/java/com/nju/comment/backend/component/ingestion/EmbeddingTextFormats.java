@@ -0,0 +1,74 @@
+package com.nju.comment.backend.component.ingestion;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 各 collection 的向量文本表示。
+ * <p>
+ * 配置形如 {@code comment_vector_store:full,comment_vector_store_diff:diff}，未列出的 collection 使用默认格式。
+ * 入库与 RAG 查询都按当前配置的 collection 取格式，保证两侧向量可比。
+ */
+@Slf4j
+@Component
+public class EmbeddingTextFormats {
+
+    private final Map<String, EmbeddingTextFormat> formats;
+    private final EmbeddingTextFormat defaultFormat;
+    private final String collectionName;
+
+    public EmbeddingTextFormats(@Value("${app.vectorstore.embedding-text.formats:}") String formats,
+                                @Value("${app.vectorstore.embedding-text.default-format:full}") String defaultFormat,
+                                @Value("${spring.ai.vectorstore.milvus.collectionName:vector_store}") String collectionName) {
+        this.formats = Collections.unmodifiableMap(parse(formats));
+        EmbeddingTextFormat parsedDefault = EmbeddingTextFormat.fromName(defaultFormat);
+        if (parsedDefault == null) {
+            log.warn("未知的默认向量文本格式: {}，使用 full", defaultFormat);
+            parsedDefault = EmbeddingTextFormat.FULL;
+        }
+        this.defaultFormat = parsedDefault;
+        this.collectionName = collectionName;
+        log.info("向量文本格式: collection={}, format={}", collectionName, current());
+    }
+
+    /**
+     * 当前 VectorStore 所用 collection 的格式
+     */
+    public EmbeddingTextFormat current() {
+        return forCollection(collectionName);
+    }
+
+    public EmbeddingTextFormat forCollection(String collection) {
+        return formats.getOrDefault(collection, defaultFormat);
+    }
+
+    private static Map<String, EmbeddingTextFormat> parse(String value) {
+        Map<String, EmbeddingTextFormat> result = new LinkedHashMap<>();
+        if (!StringUtils.hasText(value)) {
+            return result;
+        }
+        for (String entry : value.split(",")) {
+            int colon = entry.lastIndexOf(':');
+            if (colon <= 0) {
+                if (StringUtils.hasText(entry)) {
+                    log.warn("忽略格式不正确的向量文本格式配置: {}", entry.trim());
+                }
+                continue;
+            }
+            String collection = entry.substring(0, colon).trim();
+            EmbeddingTextFormat format = EmbeddingTextFormat.fromName(entry.substring(colon + 1));
+            if (format == null) {
+                log.warn("忽略未知的向量文本格式: {}", entry.trim());
+                continue;
+            }
+            result.put(collection, format);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,253 @@
+package com.nju.comment.backend.component.ingestion;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单次向量入库任务的控制句柄与进度计数器。
+ * <p>
+ * 入库线程在批次边界调用 {@link #checkpoint()} 响应暂停/取消；
+ * 管理接口线程读取计数器计算吞吐量与 ETA。
+ */
+public class IngestionJobControl {
+
+    @Getter
+    private final String jobId;
+
+    @Getter
+    private final Instant startedAt = Instant.now();
+
+    private final long startedNanos = System.nanoTime();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition resumed = lock.newCondition();
+
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private volatile IngestionJobState state = IngestionJobState.RUNNING;
+    private volatile boolean cancelRequested = false;
+    private volatile Instant finishedAt;
+    private volatile String errorMessage;
+
+    private long pausedNanos = 0;
+    private long pauseStartedNanos = 0;
+    private volatile long finishedNanos = 0;
+
+    private final AtomicLong totalLines = new AtomicLong();
+    private final AtomicLong resumedLines = new AtomicLong();
+    private final AtomicLong processedLines = new AtomicLong();
+    private final AtomicLong embeddedDocs = new AtomicLong();
+    private final AtomicLong embeddedTokens = new AtomicLong();
+    private final AtomicLong duplicateSkipped = new AtomicLong();
+    private final AtomicLong invalidSkipped = new AtomicLong();
+    private final AtomicLong overlongSkipped = new AtomicLong();
+
+    public IngestionJobControl(String jobId) {
+        this.jobId = jobId;
+    }
+
+    // ==================== 生命周期控制 ====================
+
+    /**
+     * 入库线程在批次边界调用：暂停时阻塞直到恢复或取消。
+     *
+     * @return false 表示任务已被取消，调用方应尽快停止
+     */
+    public boolean checkpoint() throws InterruptedException {
+        lock.lock();
+        try {
+            while (state == IngestionJobState.PAUSED && !cancelRequested) {
+                resumed.await();
+            }
+            return !cancelRequested;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean pause() {
+        lock.lock();
+        try {
+            if (state != IngestionJobState.RUNNING || cancelRequested) {
+                return false;
+            }
+            state = IngestionJobState.PAUSED;
+            pauseStartedNanos = System.nanoTime();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean resume() {
+        lock.lock();
+        try {
+            if (state != IngestionJobState.PAUSED) {
+                return false;
+            }
+            pausedNanos += System.nanoTime() - pauseStartedNanos;
+            pauseStartedNanos = 0;
+            state = IngestionJobState.RUNNING;
+            resumed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 认领任务的执行权，只有第一次调用返回 true：入库线程开始执行前调用，
+     * 取消方在任务尚未开始时抢先认领，使入库线程不再执行并由取消方直接结束任务。
+     */
+    public boolean claim() {
+        return claimed.compareAndSet(false, true);
+    }
+
+    public void requestCancel() {
+        lock.lock();
+        try {
+            cancelRequested = true;
+            resumed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * 标记任务结束（完成/失败/取消），之后不再接受暂停与恢复。
+     */
+    public void finish(IngestionJobState finalState, String error) {
+        lock.lock();
+        try {
+            if (state == IngestionJobState.PAUSED) {
+                pausedNanos += System.nanoTime() - pauseStartedNanos;
+                pauseStartedNanos = 0;
+            }
+            finishedNanos = System.nanoTime();
+            finishedAt = Instant.now();
+            errorMessage = error;
+            state = finalState;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public IngestionJobState getState() {
+        return state;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    // ==================== 进度上报 ====================
+
+    public void setTotalLines(long total) {
+        totalLines.set(Math.max(0, total));
+    }
+
+    /**
+     * 断点续跑跳过的行已在之前的运行中入库，计入进度但不计入吞吐量。
+     */
+    public void recordResumedLines(long lines) {
+        resumedLines.addAndGet(Math.max(0, lines));
+    }
+
+    public void recordProcessedLine() {
+        processedLines.incrementAndGet();
+    }
+
+    public void recordEmbedded(int docs, long tokens) {
+        embeddedDocs.addAndGet(Math.max(0, docs));
+        embeddedTokens.addAndGet(Math.max(0, tokens));
+    }
+
+    public void recordDuplicate() {
+        duplicateSkipped.incrementAndGet();
+    }
+
+    public void recordInvalid(int count) {
+        invalidSkipped.addAndGet(Math.max(0, count));
+    }
+
+    public void recordOverlong() {
+        overlongSkipped.incrementAndGet();
+        invalidSkipped.incrementAndGet();
+    }
+
+    public long getTotalLines() {
+        return totalLines.get();
+    }
+
+    /**
+     * 已完成的行数（含断点续跑跳过的行）
+     */
+    public long getCompletedLines() {
+        return resumedLines.get() + processedLines.get();
+    }
+
+    public long getProcessedLines() {
+        return processedLines.get();
+    }
+
+    public long getEmbeddedDocs() {
+        return embeddedDocs.get();
+    }
+
+    public long getEmbeddedTokens() {
+        return embeddedTokens.get();
+    }
+
+    public long getDuplicateSkipped() {
+        return duplicateSkipped.get();
+    }
+
+    public long getInvalidSkipped() {
+        return invalidSkipped.get();
+    }
+
+    public long getOverlongSkipped() {
+        return overlongSkipped.get();
+    }
+
+    /**
+     * 已完成比例（0~1），总行数未知时返回 0
+     */
+    public double getCompletedRatio() {
+        long total = totalLines.get();
+        if (total <= 0) {
+            return 0D;
+        }
+        return Math.min(1D, (double) getCompletedLines() / total);
+    }
+
+    /**
+     * 实际运行时长（扣除暂停时间），单位毫秒
+     */
+    public long getActiveMillis() {
+        lock.lock();
+        try {
+            long end = finishedNanos > 0 ? finishedNanos : System.nanoTime();
+            long paused = pausedNanos;
+            if (state == IngestionJobState.PAUSED && pauseStartedNanos > 0) {
+                paused += end - pauseStartedNanos;
+            }
+            return Math.max(0L, (end - startedNanos - paused) / 1_000_000L);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.nju.comment.backend.component.ingestion;
+
+/**
+ * 向量入库后台任务状态
+ */
+public enum IngestionJobState {
+    IDLE,
+    RUNNING,
+    PAUSED,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isActive() {
+        return this == RUNNING || this == PAUSED;
+    }
+}
@@ -0,0 +1,343 @@
+package com.nju.comment.backend.component.ingestion;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多实例协同入库的分区租约协调器（Redis）。
+ * <p>
+ * 每个入库分区（文件或行区间分片）通过带过期时间的租约键独占处理，持有者由后台线程定期续约；
+ * 实例崩溃后租约自然过期，其他实例接手并从中心断点继续。断点写入与完成标记均在 Lua 脚本中
+ * 校验租约归属，失去租约的实例无法覆盖新持有者的进度。
+ * <p>
+ * 键布局（{@code <prefix>} = {@code vectorstore:ingest:<run-id>}）：
+ * <ul>
+ *     <li>{@code <prefix>:lease:<partition>}：租约，值为持有令牌</li>
+ *     <li>{@code <prefix>:checkpoint}：Hash，分区 → 已入库行数</li>
+ *     <li>{@code <prefix>:done}：Set，已完成分区</li>
+ *     <li>{@code <prefix>:docs}：Hash，文档 ID → 首次出现的位置（分区与行号），用于跨实例去重</li>
+ * </ul>
+ * 同一 run-id 的分区全部完成后再次启动任务会直接结束，重新入库需更换 run-id 或调用 {@link #resetRun()}。
+ */
+@Slf4j
+@Component
+public class IngestionLeaseCoordinator {
+
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('sismember', KEYS[2], ARGV[3]) == 1 then return -1 end "
+                    + "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 1 end "
+                    + "return 0",
+            Long.class);
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end "
+                    + "return 0",
+            Long.class);
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end "
+                    + "return 0",
+            Long.class);
+
+    private static final DefaultRedisScript<Long> CHECKPOINT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end "
+                    + "redis.call('hset', KEYS[2], ARGV[3], ARGV[4]) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "return 1",
+            Long.class);
+
+    private static final DefaultRedisScript<Long> COMPLETE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end "
+                    + "redis.call('hset', KEYS[2], ARGV[2], ARGV[3]) "
+                    + "redis.call('sadd', KEYS[3], ARGV[2]) "
+                    + "redis.call('del', KEYS[1]) "
+                    + "return 1",
+            Long.class);
+
+    /**
+     * 逐个登记文档首次出现的位置，返回每个文档是否为重复（0/1）；与已登记位置相同视为同一行的重新提交，不算重复
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local result = {} "
+                    + "for i = 1, #ARGV, 2 do "
+                    + "  if redis.call('hsetnx', KEYS[1], ARGV[i], ARGV[i + 1]) == 1 "
+                    + "      or redis.call('hget', KEYS[1], ARGV[i]) == ARGV[i + 1] then "
+                    + "    result[#result + 1] = 0 "
+                    + "  else "
+                    + "    result[#result + 1] = 1 "
+                    + "  end "
+                    + "end "
+                    + "return result",
+            List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final String keyPrefix;
+    private final String nodeId;
+    private final long leaseTtlMs;
+    private final long heartbeatIntervalMs;
+    private final long pollIntervalMs;
+
+    private final AtomicLong leaseSequence = new AtomicLong();
+    private final Set<PartitionLease> activeLeases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService heartbeatExecutor;
+
+    public IngestionLeaseCoordinator(StringRedisTemplate redisTemplate,
+                                     @Value("${app.vectorstore.ingest.distributed.enabled:false}") boolean enabled,
+                                     @Value("${app.vectorstore.ingest.distributed.run-id:default}") String runId,
+                                     @Value("${app.vectorstore.ingest.distributed.node-id:}") String nodeId,
+                                     @Value("${app.vectorstore.ingest.distributed.lease-ttl-ms:30000}") long leaseTtlMs,
+                                     @Value("${app.vectorstore.ingest.distributed.heartbeat-interval-ms:10000}") long heartbeatIntervalMs,
+                                     @Value("${app.vectorstore.ingest.distributed.poll-interval-ms:5000}") long pollIntervalMs) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.keyPrefix = "vectorstore:ingest:" + runId;
+        this.nodeId = StringUtils.hasText(nodeId)
+                ? nodeId.trim()
+                : ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.leaseTtlMs = Math.max(1000L, leaseTtlMs);
+        this.heartbeatIntervalMs = Math.max(100L, Math.min(heartbeatIntervalMs, this.leaseTtlMs / 3));
+        this.pollIntervalMs = Math.max(100L, pollIntervalMs);
+
+        if (enabled) {
+            this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "vectorstore-ingest-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            heartbeatExecutor.scheduleWithFixedDelay(this::renewLeases,
+                    this.heartbeatIntervalMs, this.heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+            log.info("分布式入库已启用: nodeId={}, keyPrefix={}, leaseTtlMs={}, heartbeatMs={}",
+                    this.nodeId, keyPrefix, this.leaseTtlMs, this.heartbeatIntervalMs);
+        } else {
+            this.heartbeatExecutor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getPollIntervalMs() {
+        return pollIntervalMs;
+    }
+
+    /**
+     * 尝试获取分区租约
+     *
+     * @return 租约；分区已完成或被其他实例持有时返回 null
+     */
+    public PartitionLease tryAcquire(String partition) {
+        String token = nodeId + ":" + leaseSequence.incrementAndGet();
+        Long result = redisTemplate.execute(ACQUIRE_SCRIPT,
+                List.of(leaseKey(partition), doneKey()),
+                token, String.valueOf(leaseTtlMs), partition);
+        if (result == null || result <= 0) {
+            return null;
+        }
+        PartitionLease lease = new PartitionLease(partition, token);
+        activeLeases.add(lease);
+        log.info("获取入库分区租约: nodeId={}, partition={}", nodeId, partition);
+        return lease;
+    }
+
+    public boolean isCompleted(String partition) {
+        return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(doneKey(), partition));
+    }
+
+    /**
+     * 读取分区的中心断点（已入库行数）
+     */
+    public long loadCheckpoint(String partition) {
+        Object value = redisTemplate.opsForHash().get(checkpointKey(), partition);
+        if (value == null) {
+            return 0L;
+        }
+        try {
+            return Math.max(0L, Long.parseLong(value.toString()));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 在仍持有租约的前提下写入断点并顺带续约
+     *
+     * @return false 表示租约已丢失，调用方应放弃该分区
+     */
+    public boolean saveCheckpoint(PartitionLease lease, long line) {
+        if (lease.isLost()) {
+            return false;
+        }
+        Long result = redisTemplate.execute(CHECKPOINT_SCRIPT,
+                List.of(leaseKey(lease.getPartition()), checkpointKey()),
+                lease.getToken(), String.valueOf(leaseTtlMs), lease.getPartition(), String.valueOf(line));
+        if (result == null || result == 0L) {
+            markLost(lease);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 在中心登记一批文档首次出现的位置，跨实例、跨分区去重。
+     * 位置为分区与行号，接手失联实例的分区重新提交同一行时不会被误判为重复。
+     *
+     * @param docIds 文档 ID
+     * @param lines  与 docIds 按下标对应的行号
+     * @return 与 docIds 按下标对应，true 表示该文档已在其他位置入库
+     */
+    public List<Boolean> claimDocuments(String partition, List<String> docIds, List<Long> lines) {
+        if (docIds.isEmpty()) {
+            return List.of();
+        }
+        String[] args = new String[docIds.size() * 2];
+        for (int i = 0; i < docIds.size(); i++) {
+            args[2 * i] = docIds.get(i);
+            args[2 * i + 1] = partition + ":" + lines.get(i);
+        }
+        List<?> result = redisTemplate.execute(CLAIM_SCRIPT, List.of(docsKey()), (Object[]) args);
+        List<Boolean> duplicates = new ArrayList<>(docIds.size());
+        for (int i = 0; i < docIds.size(); i++) {
+            Object flag = result == null || i >= result.size() ? null : result.get(i);
+            duplicates.add(flag instanceof Number number && number.longValue() == 1L);
+        }
+        return duplicates;
+    }
+
+    /**
+     * 标记分区完成并释放租约
+     */
+    public boolean complete(PartitionLease lease, long lineCount) {
+        activeLeases.remove(lease);
+        Long result = redisTemplate.execute(COMPLETE_SCRIPT,
+                List.of(leaseKey(lease.getPartition()), checkpointKey(), doneKey()),
+                lease.getToken(), lease.getPartition(), String.valueOf(lineCount));
+        boolean completed = result != null && result == 1L;
+        if (!completed) {
+            lease.markLost();
+            log.warn("完成入库分区时租约已丢失: nodeId={}, partition={}", nodeId, lease.getPartition());
+        }
+        return completed;
+    }
+
+    /**
+     * 主动释放租约（取消或异常时），断点保留供其他实例接手
+     */
+    public void release(PartitionLease lease) {
+        activeLeases.remove(lease);
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey(lease.getPartition())), lease.getToken());
+        } catch (Exception e) {
+            log.warn("释放入库分区租约失败，等待其自然过期: partition={}", lease.getPartition(), e);
+        }
+    }
+
+    /**
+     * 清除当前 run-id 的断点、完成标记与去重登记
+     */
+    public void resetRun() {
+        redisTemplate.delete(List.of(checkpointKey(), doneKey(), docsKey()));
+        log.info("已清除分布式入库进度: keyPrefix={}", keyPrefix);
+    }
+
+    /**
+     * 停止续约（模拟或处理实例失联），已持有的租约将自然过期
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+    }
+
+    private void renewLeases() {
+        for (PartitionLease lease : activeLeases) {
+            try {
+                Long result = redisTemplate.execute(RENEW_SCRIPT,
+                        List.of(leaseKey(lease.getPartition())), lease.getToken(), String.valueOf(leaseTtlMs));
+                if (result == null || result == 0L) {
+                    markLost(lease);
+                }
+            } catch (Exception e) {
+                // Redis 暂时不可用时不立即判定丢失，由过期时间兜底
+                log.warn("入库分区租约续约失败: partition={}", lease.getPartition(), e);
+            }
+        }
+    }
+
+    private void markLost(PartitionLease lease) {
+        if (activeLeases.remove(lease)) {
+            log.warn("入库分区租约已丢失: nodeId={}, partition={}", nodeId, lease.getPartition());
+        }
+        lease.markLost();
+    }
+
+    private String leaseKey(String partition) {
+        return keyPrefix + ":lease:" + partition;
+    }
+
+    private String checkpointKey() {
+        return keyPrefix + ":checkpoint";
+    }
+
+    private String docsKey() {
+        return keyPrefix + ":docs";
+    }
+
+    private String doneKey() {
+        return keyPrefix + ":done";
+    }
+
+    /**
+     * 分区租约句柄
+     */
+    public static final class PartitionLease {
+
+        private final String partition;
+        private final String token;
+        private volatile boolean lost = false;
+
+        private PartitionLease(String partition, String token) {
+            this.partition = partition;
+            this.token = token;
+        }
+
+        public String getPartition() {
+            return partition;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public boolean isLost() {
+            return lost;
+        }
+
+        private void markLost() {
+            lost = true;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.nju.comment.backend.component.ingestion;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JSONL 语料读取器（含 gzip / zstd 解压后的流），每行一条记录
+ */
+public class JsonlCorpusReader implements CorpusReader {
+
+    private final ByteLineReader lineReader;
+    private final CorpusRecordParser parser;
+
+    public JsonlCorpusReader(InputStream in, CorpusRecordParser parser) {
+        this.lineReader = new ByteLineReader(in);
+        this.parser = parser;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return lineReader.nextLine();
+    }
+
+    @Override
+    public CorpusRecord read() throws IOException {
+        return parser.parse(lineReader.buffer(), 0, lineReader.length());
+    }
+
+    @Override
+    public void close() throws IOException {
+        lineReader.close();
+    }
+}
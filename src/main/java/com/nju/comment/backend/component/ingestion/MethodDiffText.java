@@ -0,0 +1,137 @@
+package com.nju.comment.backend.component.ingestion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 差异化向量文本：只保留新旧方法中发生变化的代码行、新方法签名与旧注释正文。
+ * <p>
+ * 注释一致性样本的大部分 token 是两版方法中未改动的代码，它们对“哪些改动需要同步注释”几乎没有区分度，
+ * 却占满 Embedding 的 TPM 与 Milvus 的存储。此处按行求 LCS 差异（先剥离公共前后缀），
+ * 行内空白统一折叠，因此原始语料与经 {@code TextProcessUtil} 缩进处理后的查询得到相同文本。
+ * 中间段过大时不再求 LCS，整段按删除/新增输出。
+ * <p>
+ * 输出形如：
+ * <pre>
+ * javadoc: Returns the cached value ...
+ * signature: public V get(K key)
+ * - return map.get(key);
+ * + return map.getOrDefault(key, defaultValue);
+ * </pre>
+ */
+public final class MethodDiffText {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern JAVADOC_DECORATION = Pattern.compile("^/\\*\\*|\\*/$|^\\*");
+    private static final long MAX_LCS_CELLS = 250_000L;
+
+    private MethodDiffText() {
+    }
+
+    public static String render(String srcMethod, String dstMethod, String srcJavadoc) {
+        List<String> src = normalizedLines(srcMethod);
+        List<String> dst = normalizedLines(dstMethod);
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("javadoc: ").append(javadocText(srcJavadoc)).append('\n');
+        String signature = signatureOf(dst.isEmpty() ? src : dst);
+        if (!signature.isEmpty()) {
+            sb.append("signature: ").append(signature).append('\n');
+        }
+
+        int prefix = 0;
+        int maxPrefix = Math.min(src.size(), dst.size());
+        while (prefix < maxPrefix && src.get(prefix).equals(dst.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix
+                && src.get(src.size() - 1 - suffix).equals(dst.get(dst.size() - 1 - suffix))) {
+            suffix++;
+        }
+        appendDiff(sb, src.subList(prefix, src.size() - suffix), dst.subList(prefix, dst.size() - suffix));
+        return sb.toString().trim();
+    }
+
+    private static void appendDiff(StringBuilder sb, List<String> src, List<String> dst) {
+        int n = src.size();
+        int m = dst.size();
+        if ((long) n * m > MAX_LCS_CELLS) {
+            src.forEach(line -> sb.append("- ").append(line).append('\n'));
+            dst.forEach(line -> sb.append("+ ").append(line).append('\n'));
+            return;
+        }
+
+        // lcs[i][j] 为 src[i..] 与 dst[j..] 的最长公共子序列长度
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lcs[i][j] = src.get(i).equals(dst.get(j))
+                        ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && src.get(i).equals(dst.get(j))) {
+                i++;
+                j++;
+            } else if (j >= m || (i < n && lcs[i + 1][j] >= lcs[i][j + 1])) {
+                sb.append("- ").append(src.get(i++)).append('\n');
+            } else {
+                sb.append("+ ").append(dst.get(j++)).append('\n');
+            }
+        }
+    }
+
+    private static List<String> normalizedLines(String method) {
+        List<String> lines = new ArrayList<>();
+        if (method == null || method.isBlank()) {
+            return lines;
+        }
+        for (String line : method.split("\\R")) {
+            String normalized = WHITESPACE.matcher(line.trim()).replaceAll(" ");
+            if (!normalized.isEmpty()) {
+                lines.add(normalized);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 第一条非注解行到左花括号为止的部分
+     */
+    private static String signatureOf(List<String> lines) {
+        for (String line : lines) {
+            if (line.startsWith("@") && !line.contains("(")) {
+                continue;
+            }
+            if (line.startsWith("@") && line.endsWith(")")) {
+                continue;
+            }
+            int brace = line.indexOf('{');
+            return (brace >= 0 ? line.substring(0, brace) : line).trim();
+        }
+        return "";
+    }
+
+    private static String javadocText(String javadoc) {
+        if (javadoc == null || javadoc.isBlank()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(javadoc.length());
+        for (String line : javadoc.split("\\R")) {
+            String stripped = JAVADOC_DECORATION.matcher(line.trim()).replaceAll("").trim();
+            if (stripped.endsWith("*/")) {
+                stripped = stripped.substring(0, stripped.length() - 2).trim();
+            }
+            if (!stripped.isEmpty()) {
+                sb.append(stripped).append(' ');
+            }
+        }
+        return WHITESPACE.matcher(sb.toString().trim()).replaceAll(" ");
+    }
+}
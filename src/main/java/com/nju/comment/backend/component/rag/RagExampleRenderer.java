@@ -0,0 +1,126 @@
+package com.nju.comment.backend.component.rag;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.PromptException;
+import com.nju.comment.backend.util.TextProcessUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * RAG 示例片段的渲染：入库时按 prompt_rag_example.txt 渲染一次，片段与模板版本（模板内容 SHA-256 前缀）随文档元数据保存，
+ * 检索命中后直接拼接。
+ * <p>
+ * 模板修改后旧片段版本不匹配，命中时按文档的 src/dst 字段重新渲染并缓存，无需重新入库。
+ */
+@Slf4j
+@Component
+public class RagExampleRenderer {
+
+    public static final String SNIPPET_KEY = "rag_example";
+    public static final String VERSION_KEY = "rag_example_version";
+
+    private final ObjectMapper objectMapper;
+    private final PromptTemplate template;
+    private final String version;
+    private final Cache<String, String> rerendered;
+
+    public RagExampleRenderer(ObjectMapper objectMapper,
+                              @Value("classpath:prompts/prompt_rag_example.txt") Resource templateResource,
+                              @Value("${app.rag.example.rerender-cache-size:10000}") long rerenderCacheSize) {
+        this.objectMapper = objectMapper;
+        String text;
+        try (InputStream is = templateResource.getInputStream()) {
+            text = StreamUtils.copyToString(is, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new PromptException(ErrorCode.PROMPT_TEMPLATE_READ_ERROR, "读取RAG示例模板失败", e);
+        }
+        this.template = new PromptTemplate(text);
+        this.version = hash(text);
+        this.rerendered = Caffeine.newBuilder().maximumSize(Math.max(1, rerenderCacheSize)).build();
+        log.info("RAG示例模板已加载: version={}", version);
+    }
+
+    public String version() {
+        return version;
+    }
+
+    /**
+     * 入库文档的元数据：原始 src/dst 字段与按当前模板渲染好的示例片段
+     */
+    public Map<String, Object> metadata(String srcMethod, String dstMethod, String srcJavadoc, String dstJavadoc) {
+        return Map.of(
+                "src_method", srcMethod,
+                "dst_method", dstMethod,
+                "src_javadoc", srcJavadoc,
+                "dst_javadoc", dstJavadoc,
+                SNIPPET_KEY, render(TextProcessUtil.processMethod(srcMethod), TextProcessUtil.processMethod(dstMethod),
+                        srcJavadoc, dstJavadoc),
+                VERSION_KEY, version);
+    }
+
+    /**
+     * 检索结果对应的示例片段；片段缺失或模板版本不一致时重新渲染
+     */
+    public String snippet(Document document) {
+        Object snippet = document.getMetadata().get(SNIPPET_KEY);
+        if (snippet != null && version.equals(document.getMetadata().get(VERSION_KEY))) {
+            return snippet.toString();
+        }
+        return rerendered.get(document.getId(), id -> render(
+                readField(document, "src_method"),
+                readField(document, "dst_method"),
+                readField(document, "src_javadoc"),
+                readField(document, "dst_javadoc")));
+    }
+
+    private String render(String srcMethod, String dstMethod, String srcJavadoc, String dstJavadoc) {
+        return template.render(Map.of(
+                "old_method", srcMethod,
+                "new_method", dstMethod,
+                "old_comment", srcJavadoc,
+                "new_comment", dstJavadoc));
+    }
+
+    private String readField(Document document, String fieldName) {
+        Object metadataValue = document.getMetadata().get(fieldName);
+        if (metadataValue != null) {
+            if (fieldName.contains("method")) {
+                return TextProcessUtil.processMethod(metadataValue.toString());
+            }
+            return metadataValue.toString();
+        }
+
+        try {
+            JsonNode node = objectMapper.readTree(document.getText());
+            return node.path(fieldName).asText("");
+        } catch (Exception ignored) {
+            return "";
+        }
+    }
+
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.nju.comment.backend.component.rag;
+
+import com.nju.comment.backend.component.vectorstore.HybridRetriever;
+import com.nju.comment.backend.component.vectorstore.LexicalIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * RAG 示例的按分数挑选：丢弃相似度低于阈值的结果，按 MMR（Maximal Marginal Relevance）去掉彼此重复的示例，
+ * 并限制示例总 token 数。
+ * <p>
+ * 示例进入的是 LLM 提示词，而 LLM 由用户按请求选择、词表各不相同，Embedding 词表的计数也不适用，
+ * 因此 token 数按 code point 数除以 chars-per-token 估算（常见 BPE 词表处理 Java 代码约 3 个字符一个 token），
+ * 上限与节省量都是该估算值。
+ * <p>
+ * 相关度取 {@link HybridRetriever} 返回的向量相似度；只由词法检索命中的结果没有向量分数，不参与阈值过滤，
+ * 相关度按通过阈值的候选中最低的向量分数计。示例间的相似度为新旧方法标识符子词集合的 Jaccard 系数，
+ * 不需要额外的 Embedding 调用。
+ */
+@Slf4j
+@Component
+public class RagExampleSelector {
+
+    private final RagExampleRenderer renderer;
+    private final double charsPerToken;
+    private final double similarityThreshold;
+    private final double mmrLambda;
+    private final double duplicateThreshold;
+    private final int maxTokens;
+    private final int candidateFactor;
+
+    public RagExampleSelector(RagExampleRenderer renderer,
+                              @Value("${app.rag.selection.chars-per-token:3.0}") double charsPerToken,
+                              @Value("${app.rag.selection.similarity-threshold:0.5}") double similarityThreshold,
+                              @Value("${app.rag.selection.mmr-lambda:0.7}") double mmrLambda,
+                              @Value("${app.rag.selection.duplicate-threshold:0.9}") double duplicateThreshold,
+                              @Value("${app.rag.selection.max-tokens:4000}") int maxTokens,
+                              @Value("${app.rag.selection.candidate-factor:2}") int candidateFactor) {
+        this.renderer = renderer;
+        this.charsPerToken = charsPerToken > 0 ? charsPerToken : 3.0;
+        this.similarityThreshold = similarityThreshold;
+        this.mmrLambda = Math.min(1.0, Math.max(0.0, mmrLambda));
+        this.duplicateThreshold = duplicateThreshold;
+        this.maxTokens = maxTokens;
+        this.candidateFactor = Math.max(1, candidateFactor);
+    }
+
+    /**
+     * 为挑选 k 个示例应检索的候选数
+     */
+    public int candidateCount(int k) {
+        return k * candidateFactor;
+    }
+
+    /**
+     * 从按检索排名排列的候选中挑选至多 k 个示例
+     */
+    public Selection select(List<Document> candidates, int k) {
+        List<Candidate> pool = new ArrayList<>(candidates.size());
+        int baselineTokens = 0;
+        double minScore = Double.MAX_VALUE;
+        for (Document document : candidates) {
+            if (document == null || document.getText() == null || document.getText().isEmpty()) {
+                continue;
+            }
+            String snippet;
+            try {
+                snippet = renderer.snippet(document);
+            } catch (Exception e) {
+                log.warn("解析RAG示例失败，跳过该条向量结果", e);
+                continue;
+            }
+            Candidate candidate = new Candidate(document, snippet, estimateTokens(snippet), terms(document));
+            // 原先固定取检索结果的前 k 条，以此作为节省 token 的基准
+            if (pool.size() < k) {
+                baselineTokens += candidate.tokens;
+            }
+            pool.add(candidate);
+            if (document.getScore() != null && document.getScore() >= similarityThreshold) {
+                minScore = Math.min(minScore, document.getScore());
+            }
+        }
+
+        int belowThreshold = 0;
+        List<Candidate> relevant = new ArrayList<>(pool.size());
+        for (int i = 0; i < pool.size(); i++) {
+            Candidate candidate = pool.get(i);
+            Double score = candidate.document.getScore();
+            if (score != null && score < similarityThreshold) {
+                belowThreshold++;
+                continue;
+            }
+            candidate.relevance = score != null ? score
+                    : minScore != Double.MAX_VALUE ? minScore
+                    : 1.0 - (double) i / pool.size();
+            relevant.add(candidate);
+        }
+
+        int redundant = 0;
+        int overBudget = 0;
+        int usedTokens = 0;
+        List<Candidate> selected = new ArrayList<>(k);
+        while (selected.size() < k && !relevant.isEmpty()) {
+            int bestIndex = -1;
+            double bestMmr = -Double.MAX_VALUE;
+            double bestRedundancy = 0;
+            for (int i = 0; i < relevant.size(); i++) {
+                Candidate candidate = relevant.get(i);
+                double redundancy = 0;
+                for (Candidate chosen : selected) {
+                    redundancy = Math.max(redundancy, jaccard(candidate.terms, chosen.terms));
+                }
+                double mmr = mmrLambda * candidate.relevance - (1 - mmrLambda) * redundancy;
+                if (mmr > bestMmr) {
+                    bestMmr = mmr;
+                    bestIndex = i;
+                    bestRedundancy = redundancy;
+                }
+            }
+            Candidate best = relevant.remove(bestIndex);
+            if (bestRedundancy >= duplicateThreshold) {
+                redundant++;
+                continue;
+            }
+            if (maxTokens > 0 && !selected.isEmpty() && usedTokens + best.tokens > maxTokens) {
+                overBudget++;
+                continue;
+            }
+            selected.add(best);
+            usedTokens += best.tokens;
+        }
+
+        List<String> snippets = new ArrayList<>(selected.size());
+        for (Candidate candidate : selected) {
+            snippets.add(candidate.snippet);
+        }
+        return new Selection(snippets, pool.size(), belowThreshold, redundant, overBudget,
+                usedTokens, Math.max(0, baselineTokens - usedTokens));
+    }
+
+    /**
+     * 按字符数估算片段在 LLM 提示词中的 token 数
+     */
+    private int estimateTokens(String snippet) {
+        return (int) Math.ceil(snippet.codePointCount(0, snippet.length()) / charsPerToken);
+    }
+
+    private static Set<String> terms(Document document) {
+        Object srcMethod = document.getMetadata().get("src_method");
+        Object dstMethod = document.getMetadata().get("dst_method");
+        Set<String> terms = new HashSet<>();
+        if (srcMethod == null && dstMethod == null) {
+            terms.addAll(LexicalIndex.tokenize(document.getText()));
+            return terms;
+        }
+        terms.addAll(LexicalIndex.tokenize(srcMethod == null ? null : srcMethod.toString()));
+        terms.addAll(LexicalIndex.tokenize(dstMethod == null ? null : dstMethod.toString()));
+        return terms;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int intersection = 0;
+        for (String term : smaller) {
+            if (larger.contains(term)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    private static final class Candidate {
+
+        private final Document document;
+        private final String snippet;
+        private final int tokens;
+        private final Set<String> terms;
+        private double relevance;
+
+        private Candidate(Document document, String snippet, int tokens, Set<String> terms) {
+            this.document = document;
+            this.snippet = snippet;
+            this.tokens = tokens;
+            this.terms = terms;
+        }
+    }
+
+    /**
+     * @param snippets       选中的示例片段，按挑选顺序
+     * @param candidates     参与挑选的候选数
+     * @param belowThreshold 相似度低于阈值被丢弃的数量
+     * @param redundant      与已选示例重复被丢弃的数量
+     * @param overBudget     超出 token 上限被丢弃的数量
+     * @param estimatedTokens      选中示例的估算 LLM token 数
+     * @param estimatedTokensSaved 相比固定取前 k 条节省的估算 LLM token 数
+     */
+    public record Selection(List<String> snippets, int candidates, int belowThreshold, int redundant,
+                            int overBudget, int estimatedTokens, int estimatedTokensSaved) {
+
+        public Map<String, Object> toMetadata() {
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            metadata.put("ragCandidates", candidates);
+            metadata.put("ragExamples", snippets.size());
+            metadata.put("ragBelowThreshold", belowThreshold);
+            metadata.put("ragRedundant", redundant);
+            metadata.put("ragOverBudget", overBudget);
+            metadata.put("ragEstimatedTokens", estimatedTokens);
+            metadata.put("ragEstimatedTokensSaved", estimatedTokensSaved);
+            return metadata;
+        }
+    }
+}
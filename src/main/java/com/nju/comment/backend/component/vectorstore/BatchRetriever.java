@@ -0,0 +1,150 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+import com.nju.comment.backend.component.embedding.QueryEmbeddingCache;
+import com.nju.comment.backend.component.ingestion.EmbeddingBatchPacker;
+import com.nju.comment.backend.component.ingestion.EditType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多个方法的 RAG 示例批量检索，结果与 {@link HybridRetriever#retrieve} 逐条检索一致。
+ * <p>
+ * 未命中 {@link QueryEmbeddingCache} 的查询按入库的批次上限合并为尽量少的 Embedding 请求，所有查询的向量检索经
+ * {@link MultiVectorSearch} 一次完成（不带编辑类型过滤，按 {@link HybridRetriever} 同样的规则从候选中优先挑选同类型示例）；
+ * 词法检索在进程内逐条执行后与向量结果融合。
+ * 当前向量库不支持多查询检索时逐条调用 {@link HybridRetriever}。
+ */
+@Slf4j
+@Component
+public class BatchRetriever {
+
+    private final HybridRetriever hybridRetriever;
+    private final ObjectProvider<MultiVectorSearch> multiVectorSearch;
+    private final VectorSearchRequests vectorSearchRequests;
+    private final EmbeddingModel embeddingModel;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final EmbeddingTokenEstimator tokenEstimator;
+    private final int embeddingBatchSize;
+    private final int embeddingBatchMaxTokens;
+
+    public BatchRetriever(HybridRetriever hybridRetriever,
+                          ObjectProvider<MultiVectorSearch> multiVectorSearch,
+                          VectorSearchRequests vectorSearchRequests,
+                          EmbeddingModel embeddingModel,
+                          QueryEmbeddingCache queryEmbeddingCache,
+                          EmbeddingTokenEstimator tokenEstimator,
+                          @Value("${app.vectorstore.embedding-batch-size:32}") int embeddingBatchSize,
+                          @Value("${app.vectorstore.embedding-batch-max-tokens:32000}") int embeddingBatchMaxTokens) {
+        this.hybridRetriever = hybridRetriever;
+        this.multiVectorSearch = multiVectorSearch;
+        this.vectorSearchRequests = vectorSearchRequests;
+        this.embeddingModel = embeddingModel;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.tokenEstimator = tokenEstimator;
+        this.embeddingBatchSize = embeddingBatchSize;
+        this.embeddingBatchMaxTokens = embeddingBatchMaxTokens;
+    }
+
+    /**
+     * @param query      向量检索查询文本
+     * @param methodText 词法检索查询（新旧方法代码）
+     * @param editType   优先返回该编辑类型的示例，为 null 时不区分
+     */
+    public record Query(String query, String methodText, EditType editType) {
+    }
+
+    /**
+     * @param searchParams 向量检索参数 JSON，对本批所有查询生效，可为空
+     * @return 与 queries 按下标对应的检索结果
+     */
+    public List<List<Document>> retrieveAll(List<Query> queries, int topK, String searchParams) {
+        if (queries.isEmpty()) {
+            return List.of();
+        }
+        MultiVectorSearch search = multiVectorSearch.getIfAvailable();
+        if (hybridRetriever.lexicalOnly() || search == null) {
+            List<List<Document>> results = new ArrayList<>(queries.size());
+            for (Query query : queries) {
+                results.add(hybridRetriever.retrieve(query.query(), query.methodText(), topK, searchParams, query.editType()));
+            }
+            return results;
+        }
+
+        int candidates = hybridRetriever.vectorCandidates(topK);
+        for (Query query : queries) {
+            candidates = Math.max(candidates, hybridRetriever.vectorCandidates(topK, query.editType()));
+        }
+        List<List<Document>> vectorResults;
+        try {
+            vectorResults = search.similaritySearch(embed(queries), candidates, vectorSearchRequests.params(searchParams), null);
+        } catch (RuntimeException e) {
+            List<List<Document>> results = new ArrayList<>(queries.size());
+            for (Query query : queries) {
+                results.add(hybridRetriever.fallback(e, query.methodText(), topK, query.editType()));
+            }
+            return results;
+        }
+
+        List<List<Document>> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            Query query = queries.get(i);
+            results.add(hybridRetriever.merge(vectorResults.get(i), query.methodText(), topK, query.editType()));
+        }
+        return results;
+    }
+
+    /**
+     * 查询向量优先取缓存，其余去重后按入库同样的条数与 token 上限分批算出并写回缓存
+     */
+    private List<float[]> embed(List<Query> queries) {
+        Map<String, float[]> embeddings = new HashMap<>();
+        LinkedHashSet<String> missing = new LinkedHashSet<>();
+        for (Query query : queries) {
+            float[] cached = queryEmbeddingCache.get(query.query());
+            if (cached != null) {
+                embeddings.put(query.query(), cached);
+            } else {
+                missing.add(query.query());
+            }
+        }
+        EmbeddingBatchPacker packer = new EmbeddingBatchPacker(embeddingBatchSize, embeddingBatchMaxTokens);
+        for (String text : missing) {
+            int tokens = tokenEstimator.estimate(text);
+            if (!packer.canAccept(tokens)) {
+                embedBatch(packer.drain(), embeddings);
+            }
+            packer.add(Document.builder().text(text).build(), tokens);
+        }
+        if (!packer.isEmpty()) {
+            embedBatch(packer.drain(), embeddings);
+        }
+        List<float[]> result = new ArrayList<>(queries.size());
+        for (Query query : queries) {
+            result.add(embeddings.get(query.query()));
+        }
+        return result;
+    }
+
+    private void embedBatch(EmbeddingBatchPacker.PackedBatch batch, Map<String, float[]> embeddings) {
+        List<String> texts = batch.documents().stream().map(Document::getText).toList();
+        EmbeddingResponse response = embeddingModel.call(new EmbeddingRequest(texts, null));
+        for (int i = 0; i < texts.size(); i++) {
+            float[] embedding = response.getResults().get(i).getOutput();
+            embeddings.put(texts.get(i), embedding);
+            queryEmbeddingCache.put(texts.get(i), embedding);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.ai.document.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按序号追加写的文档记录文件：{@code records.dat} 存放 {@code [len][json]}，
+ * {@code records.idx} 依序记录 {@code (docId, offset, len)}，{@code deleted.log} 记录删除的序号。
+ * <p>
+ * 单写多读：已写满的 64MB 段以只读方式内存映射，读取直接从映射区拷贝，
+ * 尚未写满的尾段与跨段记录使用 FileChannel 的定位读，均不共享位置，可并发；
+ * 打开时只保留前 committed 条（与向量索引已提交的节点数对齐），丢弃崩溃前未提交的尾部。
+ */
+final class DocumentRecordFile implements Closeable {
+
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final FileChannel data;
+    private final FileChannel index;
+    private final DataOutputStream indexOutput;
+    private final DataOutputStream deletedOutput;
+
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private final Set<Integer> deleted = ConcurrentHashMap.newKeySet();
+    private volatile long[] offsets = new long[1024];
+    private volatile int[] lengths = new int[1024];
+    private volatile int size;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long dataEnd;
+
+    private DocumentRecordFile(Path dir, ObjectMapper objectMapper, int committed) throws IOException {
+        this.objectMapper = objectMapper;
+        this.data = FileChannel.open(dir.resolve("records.dat"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = FileChannel.open(dir.resolve("records.idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long indexEnd = loadIndex(committed);
+        index.truncate(indexEnd);
+        data.truncate(dataEnd);
+        mapFullSegments();
+        index.position(indexEnd);
+        this.indexOutput = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(index), 64 * 1024));
+
+        Path deletedLog = dir.resolve("deleted.log");
+        loadDeleted(deletedLog);
+        this.deletedOutput = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(deletedLog, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    static DocumentRecordFile open(Path dir, ObjectMapper objectMapper, int committed) throws IOException {
+        Files.createDirectories(dir);
+        return new DocumentRecordFile(dir, objectMapper, committed);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 文档 id 对应的序号，不存在返回 null
+     */
+    Integer ordinalOf(String docId) {
+        return docId == null ? null : ordinals.get(docId);
+    }
+
+    boolean isDeleted(int ordinal) {
+        return !deleted.isEmpty() && deleted.contains(ordinal);
+    }
+
+    /**
+     * 追加一条文档，返回其序号；仅写线程调用
+     */
+    int append(Document document) throws IOException {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("id", document.getId());
+        node.put("text", document.getText());
+        node.set("metadata", objectMapper.valueToTree(document.getMetadata()));
+        byte[] bytes = objectMapper.writeValueAsBytes(node);
+
+        int ordinal = size;
+        long offset = dataEnd;
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+        buffer.putInt(bytes.length).put(bytes).flip();
+        while (buffer.hasRemaining()) {
+            data.write(buffer, offset + buffer.position());
+        }
+        dataEnd = offset + Integer.BYTES + bytes.length;
+        mapFullSegments();
+
+        byte[] idBytes = document.getId().getBytes(StandardCharsets.UTF_8);
+        indexOutput.writeShort(idBytes.length);
+        indexOutput.write(idBytes);
+        indexOutput.writeLong(offset);
+        indexOutput.writeInt(bytes.length);
+        record(ordinal, document.getId(), offset, bytes.length);
+        return ordinal;
+    }
+
+    /**
+     * 按序号读取文档
+     */
+    Document read(int ordinal) throws IOException {
+        long position = offsets[ordinal] + Integer.BYTES;
+        int length = lengths[ordinal];
+        byte[] bytes = new byte[length];
+        MappedByteBuffer[] mapped = segments;
+        int segment = (int) (position / SEGMENT_BYTES);
+        int inSegment = (int) (position % SEGMENT_BYTES);
+        if (segment < mapped.length && inSegment + length <= SEGMENT_BYTES) {
+            mapped[segment].get(inSegment, bytes);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (data.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("文档记录不完整: ordinal=" + ordinal);
+                }
+            }
+        }
+        ObjectNode node = (ObjectNode) objectMapper.readTree(bytes);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> metadata = node.hasNonNull("metadata")
+                ? objectMapper.convertValue(node.get("metadata"), Map.class)
+                : new HashMap<>();
+        return Document.builder()
+                .id(node.get("id").asText())
+                .text(node.path("text").asText(""))
+                .metadata(metadata)
+                .build();
+    }
+
+    void markDeleted(int ordinal) throws IOException {
+        if (deleted.add(ordinal)) {
+            deletedOutput.writeInt(ordinal);
+        }
+    }
+
+    void flush() throws IOException {
+        indexOutput.flush();
+        deletedOutput.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        indexOutput.close();
+        deletedOutput.close();
+        data.force(false);
+        data.close();
+    }
+
+    /**
+     * 映射已完整写入的段；映射区间始终在文件范围内，之后不再截断文件
+     */
+    private void mapFullSegments() throws IOException {
+        int full = (int) (dataEnd / SEGMENT_BYTES);
+        MappedByteBuffer[] current = segments;
+        if (full <= current.length) {
+            return;
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(current, full);
+        for (int i = current.length; i < full; i++) {
+            grown[i] = data.map(FileChannel.MapMode.READ_ONLY, i * SEGMENT_BYTES, SEGMENT_BYTES);
+        }
+        segments = grown;
+    }
+
+    private void record(int ordinal, String docId, long offset, int length) {
+        if (ordinal == offsets.length) {
+            int capacity = offsets.length * 2;
+            lengths = Arrays.copyOf(lengths, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        offsets[ordinal] = offset;
+        lengths[ordinal] = length;
+        ordinals.put(docId, ordinal);
+        size = ordinal + 1;
+    }
+
+    private long loadIndex(int committed) throws IOException {
+        long indexEnd = 0;
+        dataEnd = 0;
+        long dataSize = data.size();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(index.position(0)), 64 * 1024));
+        try {
+            while (size < committed) {
+                byte[] idBytes = new byte[in.readUnsignedShort()];
+                in.readFully(idBytes);
+                long offset = in.readLong();
+                int length = in.readInt();
+                long end = offset + Integer.BYTES + length;
+                if (end > dataSize) {
+                    break;
+                }
+                record(size, new String(idBytes, StandardCharsets.UTF_8), offset, length);
+                dataEnd = end;
+                indexEnd += Short.BYTES + idBytes.length + Long.BYTES + Integer.BYTES;
+            }
+        } catch (EOFException ignored) {
+            // 索引尾部可能是未写完的记录
+        }
+        return indexEnd;
+    }
+
+    private void loadDeleted(Path deletedLog) throws IOException {
+        if (!Files.exists(deletedLog)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(deletedLog)))) {
+            while (true) {
+                int ordinal = in.readInt();
+                if (ordinal < size) {
+                    deleted.add(ordinal);
+                }
+            }
+        } catch (EOFException ignored) {
+            // 读取完毕
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.VectorStoreException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * RAG 示例正文的本地存储，按 docId 读取完整文档（正文与 src/dst 方法、注释元数据）。
+ * <p>
+ * 入库时与向量同批写入；{@link LexicalIndex} 以其序号作为倒排表的文档号，
+ * payload 精简模式下 Milvus 只保存向量与 docId，检索结果由 {@link SlimPayloadVectorStore} 从这里补全正文。
+ * 词法索引与精简模式都关闭时不启用。
+ * <p>
+ * 存储只在本进程内，内容来自本节点执行的入库：已有向量库开启词法索引或精简模式后需在每个实例上重新入库一次，
+ * 多实例分布式入库时各节点只持有自己处理的分区，因此词法索引与精简模式都不能与分布式入库同时开启。
+ */
+@Slf4j
+@Component
+public class ExampleRecordStore {
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path path;
+
+    private final Object writeMonitor = new Object();
+    private DocumentRecordFile records;
+
+    public ExampleRecordStore(ObjectMapper objectMapper,
+                              @Value("${app.vectorstore.lexical.enabled:true}") boolean lexicalEnabled,
+                              @Value("${app.vectorstore.payload.mode:full}") String payloadMode,
+                              @Value("${app.vectorstore.records.path:data/records}") String path) {
+        this.objectMapper = objectMapper;
+        this.enabled = lexicalEnabled || "slim".equalsIgnoreCase(payloadMode);
+        this.path = Path.of(path);
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            log.info("示例正文存储未启用");
+            return;
+        }
+        try {
+            records = DocumentRecordFile.open(path, objectMapper, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "打开示例正文存储失败: " + path, e);
+        }
+        log.info("示例正文存储已加载: path={}, documents={}", path, records.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (records == null) {
+            return;
+        }
+        synchronized (writeMonitor) {
+            try {
+                records.close();
+            } catch (IOException e) {
+                log.warn("关闭示例正文存储失败", e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size() {
+        return records == null ? 0 : records.size();
+    }
+
+    /**
+     * 写入一批文档，已存在的 docId 忽略
+     */
+    public void putAll(List<Document> documents) {
+        if (records == null || documents.isEmpty()) {
+            return;
+        }
+        synchronized (writeMonitor) {
+            try {
+                for (Document document : documents) {
+                    if (records.ordinalOf(document.getId()) == null) {
+                        records.append(document);
+                    }
+                }
+                records.flush();
+            } catch (IOException e) {
+                throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "写入示例正文存储失败", e);
+            }
+        }
+    }
+
+    /**
+     * 按 docId 读取文档，不存在或已删除返回 null
+     */
+    public Document get(String docId) {
+        if (records == null) {
+            return null;
+        }
+        Integer ordinal = records.ordinalOf(docId);
+        return ordinal == null ? null : get(ordinal);
+    }
+
+    /**
+     * 按序号读取文档，已删除返回 null
+     */
+    public Document get(int ordinal) {
+        if (records.isDeleted(ordinal)) {
+            return null;
+        }
+        try {
+            return records.read(ordinal);
+        } catch (IOException e) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_QUERY_ERROR, "读取示例正文失败: ordinal=" + ordinal, e);
+        }
+    }
+
+    boolean isDeleted(int ordinal) {
+        return records.isDeleted(ordinal);
+    }
+
+    public void delete(List<String> docIds) {
+        if (records == null) {
+            return;
+        }
+        synchronized (writeMonitor) {
+            try {
+                for (String docId : docIds) {
+                    Integer ordinal = records.ordinalOf(docId);
+                    if (ordinal != null) {
+                        records.markDeleted(ordinal);
+                    }
+                }
+                records.flush();
+            } catch (IOException e) {
+                throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "删除示例正文失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.VarHandle;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于内积（向量入库前已归一化，等价余弦）的 HNSW 近邻图。
+ * <p>
+ * 存储布局（目录内）：
+ * <ul>
+ *     <li>{@code vectors.f32}：按节点号排列的 float32 向量，内存映射；</li>
+ *     <li>{@code links0.i32}：第 0 层邻接表，每节点一个定长槽位 {@code [count, id × 2M]}，内存映射；</li>
+ *     <li>{@code upper.log}：第 1 层及以上的邻接表（约 1/M 的节点），常驻堆内，变更追加写日志，关闭时压缩；</li>
+ *     <li>{@code graph.meta}：节点数、入口点与最高层，每批写入后原子替换。</li>
+ * </ul>
+ * 单写多读：插入由调用方串行化；节点在 {@link Head} 发布后才对读线程可见，
+ * 读线程忽略编号不小于已发布节点数的邻居，因此与写线程并发时只会看到略旧的图。
+ * 重启时仅映射文件并回放上层日志，无需重建。
+ */
+final class HnswGraph implements Closeable {
+
+    private static final int META_MAGIC = 0x484E5357; // "HNSW"
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+
+    private final Path dir;
+    private final int dimension;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelFactor;
+
+    private final MappedSlotFile vectors;
+    private final MappedSlotFile links;
+    private final Map<Integer, int[][]> upper = new ConcurrentHashMap<>();
+    private DataOutputStream upperLog;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ThreadLocal<SearchScratch> scratch;
+    private volatile Head head = new Head(0, -1, -1);
+
+    private HnswGraph(Path dir, int dimension, int m, int efConstruction, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.dimension = dimension;
+        this.m = Math.max(4, m);
+        this.m0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelFactor = 1.0 / Math.log(this.m);
+        this.vectors = new MappedSlotFile(dir.resolve("vectors.f32"), dimension * Float.BYTES, segmentBytes);
+        this.links = new MappedSlotFile(dir.resolve("links0.i32"), (1 + m0) * Integer.BYTES, segmentBytes);
+        this.scratch = ThreadLocal.withInitial(() -> new SearchScratch(m0, dimension));
+    }
+
+    static HnswGraph open(Path dir, int dimension, int m, int efConstruction, long segmentBytes) throws IOException {
+        Files.createDirectories(dir);
+        HnswGraph graph = new HnswGraph(dir, dimension, m, efConstruction, segmentBytes);
+        graph.load();
+        return graph;
+    }
+
+    int size() {
+        return head.size;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 插入一个已归一化的向量，返回节点号。调用方保证串行调用。
+     */
+    int insert(float[] vector) throws IOException {
+        Head current = head;
+        int node = current.size;
+        vectors.ensureCapacity(node + 1);
+        links.ensureCapacity(node + 1);
+        FloatBuffer vectorBuffer = vectors.floats(node);
+        int vectorOffset = vectors.offset(node);
+        for (int i = 0; i < dimension; i++) {
+            vectorBuffer.put(vectorOffset + i, vector[i]);
+        }
+        links.ints(node).put(links.offset(node), 0);
+
+        int level = randomLevel();
+        if (level > 0) {
+            int[][] lists = new int[level][];
+            for (int l = 0; l < level; l++) {
+                lists[l] = new int[0];
+                logUpper(node, l + 1, lists[l]);
+            }
+            upper.put(node, lists);
+        }
+        if (current.entryPoint < 0) {
+            head = new Head(1, node, level);
+            return node;
+        }
+
+        SearchScratch s = scratch.get();
+        int entry = current.entryPoint;
+        float entryScore = dot(vector, entry);
+        for (int l = current.maxLevel; l > level; l--) {
+            long best = greedy(vector, entry, entryScore, l, node);
+            entry = nodeOf(best);
+            entryScore = scoreOf(best);
+        }
+        for (int l = Math.min(level, current.maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(vector, entry, entryScore, efConstruction, l, node, s);
+            int maxLinks = l == 0 ? m0 : m;
+            int[] selected = selectNeighbors(candidates, candidates.length, maxLinks, s);
+            setNeighbors(node, l, selected, selected.length);
+            for (int neighbor : selected) {
+                connect(neighbor, node, l, maxLinks, s);
+            }
+            entry = nodeOf(candidates[0]);
+            entryScore = scoreOf(candidates[0]);
+        }
+
+        head = level > current.maxLevel
+                ? new Head(node + 1, node, level)
+                : new Head(node + 1, current.entryPoint, current.maxLevel);
+        return node;
+    }
+
+    /**
+     * 检索与 query（已归一化）内积最大的至多 ef 个节点，按相似度降序
+     */
+    Hits search(float[] query, int ef) {
+        Head current = head;
+        if (current.entryPoint < 0) {
+            return new Hits(new int[0], new float[0]);
+        }
+        SearchScratch s = scratch.get();
+        int entry = current.entryPoint;
+        float entryScore = dot(query, entry);
+        for (int l = current.maxLevel; l > 0; l--) {
+            long best = greedy(query, entry, entryScore, l, current.size);
+            entry = nodeOf(best);
+            entryScore = scoreOf(best);
+        }
+        long[] found = searchLayer(query, entry, entryScore, Math.max(1, ef), 0, current.size, s);
+        int[] nodes = new int[found.length];
+        float[] scores = new float[found.length];
+        for (int i = 0; i < found.length; i++) {
+            nodes[i] = nodeOf(found[i]);
+            scores[i] = scoreOf(found[i]);
+        }
+        return new Hits(nodes, scores);
+    }
+
+    float[] vector(int node) {
+        float[] out = new float[dimension];
+        vectors.floats(node).get(vectors.offset(node), out, 0, dimension);
+        return out;
+    }
+
+    /**
+     * 持久化已发布的节点数与入口点，使之前的插入在重启后可见
+     */
+    void commit() throws IOException {
+        upperLog.flush();
+        Head current = head;
+        Path tmp = dir.resolve("graph.meta.tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeInt(META_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            out.writeInt(current.size);
+            out.writeInt(current.entryPoint);
+            out.writeInt(current.maxLevel);
+        }
+        Files.move(tmp, dir.resolve("graph.meta"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+        upperLog.close();
+        compactUpperLog(false);
+        vectors.close();
+        links.close();
+    }
+
+    private long greedy(float[] query, int entry, float entryScore, int level, int limit) {
+        SearchScratch s = scratch.get();
+        int best = entry;
+        float bestScore = entryScore;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int count = neighbors(best, level, s.neighbors);
+            for (int i = 0; i < count; i++) {
+                int candidate = s.neighbors[i];
+                if (candidate >= limit) {
+                    continue;
+                }
+                float score = dot(query, candidate);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = candidate;
+                    improved = true;
+                }
+            }
+        }
+        return pack(bestScore, best);
+    }
+
+    /**
+     * 单层束搜索，返回按相似度降序的 (score, node) 打包值
+     */
+    private long[] searchLayer(float[] query, int entry, float entryScore, int ef, int level, int limit, SearchScratch s) {
+        s.visited.clear();
+        s.candidates.clear();
+        s.results.clear();
+        s.visited.add(entry);
+        long packedEntry = pack(entryScore, entry);
+        s.candidates.push(~packedEntry);
+        s.results.push(packedEntry);
+
+        int[] neighbors = s.neighbors;
+        while (!s.candidates.isEmpty()) {
+            long candidate = ~s.candidates.pop();
+            if (s.results.size() >= ef && scoreOf(candidate) < scoreOf(s.results.peek())) {
+                break;
+            }
+            int count = neighbors(nodeOf(candidate), level, neighbors);
+            for (int i = 0; i < count; i++) {
+                int neighbor = neighbors[i];
+                if (neighbor >= limit || !s.visited.add(neighbor)) {
+                    continue;
+                }
+                float score = dot(query, neighbor);
+                if (s.results.size() < ef || score > scoreOf(s.results.peek())) {
+                    long packed = pack(score, neighbor);
+                    s.candidates.push(~packed);
+                    s.results.push(packed);
+                    if (s.results.size() > ef) {
+                        s.results.pop();
+                    }
+                }
+            }
+        }
+
+        long[] sorted = new long[s.results.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = s.results.pop();
+        }
+        return sorted;
+    }
+
+    /**
+     * HNSW 启发式邻居选择：候选按相似度降序，仅当其与目标的相似度高于与任一已选邻居的相似度时保留，
+     * 不足 maxLinks 时再用被剪掉的候选补齐
+     */
+    private int[] selectNeighbors(long[] candidates, int count, int maxLinks, SearchScratch s) {
+        if (count <= maxLinks) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = nodeOf(candidates[i]);
+            }
+            return all;
+        }
+        int[] selected = new int[maxLinks];
+        boolean[] taken = new boolean[count];
+        int size = 0;
+        for (int i = 0; i < count && size < maxLinks; i++) {
+            int candidate = nodeOf(candidates[i]);
+            float toTarget = scoreOf(candidates[i]);
+            vectors.floats(candidate).get(vectors.offset(candidate), s.vector, 0, dimension);
+            boolean keep = true;
+            for (int j = 0; j < size; j++) {
+                if (dot(s.vector, selected[j]) > toTarget) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[size++] = candidate;
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < count && size < maxLinks; i++) {
+            if (!taken[i]) {
+                selected[size++] = nodeOf(candidates[i]);
+            }
+        }
+        return size == maxLinks ? selected : Arrays.copyOf(selected, size);
+    }
+
+    /**
+     * 把 node 加入 neighbor 的邻接表，超出上限时按启发式重新裁剪
+     */
+    private void connect(int neighbor, int node, int level, int maxLinks, SearchScratch s) throws IOException {
+        int count = neighbors(neighbor, level, s.neighbors);
+        for (int i = 0; i < count; i++) {
+            if (s.neighbors[i] == node) {
+                return;
+            }
+        }
+        if (count < maxLinks) {
+            s.neighbors[count] = node;
+            setNeighbors(neighbor, level, s.neighbors, count + 1);
+            return;
+        }
+        float[] base = vector(neighbor);
+        long[] candidates = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            candidates[i] = pack(dot(base, s.neighbors[i]), s.neighbors[i]);
+        }
+        candidates[count] = pack(dot(base, node), node);
+        Arrays.sort(candidates);
+        reverse(candidates);
+        int[] selected = selectNeighbors(candidates, candidates.length, maxLinks, s);
+        setNeighbors(neighbor, level, selected, selected.length);
+    }
+
+    private int neighbors(int node, int level, int[] out) {
+        if (level == 0) {
+            IntBuffer buffer = links.ints(node);
+            int offset = links.offset(node);
+            int count = Math.min(buffer.get(offset), m0);
+            VarHandle.acquireFence();
+            buffer.get(offset + 1, out, 0, count);
+            return count;
+        }
+        int[][] lists = upper.get(node);
+        if (lists == null || lists.length < level) {
+            return 0;
+        }
+        int[] list = lists[level - 1];
+        System.arraycopy(list, 0, out, 0, list.length);
+        return list.length;
+    }
+
+    private void setNeighbors(int node, int level, int[] ids, int count) throws IOException {
+        if (level == 0) {
+            IntBuffer buffer = links.ints(node);
+            int offset = links.offset(node);
+            // 先写邻居再写数量，读线程最多看到旧的数量
+            buffer.put(offset + 1, ids, 0, count);
+            VarHandle.releaseFence();
+            buffer.put(offset, count);
+            return;
+        }
+        int[] list = Arrays.copyOf(ids, count);
+        int[][] lists = upper.get(node).clone();
+        lists[level - 1] = list;
+        upper.put(node, lists);
+        logUpper(node, level, list);
+    }
+
+    /**
+     * 先整段拷贝到线程私有数组再计算，比逐元素读取映射缓冲区快数倍
+     */
+    private float dot(float[] query, int node) {
+        float[] row = scratch.get().row;
+        vectors.floats(node).get(vectors.offset(node), row, 0, dimension);
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        float s4 = 0;
+        float s5 = 0;
+        float s6 = 0;
+        float s7 = 0;
+        int i = 0;
+        for (; i + 7 < dimension; i += 8) {
+            s0 += query[i] * row[i];
+            s1 += query[i + 1] * row[i + 1];
+            s2 += query[i + 2] * row[i + 2];
+            s3 += query[i + 3] * row[i + 3];
+            s4 += query[i + 4] * row[i + 4];
+            s5 += query[i + 5] * row[i + 5];
+            s6 += query[i + 6] * row[i + 6];
+            s7 += query[i + 7] * row[i + 7];
+        }
+        for (; i < dimension; i++) {
+            s0 += query[i] * row[i];
+        }
+        return (s0 + s1) + (s2 + s3) + (s4 + s5) + (s6 + s7);
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - random.nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(u) * levelFactor));
+    }
+
+    private void logUpper(int node, int level, int[] list) throws IOException {
+        upperLog.writeInt(node);
+        upperLog.writeInt(level);
+        upperLog.writeInt(list.length);
+        for (int id : list) {
+            upperLog.writeInt(id);
+        }
+    }
+
+    private void load() throws IOException {
+        Path meta = dir.resolve("graph.meta");
+        Head loaded = new Head(0, -1, -1);
+        if (Files.exists(meta)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(meta))) {
+                if (in.readInt() != META_MAGIC || in.readInt() != FORMAT_VERSION) {
+                    throw new IOException("HNSW 元数据格式不兼容: " + meta);
+                }
+                int storedDimension = in.readInt();
+                int storedM = in.readInt();
+                if (storedDimension != dimension || storedM != m) {
+                    throw new IOException("HNSW 索引参数与配置不一致: dimension=" + storedDimension + ", m=" + storedM);
+                }
+                loaded = new Head(in.readInt(), in.readInt(), in.readInt());
+            }
+        }
+        vectors.ensureCapacity(loaded.size);
+        links.ensureCapacity(loaded.size);
+
+        Path log = dir.resolve("upper.log");
+        if (Files.exists(log)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log), 64 * 1024))) {
+                while (true) {
+                    int node = in.readInt();
+                    int level = in.readInt();
+                    int count = in.readInt();
+                    int[] list = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        list[i] = in.readInt();
+                    }
+                    // 未提交（崩溃前未写入元数据）的节点及其连边丢弃
+                    if (node >= loaded.size) {
+                        continue;
+                    }
+                    int[][] lists = upper.get(node);
+                    if (lists == null || lists.length < level) {
+                        lists = lists == null ? new int[level][] : Arrays.copyOf(lists, level);
+                        for (int l = 0; l < level; l++) {
+                            if (lists[l] == null) {
+                                lists[l] = new int[0];
+                            }
+                        }
+                    }
+                    lists[level - 1] = list;
+                    upper.put(node, lists);
+                }
+            } catch (EOFException ignored) {
+                // 日志尾部可能是未写完的记录
+            }
+        }
+        head = loaded;
+        compactUpperLog(true);
+    }
+
+    /**
+     * 以当前堆内上层邻接表重写日志，去掉被覆盖的旧记录
+     */
+    private void compactUpperLog(boolean reopen) throws IOException {
+        Path log = dir.resolve("upper.log");
+        Path tmp = dir.resolve("upper.log.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024))) {
+            for (Map.Entry<Integer, int[][]> entry : upper.entrySet()) {
+                int[][] lists = entry.getValue();
+                for (int l = 0; l < lists.length; l++) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(l + 1);
+                    out.writeInt(lists[l].length);
+                    for (int id : lists[l]) {
+                        out.writeInt(id);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (!reopen) {
+            return;
+        }
+        OutputStream appender = Files.newOutputStream(log, StandardOpenOption.APPEND);
+        upperLog = new DataOutputStream(new BufferedOutputStream(appender, 64 * 1024));
+    }
+
+    private static long pack(float score, int node) {
+        int bits = Float.floatToRawIntBits(score);
+        int sortable = bits ^ ((bits >> 31) & 0x7FFFFFFF);
+        return ((long) sortable << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private static float scoreOf(long packed) {
+        int sortable = (int) (packed >> 32);
+        return Float.intBitsToFloat(sortable ^ ((sortable >> 31) & 0x7FFFFFFF));
+    }
+
+    private static int nodeOf(long packed) {
+        return (int) packed;
+    }
+
+    private static void reverse(long[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            long tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /**
+     * 检索结果，按相似度降序
+     */
+    record Hits(int[] nodes, float[] scores) {
+    }
+
+    private record Head(int size, int entryPoint, int maxLevel) {
+    }
+
+    /**
+     * 线程私有的检索临时结构，避免每次检索分配
+     */
+    private static final class SearchScratch {
+
+        private final int[] neighbors;
+        private final float[] vector;
+        private final float[] row;
+        private final VisitedSet visited = new VisitedSet();
+        private final LongHeap candidates = new LongHeap();
+        private final LongHeap results = new LongHeap();
+
+        private SearchScratch(int maxLinks, int dimension) {
+            this.neighbors = new int[maxLinks + 1];
+            this.vector = new float[dimension];
+            this.row = new float[dimension];
+        }
+    }
+
+    /**
+     * long 小顶堆
+     */
+    private static final class LongHeap {
+
+        private long[] heap = new long[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            if (size > 0) {
+                heap[i] = last;
+            }
+            return top;
+        }
+    }
+
+    /**
+     * 开放寻址的 int 集合，以代数标记清空，避免按节点总数分配位图
+     */
+    private static final class VisitedSet {
+
+        private int[] keys = new int[4096];
+        private int[] stamps = new int[4096];
+        private int stamp = 1;
+        private int size;
+
+        void clear() {
+            size = 0;
+            if (++stamp == 0) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+
+        boolean add(int key) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = (key * 0x9E3779B9) & mask;
+            while (stamps[slot] == stamp) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            stamps[slot] = stamp;
+            keys[slot] = key;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldStamps = stamps;
+            int current = stamp;
+            keys = new int[oldKeys.length * 2];
+            stamps = new int[oldKeys.length * 2];
+            stamp = 1;
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldStamps[i] == current) {
+                    add(oldKeys[i]);
+                }
+            }
+        }
+    }
+}
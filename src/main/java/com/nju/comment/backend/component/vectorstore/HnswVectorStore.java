@@ -0,0 +1,296 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.VectorStoreException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * 进程内 HNSW 向量库，作为 Milvus 的替代实现（{@code spring.ai.vectorstore.type=hnsw}）。
+ * <p>
+ * 向量与第 0 层邻接表位于内存映射文件中，文档正文以 JSON 追加写入记录文件，均在堆外；
+ * 检索无锁并发，写入（add / delete）串行化。每次 add 结束后提交元数据，
+ * 重启时直接映射已有文件即可提供检索，不需要重新向量化或重建图。
+ * <p>
+ * 检索束宽默认取 {@code app.vectorstore.hnsw.ef-search}，可由请求参数 {@code {"ef":N}} 覆盖（见 {@link VectorSearchRequests}），
+ * 不超过 {@code app.vectorstore.search.max-ef}。
+ * 过滤表达式（见 {@link MetadataFilters}）在候选上后过滤，束宽放大 {@value #FILTER_EF_FACTOR} 倍；按表达式删除扫描全部记录。
+ * 多查询检索（{@link MultiVectorSearch}）在进程内逐个查询图，没有网络往返。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+public class HnswVectorStore implements VectorStore, MultiVectorSearch {
+
+    private static final int FILTER_EF_FACTOR = 4;
+
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final BatchingStrategy batchingStrategy;
+    private final Path path;
+    private final int dimension;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int maxEf;
+    private final long segmentBytes;
+
+    private final Object writeMonitor = new Object();
+    private HnswGraph graph;
+    private DocumentRecordFile records;
+
+    public HnswVectorStore(EmbeddingModel embeddingModel,
+                           ObjectMapper objectMapper,
+                           BatchingStrategy batchingStrategy,
+                           @Value("${app.vectorstore.hnsw.path:data/hnsw}") String path,
+                           @Value("${app.vectorstore.hnsw.dimension:${spring.ai.vectorstore.milvus.embeddingDimension:1024}}") int dimension,
+                           @Value("${app.vectorstore.hnsw.m:16}") int m,
+                           @Value("${app.vectorstore.hnsw.ef-construction:200}") int efConstruction,
+                           @Value("${app.vectorstore.hnsw.ef-search:64}") int efSearch,
+                           @Value("${app.vectorstore.search.max-ef:512}") int maxEf,
+                           @Value("${app.vectorstore.hnsw.segment-bytes:268435456}") long segmentBytes) {
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.batchingStrategy = batchingStrategy;
+        this.path = Path.of(path);
+        this.dimension = dimension;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = Math.max(1, efSearch);
+        this.maxEf = Math.max(this.efSearch, maxEf);
+        this.segmentBytes = segmentBytes;
+    }
+
+    @PostConstruct
+    public void open() {
+        long start = System.currentTimeMillis();
+        try {
+            graph = HnswGraph.open(path, dimension, m, efConstruction, segmentBytes);
+            records = DocumentRecordFile.open(path, objectMapper, graph.size());
+        } catch (IOException e) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "打开 HNSW 索引失败: " + path, e);
+        }
+        if (records.size() != graph.size()) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR,
+                    "HNSW 索引与文档记录不一致: nodes=" + graph.size() + ", records=" + records.size());
+        }
+        log.info("HNSW 向量库已加载: path={}, dimension={}, documents={}, 耗时 {}ms",
+                path, dimension, graph.size(), System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (writeMonitor) {
+            try {
+                records.close();
+                graph.close();
+            } catch (IOException e) {
+                log.warn("关闭 HNSW 向量库失败", e);
+            }
+        }
+    }
+
+    @Override
+    public @NonNull String getName() {
+        return "HnswVectorStore";
+    }
+
+    public int size() {
+        return graph.size();
+    }
+
+    @Override
+    public void add(@NonNull List<Document> documents) {
+        List<Document> fresh = new ArrayList<>(documents.size());
+        Set<String> seen = new HashSet<>();
+        for (Document document : documents) {
+            if (records.ordinalOf(document.getId()) == null && seen.add(document.getId())) {
+                fresh.add(document);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        List<float[]> embeddings = embeddingModel.embed(fresh, EmbeddingOptionsBuilder.builder().build(), batchingStrategy);
+        synchronized (writeMonitor) {
+            try {
+                for (int i = 0; i < fresh.size(); i++) {
+                    Document document = fresh.get(i);
+                    if (records.ordinalOf(document.getId()) != null) {
+                        continue;
+                    }
+                    float[] vector = normalize(embeddings.get(i));
+                    int ordinal = records.append(document);
+                    int node = graph.insert(vector);
+                    if (node != ordinal) {
+                        throw new IllegalStateException("HNSW 节点号与文档序号不一致: node=" + node + ", ordinal=" + ordinal);
+                    }
+                }
+                records.flush();
+                graph.commit();
+            } catch (IOException e) {
+                throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "写入 HNSW 索引失败", e);
+            }
+        }
+    }
+
+    @Override
+    public void delete(@NonNull List<String> idList) {
+        synchronized (writeMonitor) {
+            try {
+                for (String id : idList) {
+                    Integer ordinal = records.ordinalOf(id);
+                    if (ordinal != null) {
+                        records.markDeleted(ordinal);
+                    }
+                }
+                records.flush();
+            } catch (IOException e) {
+                throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "删除 HNSW 文档失败", e);
+            }
+        }
+    }
+
+    /**
+     * 逐条读取未删除的文档，按元数据匹配后标记删除；需扫描全部记录，适合低频的运维操作
+     */
+    @Override
+    public void delete(Filter.@NonNull Expression filterExpression) {
+        Predicate<Map<String, Object>> filter = MetadataFilters.compile(filterExpression);
+        synchronized (writeMonitor) {
+            try {
+                int deleted = 0;
+                for (int ordinal = 0; ordinal < records.size(); ordinal++) {
+                    if (!records.isDeleted(ordinal) && filter.test(records.read(ordinal).getMetadata())) {
+                        records.markDeleted(ordinal);
+                        deleted++;
+                    }
+                }
+                records.flush();
+                log.info("HNSW 按过滤表达式删除文档: deleted={}", deleted);
+            } catch (IOException e) {
+                throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "删除 HNSW 文档失败", e);
+            }
+        }
+    }
+
+    @Override
+    public @NonNull List<Document> similaritySearch(@NonNull SearchRequest request) {
+        Predicate<Map<String, Object>> filter = request.hasFilterExpression()
+                ? MetadataFilters.compile(request.getFilterExpression())
+                : null;
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        int ef = VectorSearchRequests.intParam(request, "ef", efSearch, objectMapper);
+        return search(query, request.getTopK(), request.getSimilarityThreshold(), ef, filter);
+    }
+
+    @Override
+    public List<List<Document>> similaritySearch(List<float[]> queryEmbeddings, int topK, String searchParamsJson,
+                                                 Filter.Expression filter) {
+        Predicate<Map<String, Object>> predicate = filter == null ? null : MetadataFilters.compile(filter);
+        int ef = VectorSearchRequests.intParam(searchParamsJson, "ef", efSearch, objectMapper);
+        List<List<Document>> results = new ArrayList<>(queryEmbeddings.size());
+        for (float[] embedding : queryEmbeddings) {
+            results.add(search(normalize(embedding), topK, SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL, ef, predicate));
+        }
+        return results;
+    }
+
+    public List<Document> search(float[] normalizedQuery, int topK, double similarityThreshold) {
+        return search(normalizedQuery, topK, similarityThreshold, efSearch);
+    }
+
+    /**
+     * 以已计算的查询向量检索，返回相似度降序的文档，score 为余弦相似度
+     *
+     * @param ef 检索束宽，截断到 {@code app.vectorstore.search.max-ef} 后实际取 max(ef, topK)
+     */
+    public List<Document> search(float[] normalizedQuery, int topK, double similarityThreshold, int ef) {
+        return search(normalizedQuery, topK, similarityThreshold, ef, null);
+    }
+
+    /**
+     * @param filter 文档元数据谓词，为 null 时不过滤
+     */
+    public List<Document> search(float[] normalizedQuery, int topK, double similarityThreshold, int ef,
+                                 Predicate<Map<String, Object>> filter) {
+        if (normalizedQuery.length != dimension) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_QUERY_ERROR,
+                    "查询向量维度不一致: " + normalizedQuery.length + ", expected=" + dimension);
+        }
+        int beamWidth = Math.max(Math.max(1, Math.min(ef, maxEf)), topK);
+        HnswGraph.Hits hits = graph.search(normalizedQuery, filter == null ? beamWidth : beamWidth * FILTER_EF_FACTOR);
+        List<Document> results = new ArrayList<>(Math.min(topK, hits.nodes().length));
+        try {
+            for (int i = 0; i < hits.nodes().length && results.size() < topK; i++) {
+                float score = hits.scores()[i];
+                if (score < similarityThreshold) {
+                    break;
+                }
+                int node = hits.nodes()[i];
+                if (records.isDeleted(node)) {
+                    continue;
+                }
+                Document stored = records.read(node);
+                if (filter != null && !filter.test(stored.getMetadata())) {
+                    continue;
+                }
+                Map<String, Object> metadata = new HashMap<>(stored.getMetadata());
+                metadata.put(DocumentMetadata.DISTANCE.value(), 1.0f - score);
+                results.add(Document.builder()
+                        .id(stored.getId())
+                        .text(stored.getText())
+                        .metadata(metadata)
+                        .score((double) score)
+                        .build());
+            }
+        } catch (IOException e) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_QUERY_ERROR, "读取 HNSW 文档失败", e);
+        }
+        return results;
+    }
+
+    private float[] normalize(float[] vector) {
+        if (vector.length != dimension) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR,
+                    "向量维度与 HNSW 索引不一致: " + vector.length + ", expected=" + dimension);
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = (float) (vector[i] / norm);
+            }
+        }
+        return normalized;
+    }
+}
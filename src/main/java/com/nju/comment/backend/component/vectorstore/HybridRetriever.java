@@ -0,0 +1,237 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.nju.comment.backend.component.ingestion.EditType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * RAG 示例检索：向量检索与 {@link LexicalIndex} 的 BM25 检索按倒数排名融合（RRF）。
+ * <p>
+ * 两路各取 topK × candidate-factor 个候选，按 {@code Σ 1/(rrf-k + rank)} 重排后取前 topK，
+ * 标识符与 API 调用都相近的样本排在前面。向量检索失败（Embedding 限流、服务不可用等）时
+ * 退化为纯词法检索；mode 可设为 vector / lexical 只走单路。
+ * <p>
+ * 返回文档的 score 为向量相似度，只由词法检索命中的文档 score 为 null（BM25 分数与相似度不可比）。
+ * <p>
+ * 指定编辑类型时只检索一次：两路按 topK × candidate-factor 取不限类型的候选，融合后同类型的示例排在前面，
+ * 不足 topK 时按融合顺序用其余候选补齐。候选池之外的同类型示例不会被取到，需要更多同类型示例时调大 candidate-factor。
+ */
+@Slf4j
+@Component
+public class HybridRetriever {
+
+    private final VectorStore vectorStore;
+    private final VectorSearchRequests vectorSearchRequests;
+    private final LexicalIndex lexicalIndex;
+    private final String mode;
+    private final int candidateFactor;
+    private final int rrfK;
+
+    private final Counter fallbackCounter;
+    private final Counter backfillCounter;
+
+    public HybridRetriever(VectorStore vectorStore,
+                           VectorSearchRequests vectorSearchRequests,
+                           LexicalIndex lexicalIndex,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.vectorstore.hybrid.mode:hybrid}") String mode,
+                           @Value("${app.vectorstore.hybrid.candidate-factor:3}") int candidateFactor,
+                           @Value("${app.vectorstore.hybrid.rrf-k:60}") int rrfK) {
+        this.vectorStore = vectorStore;
+        this.vectorSearchRequests = vectorSearchRequests;
+        this.lexicalIndex = lexicalIndex;
+        this.mode = mode == null ? "hybrid" : mode.trim().toLowerCase(Locale.ROOT);
+        this.candidateFactor = Math.max(1, candidateFactor);
+        this.rrfK = Math.max(1, rrfK);
+        this.fallbackCounter = Counter.builder("rag.retrieval.lexical.fallback")
+                .description("向量检索失败后退化为词法检索的次数")
+                .register(meterRegistry);
+        this.backfillCounter = Counter.builder("rag.retrieval.edit-type.backfill")
+                .description("同编辑类型示例不足、以不限类型结果补齐的次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param query        向量检索查询文本
+     * @param methodText   词法检索查询（新旧方法代码）
+     * @param searchParams 单次请求的向量检索参数 JSON，可为空
+     */
+    public List<Document> retrieve(String query, String methodText, int topK, String searchParams) {
+        return retrieve(query, methodText, topK, searchParams, null);
+    }
+
+    /**
+     * @param editType 优先返回该编辑类型的示例，为 null 时不区分
+     */
+    public List<Document> retrieve(String query, String methodText, int topK, String searchParams, EditType editType) {
+        if (lexicalOnly()) {
+            return lexical(methodText, topK, editType);
+        }
+        List<Document> vectorResults;
+        try {
+            vectorResults = vectorStore.similaritySearch(vectorSearchRequests.build(
+                    query, vectorCandidates(topK, editType), searchParams, null));
+        } catch (RuntimeException e) {
+            return fallback(e, methodText, topK, editType);
+        }
+        return merge(vectorResults, methodText, topK, editType);
+    }
+
+    /**
+     * mode=lexical 且词法索引可用时只走词法检索
+     */
+    boolean lexicalOnly() {
+        return "lexical".equals(mode) && lexicalAvailable();
+    }
+
+    List<Document> lexical(String methodText, int topK, EditType editType) {
+        if (editType == null) {
+            return withoutScores(lexicalIndex.search(methodText, topK, null));
+        }
+        return preferEditType(withoutScores(lexicalIndex.search(methodText, topK * candidateFactor, null)), editType, topK);
+    }
+
+    /**
+     * 为取 topK 个结果，向量检索应返回的候选数
+     */
+    int vectorCandidates(int topK) {
+        return vectorCandidates(topK, null);
+    }
+
+    /**
+     * 融合或需按编辑类型挑选时多取候选
+     */
+    int vectorCandidates(int topK, EditType editType) {
+        return fuses() || editType != null ? topK * candidateFactor : topK;
+    }
+
+    /**
+     * 向量检索失败时退化为词法检索；词法索引不可用或检索被中断时原样抛出
+     */
+    List<Document> fallback(RuntimeException e, String methodText, int topK, EditType editType) {
+        if (!lexicalAvailable() || isInterrupted(e)) {
+            throw e;
+        }
+        fallbackCounter.increment();
+        log.warn("向量检索失败，退化为词法检索: {}", e.getMessage());
+        return lexical(methodText, topK, editType);
+    }
+
+    /**
+     * 把向量检索结果与词法检索结果融合为前 topK 个；指定编辑类型时先融合出全部候选再挑选
+     */
+    List<Document> merge(List<Document> vectorResults, String methodText, int topK, EditType editType) {
+        if (editType != null) {
+            int candidates = topK * candidateFactor;
+            List<Document> pool = fuses()
+                    ? fuse(vectorResults, lexicalIndex.search(methodText, candidates, null), candidates)
+                    : vectorResults;
+            return preferEditType(pool, editType, topK);
+        }
+        if (!fuses()) {
+            return vectorResults.size() > topK ? vectorResults.subList(0, topK) : vectorResults;
+        }
+        return fuse(vectorResults, lexicalIndex.search(methodText, vectorCandidates(topK), null), topK);
+    }
+
+    /**
+     * 按原顺序先取同编辑类型的候选，不足 topK 时用其余候选补齐
+     */
+    List<Document> preferEditType(List<Document> candidates, EditType editType, int topK) {
+        List<Document> selected = new ArrayList<>(Math.min(topK, candidates.size()));
+        List<Document> others = new ArrayList<>();
+        for (Document document : candidates) {
+            if (editType == editTypeOf(document)) {
+                if (selected.size() < topK) {
+                    selected.add(document);
+                }
+            } else {
+                others.add(document);
+            }
+        }
+        if (selected.size() < topK) {
+            backfillCounter.increment();
+            for (int i = 0; i < others.size() && selected.size() < topK; i++) {
+                selected.add(others.get(i));
+            }
+        }
+        return selected;
+    }
+
+    private static EditType editTypeOf(Document document) {
+        Object value = document.getMetadata().get(EditType.METADATA_KEY);
+        return value == null ? null : EditType.parse(value.toString());
+    }
+
+    private boolean lexicalAvailable() {
+        return lexicalIndex.isEnabled() && lexicalIndex.size() > 0;
+    }
+
+    private boolean fuses() {
+        return !"vector".equals(mode) && lexicalAvailable();
+    }
+
+    private List<Document> fuse(List<Document> vectorResults, List<Document> lexicalResults, int topK) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (int rank = 0; rank < vectorResults.size(); rank++) {
+            Document document = vectorResults.get(rank);
+            documents.put(document.getId(), document);
+            scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        for (int rank = 0; rank < lexicalResults.size(); rank++) {
+            Document document = lexicalResults.get(rank);
+            if (!documents.containsKey(document.getId())) {
+                documents.put(document.getId(), withoutScore(document));
+            }
+            scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()));
+        List<Document> fused = new ArrayList<>(Math.min(topK, ranked.size()));
+        for (int i = 0; i < ranked.size() && fused.size() < topK; i++) {
+            fused.add(documents.get(ranked.get(i).getKey()));
+        }
+        return fused;
+    }
+
+    private static List<Document> withoutScores(List<Document> documents) {
+        List<Document> result = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            result.add(withoutScore(document));
+        }
+        return result;
+    }
+
+    private static Document withoutScore(Document document) {
+        return Document.builder()
+                .id(document.getId())
+                .text(document.getText())
+                .metadata(document.getMetadata())
+                .build();
+    }
+
+    private static boolean isInterrupted(Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            if (current instanceof InterruptedException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return Thread.currentThread().isInterrupted();
+    }
+}
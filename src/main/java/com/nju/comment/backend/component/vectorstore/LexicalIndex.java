@@ -0,0 +1,340 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.nju.comment.backend.component.ingestion.EditType;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内 BM25 倒排索引，词项为方法代码按标识符切分后的小写子词（{@code getItemCount} → get / item / count / getitemcount），
+ * 去掉 Java 关键字与常见类型名。
+ * <p>
+ * 与向量同批写入（{@link #add}），文档正文存于 {@link ExampleRecordStore}，倒排表以其序号为文档号，
+ * 重启时从存储重新切词恢复。每个文档的编辑类型（{@link EditType#METADATA_KEY}）随倒排保存，检索时可按其过滤。
+ * 供 {@link HybridRetriever} 与向量结果融合，并在 Embedding 不可用时单独提供检索。
+ * <p>
+ * 索引只覆盖本节点入库的文档，不能与分布式入库同时开启（启动失败），分布式入库时需关闭词法索引，检索只走向量。
+ */
+@Slf4j
+@Component
+public class LexicalIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "public", "private", "protected", "static", "final", "void", "return", "new", "this", "super",
+            "if", "else", "for", "while", "do", "try", "catch", "finally", "throw", "throws", "class", "interface",
+            "extends", "implements", "import", "package", "null", "true", "false", "synchronized", "abstract",
+            "int", "long", "short", "byte", "char", "boolean", "float", "double", "string", "object", "var",
+            "instanceof", "case", "switch", "break", "continue", "default", "override",
+            "src", "dst", "method", "javadoc");
+
+    private final ExampleRecordStore recordStore;
+    private final boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private int[] docLengths = new int[1024];
+    private byte[] editTypes = new byte[1024];
+    private long totalLength;
+    private int indexed;
+
+    private final ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(Accumulator::new);
+
+    public LexicalIndex(ExampleRecordStore recordStore,
+                        @Value("${app.vectorstore.lexical.enabled:true}") boolean enabled,
+                        @Value("${app.vectorstore.ingest.distributed.enabled:false}") boolean distributedIngest) {
+        if (enabled && distributedIngest) {
+            // 分布式入库时各节点只索引自己处理的分区，词法检索与融合结果不完整
+            throw new IllegalStateException("app.vectorstore.lexical.enabled=true cannot be combined with app.vectorstore.ingest.distributed.enabled=true");
+        }
+        this.recordStore = recordStore;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            log.info("词法索引未启用");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        catchUp();
+        log.info("词法索引已加载: documents={}, terms={}, 耗时 {}ms",
+                indexed, postings.size(), System.currentTimeMillis() - start);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size() {
+        return indexed;
+    }
+
+    /**
+     * 写入一批文档（同时写入示例正文存储），已存在的 id 忽略
+     */
+    public void add(List<Document> documents) {
+        if (!enabled || documents.isEmpty()) {
+            return;
+        }
+        recordStore.putAll(documents);
+        catchUp();
+    }
+
+    /**
+     * 为存储中尚未建立倒排的文档补建索引
+     */
+    private void catchUp() {
+        lock.writeLock().lock();
+        try {
+            int total = recordStore.size();
+            for (int ordinal = indexed; ordinal < total; ordinal++) {
+                Document document = recordStore.get(ordinal);
+                index(ordinal, document == null ? List.of() : tokens(document), editTypeOf(document));
+            }
+            indexed = total;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 检索，score 为 BM25 分数，按分数降序
+     *
+     * @param methodText 查询方法代码（可为新旧方法拼接）
+     */
+    public List<Document> search(String methodText, int topK) {
+        return search(methodText, topK, null);
+    }
+
+    /**
+     * @param editType 只返回该编辑类型的文档，为 null 时不过滤
+     */
+    public List<Document> search(String methodText, int topK, EditType editType) {
+        if (!enabled || topK <= 0) {
+            return List.of();
+        }
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(methodText));
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int n = indexed;
+            if (n == 0) {
+                return List.of();
+            }
+            float averageLength = (float) totalLength / n;
+            Accumulator accumulator = accumulators.get();
+            accumulator.reset(n);
+            for (String term : queryTerms) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                float idf = (float) Math.log(1 + (n - list.size + 0.5) / (list.size + 0.5));
+                for (int i = 0; i < list.size; i++) {
+                    int doc = list.docs[i];
+                    float tf = list.freqs[i];
+                    float norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+                    accumulator.add(doc, idf * tf * (K1 + 1) / (tf + norm));
+                }
+            }
+
+            int[] top = accumulator.top(topK, recordStore, editTypes, editType == null ? -1 : editType.ordinal());
+            List<Document> results = new ArrayList<>(top.length);
+            for (int doc : top) {
+                Document stored = recordStore.get(doc);
+                if (stored == null) {
+                    continue;
+                }
+                results.add(Document.builder()
+                        .id(stored.getId())
+                        .text(stored.getText())
+                        .metadata(stored.getMetadata())
+                        .score((double) accumulator.scores[doc])
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 方法代码切分为检索词项：按非字母数字切分标识符，再按驼峰 / 下划线拆成子词，保留完整标识符
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) {
+                i++;
+            }
+            if (i > start) {
+                addIdentifier(text.substring(start, i), terms);
+            }
+        }
+        return terms;
+    }
+
+    private static void addIdentifier(String identifier, List<String> terms) {
+        List<String> parts = new ArrayList<>();
+        int partStart = 0;
+        for (int j = 1; j <= identifier.length(); j++) {
+            boolean boundary = j == identifier.length()
+                    || identifier.charAt(j) == '_'
+                    || (Character.isUpperCase(identifier.charAt(j))
+                    && (Character.isLowerCase(identifier.charAt(j - 1))
+                    || (j + 1 < identifier.length() && Character.isLowerCase(identifier.charAt(j + 1)))))
+                    || (Character.isDigit(identifier.charAt(j)) != Character.isDigit(identifier.charAt(j - 1)));
+            if (boundary) {
+                String part = identifier.substring(partStart, j).replace("_", "");
+                if (!part.isEmpty()) {
+                    parts.add(part.toLowerCase());
+                }
+                partStart = j;
+            }
+        }
+        String whole = identifier.replace("_", "").toLowerCase();
+        if (parts.size() > 1 && keep(whole)) {
+            terms.add(whole);
+        }
+        for (String part : parts) {
+            if (keep(part)) {
+                terms.add(part);
+            }
+        }
+    }
+
+    private static boolean keep(String term) {
+        return term.length() > 1 && !Character.isDigit(term.charAt(0)) && !STOP_WORDS.contains(term);
+    }
+
+    private List<String> tokens(Document document) {
+        Object srcMethod = document.getMetadata().get("src_method");
+        Object dstMethod = document.getMetadata().get("dst_method");
+        if (srcMethod == null && dstMethod == null) {
+            return tokenize(document.getText());
+        }
+        List<String> terms = tokenize(srcMethod == null ? null : srcMethod.toString());
+        terms.addAll(tokenize(dstMethod == null ? null : dstMethod.toString()));
+        return terms;
+    }
+
+    private static byte editTypeOf(Document document) {
+        Object value = document == null ? null : document.getMetadata().get(EditType.METADATA_KEY);
+        EditType editType = value == null ? null : EditType.parse(value.toString());
+        return (byte) (editType == null ? -1 : editType.ordinal());
+    }
+
+    private void index(int ordinal, List<String> terms, byte editType) {
+        if (ordinal >= docLengths.length) {
+            int capacity = Math.max(ordinal + 1, docLengths.length * 2);
+            docLengths = Arrays.copyOf(docLengths, capacity);
+            editTypes = Arrays.copyOf(editTypes, capacity);
+        }
+        docLengths[ordinal] = terms.size();
+        editTypes[ordinal] = editType;
+        totalLength += terms.size();
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), key -> new Postings()).add(ordinal, entry.getValue());
+        }
+    }
+
+    private static final class Postings {
+
+        private int[] docs = new int[4];
+        private short[] freqs = new short[4];
+        private int size;
+
+        private void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = (short) Math.min(Short.MAX_VALUE, freq);
+            size++;
+        }
+    }
+
+    /**
+     * 线程私有的分数累加器，只清理本次命中的文档
+     */
+    private static final class Accumulator {
+
+        private float[] scores = new float[0];
+        private int[] touched = new int[64];
+        private int touchedCount;
+
+        private void reset(int n) {
+            for (int i = 0; i < touchedCount; i++) {
+                scores[touched[i]] = 0;
+            }
+            touchedCount = 0;
+            if (scores.length < n) {
+                scores = new float[Math.max(n, scores.length * 2)];
+            }
+        }
+
+        private void add(int doc, float score) {
+            if (scores[doc] == 0) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                }
+                touched[touchedCount++] = doc;
+            }
+            scores[doc] += score;
+        }
+
+        private int[] top(int k, ExampleRecordStore records, byte[] editTypes, int editType) {
+            int[] best = new int[k];
+            int size = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = touched[i];
+                if ((editType >= 0 && editTypes[doc] != editType) || records.isDeleted(doc)) {
+                    continue;
+                }
+                float score = scores[doc];
+                if (size == k && score <= scores[best[k - 1]]) {
+                    continue;
+                }
+                int pos = size < k ? size++ : k - 1;
+                while (pos > 0 && scores[best[pos - 1]] < score) {
+                    best[pos] = best[pos - 1];
+                    pos--;
+                }
+                best[pos] = doc;
+            }
+            return Arrays.copyOf(best, size);
+        }
+    }
+}
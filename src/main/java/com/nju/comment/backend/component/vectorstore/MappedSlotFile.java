@@ -0,0 +1,90 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 定长槽位的内存映射文件，按段映射（单段不超过 2GB），数据位于堆外。
+ * <p>
+ * 单写多读：只有写线程调用 {@link #ensureCapacity}，新段映射完成后整体替换 volatile 视图数组再发布，
+ * 读线程通过绝对下标访问 float / int 视图，不修改缓冲区位置，可并发读取。
+ */
+final class MappedSlotFile implements Closeable {
+
+    private final FileChannel channel;
+    private final int slotBytes;
+    private final int slotsPerSegment;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private volatile FloatBuffer[] floatViews = new FloatBuffer[0];
+    private volatile IntBuffer[] intViews = new IntBuffer[0];
+
+    MappedSlotFile(Path file, int slotBytes, long targetSegmentBytes) throws IOException {
+        if (slotBytes <= 0 || slotBytes % Integer.BYTES != 0) {
+            throw new IllegalArgumentException("槽位字节数必须为 4 的正整数倍: " + slotBytes);
+        }
+        this.slotBytes = slotBytes;
+        this.slotsPerSegment = (int) Math.max(1L, Math.min(Integer.MAX_VALUE / slotBytes, targetSegmentBytes / slotBytes));
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 保证可写入 [0, slots) 范围的槽位，仅写线程调用
+     */
+    void ensureCapacity(int slots) throws IOException {
+        int required = slots <= 0 ? 0 : (slots - 1) / slotsPerSegment + 1;
+        MappedByteBuffer[] current = segments;
+        if (required <= current.length) {
+            return;
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(current, required);
+        FloatBuffer[] floats = Arrays.copyOf(floatViews, required);
+        IntBuffer[] ints = Arrays.copyOf(intViews, required);
+        long segmentBytes = (long) slotsPerSegment * slotBytes;
+        for (int i = current.length; i < required; i++) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            grown[i] = segment;
+            floats[i] = segment.asFloatBuffer();
+            ints[i] = segment.asIntBuffer();
+        }
+        floatViews = floats;
+        intViews = ints;
+        segments = grown;
+    }
+
+    FloatBuffer floats(int slot) {
+        return floatViews[slot / slotsPerSegment];
+    }
+
+    IntBuffer ints(int slot) {
+        return intViews[slot / slotsPerSegment];
+    }
+
+    /**
+     * 槽位在所属段视图中的起始下标（以 4 字节为单位）
+     */
+    int offset(int slot) {
+        return (slot % slotsPerSegment) * (slotBytes / Integer.BYTES);
+    }
+
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
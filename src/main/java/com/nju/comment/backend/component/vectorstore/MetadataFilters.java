@@ -0,0 +1,96 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * 把 Spring AI 的过滤表达式编译为文档元数据上的谓词，供进程内向量库做后过滤。
+ * <p>
+ * 支持 EQ / NE / GT / GTE / LT / LTE / IN / NIN 与 AND / OR / NOT；数值按 double 比较，其余按字符串比较，
+ * 元数据缺少该键时比较结果为 false（NE / NIN 同样为 false，与 Milvus 对 JSON 字段的处理一致）。
+ */
+final class MetadataFilters {
+
+    private MetadataFilters() {
+    }
+
+    static Predicate<Map<String, Object>> compile(Filter.Expression expression) {
+        return switch (expression.type()) {
+            case AND -> compile(expression.left()).and(compile(expression.right()));
+            case OR -> compile(expression.left()).or(compile(expression.right()));
+            case NOT -> compile(expression.left()).negate();
+            case EQ, NE, GT, GTE, LT, LTE, IN, NIN -> comparison(expression);
+        };
+    }
+
+    private static Predicate<Map<String, Object>> compile(Filter.Operand operand) {
+        if (operand instanceof Filter.Expression expression) {
+            return compile(expression);
+        }
+        if (operand instanceof Filter.Group group) {
+            return compile(group.content());
+        }
+        throw new IllegalArgumentException("不支持的过滤表达式: " + operand);
+    }
+
+    private static Predicate<Map<String, Object>> comparison(Filter.Expression expression) {
+        if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("不支持的过滤表达式: " + expression);
+        }
+        String name = unquote(key.key());
+        Object expected = value.value();
+        return metadata -> {
+            Object actual = metadata.get(name);
+            if (actual == null) {
+                return false;
+            }
+            return switch (expression.type()) {
+                case EQ -> matches(actual, expected);
+                case NE -> !matches(actual, expected);
+                case GT -> compare(actual, expected) > 0;
+                case GTE -> compare(actual, expected) >= 0;
+                case LT -> compare(actual, expected) < 0;
+                case LTE -> compare(actual, expected) <= 0;
+                case IN -> in(actual, expected);
+                case NIN -> !in(actual, expected);
+                default -> false;
+            };
+        };
+    }
+
+    private static boolean in(Object actual, Object expected) {
+        Collection<?> values = expected instanceof Collection<?> collection ? collection : List.of(expected);
+        for (Object candidate : values) {
+            if (matches(actual, candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue()) == 0;
+        }
+        return Objects.equals(String.valueOf(actual), String.valueOf(expected));
+    }
+
+    private static int compare(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        return String.valueOf(actual).compareTo(String.valueOf(expected));
+    }
+
+    private static String unquote(String key) {
+        if (key.length() >= 2 && (key.startsWith("\"") && key.endsWith("\"") || key.startsWith("'") && key.endsWith("'"))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,139 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.VectorStoreException;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.common.clientenum.ConsistencyLevelEnum;
+import io.milvus.grpc.SearchResults;
+import io.milvus.param.MetricType;
+import io.milvus.param.R;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.response.QueryResultsWrapper;
+import io.milvus.response.SearchResultsWrapper;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.milvus.MilvusFilterExpressionConverter;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Milvus 的多查询检索：所有查询向量放进同一个 SearchParam，一次 RPC 返回各查询的结果。
+ * <p>
+ * collection 结构与 Spring AI 的 MilvusVectorStore 相同（docId、正文、JSON 元数据、向量四个字段），
+ * 字段名、度量方式与过滤表达式的转换都与其保持一致，返回的文档与逐条 similaritySearch 的结果相同。
+ */
+public class MilvusMultiVectorSearch implements MultiVectorSearch {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final MilvusServiceClient milvusClient;
+    private final ObjectMapper objectMapper;
+    private final String databaseName;
+    private final String collectionName;
+    private final String idFieldName;
+    private final String contentFieldName;
+    private final String metadataFieldName;
+    private final String embeddingFieldName;
+    private final MetricType metricType;
+    private final MilvusFilterExpressionConverter filterConverter = new MilvusFilterExpressionConverter();
+
+    public MilvusMultiVectorSearch(MilvusServiceClient milvusClient,
+                                   ObjectMapper objectMapper,
+                                   String databaseName,
+                                   String collectionName,
+                                   String idFieldName,
+                                   String contentFieldName,
+                                   String metadataFieldName,
+                                   String embeddingFieldName,
+                                   MetricType metricType) {
+        this.milvusClient = milvusClient;
+        this.objectMapper = objectMapper;
+        this.databaseName = databaseName;
+        this.collectionName = collectionName;
+        this.idFieldName = idFieldName;
+        this.contentFieldName = contentFieldName;
+        this.metadataFieldName = metadataFieldName;
+        this.embeddingFieldName = embeddingFieldName;
+        this.metricType = metricType;
+    }
+
+    @Override
+    public List<List<Document>> similaritySearch(List<float[]> queryEmbeddings, int topK, String searchParamsJson,
+                                                 Filter.Expression filter) {
+        if (queryEmbeddings.isEmpty()) {
+            return List.of();
+        }
+        List<List<Float>> vectors = new ArrayList<>(queryEmbeddings.size());
+        for (float[] embedding : queryEmbeddings) {
+            List<Float> vector = new ArrayList<>(embedding.length);
+            for (float v : embedding) {
+                vector.add(v);
+            }
+            vectors.add(vector);
+        }
+
+        SearchParam.Builder builder = SearchParam.newBuilder()
+                .withDatabaseName(databaseName)
+                .withCollectionName(collectionName)
+                .withConsistencyLevel(ConsistencyLevelEnum.STRONG)
+                .withMetricType(metricType)
+                .withOutFields(List.of(idFieldName, contentFieldName, metadataFieldName))
+                .withTopK(topK)
+                .withFloatVectors(vectors)
+                .withVectorFieldName(embeddingFieldName);
+        if (StringUtils.hasText(searchParamsJson)) {
+            builder.withParams(searchParamsJson);
+        }
+        if (filter != null) {
+            builder.withExpr(filterConverter.convertExpression(filter));
+        }
+
+        R<SearchResults> response = milvusClient.search(builder.build());
+        if (response.getException() != null) {
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_QUERY_ERROR,
+                    "Milvus 批量检索失败: " + response.getMessage(), response.getException());
+        }
+
+        SearchResultsWrapper wrapper = new SearchResultsWrapper(response.getData().getResults());
+        List<List<Document>> results = new ArrayList<>(queryEmbeddings.size());
+        for (int i = 0; i < queryEmbeddings.size(); i++) {
+            List<QueryResultsWrapper.RowRecord> rows = wrapper.getRowRecords(i);
+            List<Document> documents = new ArrayList<>(rows.size());
+            for (QueryResultsWrapper.RowRecord row : rows) {
+                documents.add(toDocument(row));
+            }
+            results.add(documents);
+        }
+        return results;
+    }
+
+    private Document toDocument(QueryResultsWrapper.RowRecord row) {
+        float distance = (Float) row.get("distance");
+        float similarity = metricType == MetricType.IP || metricType == MetricType.COSINE ? distance : 1 - distance;
+        Map<String, Object> metadata = new HashMap<>();
+        Object rawMetadata = row.get(metadataFieldName);
+        if (rawMetadata != null) {
+            try {
+                metadata.putAll(objectMapper.readValue(rawMetadata.toString(), METADATA_TYPE));
+            } catch (JsonProcessingException e) {
+                throw new VectorStoreException(ErrorCode.VECTOR_STORE_QUERY_ERROR, "解析 Milvus 元数据失败", e);
+            }
+        }
+        metadata.put(DocumentMetadata.DISTANCE.value(), 1 - similarity);
+        return Document.builder()
+                .id(String.valueOf(row.get(idFieldName)))
+                .text((String) row.get(contentFieldName))
+                .metadata(metadata)
+                .score((double) similarity)
+                .build();
+    }
+}
@@ -0,0 +1,22 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+
+/**
+ * 以已计算的查询向量一次检索多个查询，供 {@link BatchRetriever} 使用。
+ * <p>
+ * 返回列表与查询向量按下标一一对应，每个查询的结果按相似度降序，score 为相似度。
+ */
+public interface MultiVectorSearch {
+
+    /**
+     * @param queryEmbeddings  查询向量，无需归一化
+     * @param searchParamsJson 索引检索参数 JSON（见 {@link VectorSearchRequests#params}），可为 null
+     * @param filter           元数据过滤表达式，可为 null
+     */
+    List<List<Document>> similaritySearch(List<float[]> queryEmbeddings, int topK, String searchParamsJson,
+                                          Filter.Expression filter);
+}
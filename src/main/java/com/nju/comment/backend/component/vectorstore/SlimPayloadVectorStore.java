@@ -0,0 +1,135 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.nju.comment.backend.component.embedding.PrecomputedEmbeddings;
+import com.nju.comment.backend.component.ingestion.EditType;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * payload 精简模式的向量库包装：下游（Milvus）只保存向量与 docId，正文与元数据存于 {@link ExampleRecordStore}。
+ * <p>
+ * 写入时先把完整文档写入本地存储、按原文计算向量，再以 docId 作为正文、只保留过滤用的元数据（编辑类型）写入下游，
+ * 下游的 Embedding 调用通过 {@link PrecomputedEmbeddings} 直接取回这批向量；
+ * 检索时下游只返回 docId 与分数，正文由本地存储补全，本地缺失的结果丢弃并告警；多查询检索同样经下游的
+ * {@link MultiVectorSearch} 一次完成后逐条补全。
+ * <p>
+ * 本地存储只包含本实例写入的文档：切换到精简模式后每个实例都要重新入库一次，且不能与分布式入库同时开启。
+ */
+@Slf4j
+public class SlimPayloadVectorStore implements VectorStore, MultiVectorSearch {
+
+    private final VectorStore delegate;
+    private final MultiVectorSearch delegateMultiSearch;
+    private final ExampleRecordStore recordStore;
+    private final EmbeddingModel embeddingModel;
+    private final BatchingStrategy batchingStrategy;
+
+    public SlimPayloadVectorStore(VectorStore delegate,
+                                  MultiVectorSearch delegateMultiSearch,
+                                  ExampleRecordStore recordStore,
+                                  EmbeddingModel embeddingModel,
+                                  BatchingStrategy batchingStrategy) {
+        this.delegate = delegate;
+        this.delegateMultiSearch = delegateMultiSearch;
+        this.recordStore = recordStore;
+        this.embeddingModel = embeddingModel;
+        this.batchingStrategy = batchingStrategy;
+    }
+
+    @Override
+    public @NonNull String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void add(@NonNull List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        recordStore.putAll(documents);
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(), batchingStrategy);
+        Map<String, float[]> vectors = new HashMap<>();
+        List<Document> slim = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            vectors.put(document.getId(), embeddings.get(i));
+            Object editType = document.getMetadata().get(EditType.METADATA_KEY);
+            slim.add(new Document(document.getId(), document.getId(),
+                    editType == null ? Map.of() : Map.of(EditType.METADATA_KEY, editType)));
+        }
+        PrecomputedEmbeddings.with(vectors, () -> {
+            delegate.add(slim);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(@NonNull List<String> idList) {
+        delegate.delete(idList);
+        recordStore.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.@NonNull Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public @NonNull List<Document> similaritySearch(@NonNull SearchRequest request) {
+        return hydrate(delegate.similaritySearch(request));
+    }
+
+    @Override
+    public List<List<Document>> similaritySearch(List<float[]> queryEmbeddings, int topK, String searchParamsJson,
+                                                 Filter.Expression filter) {
+        List<List<Document>> results = delegateMultiSearch.similaritySearch(queryEmbeddings, topK, searchParamsJson, filter);
+        List<List<Document>> hydrated = new ArrayList<>(results.size());
+        for (List<Document> hits : results) {
+            hydrated.add(hydrate(hits));
+        }
+        return hydrated;
+    }
+
+    private List<Document> hydrate(List<Document> hits) {
+        List<Document> hydrated = new ArrayList<>(hits.size());
+        int missing = 0;
+        for (Document hit : hits) {
+            Document stored = recordStore.get(hit.getId());
+            if (stored == null) {
+                missing++;
+                continue;
+            }
+            Map<String, Object> metadata = new HashMap<>(stored.getMetadata());
+            metadata.putAll(hit.getMetadata());
+            hydrated.add(Document.builder()
+                    .id(stored.getId())
+                    .text(stored.getText())
+                    .metadata(metadata)
+                    .score(hit.getScore())
+                    .build());
+        }
+        if (missing > 0) {
+            log.warn("本地示例正文存储缺少 {}/{} 条检索结果，已丢弃；本实例需重新入库以补全正文",
+                    missing, hits.size());
+        }
+        return hydrated;
+    }
+
+    @Override
+    public <T> @NonNull Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+}
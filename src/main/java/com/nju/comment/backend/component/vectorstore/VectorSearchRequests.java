@@ -0,0 +1,164 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.milvus.MilvusSearchRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+
+/**
+ * 构造 RAG 检索请求，附带索引检索参数。
+ * <p>
+ * 参数沿用 Milvus 的 JSON 写法：IVF 系列为 {@code {"nprobe":16}}，HNSW 为 {@code {"ef":64}}；
+ * 全局默认值来自 {@code app.vectorstore.search.params}，单次请求可传入同格式的 JSON 覆盖其中的键。
+ * 进程内 {@link HnswVectorStore} 同样识别 {@code ef}。
+ * <p>
+ * 请求传入的参数只接受 {@code nprobe} / {@code ef} 两个正整数键，分别截断到 {@code max-nprobe} / {@code max-ef}，
+ * 避免单个请求以超大参数触发全量扫描。
+ */
+@Slf4j
+@Component
+public class VectorSearchRequests {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectNode defaultParams;
+    private final Map<String, Integer> maxValues;
+
+    public VectorSearchRequests(ObjectMapper objectMapper,
+                                @Value("${app.vectorstore.search.params:}") String defaultParams,
+                                @Value("${app.vectorstore.search.max-nprobe:256}") int maxNprobe,
+                                @Value("${app.vectorstore.search.max-ef:512}") int maxEf) {
+        this.objectMapper = objectMapper;
+        this.maxValues = Map.of("nprobe", Math.max(1, maxNprobe), "ef", Math.max(1, maxEf));
+        ObjectNode parsed = parse(defaultParams);
+        this.defaultParams = parsed != null ? parsed : objectMapper.createObjectNode();
+    }
+
+    /**
+     * 校验请求传入的检索参数，超出上限的值截断到上限
+     *
+     * @return 规范化后的 JSON，输入为空时返回 null
+     * @throws ServiceException 不是 JSON 对象、含不支持的键或值不是正整数
+     */
+    public String sanitize(String overrideParams) {
+        if (!StringUtils.hasText(overrideParams)) {
+            return null;
+        }
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(overrideParams);
+        } catch (JsonProcessingException e) {
+            throw new ServiceException(ErrorCode.PARAMETER_ERROR, "ragSearchParams 不是合法的 JSON");
+        }
+        if (!(node instanceof ObjectNode objectNode)) {
+            throw new ServiceException(ErrorCode.PARAMETER_ERROR, "ragSearchParams 必须是 JSON 对象");
+        }
+        ObjectNode sanitized = objectMapper.createObjectNode();
+        for (Map.Entry<String, JsonNode> field : objectNode.properties()) {
+            Integer max = maxValues.get(field.getKey());
+            if (max == null) {
+                throw new ServiceException(ErrorCode.PARAMETER_ERROR,
+                        "ragSearchParams 不支持的参数: " + field.getKey() + "，仅支持 " + maxValues.keySet());
+            }
+            JsonNode value = field.getValue();
+            if (!value.canConvertToInt() || !value.isIntegralNumber() || value.asInt() <= 0) {
+                throw new ServiceException(ErrorCode.PARAMETER_ERROR,
+                        "ragSearchParams." + field.getKey() + " 必须是正整数");
+            }
+            sanitized.put(field.getKey(), Math.min(value.asInt(), max));
+        }
+        return sanitized.isEmpty() ? null : sanitized.toString();
+    }
+
+    public SearchRequest build(String query, int topK) {
+        return build(query, topK, null);
+    }
+
+    public SearchRequest build(String query, int topK, String overrideParams) {
+        return build(query, topK, overrideParams, null);
+    }
+
+    /**
+     * @param overrideParams 单次请求的检索参数 JSON，为空或非法时使用全局默认
+     * @param filter         元数据过滤表达式，可为 null
+     */
+    public SearchRequest build(String query, int topK, String overrideParams, Filter.Expression filter) {
+        MilvusSearchRequest.MilvusBuilder builder = MilvusSearchRequest.milvusBuilder()
+                .query(query)
+                .topK(topK);
+        String params = params(overrideParams);
+        if (params != null) {
+            builder.searchParamsJson(params);
+        }
+        if (filter != null) {
+            builder.filterExpression(filter);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 全局默认参数与单次请求参数合并后的 JSON，均为空时返回 null
+     */
+    public String params(String overrideParams) {
+        ObjectNode params = defaultParams.deepCopy();
+        String override;
+        try {
+            override = sanitize(overrideParams);
+        } catch (ServiceException e) {
+            log.warn("忽略非法的向量检索参数: {}, {}", overrideParams, e.getMessage());
+            override = null;
+        }
+        if (override != null) {
+            params.setAll(parse(override));
+        }
+        return params.isEmpty() ? null : params.toString();
+    }
+
+    /**
+     * 读取请求中的整数检索参数，不存在返回 defaultValue
+     */
+    static int intParam(SearchRequest request, String name, int defaultValue, ObjectMapper objectMapper) {
+        if (!(request instanceof MilvusSearchRequest milvusRequest)) {
+            return defaultValue;
+        }
+        return intParam(milvusRequest.getSearchParamsJson(), name, defaultValue, objectMapper);
+    }
+
+    static int intParam(String paramsJson, String name, int defaultValue, ObjectMapper objectMapper) {
+        if (!StringUtils.hasText(paramsJson)) {
+            return defaultValue;
+        }
+        try {
+            JsonNode value = objectMapper.readTree(paramsJson).get(name);
+            return value != null && value.canConvertToInt() ? value.asInt() : defaultValue;
+        } catch (JsonProcessingException e) {
+            return defaultValue;
+        }
+    }
+
+    private ObjectNode parse(String json) {
+        if (!StringUtils.hasText(json)) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(json);
+            if (node instanceof ObjectNode objectNode) {
+                return objectNode;
+            }
+        } catch (JsonProcessingException e) {
+            // 记录后忽略
+        }
+        log.warn("忽略非法的向量检索参数: {}", json);
+        return null;
+    }
+}
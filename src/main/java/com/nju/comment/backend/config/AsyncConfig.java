@@ -25,6 +25,10 @@ public class AsyncConfig implements AsyncConfigurer {
 
     private AsyncConfigItem llmPool;
 
+    private AsyncConfigItem ingestPool;
+
+    private AsyncConfigItem ragPool;
+
     @Bean(name = "llmTaskExecutor")
     public ThreadPoolTaskExecutor llmTaskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -54,6 +58,54 @@ public class AsyncConfig implements AsyncConfigurer {
         return executor;
     }
 
+    /**
+     * 向量入库专用线程池，与 LLM 请求线程池隔离，避免长时间入库占用在线请求线程
+     */
+    @Bean(name = "ingestTaskExecutor")
+    public ThreadPoolTaskExecutor ingestTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(ingestPool.getCoreSize());
+        executor.setMaxPoolSize(ingestPool.getMaxSize());
+        executor.setQueueCapacity(ingestPool.getQueueCapacity());
+        executor.setKeepAliveSeconds(ingestPool.getKeepAlive());
+        executor.setThreadNamePrefix(ingestPool.getThreadNamePrefix());
+
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+
+        // 关闭时中断入库线程，断点文件保证下次启动可续跑
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+
+        executor.initialize();
+
+        logThreadPoolStatus(executor, "Ingest Task Executor");
+
+        return executor;
+    }
+
+    /**
+     * RAG 限时检索与投机 LLM 调用专用线程池：请求线程在 LLM 线程池中等待这些任务，
+     * 与之隔离以免互相占满导致饥饿；不设队列，线程用尽时由请求线程直接执行（退化为不限时）
+     */
+    @Bean(name = "ragTaskExecutor")
+    public ThreadPoolTaskExecutor ragTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(ragPool.getCoreSize());
+        executor.setMaxPoolSize(ragPool.getMaxSize());
+        executor.setQueueCapacity(ragPool.getQueueCapacity());
+        executor.setKeepAliveSeconds(ragPool.getKeepAlive());
+        executor.setThreadNamePrefix(ragPool.getThreadNamePrefix());
+
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+
+        executor.initialize();
+
+        logThreadPoolStatus(executor, "RAG Task Executor");
+
+        return executor;
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new CustomAsyncExceptionHandler();
@@ -1,19 +1,37 @@
 package com.nju.comment.backend.config;
 
+import com.nju.comment.backend.component.embedding.CoalescingEmbeddingModel;
+import com.nju.comment.backend.component.embedding.EmbeddingRateLimitFeedback;
+import com.nju.comment.backend.component.embedding.EmbeddingRateLimiter;
+import com.nju.comment.backend.component.embedding.HashEmbeddingModel;
+import com.nju.comment.backend.component.embedding.PassThroughBatchingStrategy;
+import com.nju.comment.backend.component.embedding.PersistentEmbeddingStore;
+import com.nju.comment.backend.component.embedding.PooledEmbeddingModel;
+import com.nju.comment.backend.component.embedding.QueryCachedEmbeddingModel;
+import com.nju.comment.backend.component.embedding.QueryEmbeddingCache;
 import com.nju.comment.backend.component.embedding.RateLimitedEmbeddingModel;
-import com.nju.comment.backend.component.embedding.SiliconFlowEmbeddingRateLimiter;
+import com.nju.comment.backend.component.embedding.StoreBackedEmbeddingModel;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.BatchingStrategy;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.transformers.TransformersEmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestClient;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 @Configuration
 public class EmbeddingConfig {
 
@@ -38,14 +56,46 @@ public class EmbeddingConfig {
     @Value("${app.ai.siliconflow.embedding.max-backoff-ms:10000}")
     private long embeddingMaxBackoffMs;
 
+    @Value("${app.ai.siliconflow.embedding.coalesce.enabled:true}")
+    private boolean coalesceEnabled;
+
+    @Value("${app.ai.siliconflow.embedding.coalesce.window-ms:5}")
+    private long coalesceWindowMs;
+
+    @Value("${app.ai.siliconflow.embedding.coalesce.max-items:32}")
+    private int coalesceMaxItems;
+
+    @Value("${app.ai.siliconflow.embedding.coalesce.await-timeout-ms:30000}")
+    private long coalesceAwaitTimeoutMs;
+
+    @Value("${app.ai.embedding.provider:siliconflow}")
+    private String embeddingProvider;
+
+    @Value("${app.ai.embedding.local.model-location:}")
+    private String localModelLocation;
+
+    @Value("${app.ai.embedding.local.tokenizer-location:}")
+    private String localTokenizerLocation;
+
+    @Value("${app.ai.embedding.local.model-output-name:last_hidden_state}")
+    private String localModelOutputName;
+
+    @Value("${app.ai.embedding.local.pool-size:2}")
+    private int localPoolSize;
+
+    @Value("${spring.ai.vectorstore.milvus.embeddingDimension:1024}")
+    private int embeddingDimension;
+
     @Bean("siliconFlowEmbeddingApi")
-    public OpenAiApi siliconFlowEmbeddingApi() {
+    @ConditionalOnProperty(name = "app.ai.embedding.provider", havingValue = "siliconflow", matchIfMissing = true)
+    public OpenAiApi siliconFlowEmbeddingApi(EmbeddingRateLimitFeedback rateLimitFeedback) {
         if (!StringUtils.hasText(siliconFlowEmbeddingApiKey)) {
             throw new IllegalStateException("app.ai.siliconflow.embedding.api-key is required");
         }
 
         RestClient.Builder restClientBuilder = RestClient.builder()
-                .baseUrl(siliconFlowEmbeddingBaseUrl);
+                .baseUrl(siliconFlowEmbeddingBaseUrl)
+                .requestInterceptor(rateLimitFeedback);
 
         return OpenAiApi.builder()
                 .baseUrl(siliconFlowEmbeddingBaseUrl)
@@ -55,10 +105,14 @@ public class EmbeddingConfig {
                 .build();
     }
 
-    @Primary
+    /**
+     * 限流层单独注册，在线请求据此判断 Embedding 走远程服务，需要提前预取查询向量
+     */
     @Bean
-    public EmbeddingModel embeddingModel(OpenAiApi siliconFlowEmbeddingApi,
-                                         SiliconFlowEmbeddingRateLimiter rateLimiter) {
+    @ConditionalOnProperty(name = "app.ai.embedding.provider", havingValue = "siliconflow", matchIfMissing = true)
+    public RateLimitedEmbeddingModel rateLimitedEmbeddingModel(OpenAiApi siliconFlowEmbeddingApi,
+                                                               EmbeddingRateLimiter rateLimiter,
+                                                               EmbeddingRateLimitFeedback rateLimitFeedback) {
         OpenAiEmbeddingOptions options = OpenAiEmbeddingOptions.builder()
                 .model(siliconFlowEmbeddingModel)
                 .build();
@@ -70,9 +124,64 @@ public class EmbeddingConfig {
         return new RateLimitedEmbeddingModel(
                 delegate,
                 rateLimiter,
+                rateLimitFeedback,
                 embeddingMaxRetries,
                 embeddingInitialBackoffMs,
                 embeddingMaxBackoffMs
         );
     }
-}
\ No newline at end of file
+
+    @Primary
+    @Bean
+    public QueryCachedEmbeddingModel embeddingModel(ObjectProvider<RateLimitedEmbeddingModel> rateLimitedEmbeddingModel,
+                                         PersistentEmbeddingStore embeddingStore,
+                                         QueryEmbeddingCache queryEmbeddingCache,
+                                         MeterRegistry meterRegistry) throws Exception {
+        EmbeddingModel backend = switch (embeddingProvider.trim().toLowerCase(Locale.ROOT)) {
+            case "onnx" -> localOnnxEmbeddingModel(meterRegistry);
+            case "hash" -> new HashEmbeddingModel(embeddingDimension);
+            default -> rateLimitedEmbeddingModel.getObject();
+        };
+        // 入库时优先复用本地持久化的向量，避免重复调用 Embedding API
+        EmbeddingModel model = embeddingStore.isEnabled()
+                ? new StoreBackedEmbeddingModel(backend, embeddingStore)
+                : backend;
+        if (coalesceEnabled) {
+            // 并发 RAG 查询合并为一次批量请求，只占用一次 RPM 额度
+            model = new CoalescingEmbeddingModel(model, coalesceWindowMs, coalesceMaxItems,
+                    coalesceAwaitTimeoutMs, meterRegistry);
+        }
+        // 已异步预取的查询向量直接命中
+        return new QueryCachedEmbeddingModel(model, queryEmbeddingCache);
+    }
+
+    /**
+     * 进程内 ONNX Runtime（CPU）推理：每个实例持有一个会话，实例数即并发推理上限。
+     * 模型输出维度须与 Milvus collection 的 embeddingDimension 一致。
+     */
+    private EmbeddingModel localOnnxEmbeddingModel(MeterRegistry meterRegistry) throws Exception {
+        if (!StringUtils.hasText(localModelLocation) || !StringUtils.hasText(localTokenizerLocation)) {
+            throw new IllegalStateException("app.ai.embedding.local.model-location and tokenizer-location are required");
+        }
+        int poolSize = Math.max(1, localPoolSize);
+        List<TransformersEmbeddingModel> instances = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            TransformersEmbeddingModel instance = new TransformersEmbeddingModel(MetadataMode.NONE);
+            instance.setModelResource(localModelLocation.trim());
+            instance.setTokenizerResource(localTokenizerLocation.trim());
+            instance.setModelOutputName(localModelOutputName);
+            instance.setDisableCaching(true);
+            instance.afterPropertiesSet();
+            instances.add(instance);
+        }
+        return new PooledEmbeddingModel(instances, meterRegistry);
+    }
+
+    /**
+     * 入库批次已按 token 预算打包，替换 Milvus 默认的 TokenCountBatchingStrategy，避免二次切分
+     */
+    @Bean
+    public BatchingStrategy embeddingBatchingStrategy() {
+        return new PassThroughBatchingStrategy();
+    }
+}
@@ -1,5 +1,6 @@
 package com.nju.comment.backend.config;
 
+import com.nju.comment.backend.model.UserRole;
 import com.nju.comment.backend.security.JwtAccessDeniedHandler;
 import com.nju.comment.backend.security.JwtAuthenticationEntryPoint;
 import com.nju.comment.backend.security.JwtAuthenticationFilter;
@@ -56,6 +57,8 @@ public class SecurityConfig {
                 })
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/auth/register", "/api/auth/login", "/api/auth/send-email-code", "/api/auth/encryption-key").permitAll()
+                        .requestMatchers("/actuator/health/liveness", "/actuator/health/readiness").permitAll()
+                        .requestMatchers("/api/admin/**", "/actuator/**").hasRole(UserRole.ADMIN.getName())
                         .anyRequest().authenticated()
                 )
                 .exceptionHandling(ex -> ex
@@ -0,0 +1,63 @@
+package com.nju.comment.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.component.vectorstore.ExampleRecordStore;
+import com.nju.comment.backend.component.vectorstore.MilvusMultiVectorSearch;
+import com.nju.comment.backend.component.vectorstore.SlimPayloadVectorStore;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.param.MetricType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.milvus.MilvusVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Slf4j
+@Configuration
+public class VectorStoreConfig {
+
+    /**
+     * Milvus 的多查询检索，与自动配置的 MilvusVectorStore 共用客户端与 collection 配置
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "milvus", matchIfMissing = true)
+    public MilvusMultiVectorSearch milvusMultiVectorSearch(
+            MilvusServiceClient milvusClient,
+            ObjectMapper objectMapper,
+            @Value("${spring.ai.vectorstore.milvus.databaseName:default}") String databaseName,
+            @Value("${spring.ai.vectorstore.milvus.collectionName:vector_store}") String collectionName,
+            @Value("${spring.ai.vectorstore.milvus.id-field-name:doc_id}") String idFieldName,
+            @Value("${spring.ai.vectorstore.milvus.content-field-name:content}") String contentFieldName,
+            @Value("${spring.ai.vectorstore.milvus.metadata-field-name:metadata}") String metadataFieldName,
+            @Value("${spring.ai.vectorstore.milvus.embedding-field-name:embedding}") String embeddingFieldName,
+            @Value("${spring.ai.vectorstore.milvus.metricType:COSINE}") MetricType metricType) {
+        return new MilvusMultiVectorSearch(milvusClient, objectMapper, databaseName, collectionName,
+                idFieldName, contentFieldName, metadataFieldName, embeddingFieldName, metricType);
+    }
+
+    /**
+     * payload 精简模式：业务侧注入的 VectorStore 换成只向 Milvus 写入向量与 docId 的包装，
+     * Milvus 自动配置的 MilvusVectorStore 仍作为下游
+     */
+    @Bean
+    @Primary
+    @ConditionalOnExpression("'${app.vectorstore.payload.mode:full}' == 'slim' && '${spring.ai.vectorstore.type:milvus}' == 'milvus'")
+    public SlimPayloadVectorStore slimPayloadVectorStore(MilvusVectorStore milvusVectorStore,
+                                                         MilvusMultiVectorSearch milvusMultiVectorSearch,
+                                                         ExampleRecordStore exampleRecordStore,
+                                                         EmbeddingModel embeddingModel,
+                                                         BatchingStrategy batchingStrategy,
+                                                         @Value("${app.vectorstore.ingest.distributed.enabled:false}") boolean distributedIngest) {
+        if (distributedIngest) {
+            // 示例正文只写入执行入库的节点，其他副本补全不到检索结果
+            throw new IllegalStateException("app.vectorstore.payload.mode=slim cannot be combined with app.vectorstore.ingest.distributed.enabled=true");
+        }
+        log.info("向量库 payload 精简模式：Milvus 只保存向量与 docId");
+        return new SlimPayloadVectorStore(milvusVectorStore, milvusMultiVectorSearch, exampleRecordStore, embeddingModel, batchingStrategy);
+    }
+}
@@ -7,6 +7,7 @@ import com.nju.comment.backend.dto.response.CommentResponse;
 import com.nju.comment.backend.service.CommentService;
 import com.nju.comment.backend.service.LLMService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -46,6 +47,17 @@ public class CommentController {
                 });
     }
 
+    @PostMapping("/generate/batch")
+    public CompletableFuture<ResponseEntity<ApiResponse<List<CommentResponse>>>> generateComments(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestBody @NotEmpty List<@Valid CommentRequest> commentRequests
+    ) {
+        log.info("收到批量注释生成请求，共{}条", commentRequests.size());
+
+        return commentService.generateComments(userDetails.getUsername(), commentRequests)
+                .thenApply(responses -> ResponseEntity.ok(ApiResponse.success("批量注释生成完成", responses)));
+    }
+
     @PostMapping("/cancel")
     public ResponseEntity<ApiResponse<Void>> cancelGenerate(@Valid @RequestBody CancelRequest cancelRequest) {
         commentService.cancel(cancelRequest);
@@ -0,0 +1,91 @@
+package com.nju.comment.backend.controller;
+
+import com.nju.comment.backend.dto.response.ApiResponse;
+import com.nju.comment.backend.dto.response.IngestionDryRunStatusResponse;
+import com.nju.comment.backend.dto.response.IngestionJobStatusResponse;
+import com.nju.comment.backend.service.impl.CorpusConversionService;
+import com.nju.comment.backend.service.impl.EmbeddingStoreService;
+import com.nju.comment.backend.service.impl.VectorStoreIngestionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 向量库管理控制器（仅管理员）
+ * <p>
+ * 管理后台向量入库任务的启动、暂停、恢复、取消、状态查询与预演，Embedding 持久化存储的导出/导入，
+ * 以及语料到二进制格式的转换。
+ */
+@RestController
+@RequestMapping("/api/admin/vectorstore")
+@RequiredArgsConstructor
+@Slf4j
+public class VectorStoreAdminController {
+
+    private final VectorStoreIngestionService vectorStoreIngestionService;
+    private final EmbeddingStoreService embeddingStoreService;
+    private final CorpusConversionService corpusConversionService;
+
+    @PostMapping("/ingestion/start")
+    public ResponseEntity<ApiResponse<IngestionJobStatusResponse>> start() {
+        return ResponseEntity.ok(ApiResponse.success("入库任务已启动", vectorStoreIngestionService.start()));
+    }
+
+    @PostMapping("/ingestion/pause")
+    public ResponseEntity<ApiResponse<IngestionJobStatusResponse>> pause() {
+        return ResponseEntity.ok(ApiResponse.success("入库任务已暂停", vectorStoreIngestionService.pause()));
+    }
+
+    @PostMapping("/ingestion/resume")
+    public ResponseEntity<ApiResponse<IngestionJobStatusResponse>> resume() {
+        return ResponseEntity.ok(ApiResponse.success("入库任务已恢复", vectorStoreIngestionService.resume()));
+    }
+
+    @PostMapping("/ingestion/cancel")
+    public ResponseEntity<ApiResponse<IngestionJobStatusResponse>> cancel() {
+        return ResponseEntity.ok(ApiResponse.success("入库任务取消请求已发出", vectorStoreIngestionService.cancel()));
+    }
+
+    @GetMapping("/ingestion/status")
+    public ResponseEntity<ApiResponse<IngestionJobStatusResponse>> status() {
+        return ResponseEntity.ok(ApiResponse.success(vectorStoreIngestionService.status()));
+    }
+
+    @PostMapping("/ingestion/dry-run")
+    public ResponseEntity<ApiResponse<IngestionDryRunStatusResponse>> dryRun() {
+        return ResponseEntity.ok(ApiResponse.success("入库预演已启动", vectorStoreIngestionService.startDryRun()));
+    }
+
+    @GetMapping("/ingestion/dry-run")
+    public ResponseEntity<ApiResponse<IngestionDryRunStatusResponse>> dryRunStatus() {
+        return ResponseEntity.ok(ApiResponse.success(vectorStoreIngestionService.dryRunStatus()));
+    }
+
+    @GetMapping("/embedding-store/status")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> embeddingStoreStatus() {
+        return ResponseEntity.ok(ApiResponse.success(embeddingStoreService.status()));
+    }
+
+    @PostMapping("/embedding-store/export")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> exportEmbeddings(@RequestParam String file) {
+        return ResponseEntity.ok(ApiResponse.success("Embedding 导出完成", embeddingStoreService.export(file)));
+    }
+
+    @PostMapping("/embedding-store/import")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> importEmbeddings(@RequestParam String file) {
+        return ResponseEntity.ok(ApiResponse.success("Embedding 导入完成", embeddingStoreService.importExport(file)));
+    }
+
+    @PostMapping("/corpus/convert")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> convertCorpus(@RequestParam String source,
+                                                                          @RequestParam String target) {
+        return ResponseEntity.ok(ApiResponse.success("语料转换完成", corpusConversionService.convertToBinary(source, target)));
+    }
+}
@@ -1,5 +1,6 @@
 package com.nju.comment.backend.dto.request;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
@@ -8,8 +9,10 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class CommentRequest {
@@ -35,5 +38,16 @@ public class CommentRequest {
     @Min(value = 0, message = "ragExampleNum 必须大于或等于 0")
     private int ragExampleNum;
 
+    /**
+     * RAG 检索参数 JSON，只接受 {"nprobe":32} / {"ef":128} 两个键，截断到 max-nprobe / max-ef，覆盖 app.vectorstore.search.params 中的同名键
+     */
+    private String ragSearchParams;
+
     private String ragExample;
+
+    /**
+     * RAG 示例挑选统计（候选数、丢弃数、节省的 token 数）与胜出路径（ragPath），由服务端填充并写入响应 metadata
+     */
+    @JsonIgnore
+    private Map<String, Object> ragMetadata;
 }
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Data
@@ -74,4 +75,13 @@ public class CommentResponse {
         this.processingTimeMs = timeMs;
         return this;
     }
+
+    public CommentResponse withMetadata(Map<String, Object> metadata) {
+        if (metadata != null && !metadata.isEmpty()) {
+            Map<String, Object> merged = new LinkedHashMap<>(this.metadata);
+            merged.putAll(metadata);
+            this.metadata = merged;
+        }
+        return this;
+    }
 }
@@ -0,0 +1,86 @@
+package com.nju.comment.backend.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionDryRunResponse {
+
+    private int sources;
+
+    private long totalLines;
+
+    private long parseErrors;
+
+    private long overlongSkipped;
+
+    private long duplicateSkipped;
+
+    private long uniqueDocs;
+
+    /**
+     * 本地 Embedding 存储中已有向量的文档数，入库时不调用 API
+     */
+    private long storedDocs;
+
+    private long docsToEmbed;
+
+    private long tokensToEmbed;
+
+    private long estimatedRequests;
+
+    private int batchSize;
+
+    private int batchMaxTokens;
+
+    private int rpmLimit;
+
+    private int tpmLimit;
+
+    /**
+     * 按 RPM/TPM 限制估算的最短入库耗时（秒），不含网络与 Milvus 写入延迟
+     */
+    private long estimatedSeconds;
+
+    /**
+     * 限速瓶颈：RPM 或 TPM
+     */
+    private String bottleneck;
+
+    private long maxTokens;
+
+    private long maxChars;
+
+    private double avgTokens;
+
+    private List<HistogramBucket> tokenHistogram;
+
+    private List<HistogramBucket> charHistogram;
+
+    private int threads;
+
+    private long analysisMs;
+
+    private double linesPerSecond;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class HistogramBucket {
+
+        /**
+         * 区间上界（不含），null 表示无上界
+         */
+        private Long upperBound;
+
+        private long count;
+    }
+}
@@ -0,0 +1,31 @@
+package com.nju.comment.backend.dto.response;
+
+import com.nju.comment.backend.component.ingestion.IngestionJobState;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionDryRunStatusResponse {
+
+    private String jobId;
+
+    private IngestionJobState state;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    private String errorMessage;
+
+    /**
+     * 预演结果，任务完成后才有值
+     */
+    private IngestionDryRunResponse result;
+}
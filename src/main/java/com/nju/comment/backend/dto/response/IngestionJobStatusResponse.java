@@ -0,0 +1,66 @@
+package com.nju.comment.backend.dto.response;
+
+import com.nju.comment.backend.component.ingestion.IngestionJobState;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJobStatusResponse {
+
+    private String jobId;
+
+    private IngestionJobState state;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    /**
+     * 扣除暂停时间后的运行时长
+     */
+    private long activeMs;
+
+    private long totalLines;
+
+    /**
+     * 已完成行数（含断点续跑跳过的行）
+     */
+    private long completedLines;
+
+    private double completedRatio;
+
+    private long embeddedDocs;
+
+    private long embeddedTokens;
+
+    private long duplicateSkipped;
+
+    private long invalidSkipped;
+
+    private long overlongSkipped;
+
+    private double docsPerSecond;
+
+    private double tokensPerSecond;
+
+    /**
+     * 预计剩余秒数，任务未运行或速率未知时为 null
+     */
+    private Long etaSeconds;
+
+    /**
+     * RAG 是否已就绪，false 表示 RAG 请求降级为普通更新
+     */
+    private boolean ragReady;
+
+    private double ragReadyRatio;
+
+    private String errorMessage;
+}
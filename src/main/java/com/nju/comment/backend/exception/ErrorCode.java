@@ -69,6 +69,7 @@ public enum ErrorCode {
     VECTOR_STORE_QUERY_ERROR(6003, "向量检索失败", HttpStatus.INTERNAL_SERVER_ERROR),
     VECTOR_STORE_CONNECTION_ERROR(6004, "向量数据库连接失败", HttpStatus.SERVICE_UNAVAILABLE),
     VECTOR_STORE_INTERRUPTED(6005, "向量数据库操作被中断", HttpStatus.OK),
+    VECTOR_STORE_INGEST_CONFLICT(6006, "向量入库任务状态冲突", HttpStatus.CONFLICT),
 
     // ========== 认证授权错误 7xxx ==========
     AUTH_LOGIN_FAILED(7001, "用户名或密码错误", HttpStatus.UNAUTHORIZED),
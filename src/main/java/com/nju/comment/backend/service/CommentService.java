@@ -4,6 +4,7 @@ import com.nju.comment.backend.dto.request.CancelRequest;
 import com.nju.comment.backend.dto.request.CommentRequest;
 import com.nju.comment.backend.dto.response.CommentResponse;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface CommentService {
@@ -13,6 +14,12 @@ public interface CommentService {
      */
     CompletableFuture<CommentResponse> generateComment(String username, CommentRequest request);
 
+    /**
+     * 批量生成同一文件中多个方法的注释：RAG 检索一次完成，之后各请求独立生成、取消与超时；
+     * 单个请求失败时对应位置返回失败响应
+     */
+    CompletableFuture<List<CommentResponse>> generateComments(String username, List<CommentRequest> requests);
+
     /**
      * 取消正在处理的注释生成请求
      */
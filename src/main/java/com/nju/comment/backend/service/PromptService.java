@@ -2,6 +2,9 @@ package com.nju.comment.backend.service;
 
 import com.nju.comment.backend.dto.request.CommentRequest;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface PromptService {
 
     /**
@@ -13,4 +16,16 @@ public interface PromptService {
      * 构建系统提示语
      */
     String getSystemPrompt(CommentRequest request);
+
+    /**
+     * 异步预取 RAG 检索查询的向量，等待限流额度期间不占用工作线程；
+     * 非 RAG 请求或无需检索时立即完成
+     */
+    CompletableFuture<Void> prefetchRagEmbedding(CommentRequest request);
+
+    /**
+     * 为多个 UPDATE_WITH_RAG 请求一次完成 RAG 检索与示例挑选，结果写回各请求；
+     * 检索成功的请求之后构建提示词时不再逐条检索，其余请求仍逐条检索
+     */
+    void prepareRagExamples(List<CommentRequest> requests);
 }
@@ -1,6 +1,7 @@
 package com.nju.comment.backend.service.impl;
 
 import com.nju.comment.backend.component.RequestCancelRegistry;
+import com.nju.comment.backend.component.vectorstore.VectorSearchRequests;
 import com.nju.comment.backend.dto.request.CancelRequest;
 import com.nju.comment.backend.dto.request.CommentReqTag;
 import com.nju.comment.backend.dto.request.CommentRequest;
@@ -12,6 +13,7 @@ import com.nju.comment.backend.context.UserApiContext;
 import com.nju.comment.backend.service.CacheService;
 import com.nju.comment.backend.service.CommentService;
 import com.nju.comment.backend.service.LLMService;
+import com.nju.comment.backend.service.PromptService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -27,6 +29,7 @@ import java.util.ArrayList;
 import java.util.HexFormat;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -41,15 +44,20 @@ public class CommentServiceImpl implements CommentService {
     private static final Pattern CODE_FENCE_PATTERN = Pattern.compile("(?s)```(?:\\w+)?\\s*(.*?)\\s*```");
 
     private final LLMService llmService;
+    private final PromptService promptService;
     private final CacheService cacheService;
     private final UserApiKeyService userApiKeyService;
     private final RequestCancelRegistry requestCancelRegistry;
     private final ThreadPoolTaskExecutor llmTaskExecutor;
     private final ScheduledExecutorService llmTimeoutScheduler;
+    private final VectorSearchRequests vectorSearchRequests;
 
     @Value("${app.ai.llm.timeout-ms:30000}")
     private long defaultTimeoutMs;
 
+    @Value("${app.comment.batch.max-size:100}")
+    private int maxBatchSize;
+
     @Override
     public CompletableFuture<CommentResponse> generateComment(String username, CommentRequest request) {
         // 获取请求ID
@@ -57,14 +65,41 @@ public class CommentServiceImpl implements CommentService {
 
         long timeoutMs = resolveTimeoutMs(request);
 
+        // 客户端传入的检索参数只允许白名单键，并截断到上限
+        request.setRagSearchParams(vectorSearchRequests.sanitize(request.getRagSearchParams()));
+
         // 在请求线程中捕获用户名和 API Key，避免异步线程池中 SecurityContext 不可用
         String userApiKey = userApiKeyService.getDecryptedApiKey(username);
         if (userApiKey == null || userApiKey.isBlank()) {
             throw new ServiceException(ErrorCode.LLM_API_KEY_NOT_SET);
         }
 
+        // 先查注释缓存，命中时直接返回，不再预取查询向量
+        String key = generateCommentCacheKey(request, username);
+        String cachedComment = cacheService.getComment(key);
+        if (cachedComment != null) {
+            log.info("注释生成请求命中缓存, requestId={}", requestId);
+            return CompletableFuture.completedFuture(CommentResponse.success(cachedComment)
+                    .withRequestId(requestId)
+                    .withModelUsed(request.getModelName())
+                    .withProcessingTime(0L));
+        }
+
+        // RAG 查询向量先异步预取，等待 Embedding 限流额度期间不占用 LLM 工作线程；预取失败时检索阶段照常同步处理
+        CompletableFuture<Void> ragPrefetch;
+        try {
+            ragPrefetch = promptService.prefetchRagEmbedding(request)
+                    .exceptionally(ex -> {
+                        log.debug("RAG查询向量预取失败，检索时同步处理, requestId={}, error={}", requestId, ex.getMessage());
+                        return null;
+                    });
+        } catch (RuntimeException e) {
+            log.debug("RAG查询向量预取失败，检索时同步处理, requestId={}, error={}", requestId, e.getMessage());
+            ragPrefetch = CompletableFuture.completedFuture(null);
+        }
+
         // 使用专用线程池执行，并将真正执行的 Future 注册到取消管理器，确保 cancel(true) 能中断线程
-        CompletableFuture<CommentResponse> future = CompletableFuture.supplyAsync(() -> {
+        CompletableFuture<CommentResponse> future = ragPrefetch.thenApplyAsync(ignored -> {
             // 在异步线程中设置 API Key 上下文
             UserApiContext.setApiKey(userApiKey);
             // 注册当前执行线程，使得cancel时能直接中断阻塞I/O（如LLM网络请求）
@@ -79,24 +114,6 @@ public class CommentServiceImpl implements CommentService {
                     return CommentResponse.cancelled(requestId);
                 }
 
-                // 检查缓存
-                String key = generateCommentCacheKey(request, username);
-                String cachedComment = cacheService.getComment(key);
-                if (cachedComment != null) {
-                    log.info("注释生成请求命中缓存, requestId={}", requestId);
-                    // 重建本次请求的上下文字段
-                    return CommentResponse.success(cachedComment)
-                            .withRequestId(requestId)
-                            .withModelUsed(request.getModelName())
-                            .withProcessingTime(Duration.between(startTime, Instant.now()).toMillis());
-                }
-
-                // 再次检查请求是否已被取消
-                if (isStopped(requestId)) {
-                    log.warn("注释生成请求在缓存检查后被取消, requestId={}", requestId);
-                    return CommentResponse.cancelled(requestId);
-                }
-
                 // 调用 LLM 服务生成注释
                 String generatedComment;
                 try {
@@ -133,7 +150,8 @@ public class CommentServiceImpl implements CommentService {
                 CommentResponse response = CommentResponse.success(processedComment)
                         .withRequestId(requestId)
                         .withModelUsed(request.getModelName())
-                        .withProcessingTime(Duration.between(startTime, Instant.now()).toMillis());
+                        .withProcessingTime(Duration.between(startTime, Instant.now()).toMillis())
+                        .withMetadata(request.getRagMetadata());
 
                 log.info("注释生成请求处理完成, requestId={}, 耗时={}ms", requestId, response.getProcessingTimeMs());
                 return response;
@@ -167,6 +185,47 @@ public class CommentServiceImpl implements CommentService {
         return future;
     }
 
+    @Override
+    public CompletableFuture<List<CommentResponse>> generateComments(String username, List<CommentRequest> requests) {
+        if (requests.size() > maxBatchSize) {
+            throw new ServiceException(ErrorCode.PARAMETER_ERROR, "批量请求数不能超过" + maxBatchSize);
+        }
+        String userApiKey = userApiKeyService.getDecryptedApiKey(username);
+        if (userApiKey == null || userApiKey.isBlank()) {
+            throw new ServiceException(ErrorCode.LLM_API_KEY_NOT_SET);
+        }
+        for (CommentRequest request : requests) {
+            request.setRagSearchParams(vectorSearchRequests.sanitize(request.getRagSearchParams()));
+        }
+
+        // 先在工作线程中一次完成未命中注释缓存的方法的 RAG 检索；失败时各请求在构建提示词时逐条检索
+        return CompletableFuture.runAsync(() -> promptService.prepareRagExamples(requests.stream()
+                        .filter(request -> cacheService.getComment(generateCommentCacheKey(request, username)) == null)
+                        .toList()), llmTaskExecutor)
+                .exceptionally(ex -> {
+                    log.warn("批量RAG检索失败，各请求逐条检索, size={}, error={}", requests.size(), ex.getMessage());
+                    return null;
+                })
+                .thenCompose(ignored -> {
+                    List<CompletableFuture<CommentResponse>> futures = new ArrayList<>(requests.size());
+                    for (CommentRequest request : requests) {
+                        CompletableFuture<CommentResponse> future;
+                        try {
+                            future = generateComment(username, request);
+                        } catch (RuntimeException e) {
+                            future = CompletableFuture.failedFuture(e);
+                        }
+                        futures.add(future.exceptionally(ex -> {
+                            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                            log.warn("批量注释生成中单个请求失败, requestId={}, error={}", request.getRequestId(), cause.getMessage());
+                            return CommentResponse.error(cause.getMessage()).withRequestId(request.getRequestId());
+                        }));
+                    }
+                    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                            .thenApply(done -> futures.stream().map(CompletableFuture::join).toList());
+                });
+    }
+
     @Override
     public void cancel(CancelRequest request) {
         requestCancelRegistry.cancel(request.getRequestId());
@@ -0,0 +1,107 @@
+package com.nju.comment.backend.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.component.ingestion.BinaryCorpusWriter;
+import com.nju.comment.backend.component.ingestion.CorpusFormat;
+import com.nju.comment.backend.component.ingestion.CorpusReader;
+import com.nju.comment.backend.component.ingestion.CorpusRecord;
+import com.nju.comment.backend.component.ingestion.CorpusRecordParser;
+import com.nju.comment.backend.component.ingestion.CorpusSource;
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.ServiceException;
+import com.nju.comment.backend.exception.VectorStoreException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 将 JSONL（含 gzip / zstd）语料转换为紧凑二进制格式（.ccr）
+ * <p>
+ * 输出统一放在 {@code app.vectorstore.corpus.dir} 下；二进制语料已预先计算 docId，
+ * 入库时不再需要 JSON 解析与哈希，可通过 {@code app.vectorstore.corpus.locations} 引用。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CorpusConversionService {
+
+    private static final Pattern SAFE_FILE_NAME = Pattern.compile("[A-Za-z0-9._-]{1,128}\\.ccr");
+
+    private final ResourcePatternResolver resourcePatternResolver;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.vectorstore.corpus.dir:data/corpus}")
+    private String corpusDir;
+
+    public Map<String, Object> convertToBinary(String sourceLocation, String targetFileName) {
+        Resource resource = resourcePatternResolver.getResource(sourceLocation);
+        CorpusFormat format = CorpusFormat.fromFileName(resource.getFilename());
+        if (!resource.exists() || format == null || !format.isText()) {
+            throw new ServiceException(ErrorCode.PARAMETER_ERROR, "源语料不存在或格式不支持: " + sourceLocation);
+        }
+        if (targetFileName == null || !SAFE_FILE_NAME.matcher(targetFileName).matches()) {
+            throw new ServiceException(ErrorCode.PARAMETER_ERROR, "文件名不合法: " + targetFileName);
+        }
+
+        Path target = resolveCorpusDir().resolve(targetFileName);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        CorpusSource source = new CorpusSource(resource, resource.getFilename(), format, 0, Long.MAX_VALUE, 0L, false);
+        CorpusRecordParser parser = new CorpusRecordParser(objectMapper.getFactory());
+        long startTime = System.currentTimeMillis();
+        long invalid = 0;
+        long written;
+        try {
+            Files.createDirectories(target.getParent());
+            try (CorpusReader reader = source.open(parser);
+                 BinaryCorpusWriter writer = new BinaryCorpusWriter(temp)) {
+                long lineNumber = 0;
+                while (reader.next()) {
+                    lineNumber++;
+                    CorpusRecord record;
+                    try {
+                        record = reader.read();
+                    } catch (IOException e) {
+                        invalid++;
+                        log.warn("跳过无法解析的语料行: source={}, lineNumber={}", sourceLocation, lineNumber);
+                        continue;
+                    }
+                    writer.write(record);
+                }
+                written = writer.getRecordCount();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("语料转换失败: source={}, target={}", sourceLocation, target, e);
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "语料转换失败", e);
+        }
+
+        log.info("语料转换完成: source={}, target={}, records={}, invalid={}, 耗时={}ms",
+                sourceLocation, target, written, invalid, System.currentTimeMillis() - startTime);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("file", target.toString());
+        result.put("records", written);
+        result.put("invalid", invalid);
+        return result;
+    }
+
+    private Path resolveCorpusDir() {
+        Path path = Paths.get(corpusDir);
+        if (path.isAbsolute()) {
+            return path;
+        }
+        return Paths.get("").toAbsolutePath().resolve(path).normalize();
+    }
+}
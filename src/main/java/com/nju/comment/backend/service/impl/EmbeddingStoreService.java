@@ -0,0 +1,131 @@
+package com.nju.comment.backend.service.impl;
+
+import com.nju.comment.backend.component.embedding.PersistentEmbeddingStore;
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.ServiceException;
+import com.nju.comment.backend.exception.VectorStoreException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Embedding 持久化存储的导出/导入管理
+ * <p>
+ * 导出文件统一放在 {@code <embedding-store.path>/exports} 下，随数据卷一起被 backup-data.sh 备份；
+ * 恢复时可通过 {@code app.vectorstore.embedding-store.import-file} 在启动时自动导入，
+ * 随后的入库任务即可在不调用 Embedding API 的情况下重建 Milvus。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class EmbeddingStoreService {
+
+    private static final Pattern SAFE_FILE_NAME = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+
+    private final PersistentEmbeddingStore embeddingStore;
+
+    @Value("${app.vectorstore.embedding-store.path:data/embedding-store}")
+    private String storePath;
+
+    @Value("${app.vectorstore.embedding-store.import-file:}")
+    private String importFileOnStartup;
+
+    /**
+     * 先于入库任务执行，保证自动启动的入库能命中导入的向量
+     */
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void importOnStartup() {
+        if (!embeddingStore.isEnabled() || !StringUtils.hasText(importFileOnStartup)) {
+            return;
+        }
+        Path file = resolveConfiguredPath(importFileOnStartup.trim());
+        if (!Files.exists(file)) {
+            log.warn("启动导入的 Embedding 文件不存在，跳过: file={}", file);
+            return;
+        }
+        importFile(file);
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", embeddingStore.isEnabled());
+        status.put("model", embeddingStore.getModelName());
+        status.put("dimension", embeddingStore.getDimension());
+        status.put("vectors", embeddingStore.size());
+        status.put("hits", embeddingStore.getHits());
+        status.put("misses", embeddingStore.getMisses());
+        return status;
+    }
+
+    public Map<String, Object> export(String fileName) {
+        Path target = resolveExportFile(fileName);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long startTime = System.currentTimeMillis();
+        try {
+            Files.createDirectories(target.getParent());
+            long count;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                count = embeddingStore.exportTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Embedding 导出完成: file={}, count={}, 耗时={}ms", target, count, System.currentTimeMillis() - startTime);
+            return Map.of("file", target.toString(), "count", count);
+        } catch (IOException e) {
+            log.error("Embedding 导出失败: file={}", target, e);
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "Embedding 导出失败", e);
+        }
+    }
+
+    public Map<String, Object> importExport(String fileName) {
+        Path source = resolveExportFile(fileName);
+        if (!Files.exists(source)) {
+            throw new ServiceException(ErrorCode.RESOURCE_NOT_FOUND, "导出文件不存在: " + fileName);
+        }
+        long imported = importFile(source);
+        return Map.of("file", source.toString(), "imported", imported);
+    }
+
+    private long importFile(Path source) {
+        long startTime = System.currentTimeMillis();
+        try (InputStream in = Files.newInputStream(source)) {
+            long imported = embeddingStore.importFrom(in);
+            log.info("Embedding 导入完成: file={}, imported={}, 耗时={}ms", source, imported, System.currentTimeMillis() - startTime);
+            return imported;
+        } catch (IOException e) {
+            log.error("Embedding 导入失败: file={}", source, e);
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_ERROR, "Embedding 导入失败", e);
+        }
+    }
+
+    private Path resolveExportFile(String fileName) {
+        if (fileName == null || !SAFE_FILE_NAME.matcher(fileName).matches()) {
+            throw new ServiceException(ErrorCode.PARAMETER_ERROR, "文件名不合法: " + fileName);
+        }
+        return resolveConfiguredPath(storePath).resolve("exports").resolve(fileName);
+    }
+
+    private Path resolveConfiguredPath(String configured) {
+        Path path = Paths.get(configured);
+        if (path.isAbsolute()) {
+            return path;
+        }
+        return Paths.get("").toAbsolutePath().resolve(path).normalize();
+    }
+}
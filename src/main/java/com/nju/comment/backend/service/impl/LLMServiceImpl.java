@@ -2,6 +2,7 @@ package com.nju.comment.backend.service.impl;
 
 import com.nju.comment.backend.component.OllamaModelFactory;
 import com.nju.comment.backend.context.UserApiContext;
+import com.nju.comment.backend.dto.request.CommentReqTag;
 import com.nju.comment.backend.dto.request.CommentRequest;
 import com.nju.comment.backend.exception.ErrorCode;
 import com.nju.comment.backend.exception.LLMException;
@@ -12,10 +13,20 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.ResourceAccessException;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -25,6 +36,13 @@ public class LLMServiceImpl implements LLMService {
     private final OllamaModelFactory ollamaModelFactory;
     private final UserApiKeyService userApiKeyService;
     private final PromptService promptService;
+    private final ThreadPoolTaskExecutor ragTaskExecutor;
+
+    @Value("${app.rag.time-box.timeout-ms:5000}")
+    private long ragTimeoutMs;
+
+    @Value("${app.rag.time-box.speculative-after-ms:0}")
+    private long speculativeAfterMs;
 
     @Override
     public String generateComment(CommentRequest request) {
@@ -43,16 +61,9 @@ public class LLMServiceImpl implements LLMService {
 
             ChatClient client = ollamaModelFactory.getChatModelClient(request.getModelName());
             String systemPrompt = promptService.getSystemPrompt(request);
-            String userPrompt = promptService.buildUserPrompt(request);
-
-            log.info("调用LLM生成注释，requestId={}", requestId);
-
-            // 执行LLM调用，期间可被线程中断
-            String result = client.prompt()
-                    .system(systemPrompt)
-                    .user(userPrompt)
-                    .call()
-                    .content();
+            String result = useRagTimeBox(request)
+                    ? generateWithRagTimeBox(request, client, systemPrompt)
+                    : call(client, systemPrompt, promptService.buildUserPrompt(request), requestId);
 
             // 调用后再次检查中断状态
             if (Thread.currentThread().isInterrupted()) {
@@ -105,6 +116,127 @@ public class LLMServiceImpl implements LLMService {
         }
     }
 
+    private String call(ChatClient client, String systemPrompt, String userPrompt, String requestId) {
+        log.info("调用LLM生成注释，requestId={}", requestId);
+
+        // 执行LLM调用，期间可被线程中断
+        return client.prompt()
+                .system(systemPrompt)
+                .user(userPrompt)
+                .call()
+                .content();
+    }
+
+    private boolean useRagTimeBox(CommentRequest request) {
+        return ragTimeoutMs > 0
+                && CommentReqTag.UPDATE_WITH_RAG.equals(request.getTag())
+                && request.getRagExampleNum() > 0
+                // 已由批量检索准备好示例
+                && request.getRagMetadata() == null;
+    }
+
+    /**
+     * RAG 检索限时：检索与随后的 LLM 调用在 RAG 线程池中执行，检索超过 timeout-ms 未完成则取消，改用无示例提示词调用 LLM。
+     * 开启投机调用时，检索超过 speculative-after-ms 即并行发起无示例的 LLM 调用，两路取先成功者，另一路取消。
+     * 胜出路径写入 ragMetadata 的 ragPath：rag / speculative（投机调用先完成）/ timeout（检索超时）。
+     */
+    private String generateWithRagTimeBox(CommentRequest request, ChatClient client, String systemPrompt) throws Exception {
+        String requestId = request.getRequestId();
+        String apiKey = UserApiContext.getApiKey();
+        CommentRequest ragRequest = request.toBuilder().build();
+        CountDownLatch retrieved = new CountDownLatch(1);
+        ExecutorCompletionService<String> race = new ExecutorCompletionService<>(ragTaskExecutor);
+
+        long start = System.currentTimeMillis();
+        long timeBoxAt = start + ragTimeoutMs;
+        long speculateAt = speculativeAfterMs > 0 ? start + speculativeAfterMs : Long.MAX_VALUE;
+
+        Future<String> rag = race.submit(withApiKey(apiKey, () -> {
+            String userPrompt = promptService.buildUserPrompt(ragRequest);
+            retrieved.countDown();
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("线程已被中断");
+            }
+            return call(client, systemPrompt, userPrompt, requestId);
+        }));
+        Future<String> plain = null;
+        boolean ragTimedOut = false;
+        int pending = 1;
+        Exception failure = null;
+        try {
+            while (pending > 0) {
+                boolean retrieving = retrieved.getCount() > 0 && !rag.isDone();
+                long next = !retrieving ? Long.MAX_VALUE : plain == null ? Math.min(timeBoxAt, speculateAt) : timeBoxAt;
+                Future<String> done = next == Long.MAX_VALUE
+                        ? race.take()
+                        : race.poll(Math.max(0, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    if (retrieved.getCount() == 0) {
+                        // 检索已在等待期间完成，时间上限只约束检索，继续等待带示例的 LLM 调用
+                        continue;
+                    }
+                    if (System.currentTimeMillis() >= timeBoxAt) {
+                        ragTimedOut = true;
+                        rag.cancel(true);
+                        log.warn("RAG降级：检索超过{}ms未完成，以无示例提示词调用LLM，requestId={}", ragTimeoutMs, requestId);
+                    } else {
+                        log.info("RAG检索超过{}ms未完成，并行发起无示例的LLM调用，requestId={}", speculativeAfterMs, requestId);
+                    }
+                    if (plain == null) {
+                        CommentRequest plainRequest = request.toBuilder()
+                                .tag(CommentReqTag.UPDATE_WITHOUT_RAG)
+                                .ragExample(null)
+                                .build();
+                        plain = race.submit(withApiKey(apiKey, () -> call(
+                                client, systemPrompt, promptService.buildUserPrompt(plainRequest), requestId)));
+                        pending++;
+                    }
+                    continue;
+                }
+                pending--;
+                if (done.isCancelled()) {
+                    continue;
+                }
+                try {
+                    String result = done.get();
+                    Map<String, Object> ragMetadata = new LinkedHashMap<>();
+                    if (done == rag) {
+                        request.setRagExample(ragRequest.getRagExample());
+                        if (ragRequest.getRagMetadata() != null) {
+                            ragMetadata.putAll(ragRequest.getRagMetadata());
+                        }
+                    }
+                    String path = done == rag ? "rag" : ragTimedOut ? "timeout" : "speculative";
+                    ragMetadata.put("ragPath", path);
+                    request.setRagMetadata(ragMetadata);
+                    log.info("RAG限时检索完成：胜出路径={}，耗时：{}ms，requestId={}",
+                            path, System.currentTimeMillis() - start, requestId);
+                    return result;
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof Exception cause ? cause : e;
+                    log.debug("RAG限时检索中一路调用失败，requestId={}, error={}", requestId, failure.getMessage());
+                }
+            }
+        } finally {
+            rag.cancel(true);
+            if (plain != null) {
+                plain.cancel(true);
+            }
+        }
+        throw failure != null ? failure : new LLMException(ErrorCode.LLM_SERVICE_ERROR);
+    }
+
+    private static <T> Callable<T> withApiKey(String apiKey, Callable<T> task) {
+        return () -> {
+            UserApiContext.setApiKey(apiKey);
+            try {
+                return task.call();
+            } finally {
+                UserApiContext.clear();
+            }
+        };
+    }
+
     /**
      * 检查异常链中是否包含 InterruptedException（Spring AI包装异常，需要解包）
      */
@@ -1,8 +1,18 @@
 package com.nju.comment.backend.service.impl;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+import com.nju.comment.backend.component.embedding.QueryCachedEmbeddingModel;
+import com.nju.comment.backend.component.embedding.QueryEmbeddingCache;
+import com.nju.comment.backend.component.embedding.RateLimitedEmbeddingModel;
+import com.nju.comment.backend.component.ingestion.EditType;
+import com.nju.comment.backend.component.ingestion.EmbeddingTextFormat;
+import com.nju.comment.backend.component.ingestion.EmbeddingTextFormats;
+import com.nju.comment.backend.component.ingestion.MethodDiffText;
+import com.nju.comment.backend.component.rag.RagExampleSelector;
+import com.nju.comment.backend.component.vectorstore.BatchRetriever;
+import com.nju.comment.backend.component.vectorstore.HybridRetriever;
 import com.nju.comment.backend.dto.request.CommentReqTag;
 import com.nju.comment.backend.dto.request.CommentRequest;
 import com.nju.comment.backend.exception.*;
@@ -13,10 +23,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.client.ResourceAccessException;
@@ -26,8 +36,11 @@ import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Slf4j
@@ -93,49 +106,141 @@ public class PromptServiceImpl implements PromptService {
     }
 
 
-    private final VectorStore vectorStore;
-
     private final ObjectMapper objectMapper;
 
-    @Value("classpath:prompts/prompt_rag_example.txt")
-    private Resource ragExampleTemplate;
+    private final VectorStoreIngestionService vectorStoreIngestionService;
+
+    private final EmbeddingTokenEstimator tokenEstimator;
+
+    private final EmbeddingTextFormats embeddingTextFormats;
+
+    private final HybridRetriever hybridRetriever;
+
+    private final BatchRetriever batchRetriever;
+
+    /**
+     * 仅远程 Embedding 提供方存在；本地模型无需等待额度，不做预取
+     */
+    private final ObjectProvider<RateLimitedEmbeddingModel> rateLimitedEmbeddingModel;
+
+    /**
+     * 主 EmbeddingModel，预取经其合并层发出
+     */
+    private final QueryCachedEmbeddingModel queryEmbeddingModel;
+
+    private final QueryEmbeddingCache queryEmbeddingCache;
+
+    private final ThreadPoolTaskExecutor llmTaskExecutor;
+
+    private final RagExampleSelector ragExampleSelector;
 
-    @Value("${app.vectorstore.embedding-max-input-chars:7000}")
-    private int ragMaxQueryChars;
+    /**
+     * 按请求的编辑类型过滤 RAG 示例，语料需以带编辑类型的版本重新入库
+     */
+    @Value("${app.rag.edit-type.filter-enabled:false}")
+    private boolean editTypeFilterEnabled;
+
+    @Override
+    public CompletableFuture<Void> prefetchRagEmbedding(CommentRequest request) {
+        if (request == null
+                || !CommentReqTag.UPDATE_WITH_RAG.equals(request.getTag())
+                || request.getRagMetadata() != null
+                || request.getRagExampleNum() <= 0
+                || !vectorStoreIngestionService.isRagReady()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (rateLimitedEmbeddingModel.getIfAvailable() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String query = buildQueryForRAG(request);
+        if (tokenEstimator.exceedsInputLimit(query) || queryEmbeddingCache.get(query) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long startTime = System.currentTimeMillis();
+        // 经合并层发出，与并发的预取和检索查询共用一次 Embedding 请求
+        return queryEmbeddingModel.embedAsync(query, llmTaskExecutor)
+                .thenAccept(embedding -> {
+                    queryEmbeddingCache.put(query, embedding);
+                    log.debug("RAG查询向量预取完成，耗时：{}ms，requestId={}",
+                            System.currentTimeMillis() - startTime, request.getRequestId());
+                });
+    }
+
+    @Override
+    public void prepareRagExamples(List<CommentRequest> requests) {
+        long startTime = System.currentTimeMillis();
+        Map<RagBatchKey, List<CommentRequest>> batches = new LinkedHashMap<>();
+        Map<CommentRequest, RagQuery> ragQueries = new IdentityHashMap<>();
+        for (CommentRequest request : requests) {
+            if (request == null || !CommentReqTag.UPDATE_WITH_RAG.equals(request.getTag())) {
+                continue;
+            }
+            RagQuery ragQuery;
+            try {
+                ragQuery = ragQuery(request);
+            } catch (RuntimeException e) {
+                log.warn("RAG降级：构建检索查询失败，回退为普通更新注释请求，requestId={}", request.getRequestId(), e);
+                continue;
+            }
+            if (ragQuery == null) {
+                continue;
+            }
+            ragQueries.put(request, ragQuery);
+            batches.computeIfAbsent(new RagBatchKey(ragExampleSelector.candidateCount(ragQuery.k()), request.getRagSearchParams()),
+                    ignored -> new ArrayList<>()).add(request);
+        }
+
+        for (Map.Entry<RagBatchKey, List<CommentRequest>> batch : batches.entrySet()) {
+            List<CommentRequest> batchRequests = batch.getValue();
+            List<BatchRetriever.Query> queries = new ArrayList<>(batchRequests.size());
+            for (CommentRequest request : batchRequests) {
+                RagQuery ragQuery = ragQueries.get(request);
+                queries.add(new BatchRetriever.Query(ragQuery.query(), ragQuery.methodText(), ragQuery.editType()));
+            }
+            try {
+                List<List<Document>> candidates = batchRetriever.retrieveAll(
+                        queries, batch.getKey().topK(), batch.getKey().searchParams());
+                // 检索成功后才写入 ragMetadata，构建提示词时据此跳过逐条检索
+                for (int i = 0; i < batchRequests.size(); i++) {
+                    CommentRequest request = batchRequests.get(i);
+                    applySelection(request, ragQueries.get(request), candidates.get(i));
+                }
+            } catch (RuntimeException e) {
+                if (isInterrupted(e)) {
+                    throw new VectorStoreException(ErrorCode.VECTOR_STORE_INTERRUPTED, "RAG检索已取消", e);
+                }
+                log.warn("批量RAG检索异常，{}条请求在构建提示词时逐条检索", batchRequests.size(), e);
+            }
+        }
+        log.info("RAG批量检索完成：{}条请求，检索{}条，耗时：{}ms",
+                requests.size(), ragQueries.size(), System.currentTimeMillis() - startTime);
+    }
 
     private void buildRagExample(CommentRequest request) {
         if (request == null) {
             throw new ServiceException(ErrorCode.PARAMETER_ERROR, "请求参数不能为空");
         }
+        if (request.getRagMetadata() != null) {
+            log.debug("RAG示例已批量检索，requestId={}", request.getRequestId());
+            return;
+        }
 
         long startTime = System.currentTimeMillis();
         request.setRagExample("");
 
         try {
-            int k = request.getRagExampleNum();
-            if (k <= 0) {
-                log.info("RAG降级：ragExampleNum<=0，回退为普通更新注释请求，requestId={}", request.getRequestId());
-                return;
-            }
-
-            String query = buildQueryForRAG(request);
-            if (isOverlongRagQuery(query)) {
-                log.warn("RAG降级：检索查询过长，回退为普通更新注释请求，requestId={}, queryLength={}, maxAllowed={}",
-                        request.getRequestId(), query.length(), Math.max(256, ragMaxQueryChars));
+            RagQuery ragQuery = ragQuery(request);
+            if (ragQuery == null) {
                 return;
             }
-
-            List<Document> topK = vectorStore.similaritySearch(
-                    SearchRequest.builder()
-                            .query(query)
-                            .topK(k)
-                            .build()
-            );
+            List<Document> candidates = hybridRetriever.retrieve(ragQuery.query(), ragQuery.methodText(),
+                    ragExampleSelector.candidateCount(ragQuery.k()), request.getRagSearchParams(), ragQuery.editType());
             long endTime = System.currentTimeMillis();
             log.info("RAG检索完成，耗时：{}ms", endTime - startTime);
-
-            String ragExamples = buildRagExamples(topK);
-            request.setRagExample(ragExamples);
+            applySelection(request, ragQuery, candidates);
         } catch (ResourceAccessException e) {
             if (isInterrupted(e)) {
                 log.info("RAG检索在执行中被中断，耗时：{}ms，requestId={}",
@@ -148,13 +253,53 @@ public class PromptServiceImpl implements PromptService {
         }
     }
 
-    private boolean isOverlongRagQuery(String query) {
-        if (query == null || query.isEmpty()) {
-            return false;
+    /**
+     * 构造检索查询；无需或无法检索时记录降级原因并返回 null
+     */
+    private RagQuery ragQuery(CommentRequest request) {
+        int k = request.getRagExampleNum();
+        if (k <= 0) {
+            log.info("RAG降级：ragExampleNum<=0，回退为普通更新注释请求，requestId={}", request.getRequestId());
+            return null;
+        }
+
+        if (!vectorStoreIngestionService.isRagReady()) {
+            log.info("RAG降级：向量入库任务尚未达到就绪点，回退为普通更新注释请求，requestId={}", request.getRequestId());
+            return null;
         }
 
-        int maxChars = Math.max(256, ragMaxQueryChars);
-        return query.codePointCount(0, query.length()) > maxChars;
+        String query = buildQueryForRAG(request);
+        if (tokenEstimator.exceedsInputLimit(query)) {
+            log.warn("RAG降级：检索查询过长，回退为普通更新注释请求，requestId={}, queryLength={}, maxAllowed={}",
+                    request.getRequestId(), query.length(), tokenEstimator.describeInputLimit());
+            return null;
+        }
+
+        String methodText = TextProcessUtil.processMethod(request.getOldMethod())
+                + "\n" + TextProcessUtil.processMethod(request.getNewMethod());
+        EditType editType = editTypeFilterEnabled
+                ? EditType.classify(request.getOldMethod(), request.getNewMethod())
+                : null;
+        return new RagQuery(query, methodText, editType, k);
+    }
+
+    private void applySelection(CommentRequest request, RagQuery ragQuery, List<Document> candidates) {
+        RagExampleSelector.Selection selection = ragExampleSelector.select(candidates, ragQuery.k());
+        log.info("RAG示例挑选完成：候选{}条，选中{}条，低于阈值{}条，重复{}条，超出token上限{}条，估算节省{} tokens，requestId={}",
+                selection.candidates(), selection.snippets().size(), selection.belowThreshold(),
+                selection.redundant(), selection.overBudget(), selection.estimatedTokensSaved(), request.getRequestId());
+        Map<String, Object> ragMetadata = selection.toMetadata();
+        if (ragQuery.editType() != null) {
+            ragMetadata.put("ragEditType", ragQuery.editType().name());
+        }
+        request.setRagMetadata(ragMetadata);
+        request.setRagExample(buildRagExamples(selection.snippets()));
+    }
+
+    private record RagQuery(String query, String methodText, EditType editType, int k) {
+    }
+
+    private record RagBatchKey(int topK, String searchParams) {
     }
 
     private boolean isInterrupted(Throwable throwable) {
@@ -177,6 +322,10 @@ public class PromptServiceImpl implements PromptService {
         String newMethod = TextProcessUtil.processMethod(request.getNewMethod());
         String oldComment = TextProcessUtil.processComment(request.getOldComment());
 
+        if (embeddingTextFormats.current() == EmbeddingTextFormat.DIFF) {
+            return MethodDiffText.render(oldMethod, newMethod, oldComment);
+        }
+
         ObjectNode jsonNodes = objectMapper.createObjectNode();
         jsonNodes.put("src_method", oldMethod);
         jsonNodes.put("dst_method", newMethod);
@@ -190,56 +339,13 @@ public class PromptServiceImpl implements PromptService {
         }
     }
 
-    private String buildRagExamples(List<Document> documents) {
-        if (documents == null || documents.isEmpty()) {
+    private String buildRagExamples(List<String> snippets) {
+        if (snippets.isEmpty()) {
             return "";
         }
 
-        List<String> examples = new ArrayList<>();
-        PromptTemplate exampleTemplate = new PromptTemplate(ragExampleTemplate);
-
-        for (Document document : documents) {
-            if (document == null || document.getText() == null || document.getText().isEmpty()) {
-                continue;
-            }
-            try {
-                Map<String, Object> exampleContext = new HashMap<>();
-                String srcMethod = readDocumentField(document, "src_method");
-                String dstMethod = readDocumentField(document, "dst_method");
-                String srcJavadoc = readDocumentField(document, "src_javadoc");
-                String dstJavadoc = readDocumentField(document, "dst_javadoc");
-
-                exampleContext.put("old_method", srcMethod);
-                exampleContext.put("new_method", dstMethod);
-                exampleContext.put("old_comment", srcJavadoc);
-                exampleContext.put("new_comment", dstJavadoc);
-
-                Prompt prompt = exampleTemplate.create(exampleContext);
-                examples.add(prompt.getContents());
-            } catch (Exception e) {
-                log.warn("解析RAG示例失败，跳过该条向量结果", e);
-            }
-        }
-
         String delimiter = "\n--------------------------------------------------------\n";
-        return delimiter + String.join(delimiter, examples) + delimiter;
-    }
-
-    private String readDocumentField(Document document, String fieldName) {
-        Object metadataValue = document.getMetadata().get(fieldName);
-        if (metadataValue != null) {
-            if (fieldName.contains("method")) {
-                return TextProcessUtil.processMethod(metadataValue.toString());
-            }
-            return metadataValue.toString();
-        }
-
-        try {
-            JsonNode node = objectMapper.readTree(document.getText());
-            return node.path(fieldName).asText("");
-        } catch (Exception ignored) {
-            return "";
-        }
+        return delimiter + String.join(delimiter, snippets) + delimiter;
     }
 
 
@@ -0,0 +1,319 @@
+package com.nju.comment.backend.service.impl;
+
+import com.nju.comment.backend.component.ingestion.IngestionJobControl;
+import com.nju.comment.backend.component.ingestion.IngestionJobState;
+import com.nju.comment.backend.dto.response.IngestionDryRunResponse;
+import com.nju.comment.backend.dto.response.IngestionDryRunStatusResponse;
+import com.nju.comment.backend.dto.response.IngestionJobStatusResponse;
+import com.nju.comment.backend.exception.ErrorCode;
+import com.nju.comment.backend.exception.ServiceException;
+import com.nju.comment.backend.exception.VectorStoreException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 向量入库后台任务管理
+ * <p>
+ * 入库与入库预演在专用线程池中异步执行，不再阻塞应用启动或 HTTP 线程；同一时刻最多只有一个任务。
+ * 任务完成比例达到 {@code app.vectorstore.ingest.rag-ready-ratio} 之前，RAG 视为降级。
+ */
+@Service
+@Slf4j
+public class VectorStoreIngestionService {
+
+    private final VectorStoreInitializer vectorStoreInitializer;
+    private final ThreadPoolTaskExecutor ingestTaskExecutor;
+
+    @Value("${app.vectorstore.init:false}")
+    private boolean autoStart;
+
+    @Value("${app.vectorstore.ingest.rag-ready-ratio:1.0}")
+    private double ragReadyRatio;
+
+    private final Object monitor = new Object();
+
+    private volatile IngestionJobControl currentJob;
+    private Future<?> currentFuture;
+    private volatile IngestionDryRunStatusResponse currentDryRun;
+
+    /**
+     * 当前任务是否已越过 RAG 就绪点（一旦越过不再回退）
+     */
+    private volatile boolean ragReadyReached = true;
+
+    /**
+     * 当前任务启动前的就绪状态；任务取消或失败且未达到就绪点时恢复为该值，已有集合仍可用于 RAG
+     */
+    private volatile boolean readyBeforeJob = true;
+
+    public VectorStoreIngestionService(VectorStoreInitializer vectorStoreInitializer,
+                                       @Qualifier("ingestTaskExecutor") ThreadPoolTaskExecutor ingestTaskExecutor) {
+        this.vectorStoreInitializer = vectorStoreInitializer;
+        this.ingestTaskExecutor = ingestTaskExecutor;
+    }
+
+    @Order(10)
+    @EventListener(ApplicationReadyEvent.class)
+    public void autoStartOnReady() {
+        if (!autoStart) {
+            log.info("VectorStore initialization is disabled.");
+            return;
+        }
+        start();
+    }
+
+    public IngestionJobStatusResponse start() {
+        synchronized (monitor) {
+            if (currentJob != null && currentJob.getState().isActive()) {
+                throw new ServiceException(ErrorCode.VECTOR_STORE_INGEST_CONFLICT,
+                        "已有向量入库任务在运行: jobId=" + currentJob.getJobId());
+            }
+            requireNoDryRun();
+
+            IngestionJobControl control = new IngestionJobControl(UUID.randomUUID().toString());
+            IngestionJobControl previousJob = currentJob;
+            boolean previousReady = ragReadyReached;
+            currentJob = control;
+            readyBeforeJob = previousReady;
+            ragReadyReached = false;
+            try {
+                currentFuture = ingestTaskExecutor.submit(() -> runJob(control));
+            } catch (RejectedExecutionException e) {
+                // 上一个任务的线程尚未退出（线程池 1/1/0），回滚为提交前的状态
+                currentJob = previousJob;
+                ragReadyReached = previousReady;
+                throw new ServiceException(ErrorCode.VECTOR_STORE_INGEST_CONFLICT,
+                        "上一个向量入库任务尚未退出，请稍后重试");
+            }
+            log.info("向量入库任务已启动: jobId={}", control.getJobId());
+            return buildStatus(control);
+        }
+    }
+
+    public IngestionJobStatusResponse pause() {
+        IngestionJobControl control = requireActiveJob();
+        if (!control.pause()) {
+            throw new ServiceException(ErrorCode.VECTOR_STORE_INGEST_CONFLICT,
+                    "当前任务状态不可暂停: " + control.getState());
+        }
+        log.info("向量入库任务已暂停: jobId={}", control.getJobId());
+        return buildStatus(control);
+    }
+
+    public IngestionJobStatusResponse resume() {
+        IngestionJobControl control = requireActiveJob();
+        if (!control.resume()) {
+            throw new ServiceException(ErrorCode.VECTOR_STORE_INGEST_CONFLICT,
+                    "当前任务状态不可恢复: " + control.getState());
+        }
+        log.info("向量入库任务已恢复: jobId={}", control.getJobId());
+        return buildStatus(control);
+    }
+
+    public IngestionJobStatusResponse cancel() {
+        synchronized (monitor) {
+            IngestionJobControl control = requireActiveJob();
+            control.requestCancel();
+            if (control.claim()) {
+                // 任务尚未开始执行：入库线程不会再运行它，在此直接结束，否则任务一直处于活动状态，后续启动都会冲突
+                if (currentFuture != null) {
+                    currentFuture.cancel(false);
+                }
+                control.finish(IngestionJobState.CANCELLED, null);
+                ragReadyReached = readyBeforeJob;
+                log.info("向量入库任务在开始执行前已取消: jobId={}", control.getJobId());
+                return buildStatus(control);
+            }
+            // 中断可能阻塞在限流等待或网络 I/O 中的入库线程，已入库批次的断点保留用于下次续跑
+            if (currentFuture != null) {
+                currentFuture.cancel(true);
+            }
+            log.info("向量入库任务取消请求已发出: jobId={}", control.getJobId());
+            return buildStatus(control);
+        }
+    }
+
+    public IngestionJobStatusResponse status() {
+        IngestionJobControl control = currentJob;
+        if (control == null) {
+            return IngestionJobStatusResponse.builder()
+                    .state(IngestionJobState.IDLE)
+                    .ragReady(isRagReady())
+                    .build();
+        }
+        return buildStatus(control);
+    }
+
+    /**
+     * 在入库线程池中启动入库预演（内部按核数并行），通过 {@link #dryRunStatus()} 查询进度与结果；
+     * 与入库任务共用线程池，入库运行中时不可启动
+     */
+    public IngestionDryRunStatusResponse startDryRun() {
+        synchronized (monitor) {
+            if (currentJob != null && currentJob.getState().isActive()) {
+                throw new ServiceException(ErrorCode.VECTOR_STORE_INGEST_CONFLICT,
+                        "向量入库任务运行中，无法预演: jobId=" + currentJob.getJobId());
+            }
+            requireNoDryRun();
+
+            IngestionDryRunStatusResponse dryRun = IngestionDryRunStatusResponse.builder()
+                    .jobId(UUID.randomUUID().toString())
+                    .state(IngestionJobState.RUNNING)
+                    .startedAt(Instant.now())
+                    .build();
+            IngestionDryRunStatusResponse previous = currentDryRun;
+            currentDryRun = dryRun;
+            try {
+                ingestTaskExecutor.submit(() -> runDryRun(dryRun));
+            } catch (RejectedExecutionException e) {
+                currentDryRun = previous;
+                throw new ServiceException(ErrorCode.VECTOR_STORE_INGEST_CONFLICT,
+                        "上一个向量入库任务尚未退出，请稍后重试");
+            }
+            log.info("入库预演已启动: jobId={}", dryRun.getJobId());
+            return dryRun;
+        }
+    }
+
+    /**
+     * 最近一次入库预演的状态，完成后带预演结果
+     */
+    public IngestionDryRunStatusResponse dryRunStatus() {
+        IngestionDryRunStatusResponse dryRun = currentDryRun;
+        if (dryRun == null) {
+            return IngestionDryRunStatusResponse.builder().state(IngestionJobState.IDLE).build();
+        }
+        return dryRun;
+    }
+
+    /**
+     * RAG 是否可用：未运行过入库任务时视为已有可用集合；
+     * 任务运行中则需完成比例达到就绪点，任务取消或失败后恢复为任务启动前的状态。只读，不改变就绪标记。
+     */
+    public boolean isRagReady() {
+        IngestionJobControl control = currentJob;
+        return control == null || ragReadyReached || reachedReadyPoint(control);
+    }
+
+    private boolean reachedReadyPoint(IngestionJobControl control) {
+        return control.getState() == IngestionJobState.COMPLETED || control.getCompletedRatio() >= ragReadyRatio;
+    }
+
+    private void runJob(IngestionJobControl control) {
+        if (!control.claim()) {
+            log.info("向量入库任务已在开始执行前取消，跳过: jobId={}", control.getJobId());
+            return;
+        }
+        log.info("向量入库任务开始执行: jobId={}, thread={}", control.getJobId(), Thread.currentThread().getName());
+        try {
+            vectorStoreInitializer.run(control);
+            if (control.isCancelRequested()) {
+                control.finish(IngestionJobState.CANCELLED, null);
+            } else {
+                control.finish(IngestionJobState.COMPLETED, null);
+            }
+        } catch (VectorStoreException e) {
+            if (control.isCancelRequested()) {
+                control.finish(IngestionJobState.CANCELLED, null);
+            } else {
+                control.finish(IngestionJobState.FAILED, e.getMessage());
+            }
+        } catch (Exception e) {
+            log.error("向量入库任务异常终止: jobId={}", control.getJobId(), e);
+            control.finish(IngestionJobState.FAILED, e.getMessage());
+        } finally {
+            // 越过就绪点后不再回退；未越过就结束（取消或失败）时恢复为任务启动前的状态
+            if (reachedReadyPoint(control)) {
+                ragReadyReached = true;
+            } else {
+                ragReadyReached = readyBeforeJob;
+                log.info("向量入库任务未达到 RAG 就绪点，就绪状态恢复为任务启动前: jobId={}, ragReady={}",
+                        control.getJobId(), readyBeforeJob);
+            }
+            log.info("向量入库任务结束: jobId={}, state={}, activeMs={}, embeddedDocs={}, ragReady={}",
+                    control.getJobId(), control.getState(), control.getActiveMillis(), control.getEmbeddedDocs(),
+                    ragReadyReached);
+        }
+    }
+
+    private void runDryRun(IngestionDryRunStatusResponse dryRun) {
+        log.info("开始入库预演: jobId={}", dryRun.getJobId());
+        IngestionDryRunStatusResponse.IngestionDryRunStatusResponseBuilder finished = IngestionDryRunStatusResponse.builder()
+                .jobId(dryRun.getJobId())
+                .startedAt(dryRun.getStartedAt());
+        try {
+            IngestionDryRunResponse result = vectorStoreInitializer.dryRun();
+            finished.state(IngestionJobState.COMPLETED).result(result);
+        } catch (Exception e) {
+            log.error("入库预演失败: jobId={}", dryRun.getJobId(), e);
+            finished.state(IngestionJobState.FAILED).errorMessage(e.getMessage());
+        }
+        synchronized (monitor) {
+            currentDryRun = finished.finishedAt(Instant.now()).build();
+        }
+    }
+
+    private void requireNoDryRun() {
+        IngestionDryRunStatusResponse dryRun = currentDryRun;
+        if (dryRun != null && dryRun.getState().isActive()) {
+            throw new ServiceException(ErrorCode.VECTOR_STORE_INGEST_CONFLICT,
+                    "入库预演运行中: jobId=" + dryRun.getJobId());
+        }
+    }
+
+    private IngestionJobControl requireActiveJob() {
+        IngestionJobControl control = currentJob;
+        if (control == null || !control.getState().isActive()) {
+            throw new ServiceException(ErrorCode.VECTOR_STORE_INGEST_CONFLICT, "当前没有运行中的向量入库任务");
+        }
+        return control;
+    }
+
+    private IngestionJobStatusResponse buildStatus(IngestionJobControl control) {
+        long activeMs = control.getActiveMillis();
+        double activeSeconds = activeMs / 1000D;
+        long processedLines = control.getProcessedLines();
+        long remainingLines = Math.max(0L, control.getTotalLines() - control.getCompletedLines());
+
+        double docsPerSecond = activeSeconds > 0 ? control.getEmbeddedDocs() / activeSeconds : 0D;
+        double tokensPerSecond = activeSeconds > 0 ? control.getEmbeddedTokens() / activeSeconds : 0D;
+        double linesPerSecond = activeSeconds > 0 ? processedLines / activeSeconds : 0D;
+        Long etaSeconds = null;
+        if (control.getState().isActive() && linesPerSecond > 0) {
+            etaSeconds = (long) Math.ceil(remainingLines / linesPerSecond);
+        }
+
+        return IngestionJobStatusResponse.builder()
+                .jobId(control.getJobId())
+                .state(control.getState())
+                .startedAt(control.getStartedAt())
+                .finishedAt(control.getFinishedAt())
+                .activeMs(activeMs)
+                .totalLines(control.getTotalLines())
+                .completedLines(control.getCompletedLines())
+                .completedRatio(control.getCompletedRatio())
+                .embeddedDocs(control.getEmbeddedDocs())
+                .embeddedTokens(control.getEmbeddedTokens())
+                .duplicateSkipped(control.getDuplicateSkipped())
+                .invalidSkipped(control.getInvalidSkipped())
+                .overlongSkipped(control.getOverlongSkipped())
+                .docsPerSecond(docsPerSecond)
+                .tokensPerSecond(tokensPerSecond)
+                .etaSeconds(etaSeconds)
+                .ragReady(isRagReady())
+                .ragReadyRatio(ragReadyRatio)
+                .errorMessage(control.getErrorMessage())
+                .build();
+    }
+}
@@ -1,60 +1,89 @@
 package com.nju.comment.backend.service.impl;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nju.comment.backend.component.embedding.EmbeddingRateLimiter;
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+import com.nju.comment.backend.component.embedding.PersistentEmbeddingStore;
+import com.nju.comment.backend.component.ingestion.CorpusDryRunAnalyzer;
+import com.nju.comment.backend.component.ingestion.CorpusDryRunStats;
+import com.nju.comment.backend.component.ingestion.CorpusReader;
+import com.nju.comment.backend.component.ingestion.CorpusRecord;
+import com.nju.comment.backend.component.ingestion.CorpusRecordParser;
+import com.nju.comment.backend.component.ingestion.CorpusSource;
+import com.nju.comment.backend.component.ingestion.CorpusSourceResolver;
+import com.nju.comment.backend.component.ingestion.EmbeddingBatchPacker;
+import com.nju.comment.backend.component.ingestion.EditType;
+import com.nju.comment.backend.component.ingestion.EmbeddingTextFormats;
+import com.nju.comment.backend.component.ingestion.IngestionJobControl;
+import com.nju.comment.backend.component.ingestion.IngestionLeaseCoordinator;
+import com.nju.comment.backend.component.rag.RagExampleRenderer;
+import com.nju.comment.backend.component.vectorstore.LexicalIndex;
+import com.nju.comment.backend.dto.response.IngestionDryRunResponse;
 import com.nju.comment.backend.exception.ErrorCode;
 import com.nju.comment.backend.exception.VectorStoreException;
-import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class VectorStoreInitializer {
 
-    private static final String DOCS_RESOURCE_PATTERN = "classpath*:/docs/**/*.jsonl";
     private static final int PROGRESS_BAR_WIDTH = 40;
     private static final int PROGRESS_STEP = 50;
+    /**
+     * OpenAI 兼容错误体中指明的出错参数，如 {@code "param": "input[3]"}；Spring AI 把错误体附在 "400 - " 之后
+     */
+    private static final Pattern BAD_INPUT_PARAM_PATTERN =
+            Pattern.compile("\"param\"\\s*:\\s*\"input\\[(\\d+)]\"");
 
     private final VectorStore vectorStore;
 
     private final ObjectMapper objectMapper;
 
-    private final ResourcePatternResolver resourcePatternResolver;
+    private final CorpusSourceResolver corpusSourceResolver;
 
-    @Value("${app.vectorstore.init:false}")
-    private boolean enable;
+    private final IngestionLeaseCoordinator leaseCoordinator;
+
+    private final EmbeddingTokenEstimator tokenEstimator;
+
+    private final EmbeddingRateLimiter rateLimiter;
+
+    private final PersistentEmbeddingStore embeddingStore;
+
+    private final EmbeddingTextFormats embeddingTextFormats;
+
+    private final LexicalIndex lexicalIndex;
+
+    private final RagExampleRenderer ragExampleRenderer;
 
     @Value("${app.vectorstore.embedding-batch-size:32}")
     private int embeddingBatchSize;
 
-    @Value("${app.vectorstore.embedding-max-input-chars:7000}")
-    private int embeddingMaxInputChars;
+    @Value("${app.vectorstore.embedding-batch-max-tokens:32000}")
+    private int embeddingBatchMaxTokens;
+
+    @Value("${app.vectorstore.dry-run.threads:0}")
+    private int dryRunThreads;
 
     @Value("${app.vectorstore.progress-file:logs/vectorstore-init-progress.properties}")
     private String progressFile;
@@ -62,217 +91,482 @@ public class VectorStoreInitializer {
     @Value("${app.vectorstore.clear-progress-on-success:true}")
     private boolean clearProgressOnSuccess;
 
-    @PostConstruct
-    public void init() {
-        if (!enable) {
-            log.info("VectorStore initialization is disabled.");
+    /**
+     * 执行一次向量入库。由 {@link VectorStoreIngestionService} 在专用线程池中调用，
+     * 在批次边界通过 {@link IngestionJobControl#checkpoint()} 响应暂停与取消。
+     * 启用分布式入库时，与其他实例通过 Redis 租约分工处理各分区。
+     */
+    public void run(IngestionJobControl control) {
+        log.info("Initializing VectorStore...");
+        boolean distributed = leaseCoordinator.isEnabled();
+        List<CorpusSource> sources = distributed ? corpusSourceResolver.resolveAll() : corpusSourceResolver.resolve();
+        if (sources.isEmpty()) {
+            log.warn("No documents found in {}, skip initialization.", corpusSourceResolver.getLocations());
             return;
         }
 
-        Resource[] resources = loadResources();
-        if (resources.length == 0) {
-            log.warn("No documents found in {}, skip initialization.", DOCS_RESOURCE_PATTERN);
+        long total = sources.stream().mapToLong(CorpusSource::lineCount).sum();
+        control.setTotalLines(total);
+        if (total <= 0) {
+            log.warn("No valid lines found in {}, skip initialization.", corpusSourceResolver.getLocations());
             return;
         }
 
-        log.info("Initializing VectorStore...");
-        int[] fileTotals = countLinesPerResource(resources);
-        int total = Arrays.stream(fileTotals).sum();
-        if (total <= 0) {
-            log.warn("No valid lines found in {}, skip initialization.", DOCS_RESOURCE_PATTERN);
-            return;
+        RunContext context = new RunContext(control, sources.size(), total, distributed,
+                new CorpusRecordParser(objectMapper.getFactory(), embeddingTextFormats.current()));
+        try {
+            boolean finished = distributed ? runDistributed(sources, context) : runLocal(sources, context);
+            if (!finished) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INTERRUPTED, "向量入库任务被中断", e);
+        } catch (VectorStoreException e) {
+            if (ErrorCode.VECTOR_STORE_INTERRUPTED.equals(e.getErrorCode())) {
+                throw e;
+            }
+            log.error("向量数据库初始化失败", e);
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "向量数据库初始化失败", e);
+        } catch (Exception e) {
+            log.error("向量数据库初始化失败", e);
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "向量数据库初始化失败", e);
         }
 
-        int globalProcessed = 0;
-        int globalSkipped = 0;
-        int globalInvalidSkipped = 0;
-        int globalTooLongSkipped = 0;
-        int batchSize = Math.max(1, embeddingBatchSize);
-        Set<String> seenDocIds = new HashSet<>(Math.max(total, 1024));
-        Properties progressProperties = loadProgressProperties();
+        log.info("VectorStore init complete. {} documents processed, {} duplicates skipped, {} invalid documents skipped, {} overlong skipped.",
+                context.globalProcessed, control.getDuplicateSkipped(), control.getInvalidSkipped(), control.getOverlongSkipped());
+    }
 
-        for (int i = 0; i < resources.length; i++) {
-            Resource resource = resources[i];
-            int fileTotal = fileTotals[i];
-            int fileProcessed = 0;
-            int nextProgressMark = 1;
-            String progressKey = buildProgressKey(resource);
-            int resumeLine = parsePositiveInt(progressProperties.getProperty(progressKey), 0);
+    /**
+     * 入库预演：按正式入库相同的规则并行扫描全部语料，统计长度分布、过长与重复数，
+     * 并按当前 RPM/TPM 与批次配置估算请求数与耗时。不调用 Embedding API、不写入向量库。
+     * 每个文件只顺序读取一遍，行数在扫描中统计，不预先计数或切分。
+     */
+    public IngestionDryRunResponse dryRun() {
+        long startTime = System.currentTimeMillis();
+        List<CorpusSource> sources = corpusSourceResolver.resolveFiles();
+        int threads = dryRunThreads > 0 ? dryRunThreads : Runtime.getRuntime().availableProcessors();
+        CorpusDryRunAnalyzer analyzer = new CorpusDryRunAnalyzer(
+                objectMapper.getFactory(),
+                embeddingTextFormats.current(),
+                tokenEstimator,
+                embeddingBatchSize,
+                embeddingBatchMaxTokens,
+                embeddingStore.isEnabled() ? embeddingStore::contains : docId -> false,
+                threads);
+
+        CorpusDryRunStats stats;
+        try {
+            stats = analyzer.analyze(sources);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INTERRUPTED, "入库预演被中断", e);
+        } catch (IOException e) {
+            log.error("入库预演失败", e);
+            throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "入库预演失败", e);
+        }
+        long analysisMs = Math.max(1L, System.currentTimeMillis() - startTime);
+
+        int rpmLimit = rateLimiter.getRpmLimit();
+        int tpmLimit = rateLimiter.getTpmLimit();
+        double rpmWindows = (double) stats.getEstimatedRequests() / rpmLimit;
+        double tpmWindows = (double) stats.getTokensToEmbed() / tpmLimit;
+        long estimatedSeconds = (long) Math.ceil(Math.max(rpmWindows, tpmWindows) * rateLimiter.getWindowMs() / 1000D);
+        long scored = stats.getLines() - stats.getParseErrors();
+
+        IngestionDryRunResponse response = IngestionDryRunResponse.builder()
+                .sources(sources.size())
+                .totalLines(stats.getLines())
+                .parseErrors(stats.getParseErrors())
+                .overlongSkipped(stats.getOverlong())
+                .duplicateSkipped(stats.getDuplicates())
+                .uniqueDocs(stats.getUniqueDocs())
+                .storedDocs(stats.getStoredDocs())
+                .docsToEmbed(stats.getUniqueDocs() - stats.getStoredDocs())
+                .tokensToEmbed(stats.getTokensToEmbed())
+                .estimatedRequests(stats.getEstimatedRequests())
+                .batchSize(embeddingBatchSize)
+                .batchMaxTokens(embeddingBatchMaxTokens)
+                .rpmLimit(rpmLimit)
+                .tpmLimit(tpmLimit)
+                .estimatedSeconds(estimatedSeconds)
+                .bottleneck(rpmWindows >= tpmWindows ? "RPM" : "TPM")
+                .maxTokens(stats.getMaxTokens())
+                .maxChars(stats.getMaxChars())
+                .avgTokens(scored > 0 ? (double) stats.getTotalTokens() / scored : 0D)
+                .tokenHistogram(toBuckets(stats.getTokenHistogram()))
+                .charHistogram(toBuckets(stats.getCharHistogram()))
+                .threads(threads)
+                .analysisMs(analysisMs)
+                .linesPerSecond(stats.getLines() * 1000D / analysisMs)
+                .build();
+        log.info("入库预演完成: lines={}, overlong={}, duplicates={}, docsToEmbed={}, requests={}, estimatedSeconds={}, 耗时={}ms",
+                response.getTotalLines(), response.getOverlongSkipped(), response.getDuplicateSkipped(),
+                response.getDocsToEmbed(), response.getEstimatedRequests(), estimatedSeconds, analysisMs);
+        return response;
+    }
 
-            if (resumeLine > 0) {
-                log.info("检测到断点续跑位置: file={}, resumeLine={}", resolveResourceName(resource), resumeLine);
+    private List<IngestionDryRunResponse.HistogramBucket> toBuckets(long[] histogram) {
+        List<IngestionDryRunResponse.HistogramBucket> buckets = new ArrayList<>(histogram.length);
+        for (int i = 0; i < histogram.length; i++) {
+            long upperBound = CorpusDryRunStats.bucketUpperBound(i);
+            buckets.add(IngestionDryRunResponse.HistogramBucket.builder()
+                    .upperBound(upperBound < 0 ? null : upperBound)
+                    .count(histogram[i])
+                    .build());
+        }
+        return buckets;
+    }
+
+    /**
+     * 单实例入库：断点保存在本地 progress-file
+     *
+     * @return false 表示任务被取消
+     */
+    private boolean runLocal(List<CorpusSource> sources, RunContext context) throws Exception {
+        Properties progressProperties = loadProgressProperties();
+        for (int i = 0; i < sources.size(); i++) {
+            CorpusSource source = sources.get(i);
+            String progressKey = source.progressKey();
+            long resumeLine = parsePositiveLong(progressProperties.getProperty(progressKey), 0);
+            SourceOutcome outcome = processSource(source, i, resumeLine, context, line -> {
+                updateProgress(progressProperties, progressKey, line);
+                return true;
+            });
+            if (outcome != SourceOutcome.COMPLETED) {
+                return false;
             }
+        }
+
+        if (clearProgressOnSuccess) {
+            clearProgressFile();
+        }
+        return true;
+    }
+
+    /**
+     * 多实例协同入库：逐个争抢分区租约，断点写入 Redis；
+     * 暂无可领取分区但仍有未完成分区时轮询等待，以便接手失联实例过期的分区。
+     *
+     * @return false 表示任务被取消
+     */
+    private boolean runDistributed(List<CorpusSource> sources, RunContext context) throws Exception {
+        IngestionJobControl control = context.control;
+        List<Integer> pending = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            pending.add(i);
+        }
+        // 各实例从不同位置开始扫描，减少对同一分区的争抢
+        int offset = Math.floorMod(leaseCoordinator.getNodeId().hashCode(), sources.size());
+        log.info("分布式入库开始: nodeId={}, partitions={}", leaseCoordinator.getNodeId(), sources.size());
 
-            if (fileTotal == 0) {
-                log.info("Skip empty file: {}", resolveResourceName(resource));
-                continue;
+        while (!pending.isEmpty()) {
+            if (!control.checkpoint()) {
+                return false;
             }
 
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-                List<Document> docs = new ArrayList<>(batchSize);
-                String line;
-                int lineNumber = 0;
-                while ((line = reader.readLine()) != null) {
-                    lineNumber++;
-                    if (lineNumber <= resumeLine) {
-                        continue;
-                    }
+            boolean worked = false;
+            List<Integer> scanOrder = new ArrayList<>(pending);
+            Collections.rotate(scanOrder, -Math.floorMod(offset, scanOrder.size()));
+            for (Integer index : scanOrder) {
+                if (worked) {
+                    break;
+                }
+                CorpusSource source = sources.get(index);
+                String partition = source.progressKey();
+                if (leaseCoordinator.isCompleted(partition)) {
+                    pending.remove(index);
+                    control.recordResumedLines(source.lineCount());
+                    continue;
+                }
 
-                    if (lineNumber % PROGRESS_STEP == 0) {
-                        updateProgress(progressProperties, progressKey, lineNumber);
-                    }
+                IngestionLeaseCoordinator.PartitionLease lease = leaseCoordinator.tryAcquire(partition);
+                if (lease == null) {
+                    continue;
+                }
+                worked = true;
+
+                SourceOutcome outcome;
+                try {
+                    long resumeLine = leaseCoordinator.loadCheckpoint(partition);
+                    outcome = processSource(source, index, resumeLine, context,
+                            line -> leaseCoordinator.saveCheckpoint(lease, line));
+                } catch (Exception e) {
+                    leaseCoordinator.release(lease);
+                    throw e;
+                }
 
-                    JsonNode jsonNode = objectMapper.readTree(line);
-                    String srcMethod = jsonNode.path("src_method").asText("");
-                    String dstMethod = jsonNode.path("dst_method").asText("");
-                    String srcJavadoc = jsonNode.path("src_javadoc").asText("");
-                    String dstJavadoc = jsonNode.path("dst_javadoc").asText("");
-
-                    ObjectNode keyJson = objectMapper.createObjectNode();
-                    keyJson.put("src_method", srcMethod);
-                    keyJson.put("dst_method", dstMethod);
-                    keyJson.put("src_javadoc", srcJavadoc);
-
-                    ObjectNode vectorTextJson = objectMapper.createObjectNode();
-                    vectorTextJson.put("src_method", srcMethod);
-                    vectorTextJson.put("dst_method", dstMethod);
-                    vectorTextJson.put("src_javadoc", srcJavadoc);
-
-                    String vectorText = objectMapper.writeValueAsString(vectorTextJson);
-                    if (isOverlongForEmbedding(vectorText)) {
-                        globalTooLongSkipped++;
-                        globalInvalidSkipped++;
-                        log.warn("跳过过长向量样本: file={}, lineNumber={}, contentLength={}, maxAllowed={}",
-                                resolveResourceName(resource), lineNumber, vectorText.length(), Math.max(256, embeddingMaxInputChars));
-                        continue;
+                switch (outcome) {
+                    case COMPLETED -> {
+                        leaseCoordinator.complete(lease, source.lineCount());
+                        pending.remove(index);
                     }
-
-                    String docId = sha256Hex(objectMapper.writeValueAsString(keyJson)).substring(0, 32);
-                    if (!seenDocIds.add(docId)) {
-                        globalSkipped++;
-                        continue;
+                    case CANCELLED -> {
+                        leaseCoordinator.release(lease);
+                        return false;
                     }
+                    case LEASE_LOST -> log.warn("分区租约丢失，放弃该分区交由其他实例继续: partition={}", partition);
+                }
+            }
 
-                    Document doc = new Document(
-                            docId,
-                            vectorText,
-                            Map.of(
-                                    "src_method", srcMethod,
-                                    "dst_method", dstMethod,
-                                    "src_javadoc", srcJavadoc,
-                                    "dst_javadoc", dstJavadoc));
-                    docs.add(doc);
-
-                    fileProcessed++;
-                    globalProcessed++;
-                    if (fileProcessed >= nextProgressMark || fileProcessed == fileTotal) {
-                        System.out.print("\r" + buildFileProgressLine(
-                                i + 1,
-                                resources.length,
-                                resolveResourceName(resource),
-                                fileProcessed,
-                                fileTotal,
-                                globalProcessed,
-                                total) + "\r");
-                        nextProgressMark = fileProcessed + PROGRESS_STEP;
-                    }
+            if (!worked && !pending.isEmpty()) {
+                Thread.sleep(leaseCoordinator.getPollIntervalMs());
+            }
+        }
 
-                    if (docs.size() >= batchSize) {
-                        try {
-                            globalInvalidSkipped += addDocumentsWithFallback(
-                                    docs,
-                                    resolveResourceName(resource),
-                                    fileProcessed,
-                                    globalProcessed
-                            );
-                                updateProgress(progressProperties, progressKey, lineNumber);
-                        } catch (Exception e) {
-                            log.error("Batch insert failed at file={}, fileProcessed={}, globalProcessed={}, batchSize={}",
-                                    resolveResourceName(resource), fileProcessed, globalProcessed, docs.size(), e);
-                            throw e;
-                        }
-                        docs.clear();
-                    }
+        log.info("分布式入库全部分区已完成: nodeId={}", leaseCoordinator.getNodeId());
+        return true;
+    }
+
+    /**
+     * 入库一个分区，从 resumeLine 之后继续。
+     * 重复文档（docId 相同）单机时按本进程已见过的 ID 跳过；分布式时在提交批次前到 Redis 登记，跨实例去重。
+     */
+    private SourceOutcome processSource(CorpusSource source,
+                                        int sourceIndex,
+                                        long resumeFrom,
+                                        RunContext context,
+                                        CheckpointSink checkpointSink) throws Exception {
+        IngestionJobControl control = context.control;
+        String fileName = source.sharded() ? source.progressKey() : source.name();
+        long fileTotal = source.lineCount();
+        long fileProcessed = 0;
+        long nextProgressMark = 1;
+        long resumeLine = Math.min(fileTotal, resumeFrom);
+
+        if (resumeLine > 0) {
+            log.info("检测到断点续跑位置: file={}, resumeLine={}", fileName, resumeLine);
+            control.recordResumedLines(resumeLine);
+        }
+
+        if (fileTotal == 0) {
+            log.info("Skip empty file: {}", fileName);
+            return SourceOutcome.COMPLETED;
+        }
+
+        try (CorpusReader reader = source.open(context.parser)) {
+            EmbeddingBatchPacker packer = new EmbeddingBatchPacker(embeddingBatchSize, embeddingBatchMaxTokens);
+            List<Long> batchLines = new ArrayList<>(embeddingBatchSize);
+            long lineNumber = 0;
+            while (reader.next()) {
+                lineNumber++;
+                if (lineNumber <= resumeLine) {
+                    continue;
+                }
+                control.recordProcessedLine();
+
+                // docId 即向量文本的 SHA-256 前缀；完整格式下与原 keyJson 序列化结果相同，二进制格式中已预先计算
+                CorpusRecord record = reader.read();
+                String vectorText = record.vectorText();
+                int tokens = tokenEstimator.estimate(vectorText);
+                if (tokenEstimator.exceedsInputLimit(vectorText) || packer.exceedsBudget(tokens)) {
+                    control.recordOverlong();
+                    log.warn("跳过过长向量样本: file={}, lineNumber={}, contentLength={}, estimatedTokens={}, maxInput={}, maxBatchTokens={}",
+                            fileName, lineNumber, vectorText.length(), tokens,
+                            tokenEstimator.describeInputLimit(), embeddingBatchMaxTokens);
+                    continue;
                 }
 
-                if (!docs.isEmpty()) {
-                    try {
-                        globalInvalidSkipped += addDocumentsWithFallback(
-                                docs,
-                                resolveResourceName(resource),
-                                fileProcessed,
-                                globalProcessed
-                        );
-                        updateProgress(progressProperties, progressKey, lineNumber);
-                    } catch (Exception e) {
-                        log.error("Final batch insert failed at file={}, fileProcessed={}, globalProcessed={}, batchSize={}",
-                                resolveResourceName(resource), fileProcessed, globalProcessed, docs.size(), e);
-                        throw e;
-                    }
+                String docId = record.docId();
+                if (context.seenDocIds != null && !context.seenDocIds.add(docId)) {
+                    control.recordDuplicate();
+                    continue;
+                }
+
+                // 当前批次放不下该文档时先提交已打包部分，断点记到上一行
+                if (!packer.canAccept(tokens)
+                        && !flushBatch(packer, batchLines, source, context, checkpointSink, lineNumber - 1,
+                        fileName, fileProcessed, context.globalProcessed)) {
+                    return stoppedOutcome(control);
+                }
+
+                Map<String, Object> metadata = new HashMap<>(ragExampleRenderer.metadata(
+                        record.srcMethod(), record.dstMethod(), record.srcJavadoc(), record.dstJavadoc()));
+                metadata.put(EditType.METADATA_KEY, EditType.classify(record.srcMethod(), record.dstMethod()).name());
+                Document doc = new Document(docId, vectorText, metadata);
+                packer.add(doc, tokens);
+                batchLines.add(lineNumber);
+
+                fileProcessed++;
+                context.globalProcessed++;
+                if (fileProcessed >= nextProgressMark || fileProcessed == fileTotal) {
+                    System.out.print("\r" + buildFileProgressLine(
+                            sourceIndex + 1,
+                            context.sourceCount,
+                            fileName,
+                            fileProcessed,
+                            fileTotal,
+                            context.globalProcessed,
+                            context.total) + "\r");
+                    nextProgressMark = fileProcessed + PROGRESS_STEP;
+                }
+
+                if (packer.isFull()
+                        && !flushBatch(packer, batchLines, source, context, checkpointSink, lineNumber,
+                        fileName, fileProcessed, context.globalProcessed)) {
+                    return stoppedOutcome(control);
                 }
+            }
 
-                // 文件读取完成后写入最新断点
-                updateProgress(progressProperties, progressKey, fileTotal);
-                System.out.println();
-            } catch (Exception e) {
-                log.error("向量数据库初始化失败", e);
-                throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "向量数据库初始化失败", e);
+            if (!packer.isEmpty()
+                    && !flushBatch(packer, batchLines, source, context, checkpointSink, lineNumber,
+                    fileName, fileProcessed, context.globalProcessed)) {
+                return stoppedOutcome(control);
             }
+
+            // 文件读取完成后写入最新断点
+            if (!checkpointSink.save(fileTotal)) {
+                return SourceOutcome.LEASE_LOST;
+            }
+            System.out.println();
+            return SourceOutcome.COMPLETED;
         }
+    }
 
-        if (clearProgressOnSuccess) {
-            clearProgressFile();
+    private SourceOutcome stoppedOutcome(IngestionJobControl control) {
+        return control.isCancelRequested() ? SourceOutcome.CANCELLED : SourceOutcome.LEASE_LOST;
+    }
+
+    /**
+     * 提交打包器中的当前批次并记录断点；分布式入库时先剔除已由其他位置入库的重复文档
+     *
+     * @param batchLines   与批次文档按下标对应的行号，提交后清空
+     * @param progressLine 该批次提交成功后可安全续跑的行号
+     * @return false 表示任务已取消或分区租约已丢失
+     */
+    private boolean flushBatch(EmbeddingBatchPacker packer,
+                               List<Long> batchLines,
+                               CorpusSource source,
+                               RunContext context,
+                               CheckpointSink checkpointSink,
+                               long progressLine,
+                               String fileName,
+                               long fileProcessed,
+                               long globalProcessed) throws InterruptedException {
+        IngestionJobControl control = context.control;
+        if (!control.checkpoint()) {
+            log.info("向量入库任务已取消: file={}", fileName);
+            return false;
         }
 
-        log.info("VectorStore init complete. {} documents processed, {} duplicates skipped, {} invalid documents skipped, {} overlong skipped.",
-                globalProcessed, globalSkipped, globalInvalidSkipped, globalTooLongSkipped);
+        EmbeddingBatchPacker.PackedBatch batch = packer.drain();
+        List<Document> docs = batch.documents();
+        long batchTokens = batch.tokens();
+        try {
+            if (context.seenDocIds == null) {
+                List<Boolean> duplicates = leaseCoordinator.claimDocuments(source.progressKey(),
+                        docs.stream().map(Document::getId).toList(), batchLines);
+                List<Document> fresh = new ArrayList<>(docs.size());
+                for (int i = 0; i < docs.size(); i++) {
+                    if (duplicates.get(i)) {
+                        control.recordDuplicate();
+                        batchTokens -= tokenEstimator.estimate(docs.get(i).getText());
+                    } else {
+                        fresh.add(docs.get(i));
+                    }
+                }
+                docs = fresh;
+            }
+            batchLines.clear();
+
+            List<Document> skippedDocs = addDocumentsWithFallback(docs, fileName, fileProcessed, globalProcessed);
+            long skippedTokens = 0;
+            for (Document skipped : skippedDocs) {
+                skippedTokens += tokenEstimator.estimate(skipped.getText());
+            }
+            control.recordInvalid(skippedDocs.size());
+            control.recordEmbedded(docs.size() - skippedDocs.size(), batchTokens - skippedTokens);
+            return checkpointSink.save(progressLine);
+        } catch (Exception e) {
+            log.error("Batch insert failed at file={}, fileProcessed={}, globalProcessed={}, batchSize={}, batchTokens={}",
+                    fileName, fileProcessed, globalProcessed, docs.size(), batch.tokens(), e);
+            throw e;
+        }
     }
 
-    private int addDocumentsWithFallback(List<Document> docs,
-                                         String fileName,
-                                         int fileProcessed,
-                                         int globalProcessed) {
+    /**
+     * 写入一批文档；Embedding 返回 400 时定位出错文档重试，其余文档照常写入。
+     * <p>
+     * 超过单条输入上限的文档在读取时已按统计的 token 数剔除，不会进入批次。
+     * 错误体的 {@code param} 指明下标时先单独提交该文档，再把其余文档作为整批重新提交，
+     * 下标不可信时只多出一次单条请求；否则二分批次分别重试，k 条坏文档最多引起 O(k·log n) 次重新提交。
+     * 单条仍返回 400 时跳过该文档。
+     *
+     * @return 被跳过的文档
+     */
+    private List<Document> addDocumentsWithFallback(List<Document> docs,
+                                                    String fileName,
+                                                    long fileProcessed,
+                                                    long globalProcessed) {
         if (docs == null || docs.isEmpty()) {
-            return 0;
+            return List.of();
         }
 
         try {
             vectorStore.add(docs);
-            return 0;
+            lexicalIndex.add(docs);
+            return List.of();
         } catch (Exception e) {
             if (!isBadRequest(e)) {
                 throw e;
             }
 
-            if (docs.size() > 1) {
-                int middle = docs.size() / 2;
-                List<Document> left = new ArrayList<>(docs.subList(0, middle));
-                List<Document> right = new ArrayList<>(docs.subList(middle, docs.size()));
-                log.warn("Embedding batch 400，执行二分降级重试: file={}, fileProcessed={}, globalProcessed={}, batchSize={}",
-                        fileName, fileProcessed, globalProcessed, docs.size());
-                int skippedLeft = addDocumentsWithFallback(left, fileName, fileProcessed, globalProcessed);
-                int skippedRight = addDocumentsWithFallback(right, fileName, fileProcessed, globalProcessed);
-                return skippedLeft + skippedRight;
+            if (docs.size() == 1) {
+                Document single = docs.get(0);
+                int contentLength = single.getText() == null ? 0 : single.getText().length();
+                log.error("跳过不可嵌入文档: file={}, fileProcessed={}, globalProcessed={}, docId={}, contentLength={}",
+                        fileName, fileProcessed, globalProcessed, single.getId(), contentLength, e);
+                return List.of(single);
+            }
+
+            int suspectIndex = findSuspectIndex(docs, e);
+            List<Document> skipped = new ArrayList<>();
+            if (suspectIndex >= 0) {
+                Document suspect = docs.get(suspectIndex);
+                List<Document> rest = new ArrayList<>(docs.size() - 1);
+                rest.addAll(docs.subList(0, suspectIndex));
+                rest.addAll(docs.subList(suspectIndex + 1, docs.size()));
+                log.warn("Embedding batch 400，单独提交出错文档后重试其余文档: file={}, fileProcessed={}, globalProcessed={}, batchSize={}, suspectIndex={}, suspectDocId={}",
+                        fileName, fileProcessed, globalProcessed, docs.size(), suspectIndex, suspect.getId());
+                skipped.addAll(addDocumentsWithFallback(List.of(suspect), fileName, fileProcessed, globalProcessed));
+                skipped.addAll(addDocumentsWithFallback(rest, fileName, fileProcessed, globalProcessed));
+                return skipped;
             }
 
-            Document single = docs.get(0);
-            String docId = single.getId();
-            int contentLength = single.getText() == null ? 0 : single.getText().length();
-            log.error("跳过不可嵌入文档: file={}, fileProcessed={}, globalProcessed={}, docId={}, contentLength={}",
-                    fileName, fileProcessed, globalProcessed, docId, contentLength, e);
-            return 1;
+            int mid = docs.size() / 2;
+            log.warn("Embedding batch 400，二分后重试: file={}, fileProcessed={}, globalProcessed={}, batchSize={}",
+                    fileName, fileProcessed, globalProcessed, docs.size());
+            skipped.addAll(addDocumentsWithFallback(new ArrayList<>(docs.subList(0, mid)), fileName, fileProcessed, globalProcessed));
+            skipped.addAll(addDocumentsWithFallback(new ArrayList<>(docs.subList(mid, docs.size())), fileName, fileProcessed, globalProcessed));
+            return skipped;
         }
     }
 
-    private boolean isOverlongForEmbedding(String rawText) {
-        if (rawText == null || rawText.isEmpty()) {
-            return false;
+    /**
+     * 从错误体的 {@code "param": "input[i]"} 解析出错文档的下标；消息正文中的其他数字（如 token 上限）不参与匹配
+     *
+     * @return 下标；错误体未指明或越界时返回 -1
+     */
+    private int findSuspectIndex(List<Document> docs, Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            String msg = current.getMessage();
+            if (msg != null) {
+                Matcher matcher = BAD_INPUT_PARAM_PATTERN.matcher(msg);
+                if (matcher.find()) {
+                    try {
+                        int index = Integer.parseInt(matcher.group(1));
+                        if (index >= 0 && index < docs.size()) {
+                            return index;
+                        }
+                    } catch (NumberFormatException ignored) {
+                        // 下标异常时按二分处理
+                    }
+                }
+            }
+            current = current.getCause();
         }
-
-        int maxChars = Math.max(256, embeddingMaxInputChars);
-        int totalCodePoints = rawText.codePointCount(0, rawText.length());
-        return totalCodePoints > maxChars;
+        return -1;
     }
 
     private boolean isBadRequest(Throwable throwable) {
@@ -293,50 +587,10 @@ public class VectorStoreInitializer {
         return false;
     }
 
-    private Resource[] loadResources() {
-        try {
-            return resourcePatternResolver.getResources(DOCS_RESOURCE_PATTERN);
-        } catch (IOException e) {
-            log.warn("Failed to resolve documents with pattern {}, skip initialization.", DOCS_RESOURCE_PATTERN, e);
-            return new Resource[0];
-        }
-    }
-
-    private String sha256Hex(String raw) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(raw.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder(digest.length * 2);
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("SHA-256 algorithm is unavailable", e);
-        }
-    }
-
-    private int[] countLinesPerResource(Resource[] resourceList) {
-        int[] lines = new int[resourceList.length];
-        for (int i = 0; i < resourceList.length; i++) {
-            Resource resource = resourceList[i];
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-                while (reader.readLine() != null) {
-                    lines[i]++;
-                }
-            } catch (IOException e) {
-                log.error("向量数据库初始化失败", e);
-                throw new VectorStoreException(ErrorCode.VECTOR_STORE_INIT_ERROR, "向量数据库初始化失败", e);
-            }
-        }
-        return lines;
-    }
-
-    private String buildProgressBar(int current, int total, int width) {
-        int safeTotal = Math.max(total, 1);
+    private String buildProgressBar(long current, long total, int width) {
+        long safeTotal = Math.max(total, 1);
         int percent = (int) ((current * 100L) / safeTotal);
-        int filled = (int) (((long) current * width) / safeTotal);
+        int filled = (int) ((current * width) / safeTotal);
 
         StringBuilder sb = new StringBuilder(width + 32);
         sb.append('[');
@@ -356,10 +610,10 @@ public class VectorStoreInitializer {
     private String buildFileProgressLine(int fileIndex,
                                          int fileCount,
                                          String fileName,
-                                         int fileCurrent,
-                                         int fileTotal,
-                                         int globalCurrent,
-                                         int globalTotal) {
+                                         long fileCurrent,
+                                         long fileTotal,
+                                         long globalCurrent,
+                                         long globalTotal) {
         return "[" + fileIndex + "/" + fileCount + "] "
                 + fileName + " "
                 + buildProgressBar(fileCurrent, fileTotal, PROGRESS_BAR_WIDTH)
@@ -367,21 +621,12 @@ public class VectorStoreInitializer {
                 + buildProgressBar(globalCurrent, globalTotal, PROGRESS_BAR_WIDTH);
     }
 
-    private String resolveResourceName(Resource resource) {
-        String fileName = resource.getFilename();
-        return fileName != null ? fileName : resource.getDescription();
-    }
-
-    private String buildProgressKey(Resource resource) {
-        return resolveResourceName(resource);
-    }
-
-    private int parsePositiveInt(String value, int defaultValue) {
+    private long parsePositiveLong(String value, long defaultValue) {
         if (value == null || value.isBlank()) {
             return defaultValue;
         }
         try {
-            return Math.max(0, Integer.parseInt(value.trim()));
+            return Math.max(0, Long.parseLong(value.trim()));
         } catch (NumberFormatException e) {
             return defaultValue;
         }
@@ -402,7 +647,7 @@ public class VectorStoreInitializer {
         return properties;
     }
 
-    private void updateProgress(Properties properties, String key, int lineNumber) {
+    private void updateProgress(Properties properties, String key, long lineNumber) {
         properties.setProperty(key, String.valueOf(Math.max(0, lineNumber)));
         persistProgressProperties(properties);
     }
@@ -438,4 +683,43 @@ public class VectorStoreInitializer {
         }
         return Paths.get("").toAbsolutePath().resolve(path).normalize();
     }
+
+    /**
+     * 分区断点写入；返回 false 表示不再拥有该分区
+     */
+    @FunctionalInterface
+    private interface CheckpointSink {
+        boolean save(long line);
+    }
+
+    private enum SourceOutcome {
+        COMPLETED,
+        CANCELLED,
+        LEASE_LOST
+    }
+
+    /**
+     * 一次入库运行内跨分区共享的状态
+     */
+    private static final class RunContext {
+
+        private final IngestionJobControl control;
+        private final int sourceCount;
+        private final long total;
+        private final CorpusRecordParser parser;
+        /**
+         * 单机入库时本进程已见过的文档 ID；分布式入库时为 null，改由 Redis 登记去重
+         */
+        private final Set<String> seenDocIds;
+        private long globalProcessed = 0;
+
+        private RunContext(IngestionJobControl control, int sourceCount, long total, boolean distributed,
+                           CorpusRecordParser parser) {
+            this.control = control;
+            this.sourceCount = sourceCount;
+            this.total = total;
+            this.parser = parser;
+            this.seenDocIds = distributed ? null : new HashSet<>();
+        }
+    }
 }
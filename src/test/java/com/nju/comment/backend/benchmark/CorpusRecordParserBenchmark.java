@@ -0,0 +1,121 @@
+package com.nju.comment.backend.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nju.comment.backend.component.ingestion.CorpusRecord;
+import com.nju.comment.backend.component.ingestion.CorpusRecordParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 语料行解析吞吐量基准：原 readTree + ObjectNode + String.format 实现 vs 流式解析器。
+ * <p>
+ * 单线程（{@code @Threads(1)}）结果即每核吞吐量；用 {@code -t N} 运行可观察多核扩展性。
+ * 运行：{@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.nju.comment.backend.benchmark.CorpusRecordParserBenchmark}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class CorpusRecordParserBenchmark {
+
+    private static final int LINE_COUNT = 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CorpusRecordParser parser;
+    private byte[][] lineBytes;
+    private String[] lines;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        parser = new CorpusRecordParser(objectMapper.getFactory());
+        Random random = new Random(42);
+        lineBytes = new byte[LINE_COUNT][];
+        lines = new String[LINE_COUNT];
+        for (int i = 0; i < LINE_COUNT; i++) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("src_method", randomMethod(random, i));
+            node.put("dst_method", randomMethod(random, i + 1));
+            node.put("src_javadoc", "/**\n * Returns the value for \"key\" " + i + ".\n * @param key the key\n */");
+            node.put("dst_javadoc", "/**\n * Returns the cached value for \"key\" " + i + ".\n */");
+            lines[i] = objectMapper.writeValueAsString(node);
+            lineBytes[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public CorpusRecord streaming() throws Exception {
+        byte[] line = lineBytes[cursor++ & (LINE_COUNT - 1)];
+        return parser.parse(line, 0, line.length);
+    }
+
+    @Benchmark
+    public String legacyTree() throws Exception {
+        String line = lines[cursor++ & (LINE_COUNT - 1)];
+        JsonNode jsonNode = objectMapper.readTree(line);
+        String srcMethod = jsonNode.path("src_method").asText("");
+        String dstMethod = jsonNode.path("dst_method").asText("");
+        String srcJavadoc = jsonNode.path("src_javadoc").asText("");
+        jsonNode.path("dst_javadoc").asText("");
+
+        ObjectNode keyJson = objectMapper.createObjectNode();
+        keyJson.put("src_method", srcMethod);
+        keyJson.put("dst_method", dstMethod);
+        keyJson.put("src_javadoc", srcJavadoc);
+
+        ObjectNode vectorTextJson = objectMapper.createObjectNode();
+        vectorTextJson.put("src_method", srcMethod);
+        vectorTextJson.put("dst_method", dstMethod);
+        vectorTextJson.put("src_javadoc", srcJavadoc);
+
+        objectMapper.writeValueAsString(vectorTextJson);
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] digest = md.digest(objectMapper.writeValueAsString(keyJson).getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.substring(0, 32);
+    }
+
+    private static String randomMethod(Random random, int seed) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("public String getValue").append(seed).append("(String key) {\n");
+        int statements = 5 + random.nextInt(40);
+        for (int i = 0; i < statements; i++) {
+            sb.append("    String v").append(i).append(" = cache.get(key + \"").append(random.nextInt(1000)).append("\");\n");
+        }
+        sb.append("    return v0;\n}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CorpusRecordParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+package com.nju.comment.backend.benchmark;
+
+import com.nju.comment.backend.component.embedding.EmbeddingRateLimiter;
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+import com.nju.comment.backend.component.embedding.GcraEmbeddingRateLimiter;
+import com.nju.comment.backend.component.embedding.SiliconFlowEmbeddingRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedding 限流器争用基准：synchronized 滑动窗口 vs CAS 更新的 GCRA。
+ * <p>
+ * {@code acquireUnderLimit} 额度充足、从不等待，测量的是多线程争用下每次申请的纯开销；
+ * {@code tryAcquireSaturated} 额度已耗尽，测量拒绝路径的开销（如 Controller 侧快速失败）。
+ * 默认 8 线程，用 {@code -t N} 调整争用程度。
+ * 运行：{@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.nju.comment.backend.benchmark.EmbeddingRateLimiterBenchmark}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class EmbeddingRateLimiterBenchmark {
+
+    private static final List<String> INPUTS = List.of("x".repeat(256));
+
+    @State(Scope.Benchmark)
+    public static class UnderLimit {
+
+        @Param({"sliding-window", "gcra"})
+        public String algorithm;
+
+        EmbeddingRateLimiter limiter;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            // 窗口取 100ms，限制滑动窗口中积压的记录数，避免基准变成内存压力测试
+            limiter = newLimiter(algorithm, Integer.MAX_VALUE, Integer.MAX_VALUE, 100L);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Saturated {
+
+        @Param({"sliding-window", "gcra"})
+        public String algorithm;
+
+        EmbeddingRateLimiter limiter;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            limiter = newLimiter(algorithm, 1_000, 100_000, 60_000L);
+            while (limiter.tryAcquire(INPUTS)) {
+                // 耗尽一个窗口的额度
+            }
+        }
+    }
+
+    @Benchmark
+    public void acquireUnderLimit(UnderLimit state) throws InterruptedException {
+        state.limiter.acquire(INPUTS);
+    }
+
+    @Benchmark
+    public boolean tryAcquireSaturated(Saturated state) {
+        return state.limiter.tryAcquire(INPUTS);
+    }
+
+    private static EmbeddingRateLimiter newLimiter(String algorithm, int rpm, int tpm, long windowMs) {
+        EmbeddingTokenEstimator estimator = new EmbeddingTokenEstimator();
+        EmbeddingRateLimiter limiter = "gcra".equals(algorithm)
+                ? new GcraEmbeddingRateLimiter(estimator)
+                : new SiliconFlowEmbeddingRateLimiter(estimator);
+        ReflectionTestUtils.setField(limiter, "rpmLimit", rpm);
+        ReflectionTestUtils.setField(limiter, "tpmLimit", tpm);
+        ReflectionTestUtils.setField(limiter, "windowMs", windowMs);
+        return limiter;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EmbeddingRateLimiterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
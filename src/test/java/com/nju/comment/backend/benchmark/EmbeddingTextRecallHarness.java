@@ -0,0 +1,232 @@
+package com.nju.comment.backend.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+import com.nju.comment.backend.component.ingestion.CorpusRecord;
+import com.nju.comment.backend.component.ingestion.CorpusRecordParser;
+import com.nju.comment.backend.component.ingestion.EmbeddingTextFormat;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 向量文本格式召回对比：同一批语料分别以 full 与 diff 表示向量化，留一法暴力检索 top-k，输出
+ * <ul>
+ *     <li>平均 token / 字符数：diff 相对 full 节省的 TPM 与 content 存储；</li>
+ *     <li>overlap@k：diff 检索结果与 full 检索结果（作为基准）的重合比例；</li>
+ *     <li>edit@k：检索到的样本与查询样本“注释改动词集合”的平均 Jaccard，衡量示例对注释更新是否真正相关，
+ *     与表示方式无关，可直接比较两种格式。</li>
+ * </ul>
+ * 运行：{@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.nju.comment.backend.benchmark.EmbeddingTextRecallHarness
+ * -Dexec.args="<corpus.jsonl> [samples=2000] [queries=200] [k=5]"}，
+ * Embedding 服务取环境变量 {@code APP_AI_SILICONFLOW_EMBEDDING_API_KEY}（及可选的 BASE_URL / MODEL）。
+ */
+public class EmbeddingTextRecallHarness {
+
+    private static final Pattern WORD = Pattern.compile("[^\\p{L}\\p{N}_]+");
+    private static final int EMBED_BATCH = 32;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法: EmbeddingTextRecallHarness <corpus.jsonl> [samples] [queries] [k]");
+            return;
+        }
+        Path corpus = Path.of(args[0]);
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        JsonFactory jsonFactory = new JsonFactory();
+        List<CorpusRecord> full = read(corpus, new CorpusRecordParser(jsonFactory, EmbeddingTextFormat.FULL), samples);
+        List<CorpusRecord> diff = read(corpus, new CorpusRecordParser(jsonFactory, EmbeddingTextFormat.DIFF), samples);
+        queries = Math.min(queries, full.size());
+
+        EmbeddingTokenEstimator tokenEstimator = new EmbeddingTokenEstimator();
+        printSize("full", full, tokenEstimator);
+        printSize("diff", diff, tokenEstimator);
+
+        EmbeddingModel model = embeddingModel();
+        float[][] fullVectors = embed(model, full);
+        float[][] diffVectors = embed(model, diff);
+
+        List<Set<String>> edits = full.stream().map(r -> commentEdit(r.srcJavadoc(), r.dstJavadoc())).toList();
+        double overlap = 0;
+        double fullEdit = 0;
+        double diffEdit = 0;
+        for (int q = 0; q < queries; q++) {
+            int[] fullTop = topK(fullVectors, q, k);
+            int[] diffTop = topK(diffVectors, q, k);
+            Set<Integer> reference = new HashSet<>();
+            for (int index : fullTop) {
+                reference.add(index);
+            }
+            int hits = 0;
+            for (int index : diffTop) {
+                if (reference.contains(index)) {
+                    hits++;
+                }
+            }
+            overlap += (double) hits / k;
+            fullEdit += meanJaccard(edits, q, fullTop);
+            diffEdit += meanJaccard(edits, q, diffTop);
+        }
+        System.out.printf("samples=%d, queries=%d, k=%d%n", full.size(), queries, k);
+        System.out.printf("overlap@%d(diff vs full) = %.3f%n", k, overlap / queries);
+        System.out.printf("edit@%d full = %.3f, diff = %.3f%n", k, fullEdit / queries, diffEdit / queries);
+    }
+
+    private static List<CorpusRecord> read(Path corpus, CorpusRecordParser parser, int limit) throws IOException {
+        List<CorpusRecord> records = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(corpus, StandardCharsets.UTF_8)) {
+            String line;
+            while (records.size() < limit && (line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    records.add(parser.parse(line));
+                }
+            }
+        }
+        return records;
+    }
+
+    private static void printSize(String name, List<CorpusRecord> records, EmbeddingTokenEstimator tokenEstimator) {
+        long tokens = 0;
+        long chars = 0;
+        for (CorpusRecord record : records) {
+            tokens += tokenEstimator.estimate(record.vectorText());
+            chars += record.vectorText().length();
+        }
+        System.out.printf("%s: avgTokens=%.1f, avgChars=%.1f%n",
+                name, (double) tokens / records.size(), (double) chars / records.size());
+    }
+
+    private static EmbeddingModel embeddingModel() {
+        String baseUrl = System.getenv().getOrDefault("APP_AI_SILICONFLOW_EMBEDDING_BASE_URL", "https://api.siliconflow.cn");
+        String model = System.getenv().getOrDefault("APP_AI_SILICONFLOW_EMBEDDING_MODEL", "BAAI/bge-m3");
+        String apiKey = System.getenv("APP_AI_SILICONFLOW_EMBEDDING_API_KEY");
+        if (apiKey == null || apiKey.isBlank()) {
+            throw new IllegalStateException("APP_AI_SILICONFLOW_EMBEDDING_API_KEY is required");
+        }
+        OpenAiApi api = OpenAiApi.builder().baseUrl(baseUrl).apiKey(apiKey.trim()).build();
+        return new OpenAiEmbeddingModel(api, MetadataMode.NONE, OpenAiEmbeddingOptions.builder().model(model).build());
+    }
+
+    private static float[][] embed(EmbeddingModel model, List<CorpusRecord> records) {
+        float[][] vectors = new float[records.size()][];
+        for (int start = 0; start < records.size(); start += EMBED_BATCH) {
+            int end = Math.min(records.size(), start + EMBED_BATCH);
+            List<String> texts = records.subList(start, end).stream().map(CorpusRecord::vectorText).toList();
+            List<float[]> batch = model.embed(texts);
+            for (int i = 0; i < batch.size(); i++) {
+                vectors[start + i] = normalize(batch.get(i));
+            }
+        }
+        return vectors;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= (float) norm;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 余弦相似度 top-k，排除查询自身
+     */
+    private static int[] topK(float[][] vectors, int query, int k) {
+        int[] best = new int[k];
+        double[] scores = new double[k];
+        Arrays.fill(best, -1);
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < vectors.length; i++) {
+            if (i == query) {
+                continue;
+            }
+            double score = 0;
+            for (int d = 0; d < vectors[i].length; d++) {
+                score += vectors[i][d] * vectors[query][d];
+            }
+            if (score <= scores[k - 1]) {
+                continue;
+            }
+            int pos = k - 1;
+            while (pos > 0 && scores[pos - 1] < score) {
+                scores[pos] = scores[pos - 1];
+                best[pos] = best[pos - 1];
+                pos--;
+            }
+            scores[pos] = score;
+            best[pos] = i;
+        }
+        return best;
+    }
+
+    /**
+     * 注释改动词集合：新旧注释词集合的对称差
+     */
+    private static Set<String> commentEdit(String srcJavadoc, String dstJavadoc) {
+        Set<String> src = words(srcJavadoc);
+        Set<String> dst = words(dstJavadoc);
+        Set<String> edit = new HashSet<>(src);
+        edit.addAll(dst);
+        Set<String> common = new HashSet<>(src);
+        common.retainAll(dst);
+        edit.removeAll(common);
+        return edit;
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        if (text != null) {
+            for (String word : WORD.split(text.toLowerCase())) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    private static double meanJaccard(List<Set<String>> edits, int query, int[] neighbours) {
+        Set<String> target = edits.get(query);
+        double total = 0;
+        int counted = 0;
+        for (int index : neighbours) {
+            if (index < 0) {
+                continue;
+            }
+            Set<String> other = edits.get(index);
+            Set<String> union = new HashSet<>(target);
+            union.addAll(other);
+            if (!union.isEmpty()) {
+                Set<String> intersection = new HashSet<>(target);
+                intersection.retainAll(other);
+                total += (double) intersection.size() / union.size();
+            }
+            counted++;
+        }
+        return counted == 0 ? 0 : total / counted;
+    }
+}
@@ -0,0 +1,225 @@
+package com.nju.comment.backend.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.component.embedding.PassThroughBatchingStrategy;
+import com.nju.comment.backend.component.vectorstore.HnswVectorStore;
+import org.jspecify.annotations.NonNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 进程内 HNSW 检索基准（离线）：合成的聚簇向量（模拟同一项目/同类改动的样本彼此相近），
+ * 测量 top-k 检索延迟（含读取文档正文），并在建图后以暴力检索为基准打印 recall@k。
+ * <p>
+ * 运行：{@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.nju.comment.backend.benchmark.HnswSearchBenchmark}
+ * <p>
+ * 默认只测 2 万条，延迟与召回不能直接外推到百万级；更大规模用 {@code -Dhnsw.sizes=20000,1000000 -Dhnsw.heap=8g}
+ * 实测（1024 维时每百万条约 4GB 原始向量，另需同等量级的映射文件磁盘空间，建图耗时以小时计）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class HnswSearchBenchmark {
+
+    private static final int DIMENSION = 1024;
+    private static final int CLUSTERS = 64;
+    private static final int QUERY_COUNT = 200;
+    private static final int TOP_K = 5;
+
+    @Param({"20000"})
+    public int size;
+
+    @Param({"64"})
+    public int efSearch;
+
+    private Path dir;
+    private HnswVectorStore store;
+    private float[][] vectors;
+    private float[][] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(7);
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(random, 1.0f, null);
+        }
+        vectors = new float[size][];
+        for (int i = 0; i < size; i++) {
+            vectors[i] = normalize(gaussian(random, 0.6f, centers[i % CLUSTERS]));
+        }
+        queries = new float[QUERY_COUNT][];
+        for (int q = 0; q < QUERY_COUNT; q++) {
+            queries[q] = normalize(gaussian(random, 0.6f, centers[random.nextInt(CLUSTERS)]));
+        }
+
+        dir = Files.createTempDirectory("hnsw-bench");
+        store = new HnswVectorStore(new IndexedEmbeddingModel(vectors), new ObjectMapper(), new PassThroughBatchingStrategy(),
+                dir.toString(), DIMENSION, 16, 200, efSearch, Integer.MAX_VALUE, 256L * 1024 * 1024);
+        store.open();
+        long start = System.currentTimeMillis();
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            batch.add(Document.builder().id("doc-" + i).text(Integer.toString(i)).build());
+            if (batch.size() == 256 || i == size - 1) {
+                store.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        System.out.printf("%n建图: size=%d, 耗时 %dms%n", size, System.currentTimeMillis() - start);
+        System.out.printf("recall@%d(efSearch=%d) = %.4f%n", TOP_K, efSearch, recall());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<Document> search() {
+        return store.search(queries[ThreadLocalRandom.current().nextInt(QUERY_COUNT)], TOP_K, 0.0);
+    }
+
+    private double recall() {
+        int hits = 0;
+        for (float[] query : queries) {
+            Set<String> expected = new HashSet<>();
+            for (int index : bruteForce(query)) {
+                expected.add("doc-" + index);
+            }
+            for (Document document : store.search(query, TOP_K, -1.0)) {
+                if (expected.contains(document.getId())) {
+                    hits++;
+                }
+            }
+        }
+        return (double) hits / (queries.length * TOP_K);
+    }
+
+    private int[] bruteForce(float[] query) {
+        int[] best = new int[TOP_K];
+        double[] scores = new double[TOP_K];
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < vectors.length; i++) {
+            double score = 0;
+            for (int d = 0; d < DIMENSION; d++) {
+                score += query[d] * vectors[i][d];
+            }
+            if (score <= scores[TOP_K - 1]) {
+                continue;
+            }
+            int pos = TOP_K - 1;
+            while (pos > 0 && scores[pos - 1] < score) {
+                scores[pos] = scores[pos - 1];
+                best[pos] = best[pos - 1];
+                pos--;
+            }
+            scores[pos] = score;
+            best[pos] = i;
+        }
+        return best;
+    }
+
+    private static float[] gaussian(Random random, float scale, float[] center) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian() * scale + (center == null ? 0 : center[d]);
+        }
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] /= (float) norm;
+        }
+        return vector;
+    }
+
+    /**
+     * 文本即向量下标，直接返回预生成的向量
+     */
+    private record IndexedEmbeddingModel(float[][] vectors) implements EmbeddingModel {
+
+        @Override
+        public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            List<String> texts = request.getInstructions();
+            for (int i = 0; i < texts.size(); i++) {
+                embeddings.add(new Embedding(vectors[Integer.parseInt(texts.get(i))], i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float @NonNull [] embed(@NonNull Document document) {
+            return vectors[Integer.parseInt(document.getText())];
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSION;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(HnswSearchBenchmark.class.getSimpleName());
+        String sizes = System.getProperty("hnsw.sizes");
+        if (sizes != null && !sizes.isBlank()) {
+            options = options.param("size", sizes.split(","));
+        }
+        String heap = System.getProperty("hnsw.heap");
+        if (heap != null && !heap.isBlank()) {
+            options = options.jvmArgsAppend("-Xmx" + heap);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,91 @@
+package com.nju.comment.backend.benchmark;
+
+import com.nju.comment.backend.component.embedding.CoalescingEmbeddingModel;
+import com.nju.comment.backend.component.embedding.HashEmbeddingModel;
+import com.nju.comment.backend.component.embedding.PooledEmbeddingModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地 Embedding 链路基准（离线）：哈希模型代替 ONNX 推理，测量实例池与跨线程合并在并发查询下的开销。
+ * <p>
+ * {@code poolSize} 为模型实例数，{@code coalesce} 控制是否在池外合并并发的单条查询。
+ * 换成真实 ONNX 模型时只需替换 {@link #newInstance()}。
+ * 运行：{@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.nju.comment.backend.benchmark.LocalEmbeddingBenchmark}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LocalEmbeddingBenchmark {
+
+    private static final int DIMENSIONS = 1024;
+    private static final int QUERY_COUNT = 256;
+
+    @Param({"1", "4"})
+    public int poolSize;
+
+    @Param({"false", "true"})
+    public boolean coalesce;
+
+    private EmbeddingModel model;
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<EmbeddingModel> instances = new ArrayList<>();
+        for (int i = 0; i < poolSize; i++) {
+            instances.add(newInstance());
+        }
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddingModel pooled = new PooledEmbeddingModel(instances, registry);
+        model = coalesce ? new CoalescingEmbeddingModel(pooled, 1, 32, 60_000, registry) : pooled;
+
+        queries = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = "{\"src_method\":\"public int size" + i + "() { return count; }\","
+                    + "\"dst_method\":\"public int size" + i + "() { return items.size(); }\","
+                    + "\"src_javadoc\":\"/** Returns the number of elements " + i + ". */\"}";
+        }
+    }
+
+    @Benchmark
+    public float[] embedQuery() {
+        return model.embed(queries[ThreadLocalRandom.current().nextInt(QUERY_COUNT)]);
+    }
+
+    private static EmbeddingModel newInstance() {
+        return new HashEmbeddingModel(DIMENSIONS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LocalEmbeddingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,418 @@
+package com.nju.comment.backend.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.component.embedding.HashEmbeddingModel;
+import com.nju.comment.backend.component.embedding.PassThroughBatchingStrategy;
+import com.nju.comment.backend.component.ingestion.CorpusRecord;
+import com.nju.comment.backend.component.ingestion.CorpusRecordParser;
+import com.nju.comment.backend.component.vectorstore.HnswVectorStore;
+import com.nju.comment.backend.component.vectorstore.VectorSearchRequests;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.param.ConnectParam;
+import io.milvus.param.IndexType;
+import io.milvus.param.MetricType;
+import io.milvus.param.collection.DropCollectionParam;
+import io.milvus.param.collection.FlushParam;
+import io.milvus.param.index.GetIndexBuildProgressParam;
+import org.jspecify.annotations.NonNull;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.milvus.MilvusVectorStore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 向量索引配置的召回/延迟对比：从 docs 语料取样入库，语料尾部留出的样本按 PromptServiceImpl 的方式作为查询，
+ * 以暴力检索为基准（相似度不低于第 k 名即算命中），对每种 (索引类型, 检索参数) 输出 p50 / p99 延迟、QPS 与 recall@k。
+ * <ul>
+ *     <li>进程内：FLAT（暴力，基准自身）与 {@link HnswVectorStore} 的不同 ef；</li>
+ *     <li>设置 {@code MILVUS_HOST}（可选 {@code MILVUS_PORT}）时，再在该 Milvus 上逐个建临时集合，
+ *     比较 IVF_FLAT / IVF_SQ8（nprobe）与 HNSW（ef），测完即删除。</li>
+ * </ul>
+ * 查询经 {@link VectorSearchRequests} 构造，与线上请求携带检索参数的方式一致；
+ * 向量预先计算，计时只包含向量库本身。设置 {@code APP_AI_SILICONFLOW_EMBEDDING_API_KEY} 时使用真实 Embedding，
+ * 否则使用离线哈希 Embedding（向量分布与真实模型不同，只适合比较相对趋势）。
+ * 运行：{@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.nju.comment.backend.benchmark.VectorIndexBenchmark
+ * -Dexec.args="<corpus.jsonl> [samples=5000] [queries=200] [k=5] [threads=4]"}
+ */
+public class VectorIndexBenchmark {
+
+    private static final int EMBED_BATCH = 32;
+    private static final int HASH_DIMENSION = 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("用法: VectorIndexBenchmark <corpus.jsonl> [samples] [queries] [k] [threads]");
+            return;
+        }
+        Path corpus = Path.of(args[0]);
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int queryCount = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+        List<CorpusRecord> records = read(corpus, samples + queryCount);
+        List<CorpusRecord> docs = records.subList(0, Math.min(samples, records.size()));
+        List<CorpusRecord> queryRecords = records.subList(docs.size(), records.size());
+        if (queryRecords.isEmpty()) {
+            System.err.println("语料不足以留出查询样本");
+            return;
+        }
+
+        EmbeddingModel remote = remoteEmbeddingModel();
+        EmbeddingModel embedder = remote != null ? remote : new HashEmbeddingModel(HASH_DIMENSION);
+        Map<String, float[]> vectors = new HashMap<>();
+        embed(embedder, docs, vectors);
+        embed(embedder, queryRecords, vectors);
+        int dimension = vectors.values().iterator().next().length;
+        EmbeddingModel lookup = new LookupEmbeddingModel(vectors, dimension);
+
+        List<Document> documents = new ArrayList<>(docs.size());
+        float[][] docVectors = new float[docs.size()][];
+        for (int i = 0; i < docs.size(); i++) {
+            documents.add(Document.builder()
+                    .id(UUID.nameUUIDFromBytes(docs.get(i).docId().getBytes(StandardCharsets.UTF_8)).toString())
+                    .text(docs.get(i).vectorText())
+                    .build());
+            docVectors[i] = normalize(vectors.get(docs.get(i).vectorText()).clone());
+        }
+        List<String> queries = queryRecords.stream().map(CorpusRecord::vectorText).toList();
+        Map<String, float[]> byId = new HashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            byId.put(documents.get(i).getId(), docVectors[i]);
+        }
+        GroundTruth truth = new GroundTruth(byId, new HashMap<>(), new HashMap<>());
+        for (String query : queries) {
+            float[] normalized = normalize(vectors.get(query).clone());
+            int[] best = bruteForce(docVectors, normalized, k);
+            truth.queries().put(query, normalized);
+            truth.kthScores().put(query, dot(normalized, docVectors[best[best.length - 1]]));
+        }
+        System.out.printf("docs=%d, queries=%d, k=%d, dimension=%d, threads=%d, embedding=%s%n",
+                documents.size(), queries.size(), k, dimension, threads, remote != null ? "remote" : "hash");
+        System.out.printf("%-34s %10s %10s %10s %10s%n", "config", "p50(ms)", "p99(ms)", "QPS", "recall@" + k);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        runFlat(docVectors, vectors, queries, k, threads);
+        runHnsw(lookup, objectMapper, documents, dimension, queries, truth, k, threads);
+
+        String milvusHost = System.getenv("MILVUS_HOST");
+        if (milvusHost != null && !milvusHost.isBlank()) {
+            int port = Integer.parseInt(System.getenv().getOrDefault("MILVUS_PORT", "19530"));
+            runMilvus(milvusHost, port, lookup, objectMapper, documents, dimension, queries, truth, k, threads);
+        }
+    }
+
+    private static void runFlat(float[][] docVectors, Map<String, float[]> vectors, List<String> queries, int k, int threads)
+            throws Exception {
+        Measurement measurement = measure(queries, threads, query -> {
+            bruteForce(docVectors, normalize(vectors.get(query).clone()), k);
+            return null;
+        });
+        measurement.print("inprocess FLAT", 1.0);
+    }
+
+    private static void runHnsw(EmbeddingModel lookup, ObjectMapper objectMapper, List<Document> documents, int dimension,
+                                List<String> queries, GroundTruth truth, int k, int threads) throws Exception {
+        Path dir = Files.createTempDirectory("hnsw-index-bench");
+        HnswVectorStore store = new HnswVectorStore(lookup, objectMapper, new PassThroughBatchingStrategy(),
+                dir.toString(), dimension, 16, 200, 64, Integer.MAX_VALUE, 256L * 1024 * 1024);
+        try {
+            store.open();
+            addInBatches(store, documents);
+            for (int ef : new int[]{16, 32, 64, 128}) {
+                VectorSearchRequests requests = new VectorSearchRequests(objectMapper,
+                        "{\"ef\":" + ef + "}", Integer.MAX_VALUE, Integer.MAX_VALUE);
+                runStore("inprocess HNSW M=16 ef=" + ef, store, requests, queries, truth, k, threads);
+            }
+        } finally {
+            store.close();
+            deleteRecursively(dir);
+        }
+    }
+
+    private static void runMilvus(String host, int port, EmbeddingModel lookup, ObjectMapper objectMapper,
+                                  List<Document> documents, int dimension, List<String> queries, GroundTruth truth,
+                                  int k, int threads) throws Exception {
+        MilvusServiceClient client = new MilvusServiceClient(ConnectParam.newBuilder().withHost(host).withPort(port).build());
+        try {
+            runMilvusIndex(client, lookup, objectMapper, documents, dimension, queries, truth, k, threads,
+                    IndexType.IVF_FLAT, "{\"nlist\":1024}", "nprobe", new int[]{8, 16, 32, 64});
+            runMilvusIndex(client, lookup, objectMapper, documents, dimension, queries, truth, k, threads,
+                    IndexType.IVF_SQ8, "{\"nlist\":1024}", "nprobe", new int[]{16, 32, 64});
+            runMilvusIndex(client, lookup, objectMapper, documents, dimension, queries, truth, k, threads,
+                    IndexType.HNSW, "{\"M\":16,\"efConstruction\":200}", "ef", new int[]{32, 64, 128});
+        } finally {
+            client.close(5);
+        }
+    }
+
+    private static void runMilvusIndex(MilvusServiceClient client, EmbeddingModel lookup, ObjectMapper objectMapper,
+                                       List<Document> documents, int dimension, List<String> queries,
+                                       GroundTruth truth, int k, int threads,
+                                       IndexType indexType, String indexParameters, String searchParam, int[] values)
+            throws Exception {
+        String collection = "index_bench_" + indexType.name().toLowerCase();
+        client.dropCollection(DropCollectionParam.newBuilder().withCollectionName(collection).build());
+        MilvusVectorStore store = MilvusVectorStore.builder(client, lookup)
+                .collectionName(collection)
+                .embeddingDimension(dimension)
+                .indexType(indexType)
+                .indexParameters(indexParameters)
+                .metricType(MetricType.COSINE)
+                .batchingStrategy(new PassThroughBatchingStrategy())
+                .initializeSchema(true)
+                .build();
+        try {
+            store.afterPropertiesSet();
+            addInBatches(store, documents);
+            client.flush(FlushParam.newBuilder().withCollectionNames(List.of(collection)).build());
+            awaitIndex(client, collection, documents.size());
+            for (int value : values) {
+                VectorSearchRequests requests = new VectorSearchRequests(objectMapper,
+                        "{\"" + searchParam + "\":" + value + "}", Integer.MAX_VALUE, Integer.MAX_VALUE);
+                runStore("milvus " + indexType.name() + " " + searchParam + "=" + value, store, requests,
+                        queries, truth, k, threads);
+            }
+        } finally {
+            client.dropCollection(DropCollectionParam.newBuilder().withCollectionName(collection).build());
+        }
+    }
+
+    private static void runStore(String name, VectorStore store, VectorSearchRequests requests, List<String> queries,
+                                 GroundTruth truth, int k, int threads) throws Exception {
+        AtomicInteger hits = new AtomicInteger();
+        // 预热一轮
+        for (String query : queries) {
+            store.similaritySearch(requests.build(query, k));
+        }
+        Measurement measurement = measure(queries, threads, query -> {
+            List<Document> results = store.similaritySearch(requests.build(query, k));
+            for (Document document : results) {
+                if (truth.isHit(query, document.getId())) {
+                    hits.incrementAndGet();
+                }
+            }
+            return null;
+        });
+        measurement.print(name, (double) hits.get() / ((long) queries.size() * k));
+    }
+
+    private static Measurement measure(List<String> queries, int threads, QueryTask task) throws Exception {
+        long[] latencies = new long[queries.size()];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < queries.size(); i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    long begin = System.nanoTime();
+                    task.run(queries.get(index));
+                    latencies[index] = System.nanoTime() - begin;
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return new Measurement(latencies, System.nanoTime() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void addInBatches(VectorStore store, List<Document> documents) {
+        for (int start = 0; start < documents.size(); start += 256) {
+            store.add(documents.subList(start, Math.min(documents.size(), start + 256)));
+        }
+    }
+
+    private static void awaitIndex(MilvusServiceClient client, String collection, long rows) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 600_000;
+        while (System.currentTimeMillis() < deadline) {
+            var progress = client.getIndexBuildProgress(GetIndexBuildProgressParam.newBuilder()
+                    .withCollectionName(collection).build());
+            if (progress.getData() != null && progress.getData().getIndexedRows() >= rows) {
+                return;
+            }
+            Thread.sleep(500);
+        }
+        System.err.println("等待索引构建超时: " + collection);
+    }
+
+    private static List<CorpusRecord> read(Path corpus, int limit) throws IOException {
+        CorpusRecordParser parser = new CorpusRecordParser(new JsonFactory());
+        List<CorpusRecord> records = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(corpus, StandardCharsets.UTF_8)) {
+            String line;
+            while (records.size() < limit && (line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    CorpusRecord record = parser.parse(line);
+                    if (seen.add(record.vectorText())) {
+                        records.add(record);
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    private static EmbeddingModel remoteEmbeddingModel() {
+        String apiKey = System.getenv("APP_AI_SILICONFLOW_EMBEDDING_API_KEY");
+        if (apiKey == null || apiKey.isBlank()) {
+            return null;
+        }
+        String baseUrl = System.getenv().getOrDefault("APP_AI_SILICONFLOW_EMBEDDING_BASE_URL", "https://api.siliconflow.cn");
+        String model = System.getenv().getOrDefault("APP_AI_SILICONFLOW_EMBEDDING_MODEL", "BAAI/bge-m3");
+        OpenAiApi api = OpenAiApi.builder().baseUrl(baseUrl).apiKey(apiKey.trim()).build();
+        return new OpenAiEmbeddingModel(api, MetadataMode.NONE, OpenAiEmbeddingOptions.builder().model(model).build());
+    }
+
+    private static void embed(EmbeddingModel model, List<CorpusRecord> records, Map<String, float[]> vectors) {
+        for (int start = 0; start < records.size(); start += EMBED_BATCH) {
+            List<String> texts = records.subList(start, Math.min(records.size(), start + EMBED_BATCH)).stream()
+                    .map(CorpusRecord::vectorText).toList();
+            List<float[]> batch = model.embed(texts);
+            for (int i = 0; i < batch.size(); i++) {
+                vectors.put(texts.get(i), batch.get(i));
+            }
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= (float) norm;
+            }
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int d = 0; d < a.length; d++) {
+            sum += a[d] * b[d];
+        }
+        return sum;
+    }
+
+    private static int[] bruteForce(float[][] docVectors, float[] query, int k) {
+        int[] best = new int[k];
+        double[] scores = new double[k];
+        Arrays.fill(best, -1);
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < docVectors.length; i++) {
+            double score = 0;
+            for (int d = 0; d < query.length; d++) {
+                score += query[d] * docVectors[i][d];
+            }
+            if (score <= scores[k - 1]) {
+                continue;
+            }
+            int pos = k - 1;
+            while (pos > 0 && scores[pos - 1] < score) {
+                scores[pos] = scores[pos - 1];
+                best[pos] = best[pos - 1];
+                pos--;
+            }
+            scores[pos] = score;
+            best[pos] = i;
+        }
+        return Arrays.stream(best).filter(index -> index >= 0).toArray();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * 暴力检索基准。命中判定按相似度而非 id：不低于第 k 名的相似度即算命中，避免同分样本导致召回被低估
+     */
+    private record GroundTruth(Map<String, float[]> documents, Map<String, float[]> queries, Map<String, Double> kthScores) {
+
+        boolean isHit(String query, String documentId) {
+            float[] vector = documents.get(documentId);
+            return vector != null && dot(queries.get(query), vector) >= kthScores.get(query) - 1e-6;
+        }
+    }
+
+    @FunctionalInterface
+    private interface QueryTask {
+        Object run(String query) throws Exception;
+    }
+
+    private record Measurement(long[] latencies, long elapsedNanos) {
+
+        void print(String name, double recall) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            double p50 = sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.50) - 1)] / 1e6;
+            double p99 = sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.99) - 1)] / 1e6;
+            double qps = latencies.length / (elapsedNanos / 1e9);
+            System.out.printf("%-34s %10.3f %10.3f %10.1f %10.4f%n", name, p50, p99, qps, recall);
+        }
+    }
+
+    /**
+     * 按文本返回预先计算的向量，使计时只包含向量库
+     */
+    private record LookupEmbeddingModel(Map<String, float[]> vectors, int dimension) implements EmbeddingModel {
+
+        @Override
+        public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            List<String> texts = request.getInstructions();
+            for (int i = 0; i < texts.size(); i++) {
+                embeddings.add(new Embedding(vectors.get(texts.get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float @NonNull [] embed(@NonNull Document document) {
+            return vectors.get(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return dimension;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.nju.comment.backend.component;
+
+import com.nju.comment.backend.component.vectorstore.HybridRetriever;
+import com.nju.comment.backend.service.CacheService;
+import com.nju.comment.backend.service.PromptService;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 预热完成或超时前 readiness 保持 OUT_OF_SERVICE；单步失败只记录错误，不阻塞后续步骤与启动
+ */
+class StartupWarmupTest {
+
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    void readinessWaitsForRunToReturn() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        when(embeddingModel.embed(anyString())).thenAnswer(invocation -> {
+            entered.countDown();
+            release.await();
+            return new float[]{1f};
+        });
+        StartupWarmup warmup = newWarmup(ollamaAt("http://127.0.0.1:1"), 30_000);
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        CompletableFuture<Void> run = CompletableFuture.runAsync(() -> runQuietly(warmup));
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(run).isNotDone();
+
+        release.countDown();
+        run.get(5, TimeUnit.SECONDS);
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(warmup.health().getDetails()).containsKeys("embeddingMs", "similaritySearchMs", "totalMs")
+                .doesNotContainKey("timedOut");
+    }
+
+    @Test
+    void timeoutReleasesReadiness() throws Exception {
+        when(embeddingModel.embed(anyString())).thenAnswer(invocation -> {
+            release.await();
+            return new float[]{1f};
+        });
+        StartupWarmup warmup = newWarmup(ollamaAt("http://127.0.0.1:1"), 200);
+
+        long start = System.currentTimeMillis();
+        warmup.run(new DefaultApplicationArguments());
+
+        assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(warmup.health().getDetails()).containsEntry("timedOut", true);
+    }
+
+    @Test
+    void failingStepIsRecordedWithoutBlocking() throws Exception {
+        when(embeddingModel.embed(anyString())).thenThrow(new IllegalStateException("embedding down"));
+        StartupWarmup warmup = newWarmup(ollamaAt("http://127.0.0.1:1"), 30_000);
+
+        warmup.run(new DefaultApplicationArguments());
+
+        assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(warmup.health().getDetails())
+                .containsEntry("embeddingError", "embedding down")
+                .containsKeys("vectorStoreLoadMs", "similaritySearchMs", "promptMs", "chatClientError");
+    }
+
+    @Test
+    void ollamaWarmUpOpensConnection() throws Exception {
+        AtomicInteger versionCalls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/version", exchange -> {
+            versionCalls.incrementAndGet();
+            byte[] body = "{\"version\":\"0.0.0\"}".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            when(embeddingModel.embed(anyString())).thenReturn(new float[]{1f});
+            StartupWarmup warmup = newWarmup(ollamaAt("http://127.0.0.1:" + server.getAddress().getPort()), 30_000);
+
+            warmup.run(new DefaultApplicationArguments());
+
+            assertThat(versionCalls.get()).isEqualTo(1);
+            assertThat(warmup.health().getDetails()).containsKey("chatClientMs").doesNotContainKey("chatClientError");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private StartupWarmup newWarmup(OllamaModelFactory ollamaModelFactory, long timeoutMs) {
+        return new StartupWarmup(mock(VectorStore.class), embeddingModel, mock(HybridRetriever.class),
+                mock(PromptService.class), ollamaModelFactory, true, 2, "qwen3:8b", timeoutMs,
+                "default", "vector_store");
+    }
+
+    private static OllamaModelFactory ollamaAt(String baseUrl) {
+        OllamaModelFactory factory = new OllamaModelFactory(mock(CacheService.class));
+        ReflectionTestUtils.setField(factory, "chatBaseUrl", baseUrl);
+        return factory;
+    }
+
+    private static void runQuietly(StartupWarmup warmup) {
+        try {
+            warmup.run(new DefaultApplicationArguments());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
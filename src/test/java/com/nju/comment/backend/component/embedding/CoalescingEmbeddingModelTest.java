@@ -0,0 +1,185 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.nju.comment.backend.exception.VectorStoreException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jspecify.annotations.NonNull;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 并发单条查询（含异步预取）合并为批量请求，各调用者拿到自己的向量；
+ * 非法输入导致的批量失败逐条重试，其他失败整批失败；等待结果有上限
+ */
+class CoalescingEmbeddingModelTest {
+
+    private static final int CALLERS = 16;
+
+    @Test
+    void concurrentQueriesShareOneRequest() throws Exception {
+        FakeEmbeddingModel delegate = new FakeEmbeddingModel();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, 200, CALLERS, 5_000, registry);
+
+        List<float[]> results = runConcurrently(model, i -> "query-" + i);
+
+        for (int i = 0; i < CALLERS; i++) {
+            assertThat(results.get(i)).containsExactly(("query-" + i).length(), i);
+        }
+        assertThat(delegate.requestSizes).containsExactly(CALLERS);
+        assertThat(registry.get("embedding.coalesce.batch.size").summary().max()).isEqualTo(CALLERS);
+    }
+
+    @Test
+    void asyncQueriesJoinTheSameBatch() throws Exception {
+        FakeEmbeddingModel delegate = new FakeEmbeddingModel();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, 5_000, 2, 5_000, new SimpleMeterRegistry());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<float[]> first = model.embedAsync("query-1", executor);
+            CompletableFuture<float[]> second = model.embedAsync("query-2", executor);
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).containsExactly(7, 1);
+            assertThat(second.get(5, TimeUnit.SECONDS)).containsExactly(7, 2);
+            assertThat(delegate.requestSizes).containsExactly(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void badInputBatchIsRetriedItemByItem() throws Exception {
+        FakeEmbeddingModel delegate = new FakeEmbeddingModel();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, 5_000, 2, 5_000, new SimpleMeterRegistry());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<float[]> good = model.embedAsync("query-1", executor);
+            CompletableFuture<float[]> bad = model.embedAsync("bad", executor);
+
+            assertThat(good.get(5, TimeUnit.SECONDS)).containsExactly(7, 1);
+            assertThatThrownBy(() -> bad.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("400 bad input");
+            assertThat(delegate.requestSizes).containsExactly(2, 1, 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void serverErrorFailsWholeBatchWithoutRetry() {
+        FakeEmbeddingModel delegate = new FakeEmbeddingModel();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, 5_000, 2, 5_000, new SimpleMeterRegistry());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<float[]> first = model.embedAsync("query-1", executor);
+            CompletableFuture<float[]> second = model.embedAsync("down", executor);
+
+            assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("503 unavailable");
+            assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("503 unavailable");
+            assertThat(delegate.requestSizes).containsExactly(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void waitingCallerGivesUpAfterTimeout() {
+        FakeEmbeddingModel delegate = new FakeEmbeddingModel();
+        CoalescingEmbeddingModel model = new CoalescingEmbeddingModel(delegate, 5_000, 2, 100, new SimpleMeterRegistry());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            model.embedAsync("slow", executor);
+
+            assertThatThrownBy(() -> model.embed("query-1")).isInstanceOf(VectorStoreException.class);
+        } finally {
+            delegate.release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<float[]> runConcurrently(EmbeddingModel model, IntFunction<String> text)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<float[]>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return model.embed(text.apply(index));
+                }));
+            }
+            start.countDown();
+            List<float[]> results = new ArrayList<>();
+            for (Future<float[]> future : futures) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 向量为 [文本长度, 文本末尾数字]；包含 "bad" 的请求以 400 失败，包含 "down" 的以 503 失败，
+     * 包含 "slow" 的阻塞到 release
+     */
+    private static final class FakeEmbeddingModel implements EmbeddingModel {
+
+        private final List<Integer> requestSizes = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+            List<String> inputs = request.getInstructions();
+            requestSizes.add(inputs.size());
+            if (inputs.contains("bad")) {
+                throw new IllegalArgumentException("400 bad input");
+            }
+            if (inputs.contains("down")) {
+                throw new IllegalStateException("503 unavailable");
+            }
+            if (inputs.contains("slow")) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("slow");
+            }
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                String input = inputs.get(i);
+                float suffix = Float.parseFloat(input.substring(input.lastIndexOf('-') + 1));
+                embeddings.add(new Embedding(new float[]{input.length(), suffix}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float @NonNull [] embed(@NonNull Document document) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
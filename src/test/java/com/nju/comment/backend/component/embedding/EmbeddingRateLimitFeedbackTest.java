@@ -0,0 +1,120 @@
+package com.nju.comment.backend.component.embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 429 的 Retry-After（秒 / HTTP 日期 / 毫秒）按线程交给调用方并暂停所有请求；剩余额度耗尽时按重置时长暂停；服务端配额下发给限流器
+ */
+class EmbeddingRateLimitFeedbackTest {
+
+    private final EmbeddingRateLimiter limiter = mock(EmbeddingRateLimiter.class);
+    private final EmbeddingRateLimitFeedback feedback = new EmbeddingRateLimitFeedback(limiter, new SimpleMeterRegistry(), 60_000);
+
+    @Test
+    void parsesResetDurations() {
+        assertThat(EmbeddingRateLimitFeedback.parseDurationMs("1s")).isEqualTo(1000);
+        assertThat(EmbeddingRateLimitFeedback.parseDurationMs("6m0s")).isEqualTo(360_000);
+        assertThat(EmbeddingRateLimitFeedback.parseDurationMs("20ms")).isEqualTo(20);
+        assertThat(EmbeddingRateLimitFeedback.parseDurationMs("0.5s")).isEqualTo(500);
+        assertThat(EmbeddingRateLimitFeedback.parseDurationMs("1h2m")).isEqualTo(3_720_000);
+        assertThat(EmbeddingRateLimitFeedback.parseDurationMs(" 2 ")).isEqualTo(2000);
+        assertThat(EmbeddingRateLimitFeedback.parseDurationMs("soon")).isEqualTo(-1);
+        assertThat(EmbeddingRateLimitFeedback.parseDurationMs(null)).isEqualTo(-1);
+    }
+
+    @Test
+    void retryAfterSecondsPausesAllRequests() {
+        feedback.onResponse(429, headers(HttpHeaders.RETRY_AFTER, "2"));
+
+        assertThat(feedback.takeRetryAfterMs()).isEqualTo(2000L);
+        assertThat(feedback.takeRetryAfterMs()).isNull();
+        assertThat(feedback.getClearanceDelayMs()).isBetween(1500L, 2000L);
+    }
+
+    @Test
+    void retryAfterHttpDateIsRelativeToNow() {
+        String at = ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        feedback.onResponse(429, headers(HttpHeaders.RETRY_AFTER, at));
+
+        assertThat(feedback.takeRetryAfterMs()).isBetween(8000L, 10_000L);
+        assertThat(feedback.getClearanceDelayMs()).isBetween(8000L, 10_000L);
+    }
+
+    @Test
+    void retryAfterMsTakesPrecedence() {
+        HttpHeaders headers = headers(HttpHeaders.RETRY_AFTER, "30");
+        headers.add("retry-after-ms", "150");
+        feedback.onResponse(429, headers);
+
+        assertThat(feedback.takeRetryAfterMs()).isEqualTo(150L);
+    }
+
+    @Test
+    void throttleWithoutRetryAfterIsReportedButDoesNotPause() {
+        feedback.onResponse(429, headers(HttpHeaders.RETRY_AFTER, "whenever"));
+
+        assertThat(feedback.takeRetryAfterMs()).isEqualTo(-1L);
+        assertThat(feedback.getClearanceDelayMs()).isZero();
+    }
+
+    @Test
+    void retryAfterIsVisibleOnlyToTheThrottledThread() {
+        feedback.onResponse(429, headers(HttpHeaders.RETRY_AFTER, "1"));
+
+        assertThat(CompletableFuture.supplyAsync(feedback::takeRetryAfterMs).join()).isNull();
+        assertThat(feedback.takeRetryAfterMs()).isEqualTo(1000L);
+    }
+
+    @Test
+    void exhaustedQuotaPausesUntilReset() {
+        HttpHeaders headers = headers("x-ratelimit-remaining-requests", "5");
+        headers.add("x-ratelimit-remaining-tokens", "0");
+        headers.add("x-ratelimit-reset-tokens", "300ms");
+        feedback.onResponse(200, headers);
+
+        assertThat(feedback.takeRetryAfterMs()).isNull();
+        assertThat(feedback.getClearanceDelayMs()).isBetween(1L, 300L);
+    }
+
+    @Test
+    void pauseWindowKeepsTheLatestDeadline() throws InterruptedException {
+        feedback.onResponse(429, headers("retry-after-ms", "200"));
+        feedback.onResponse(429, headers("retry-after-ms", "50"));
+        assertThat(feedback.getClearanceDelayMs()).isGreaterThan(100L);
+
+        long start = System.currentTimeMillis();
+        feedback.awaitClearance();
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(100L);
+        assertThat(feedback.getClearanceDelayMs()).isZero();
+    }
+
+    @Test
+    void learnedServerLimitsAreAppliedOnce() {
+        HttpHeaders headers = headers("x-ratelimit-limit-requests", "100");
+        headers.add("x-ratelimit-limit-tokens", "50000");
+        feedback.onResponse(200, headers);
+        feedback.onResponse(200, headers);
+
+        verify(limiter).applyServerLimits(100, 50_000);
+        verify(limiter, never()).applyServerLimits(-1, -1);
+        assertThat(feedback.getClearanceDelayMs()).isZero();
+    }
+
+    private static HttpHeaders headers(String name, String value) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(name, value);
+        return headers;
+    }
+}
@@ -0,0 +1,153 @@
+package com.nju.comment.backend.component.embedding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GCRA 限流：窗口内可突发满额，之后按 RPM 间隔或 TPM 成本匀速放行；阻塞等待者先到先得，tryAcquire 不插队；服务端配额只会降低速率
+ */
+class GcraEmbeddingRateLimiterTest {
+
+    private static final int UNLIMITED = 1_000_000;
+    private static final List<String> ONE = List.of("x");
+
+    private final EmbeddingTokenEstimator estimator = new EmbeddingTokenEstimator();
+
+    @Test
+    void allowsBurstUpToBucketCapacity() {
+        GcraEmbeddingRateLimiter limiter = GcraEmbeddingRateLimiter.withLimits(estimator, 5, UNLIMITED, 60_000);
+
+        drain(limiter, 5);
+        assertThat(limiter.tryAcquire(ONE)).isFalse();
+    }
+
+    @Test
+    void spacesRequestsByRpmInterval() throws InterruptedException {
+        // 每 100ms 回填一次请求额度
+        GcraEmbeddingRateLimiter limiter = GcraEmbeddingRateLimiter.withLimits(estimator, 10, UNLIMITED, 1000);
+        long start = System.nanoTime();
+        drain(limiter, 10);
+
+        limiter.acquire(ONE);
+        limiter.acquire(ONE);
+        limiter.acquire(ONE);
+
+        assertThat(elapsedMs(start)).isBetween(250L, 1000L);
+    }
+
+    @Test
+    void spacesRequestsByTokenCost() throws InterruptedException {
+        // 每 token 回填 100ms，请求数不受限
+        GcraEmbeddingRateLimiter limiter = GcraEmbeddingRateLimiter.withLimits(estimator, UNLIMITED, 10, 1000);
+        long start = System.nanoTime();
+        boolean burst = limiter.tryAcquire(List.of("x".repeat(10)));
+        boolean next = limiter.tryAcquire(ONE);
+        assertThat(burst).isTrue();
+        assertThat(next).isFalse();
+
+        // 1 个 token 在 100ms 后放行，随后 2 个 token 再等 200ms
+        limiter.acquire(ONE);
+        limiter.acquire(List.of("xx"));
+
+        assertThat(elapsedMs(start)).isBetween(250L, 1000L);
+    }
+
+    @Test
+    void blockedCallersStartInArrivalOrder() throws InterruptedException {
+        GcraEmbeddingRateLimiter limiter = GcraEmbeddingRateLimiter.withLimits(estimator, 20, UNLIMITED, 1000);
+        drain(limiter, 20);
+
+        Queue<Integer> started = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int id = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    limiter.acquire(ONE);
+                    started.add(id);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            awaitParked(thread);
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertThat(started).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    void tryAcquireDoesNotOvertakeParkedReservation() throws InterruptedException {
+        // 每 300ms 回填一次请求额度
+        GcraEmbeddingRateLimiter limiter = GcraEmbeddingRateLimiter.withLimits(estimator, 2, UNLIMITED, 600);
+        drain(limiter, 2);
+
+        long start = System.nanoTime();
+        long[] waitedMs = new long[1];
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire(ONE);
+                waitedMs[0] = elapsedMs(start);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        awaitParked(waiter);
+
+        assertThat(limiter.tryAcquire(ONE)).isFalse();
+        waiter.join(5000);
+        // 额度回填后被等待者占用，tryAcquire 仍需等下一次回填
+        assertThat(limiter.tryAcquire(ONE)).isFalse();
+        assertThat(waitedMs[0]).isBetween(200L, 600L);
+    }
+
+    @Test
+    void serverLimitsOnlyLowerTheRate() {
+        GcraEmbeddingRateLimiter limiter = GcraEmbeddingRateLimiter.withLimits(estimator, 100, 50_000, 60_000);
+
+        limiter.applyServerLimits(1000, 100_000);
+        assertThat(limiter.getRpmLimit()).isEqualTo(100);
+        assertThat(limiter.getTpmLimit()).isEqualTo(50_000);
+
+        limiter.applyServerLimits(3, 10);
+        assertThat(limiter.getRpmLimit()).isEqualTo(3);
+        assertThat(limiter.getTpmLimit()).isEqualTo(10);
+        drain(limiter, 3);
+        assertThat(limiter.tryAcquire(ONE)).isFalse();
+    }
+
+    /**
+     * 先连续申请再断言，避免首次断言的类加载耗时让桶在申请之间回填
+     */
+    private static void drain(GcraEmbeddingRateLimiter limiter, int permits) {
+        int acquired = 0;
+        for (int i = 0; i < permits; i++) {
+            acquired += limiter.tryAcquire(ONE) ? 1 : 0;
+        }
+        assertThat(acquired).isEqualTo(permits);
+    }
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(thread.getState()).isEqualTo(Thread.State.TIMED_WAITING);
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,64 @@
+package com.nju.comment.backend.component.embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+/**
+ * 哈希 Embedding 确定且词面相近的文本更相似；实例池并发下结果一致
+ */
+class HashEmbeddingModelTest {
+
+    @Test
+    void deterministicAndLexicallySimilar() {
+        HashEmbeddingModel model = new HashEmbeddingModel(256);
+
+        float[] query = model.embed("public int getSize() { return items.size(); }");
+        float[] near = model.embed("public int getSize() { return elements.size(); }");
+        float[] far = model.embed("void close() throws IOException { channel.close(); }");
+
+        assertThat(model.embed("public int getSize() { return items.size(); }")).containsExactly(query);
+        assertThat(query).hasSize(256);
+        assertThat(dot(query, query)).isCloseTo(1.0, offset(1e-5));
+        assertThat(dot(query, near)).isGreaterThan(dot(query, far));
+    }
+
+    @Test
+    void pooledModelServesConcurrentCallers() throws Exception {
+        HashEmbeddingModel reference = new HashEmbeddingModel(64);
+        PooledEmbeddingModel pooled = new PooledEmbeddingModel(
+                List.of(new HashEmbeddingModel(64), new HashEmbeddingModel(64)), new SimpleMeterRegistry());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<float[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String text = "query " + i;
+                futures.add(executor.submit(() -> pooled.embed(text)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(5, TimeUnit.SECONDS)).containsExactly(reference.embed("query " + i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(pooled.dimensions()).isEqualTo(64);
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,128 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.nju.comment.backend.exception.VectorStoreException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 写入后可读、重新打开后恢复；导出导入往返一致；模型或维度不匹配时拒绝；崩溃留下的索引残尾在打开时截断
+ */
+class PersistentEmbeddingStoreTest {
+
+    private static final String MODEL = "test-model";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void putGetAndReopen() {
+        PersistentEmbeddingStore store = open(dir, MODEL, 4);
+        store.put("a", new float[]{1f, 2f, 3f, 4f});
+        store.putAll(List.of("b", "a", "c"), List.of(new float[]{5f, 6f, 7f, 8f}, new float[]{0f, 0f, 0f, 0f},
+                new float[]{1f}));
+        assertThat(store.get("a")).containsExactly(1f, 2f, 3f, 4f);
+        assertThat(store.get("missing")).isNull();
+        assertThat(store.contains("c")).isFalse();
+        assertThat(store.size()).isEqualTo(2);
+        store.close();
+
+        PersistentEmbeddingStore reopened = open(dir, MODEL, 4);
+        assertThat(reopened.size()).isEqualTo(2);
+        assertThat(reopened.get("a")).containsExactly(1f, 2f, 3f, 4f);
+        assertThat(reopened.get("b")).containsExactly(5f, 6f, 7f, 8f);
+        reopened.put("d", new float[]{9f, 9f, 9f, 9f});
+        reopened.close();
+
+        PersistentEmbeddingStore again = open(dir, MODEL, 4);
+        assertThat(again.get("d")).containsExactly(9f, 9f, 9f, 9f);
+        assertThat(again.get("b")).containsExactly(5f, 6f, 7f, 8f);
+        again.close();
+    }
+
+    @Test
+    void exportImportRoundTrip() throws IOException {
+        PersistentEmbeddingStore source = open(dir.resolve("source"), MODEL, 4);
+        source.put("a", new float[]{1f, 2f, 3f, 4f});
+        source.put("b", new float[]{-1f, 0.5f, Float.MIN_VALUE, Float.MAX_VALUE});
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        assertThat(source.exportTo(exported)).isEqualTo(2);
+        source.close();
+
+        PersistentEmbeddingStore target = open(dir.resolve("target"), MODEL, 4);
+        target.put("a", new float[]{1f, 2f, 3f, 4f});
+        assertThat(target.importFrom(new ByteArrayInputStream(exported.toByteArray()))).isEqualTo(1);
+        assertThat(target.importFrom(new ByteArrayInputStream(exported.toByteArray()))).isZero();
+        assertThat(target.get("b")).containsExactly(-1f, 0.5f, Float.MIN_VALUE, Float.MAX_VALUE);
+        target.close();
+
+        PersistentEmbeddingStore otherModel = open(dir.resolve("other"), "other-model", 4);
+        assertThatThrownBy(() -> otherModel.importFrom(new ByteArrayInputStream(exported.toByteArray())))
+                .isInstanceOf(VectorStoreException.class);
+        otherModel.close();
+    }
+
+    @Test
+    void rejectsMismatchedDimension() throws IOException {
+        PersistentEmbeddingStore store = open(dir, MODEL, 4);
+        store.put("a", new float[]{1f, 2f, 3f, 4f});
+        store.close();
+
+        assertThatThrownBy(() -> open(dir, MODEL, 8)).isInstanceOf(VectorStoreException.class);
+
+        // 模型目录按名称区分，手工拷贝到其他模型目录的索引同样被拒绝
+        Path copied = dir.resolve("copied-model");
+        Files.createDirectories(copied);
+        Files.copy(dir.resolve(MODEL).resolve("index.bin"), copied.resolve("index.bin"));
+        Files.copy(dir.resolve(MODEL).resolve("vectors.f32"), copied.resolve("vectors.f32"));
+        assertThatThrownBy(() -> open(dir, "copied-model", 4)).isInstanceOf(VectorStoreException.class)
+                .satisfies(e -> assertThat(e.getCause()).hasMessageContaining("不匹配"));
+    }
+
+    @Test
+    void truncatesTornIndexTail() throws IOException {
+        PersistentEmbeddingStore store = open(dir, MODEL, 4);
+        store.put("a", new float[]{1f, 2f, 3f, 4f});
+        store.put("b", new float[]{5f, 6f, 7f, 8f});
+        store.close();
+        Path index = dir.resolve(MODEL).resolve("index.bin");
+        long validBytes = Files.size(index);
+        // 崩溃时只写出了下一条记录的长度前缀与部分 docId
+        Files.write(index, new byte[]{0, 10, 'c', 'c'}, StandardOpenOption.APPEND);
+
+        PersistentEmbeddingStore reopened = open(dir, MODEL, 4);
+        assertThat(Files.size(index)).isEqualTo(validBytes);
+        assertThat(reopened.size()).isEqualTo(2);
+        reopened.put("c", new float[]{9f, 9f, 9f, 9f});
+        reopened.close();
+
+        PersistentEmbeddingStore again = open(dir, MODEL, 4);
+        assertThat(again.size()).isEqualTo(3);
+        assertThat(again.get("b")).containsExactly(5f, 6f, 7f, 8f);
+        assertThat(again.get("c")).containsExactly(9f, 9f, 9f, 9f);
+        again.close();
+    }
+
+    private static PersistentEmbeddingStore open(Path path, String model, int dimension) {
+        PersistentEmbeddingStore store = new PersistentEmbeddingStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "storePath", path.toString());
+        ReflectionTestUtils.setField(store, "modelName", model);
+        ReflectionTestUtils.setField(store, "provider", "siliconflow");
+        ReflectionTestUtils.setField(store, "localModelName", "local-onnx");
+        ReflectionTestUtils.setField(store, "dimension", dimension);
+        store.open();
+        return store;
+    }
+}
@@ -0,0 +1,101 @@
+package com.nju.comment.backend.component.embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jspecify.annotations.NonNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 异步调用在等待额度与 429 退避期间不向工作线程池提交任务
+ */
+class RateLimitedEmbeddingModelTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void waitingForQuotaDoesNotOccupyWorker() throws Exception {
+        EmbeddingRateLimiter limiter = GcraEmbeddingRateLimiter.withLimits(new EmbeddingTokenEstimator(), 6, 1_000_000, 60_000);
+        AtomicInteger submitted = new AtomicInteger();
+        Executor worker = command -> {
+            submitted.incrementAndGet();
+            command.run();
+        };
+        RateLimitedEmbeddingModel model = newModel(new FlakyEmbeddingModel(0), limiter);
+
+        List<CompletableFuture<EmbeddingResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(model.callAsync(new EmbeddingRequest(List.of("query-" + i), null), worker, scheduler));
+        }
+        Thread.sleep(200);
+
+        long done = futures.stream().filter(CompletableFuture::isDone).count();
+        assertThat(done).isPositive().isLessThan(futures.size());
+        assertThat(submitted.get()).isEqualTo((int) done);
+    }
+
+    @Test
+    void throttledCallIsRetriedOnScheduler() throws Exception {
+        EmbeddingRateLimiter limiter = GcraEmbeddingRateLimiter.withLimits(new EmbeddingTokenEstimator(), 6000, 1_000_000, 60_000);
+        FlakyEmbeddingModel delegate = new FlakyEmbeddingModel(1);
+        RateLimitedEmbeddingModel model = newModel(delegate, limiter);
+
+        EmbeddingResponse response = model.callAsync(new EmbeddingRequest(List.of("query"), null), Runnable::run, scheduler)
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(response.getResult().getOutput()).containsExactly(5f);
+        assertThat(delegate.calls.get()).isEqualTo(2);
+    }
+
+    private static RateLimitedEmbeddingModel newModel(EmbeddingModel delegate, EmbeddingRateLimiter limiter) {
+        EmbeddingRateLimitFeedback feedback = new EmbeddingRateLimitFeedback(limiter, new SimpleMeterRegistry(), 60_000);
+        return new RateLimitedEmbeddingModel(delegate, limiter, feedback, 3, 200, 200);
+    }
+
+    /**
+     * 前 failures 次调用返回 429，之后按文本长度返回一维向量
+     */
+    private static final class FlakyEmbeddingModel implements EmbeddingModel {
+
+        private final int failures;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private FlakyEmbeddingModel(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public @NonNull EmbeddingResponse call(@NonNull EmbeddingRequest request) {
+            if (calls.incrementAndGet() <= failures) {
+                throw new IllegalStateException("429 Too Many Requests");
+            }
+            String text = request.getInstructions().get(0);
+            return new EmbeddingResponse(List.of(new Embedding(new float[]{text.length()}, 0)));
+        }
+
+        @Override
+        public float @NonNull [] embed(@NonNull Document document) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
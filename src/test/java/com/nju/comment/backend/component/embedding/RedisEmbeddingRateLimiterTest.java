@@ -0,0 +1,130 @@
+package com.nju.comment.backend.component.embedding;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 两个实例通过嵌入式 Redis 共享集群额度，未用完的租约额度退还集群；Redis 不可用时退化为本地限流
+ */
+class RedisEmbeddingRateLimiterTest {
+
+    private static final List<String> INPUTS = List.of("x".repeat(100));
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port = freePort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.getRequiredConnectionFactory().getConnection().serverCommands().flushAll();
+    }
+
+    @Test
+    void replicasShareClusterQuota() {
+        RedisEmbeddingRateLimiter nodeA = newLimiter(redisTemplate, 20, 1);
+        RedisEmbeddingRateLimiter nodeB = newLimiter(redisTemplate, 20, 1);
+
+        int grantedA = 0;
+        int grantedB = 0;
+        for (int i = 0; i < 40; i++) {
+            if (nodeA.tryAcquire(INPUTS)) {
+                grantedA++;
+            }
+            if (nodeB.tryAcquire(INPUTS)) {
+                grantedB++;
+            }
+        }
+
+        // 每次预取 5 个请求，两个实例合计恰好用满一个窗口的 20 次
+        assertThat(grantedA + grantedB).isEqualTo(20);
+        assertThat(grantedA).isPositive();
+        assertThat(grantedB).isPositive();
+        assertThat(nodeA.isFallbackActive()).isFalse();
+    }
+
+    @Test
+    void unusedLeaseIsRefundedOnNextReservation() {
+        RedisEmbeddingRateLimiter nodeA = newLimiter(redisTemplate, 20, 1);
+        RedisEmbeddingRateLimiter nodeB = newLimiter(redisTemplate, 20, 1);
+
+        // 第一块预约 5 个请求只用 1 个；超出租约 token 的请求触发重新预约，退还剩余 4 个并只预约 1 个
+        assertThat(nodeA.tryAcquire(INPUTS)).isTrue();
+        assertThat(nodeA.tryAcquire(List.of("x".repeat(5000)))).isTrue();
+
+        int grantedB = 0;
+        for (int i = 0; i < 40; i++) {
+            if (nodeB.tryAcquire(INPUTS)) {
+                grantedB++;
+            }
+        }
+
+        // 集群已用 2 次，其余 18 次中 B 按 5 个一块取到 15 次；不退还时只剩 14 次、B 只能取到 10 次
+        assertThat(grantedB).isEqualTo(15);
+    }
+
+    @Test
+    void fallsBackToLocalLimitWhenRedisIsDown() throws IOException {
+        LettuceConnectionFactory deadFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", freePort()));
+        deadFactory.afterPropertiesSet();
+        try {
+            RedisEmbeddingRateLimiter limiter = newLimiter(new StringRedisTemplate(deadFactory), 20, 2);
+
+            int granted = 0;
+            for (int i = 0; i < 40; i++) {
+                if (limiter.tryAcquire(INPUTS)) {
+                    granted++;
+                }
+            }
+
+            // 本地兜底按 2 个副本均分额度
+            assertThat(limiter.isFallbackActive()).isTrue();
+            assertThat(granted).isEqualTo(10);
+        } finally {
+            deadFactory.destroy();
+        }
+    }
+
+    private static RedisEmbeddingRateLimiter newLimiter(StringRedisTemplate template, int rpm, int fallbackReplicas) {
+        return new RedisEmbeddingRateLimiter(template, new EmbeddingTokenEstimator(),
+                rpm, 1_000_000, 60_000L, "test:ratelimit", 5, 1000, 60_000L, 60_000L, fallbackReplicas);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.nju.comment.backend.component.embedding;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unigram 分词计数：最高得分切分、未登录字符与首尾特殊 token；打包的 bge-m3 词表与参考分词器的计数一致
+ */
+class UnigramTokenizerTest {
+
+    private static final String TOKENIZER_JSON = """
+            {
+              "version": "1.0",
+              "added_tokens": [{"id": 0, "content": "<s>"}],
+              "model": {
+                "type": "Unigram",
+                "unk_id": 3,
+                "vocab": [
+                  ["<s>", 0.0], ["<pad>", 0.0], ["</s>", 0.0], ["<unk>", 0.0],
+                  ["▁hello", -1.0], ["▁he", -2.0], ["llo", -2.0], ["▁", -3.0],
+                  ["h", -5.0], ["e", -5.0], ["l", -5.0], ["o", -5.0],
+                  ["▁get", -1.5], ["Value", -1.5], ["(", -2.0], [")", -2.0]
+                ]
+              }
+            }
+            """;
+
+    private static UnigramTokenizer tokenizer;
+
+    @BeforeAll
+    static void load() throws IOException {
+        tokenizer = UnigramTokenizer.load(new JsonFactory(),
+                new ByteArrayInputStream(TOKENIZER_JSON.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void picksHighestScoringSegmentation() {
+        assertThat(tokenizer.vocabularySize()).isEqualTo(12);
+        // ▁hello 一个词片，加 <s> </s>
+        assertThat(tokenizer.countTokens("hello")).isEqualTo(3);
+        assertThat(tokenizer.countTokens("  hello\thello ")).isEqualTo(4);
+        // ▁get + Value + ( + )
+        assertThat(tokenizer.countTokens("getValue()")).isEqualTo(6);
+    }
+
+    @Test
+    void countsUnknownCharactersAsSingleTokens() {
+        // ▁ + <unk>(汉) + <unk>(𝒳，代理对按一个字符)
+        assertThat(tokenizer.countTokens("汉𝒳")).isEqualTo(5);
+        assertThat(tokenizer.countTokens(" ")).isZero();
+    }
+
+    @Test
+    void estimatorUsesTokenLimitWhenVocabularyIsLoaded() {
+        EmbeddingTokenEstimator estimator = new EmbeddingTokenEstimator(tokenizer, 1024, 16, 256);
+
+        assertThat(estimator.isExact()).isTrue();
+        assertThat(estimator.estimate("hello hello")).isEqualTo(4);
+        assertThat(estimator.exceedsInputLimit("hello ".repeat(14))).isFalse();
+        assertThat(estimator.exceedsInputLimit("hello ".repeat(15))).isTrue();
+    }
+
+    @Test
+    void bundledVocabularyMatchesReferenceCounts() {
+        assumeTrue(new DefaultResourceLoader().getResource(EmbeddingTokenEstimator.DEFAULT_TOKENIZER_LOCATION).exists(),
+                "未打包 bge-m3 词表");
+        EmbeddingTokenEstimator estimator = new EmbeddingTokenEstimator(new DefaultResourceLoader(),
+                EmbeddingTokenEstimator.DEFAULT_TOKENIZER_LOCATION, 0, 8192, 8000);
+
+        assertThat(estimator.isExact()).isTrue();
+        // HuggingFace tokenizers 对 BAAI/bge-m3 的 input_ids 长度（含 <s> </s>）
+        assertThat(estimator.estimate("Hello world")).isEqualTo(4);
+        assertThat(estimator.estimate("Hello, world!")).isEqualTo(6);
+        assertThat(estimator.estimate("This is a test")).isEqualTo(6);
+    }
+}
@@ -0,0 +1,93 @@
+package com.nju.comment.backend.component.ingestion;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 流式解析得到的向量文本与 docId 与原 ObjectMapper 序列化 + String.format("%02x") 的 SHA-256 逐字节一致
+ */
+class CorpusRecordParserTest {
+
+    private static final List<String> VALUES = List.of(
+            "",
+            "int f() { return 0; }",
+            "String s = \"quoted \\\"nested\\\" text\";",
+            "path C:\\temp\\new\\file and trailing \\",
+            "tab\tnewline\ncarriage\rbell\u0007nul\u0000escape\u001bdel\u007f",
+            "line separator\u2028paragraph\u2029 </script> & < > '",
+            "非 BMP 字符 \uD83D\uDE00 \uD801\uDC37 𝒳𝔸",
+            "/** 返回缓存中的值，不存在时返回默认值。 */",
+            "混合 mixed 文本\t\"引号\"\\反斜杠\n\uD83C\uDF89");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CorpusRecordParser parser = new CorpusRecordParser();
+
+    @Test
+    void matchesBaselineSerializationAndDigest() throws Exception {
+        for (String srcMethod : VALUES) {
+            for (String dstMethod : List.of(VALUES.get(1), VALUES.get(VALUES.size() - 1))) {
+                for (String srcJavadoc : List.of(VALUES.get(0), VALUES.get(7), srcMethod)) {
+                    ObjectNode line = objectMapper.createObjectNode();
+                    line.put("src_method", srcMethod);
+                    line.put("dst_method", dstMethod);
+                    line.put("src_javadoc", srcJavadoc);
+                    line.put("dst_javadoc", "/** dst */");
+                    String json = objectMapper.writeValueAsString(line);
+                    assertMatchesBaseline(json);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchesBaselineForMissingNullAndNonTextFields() throws Exception {
+        assertMatchesBaseline("{\"src_method\":\"int f();\",\"dst_method\":null,\"extra\":{\"a\":[1,2]}}");
+        assertMatchesBaseline("{\"src_method\":42,\"dst_method\":true,\"src_javadoc\":1.5}");
+        assertMatchesBaseline("{}");
+    }
+
+    private void assertMatchesBaseline(String json) throws Exception {
+        String expectedText = baselineVectorText(json);
+        String expectedDocId = baselineSha256Hex(expectedText).substring(0, 32);
+
+        byte[] bytes = ("garbage" + json).getBytes(StandardCharsets.UTF_8);
+        CorpusRecord fromBytes = parser.parse(bytes, 7, bytes.length - 7);
+        CorpusRecord fromString = parser.parse(json);
+
+        for (CorpusRecord record : List.of(fromBytes, fromString)) {
+            assertThat(record.vectorText().getBytes(StandardCharsets.UTF_8))
+                    .as(json)
+                    .isEqualTo(expectedText.getBytes(StandardCharsets.UTF_8));
+            assertThat(record.docId()).as(json).isEqualTo(expectedDocId);
+        }
+    }
+
+    /**
+     * 原实现：readTree 取字段后用 ObjectMapper 重新序列化
+     */
+    private String baselineVectorText(String json) throws Exception {
+        JsonNode node = objectMapper.readTree(json);
+        ObjectNode keyJson = objectMapper.createObjectNode();
+        keyJson.put("src_method", node.path("src_method").asText(""));
+        keyJson.put("dst_method", node.path("dst_method").asText(""));
+        keyJson.put("src_javadoc", node.path("src_javadoc").asText(""));
+        return objectMapper.writeValueAsString(keyJson);
+    }
+
+    private static String baselineSha256Hex(String raw) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(raw.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.nju.comment.backend.component.ingestion;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 大文件按行切分时记下分片起点偏移，读取分片直接定位，结果与从头逐行跳过一致；整文件读取单元不预先计数也能读到末尾
+ */
+class CorpusSourceResolverTest {
+
+    private static final int LINES = 25;
+
+    @TempDir
+    Path dir;
+
+    private final CorpusRecordParser parser = new CorpusRecordParser();
+
+    @Test
+    void shardsSeekToRecordedOffsets() throws IOException {
+        List<String> lines = new ArrayList<>(LINES);
+        for (int i = 0; i < LINES; i++) {
+            lines.add("{\"src_method\":\"int f" + i + "() {}\",\"dst_method\":\"int g" + i + "() {}\","
+                    + "\"src_javadoc\":\"/** a" + i + " */\",\"dst_javadoc\":\"/** b" + i + " */\"}");
+        }
+        Files.write(dir.resolve("a.jsonl"), lines);
+        try (BinaryCorpusWriter writer = new BinaryCorpusWriter(dir.resolve("b.ccr"))) {
+            for (String line : lines) {
+                writer.write(parser.parse(line));
+            }
+        }
+
+        CorpusSourceResolver resolver = new CorpusSourceResolver(new PathMatchingResourcePatternResolver());
+        ReflectionTestUtils.setField(resolver, "locations", "file:" + dir + "/*");
+        ReflectionTestUtils.setField(resolver, "shardLines", 10L);
+        ReflectionTestUtils.setField(resolver, "shardCount", 1);
+        List<CorpusSource> sources = resolver.resolveAll();
+
+        assertThat(sources).hasSize(6);
+        for (CorpusSource source : sources) {
+            assertThat(source.startOffset()).isNotNegative();
+            List<String> read = new ArrayList<>();
+            try (CorpusReader reader = source.open(parser)) {
+                while (reader.next()) {
+                    read.add(reader.read().srcMethod());
+                }
+            }
+            List<String> expected = new ArrayList<>();
+            for (long i = source.startLine(); i < source.endLine(); i++) {
+                expected.add("int f" + i + "() {}");
+            }
+            assertThat(read).as(source.progressKey()).isEqualTo(expected);
+        }
+        assertThat(resolver.resolveAll()).extracting(CorpusSource::startOffset)
+                .containsExactlyElementsOf(sources.stream().map(CorpusSource::startOffset).toList());
+
+        List<CorpusSource> files = resolver.resolveFiles();
+        assertThat(files).hasSize(2).noneMatch(CorpusSource::sharded);
+        for (CorpusSource file : files) {
+            int records = 0;
+            try (CorpusReader reader = file.open(parser)) {
+                while (reader.next()) {
+                    reader.read();
+                    records++;
+                }
+            }
+            assertThat(records).as(file.name()).isEqualTo(LINES);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.nju.comment.backend.component.ingestion;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 按签名差异分类：参数、返回类型、throws、方法名依次优先，签名不变为仅方法体，无法解析为其他
+ */
+class EditTypeTest {
+
+    @Test
+    void classifiesBySignatureDifference() {
+        String base = "@Override\npublic Map<String, Integer> count(List<String> words) {\n    return tally(words);\n}";
+
+        assertThat(EditType.classify(base,
+                "@Override\npublic Map<String, Integer> count(List<String> words, boolean ignoreCase) {\n    return tally(words);\n}"))
+                .isEqualTo(EditType.PARAMETER_ADDED);
+        assertThat(EditType.classify(base,
+                "public Map<String, Integer> count(List<String> tokens) { return tally(tokens); }"))
+                .isEqualTo(EditType.PARAMETER_CHANGED);
+        assertThat(EditType.classify(base,
+                "public Map<String, Long> count(List<String> words) { return tally(words); }"))
+                .isEqualTo(EditType.RETURN_TYPE_CHANGED);
+        assertThat(EditType.classify(base,
+                "public Map<String, Integer> count(List<String> words) throws IOException { return tally(words); }"))
+                .isEqualTo(EditType.EXCEPTION_CHANGED);
+        assertThat(EditType.classify(base,
+                "public Map<String, Integer> countWords(List<String> words) { return tally(words); }"))
+                .isEqualTo(EditType.METHOD_RENAMED);
+        assertThat(EditType.classify(base,
+                "/** doc */\npublic Map<String, Integer> count(List<String> words) {\n    return tallyAll(words);\n}"))
+                .isEqualTo(EditType.BODY_ONLY);
+        assertThat(EditType.classify(base, "")).isEqualTo(EditType.OTHER);
+        assertThat(EditType.parse("body_only")).isEqualTo(EditType.BODY_ONLY);
+    }
+}
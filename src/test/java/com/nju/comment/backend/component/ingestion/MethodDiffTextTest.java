@@ -0,0 +1,64 @@
+package com.nju.comment.backend.component.ingestion;
+
+import com.nju.comment.backend.util.TextProcessUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 差异文本只保留变更行，且原始语料与经缩进处理的查询得到相同文本
+ */
+class MethodDiffTextTest {
+
+    private static final String SRC = """
+            @Override
+            public V get(K key) {
+                lock.lock();
+                try {
+                    return map.get(key);
+                } finally {
+                    lock.unlock();
+                }
+            }""";
+
+    private static final String DST = """
+            @Override
+            public V get(K key, V defaultValue) {
+                lock.lock();
+                try {
+                    return map.getOrDefault(key, defaultValue);
+                } finally {
+                    lock.unlock();
+                }
+            }""";
+
+    private static final String JAVADOC = """
+            /**
+             * Returns the cached value.
+             */""";
+
+    @Test
+    void keepsOnlyChangedLines() {
+        String text = MethodDiffText.render(SRC, DST, JAVADOC);
+
+        assertThat(text).isEqualTo("""
+                javadoc: Returns the cached value.
+                signature: public V get(K key, V defaultValue)
+                - public V get(K key) {
+                + public V get(K key, V defaultValue) {
+                - return map.get(key);
+                + return map.getOrDefault(key, defaultValue);""");
+        assertThat(text.length()).isLessThan(SRC.length() + DST.length());
+    }
+
+    @Test
+    void queryAndCorpusRenderIdentically() {
+        String corpus = MethodDiffText.render(SRC, DST, JAVADOC);
+        String query = MethodDiffText.render(
+                TextProcessUtil.processMethod(SRC),
+                TextProcessUtil.processMethod(DST),
+                TextProcessUtil.processComment(JAVADOC));
+
+        assertThat(query).isEqualTo(corpus);
+    }
+}
@@ -0,0 +1,41 @@
+package com.nju.comment.backend.component.rag;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 入库渲染的片段在模板未变时原样复用，模板变化后按文档字段重新渲染
+ */
+class RagExampleRendererTest {
+
+    @Test
+    void reusesSnippetUntilTemplateChanges() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        RagExampleRenderer renderer = new RagExampleRenderer(objectMapper,
+                new ClassPathResource("prompts/prompt_rag_example.txt"), 100);
+        Map<String, Object> metadata = renderer.metadata("int size() { return n; }", "long size() { return n; }",
+                "/** Returns the size. */", "/** Returns the size as long. */");
+        Document document = new Document("doc", "{}", metadata);
+
+        String snippet = renderer.snippet(document);
+        assertThat(snippet).isEqualTo(metadata.get(RagExampleRenderer.SNIPPET_KEY))
+                .contains("long size()", "/** Returns the size as long. */");
+
+        Map<String, Object> stale = new HashMap<>(metadata);
+        stale.put(RagExampleRenderer.SNIPPET_KEY, "stale");
+        RagExampleRenderer changed = new RagExampleRenderer(objectMapper,
+                new ByteArrayResource("{new_method} => {new_comment}".getBytes(StandardCharsets.UTF_8)), 100);
+        assertThat(changed.version()).isNotEqualTo(renderer.version());
+        assertThat(changed.snippet(new Document("doc", "{}", stale)))
+                .isEqualTo("long size() { return n; } => /** Returns the size as long. */");
+    }
+}
@@ -0,0 +1,60 @@
+package com.nju.comment.backend.component.rag;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 低于阈值与重复的示例被丢弃，空出的位置由排名靠后但不同的示例补上，词法命中的示例不受阈值限制
+ */
+class RagExampleSelectorTest {
+
+    private final RagExampleRenderer renderer = new RagExampleRenderer(new ObjectMapper(),
+            new ClassPathResource("prompts/prompt_rag_example.txt"), 100);
+
+    @Test
+    void dropsIrrelevantAndDuplicateExamples() {
+        RagExampleSelector selector = new RagExampleSelector(renderer, 3.0,
+                0.5, 0.7, 0.9, 0, 2);
+        List<Document> candidates = List.of(
+                document("a", 0.9, "int bufferSize() { return buffer.capacity(); }"),
+                document("a-copy", 0.89, "int bufferSize() { return buffer.capacity(); }"),
+                document("unrelated", 0.2, "void log(String message) { logger.info(message); }"),
+                document("channel", null, "void closeChannel() { channel.close(); }"));
+
+        RagExampleSelector.Selection selection = selector.select(candidates, 3);
+
+        assertThat(selection.snippets()).hasSize(2);
+        assertThat(selection.snippets().get(0)).contains("buffer.capacity()");
+        assertThat(selection.snippets().get(1)).contains("closeChannel");
+        assertThat(selection.belowThreshold()).isEqualTo(1);
+        assertThat(selection.redundant()).isEqualTo(1);
+        assertThat(selection.estimatedTokensSaved()).isGreaterThanOrEqualTo(0);
+        assertThat(selection.toMetadata()).containsEntry("ragExamples", 2);
+    }
+
+    @Test
+    void capsTotalTokensButKeepsOneExample() {
+        RagExampleSelector selector = new RagExampleSelector(renderer, 3.0,
+                0.0, 0.7, 0.9, 1, 2);
+        RagExampleSelector.Selection selection = selector.select(List.of(
+                document("a", 0.9, "int bufferSize() { return buffer.capacity(); }"),
+                document("b", 0.8, "void closeChannel() { channel.close(); }")), 2);
+
+        assertThat(selection.snippets()).hasSize(1);
+        assertThat(selection.overBudget()).isEqualTo(1);
+        assertThat(selection.estimatedTokens()).isEqualTo((int) Math.ceil(selection.snippets().get(0).length() / 3.0));
+        assertThat(selection.estimatedTokensSaved()).isPositive();
+    }
+
+    private Document document(String id, Double score, String method) {
+        Map<String, Object> metadata = renderer.metadata(method, method, "/** doc */", "/** doc */");
+        return Document.builder().id(id).text("{}").metadata(metadata).score(score).build();
+    }
+}
@@ -0,0 +1,133 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+import com.nju.comment.backend.component.embedding.QueryEmbeddingCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 未缓存的查询按批次上限合并为 Embedding 请求，所有查询一次多向量检索，结果按下标对应回各查询
+ */
+class BatchRetrieverTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void embedsOnceAndSearchesOnce() {
+        ExampleRecordStore store = new ExampleRecordStore(new ObjectMapper(), false, "full", dir.toString());
+        store.open();
+        LexicalIndex index = new LexicalIndex(store, false, false);
+        index.open();
+        VectorStore vectorStore = mock(VectorStore.class);
+        VectorSearchRequests requests = new VectorSearchRequests(new ObjectMapper(), "{\"nprobe\":16}", 256, 512);
+        HybridRetriever hybridRetriever = new HybridRetriever(vectorStore, requests, index,
+                new SimpleMeterRegistry(), "hybrid", 3, 60);
+
+        MultiVectorSearch multiSearch = mock(MultiVectorSearch.class);
+        ObjectProvider<MultiVectorSearch> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(multiSearch);
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.call(any(EmbeddingRequest.class))).thenReturn(new EmbeddingResponse(List.of(
+                new Embedding(new float[]{1f, 0f}, 0), new Embedding(new float[]{0f, 1f}, 1))));
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(60_000, 100);
+        cache.put("cached", new float[]{1f, 1f});
+        when(multiSearch.similaritySearch(anyList(), anyInt(), any(), isNull())).thenReturn(List.of(
+                List.of(document("a", 0.9), document("a2", 0.8)),
+                List.of(document("b", 0.7)),
+                List.of(document("c", 0.6))));
+
+        BatchRetriever retriever = new BatchRetriever(hybridRetriever, provider, requests, embeddingModel, cache,
+                new EmbeddingTokenEstimator(), 32, 32_000);
+        List<List<Document>> results = retriever.retrieveAll(List.of(
+                new BatchRetriever.Query("first", "m1", null),
+                new BatchRetriever.Query("cached", "m2", null),
+                new BatchRetriever.Query("third", "m3", null)), 1, null);
+
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0)).extracting(Document::getId).containsExactly("a");
+        assertThat(results.get(1)).extracting(Document::getId).containsExactly("b");
+        assertThat(results.get(2)).extracting(Document::getId).containsExactly("c");
+
+        ArgumentCaptor<EmbeddingRequest> embedded = ArgumentCaptor.forClass(EmbeddingRequest.class);
+        verify(embeddingModel, times(1)).call(embedded.capture());
+        assertThat(embedded.getValue().getInstructions()).containsExactly("first", "third");
+        ArgumentCaptor<List<float[]>> vectors = ArgumentCaptor.forClass(List.class);
+        verify(multiSearch, times(1)).similaritySearch(vectors.capture(), anyInt(), any(), isNull());
+        assertThat(vectors.getValue()).containsExactly(new float[]{1f, 0f}, new float[]{1f, 1f}, new float[]{0f, 1f});
+        assertThat(cache.get("third")).containsExactly(0f, 1f);
+        verify(vectorStore, never()).similaritySearch(any(SearchRequest.class));
+        store.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void splitsEmbeddingRequestsByBatchLimits() {
+        ExampleRecordStore store = new ExampleRecordStore(new ObjectMapper(), false, "full", dir.toString());
+        store.open();
+        LexicalIndex index = new LexicalIndex(store, false, false);
+        index.open();
+        VectorSearchRequests requests = new VectorSearchRequests(new ObjectMapper(), "{\"nprobe\":16}", 256, 512);
+        HybridRetriever hybridRetriever = new HybridRetriever(mock(VectorStore.class), requests, index,
+                new SimpleMeterRegistry(), "hybrid", 3, 60);
+
+        MultiVectorSearch multiSearch = mock(MultiVectorSearch.class);
+        ObjectProvider<MultiVectorSearch> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(multiSearch);
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.call(any(EmbeddingRequest.class))).thenAnswer(invocation -> {
+            EmbeddingRequest request = invocation.getArgument(0);
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(new float[]{1f, i}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        });
+        when(multiSearch.similaritySearch(anyList(), anyInt(), any(), isNull())).thenReturn(List.of(
+                List.of(document("a", 0.9)), List.of(document("b", 0.7)), List.of(document("c", 0.6))));
+
+        BatchRetriever retriever = new BatchRetriever(hybridRetriever, provider, requests, embeddingModel,
+                new QueryEmbeddingCache(60_000, 100), new EmbeddingTokenEstimator(), 2, 32_000);
+        retriever.retrieveAll(List.of(
+                new BatchRetriever.Query("first", "m1", null),
+                new BatchRetriever.Query("second", "m2", null),
+                new BatchRetriever.Query("third", "m3", null)), 1, null);
+
+        ArgumentCaptor<EmbeddingRequest> embedded = ArgumentCaptor.forClass(EmbeddingRequest.class);
+        verify(embeddingModel, times(2)).call(embedded.capture());
+        assertThat(embedded.getAllValues()).extracting(EmbeddingRequest::getInstructions)
+                .containsExactly(List.of("first", "second"), List.of("third"));
+        store.close();
+    }
+
+    private static Document document(String id, double score) {
+        return Document.builder().id(id).text("{}").score(score).build();
+    }
+}
@@ -0,0 +1,81 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.component.embedding.HashEmbeddingModel;
+import com.nju.comment.backend.component.embedding.PassThroughBatchingStrategy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HNSW 向量库精确命中排第一、重启后从映射文件恢复同样的结果、按元数据过滤、按 id 或过滤表达式删除后不再返回
+ */
+class HnswVectorStoreTest {
+
+    private static final int DIMENSION = 128;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void searchReloadAndDelete() {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            documents.add(Document.builder()
+                    .id("doc-" + i)
+                    .text("public int getValue" + i + "() { return field" + (i % 37) + " + offset" + (i % 11) + "; }")
+                    .metadata(Map.of("index", i))
+                    .build());
+        }
+        String target = documents.get(123).getText();
+
+        HnswVectorStore store = newStore();
+        store.open();
+        store.add(documents.subList(0, 250));
+        store.add(documents.subList(200, 500));
+        assertThat(store.size()).isEqualTo(500);
+
+        List<Document> first = store.similaritySearch(SearchRequest.builder().query(target).topK(5).build());
+        assertThat(first).hasSize(5);
+        assertThat(first.get(0).getId()).isEqualTo("doc-123");
+        assertThat(first.get(0).getScore()).isGreaterThan(0.99);
+        assertThat(first.get(0).getMetadata()).containsEntry("index", 123);
+        store.close();
+
+        HnswVectorStore reopened = newStore();
+        reopened.open();
+        assertThat(reopened.size()).isEqualTo(500);
+        List<Document> second = reopened.similaritySearch(SearchRequest.builder().query(target).topK(5).build());
+        assertThat(second).extracting(Document::getId).containsExactlyElementsOf(first.stream().map(Document::getId).toList());
+
+        List<Document> filtered = reopened.similaritySearch(SearchRequest.builder().query(target).topK(5)
+                .filterExpression("index >= 400").build());
+        assertThat(filtered).isNotEmpty().allSatisfy(document ->
+                assertThat((Integer) document.getMetadata().get("index")).isGreaterThanOrEqualTo(400));
+
+        reopened.delete(List.of("doc-123"));
+        List<Document> afterDelete = reopened.similaritySearch(SearchRequest.builder().query(target).topK(5).build());
+        assertThat(afterDelete).extracting(Document::getId).doesNotContain("doc-123");
+
+        reopened.delete(new FilterExpressionTextParser().parse("index >= 100 && index < 200"));
+        List<Document> afterFilterDelete = reopened.similaritySearch(SearchRequest.builder().query(target).topK(20).build());
+        assertThat(afterFilterDelete).isNotEmpty().allSatisfy(document ->
+                assertThat((Integer) document.getMetadata().get("index")).isNotIn(IntStream.range(100, 200).boxed().toList()));
+        reopened.close();
+    }
+
+    private HnswVectorStore newStore() {
+        return new HnswVectorStore(new HashEmbeddingModel(DIMENSION), new ObjectMapper(), new PassThroughBatchingStrategy(),
+                dir.toString(), DIMENSION, 16, 100, 64, 512, 1 << 20);
+    }
+}
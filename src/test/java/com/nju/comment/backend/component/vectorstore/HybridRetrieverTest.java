@@ -0,0 +1,134 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.component.ingestion.EditType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 词法索引按标识符子词命中、重启后恢复；融合排序优先两路都命中的样本；向量检索失败时退化为词法检索；
+ * 指定编辑类型时一次检索、同类型优先并用其余候选补齐；词法索引不能与分布式入库同时开启
+ */
+class HybridRetrieverTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tokenizesIdentifiersAndReloads() {
+        assertThat(LexicalIndex.tokenize("public int getItemCount() { return HTTPClient.parse_url(x); }"))
+                .contains("getitemcount", "item", "count", "httpclient", "http", "client", "parseurl", "parse", "url")
+                .doesNotContain("public", "int", "return", "x");
+
+        ExampleRecordStore store = newStore();
+        LexicalIndex index = newIndex(store);
+        index.add(documents());
+        assertThat(index.search("int readBufferSize() { return buffer.remaining(); }", 1))
+                .extracting(Document::getId).containsExactly("buffer");
+        store.close();
+
+        ExampleRecordStore reopenedStore = newStore();
+        LexicalIndex reopened = newIndex(reopenedStore);
+        assertThat(reopened.size()).isEqualTo(3);
+        assertThat(reopened.search("void closeChannel() { channel.close(); }", 1))
+                .extracting(Document::getId).containsExactly("channel");
+        reopenedStore.close();
+    }
+
+    @Test
+    void fusesAndFallsBackToLexical() {
+        ExampleRecordStore store = newStore();
+        LexicalIndex index = newIndex(store);
+        index.add(documents());
+        VectorStore vectorStore = mock(VectorStore.class);
+        HybridRetriever retriever = new HybridRetriever(vectorStore,
+                new VectorSearchRequests(new ObjectMapper(), "", 256, 512), index, new SimpleMeterRegistry(), "hybrid", 3, 60);
+        String methods = "int readBufferSize() { return buffer.remaining(); }";
+
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(
+                documents().get(2), documents().get(0), documents().get(1)));
+        assertThat(retriever.retrieve("query", methods, 1, null)).extracting(Document::getId).containsExactly("buffer");
+
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenThrow(new IllegalStateException("429"));
+        assertThat(retriever.retrieve("query", methods, 1, null)).extracting(Document::getId).containsExactly("buffer");
+        store.close();
+    }
+
+    @Test
+    void prefersEditTypeWithinOneRetrieval() {
+        ExampleRecordStore store = newStore();
+        LexicalIndex index = newIndex(store);
+        VectorStore vectorStore = mock(VectorStore.class);
+        HybridRetriever retriever = new HybridRetriever(vectorStore,
+                new VectorSearchRequests(new ObjectMapper(), "", 256, 512), index, new SimpleMeterRegistry(), "vector", 3, 60);
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(
+                typed("a", EditType.OTHER), typed("b", EditType.PARAMETER_ADDED),
+                typed("c", EditType.OTHER), typed("d", EditType.PARAMETER_ADDED)));
+
+        assertThat(retriever.retrieve("query", "", 2, null, EditType.PARAMETER_ADDED))
+                .extracting(Document::getId).containsExactly("b", "d");
+        assertThat(retriever.retrieve("query", "", 3, null, EditType.RETURN_TYPE_CHANGED))
+                .extracting(Document::getId).containsExactly("a", "b", "c");
+
+        ArgumentCaptor<SearchRequest> requests = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(vectorStore, times(2)).similaritySearch(requests.capture());
+        assertThat(requests.getAllValues()).extracting(SearchRequest::getTopK).containsExactly(6, 9);
+        assertThat(requests.getAllValues()).allMatch(request -> !request.hasFilterExpression());
+        store.close();
+    }
+
+    @Test
+    void refusesLexicalIndexWithDistributedIngestion() {
+        ExampleRecordStore store = newStore();
+        assertThatThrownBy(() -> new LexicalIndex(store, true, true)).isInstanceOf(IllegalStateException.class);
+        assertThat(new LexicalIndex(store, false, true).isEnabled()).isFalse();
+        store.close();
+    }
+
+    private ExampleRecordStore newStore() {
+        ExampleRecordStore store = new ExampleRecordStore(new ObjectMapper(), true, "full", dir.toString());
+        store.open();
+        return store;
+    }
+
+    private static LexicalIndex newIndex(ExampleRecordStore store) {
+        LexicalIndex index = new LexicalIndex(store, true, false);
+        index.open();
+        return index;
+    }
+
+    private static List<Document> documents() {
+        return List.of(
+                document("buffer", "int bufferSize() { return buffer.capacity(); }",
+                        "int readBufferSize() { return buffer.remaining(); }"),
+                document("channel", "void close() { channel.close(); }",
+                        "void closeChannel() { channel.close(); }"),
+                document("user", "String getUserName() { return user.name; }",
+                        "String getUserName() { return user.getName(); }"));
+    }
+
+    private static Document typed(String id, EditType editType) {
+        return new Document(id, "{}", Map.of(EditType.METADATA_KEY, editType.name()));
+    }
+
+    private static Document document(String id, String srcMethod, String dstMethod) {
+        return new Document(id, "{}", Map.of("src_method", srcMethod, "dst_method", dstMethod));
+    }
+}
@@ -0,0 +1,75 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.component.embedding.PassThroughBatchingStrategy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 下游只收到 docId，检索结果按 docId 补全正文与元数据并保留下游分数，本地缺失的结果丢弃
+ */
+class SlimPayloadVectorStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesIdsOnlyAndHydratesResults() {
+        ExampleRecordStore store = new ExampleRecordStore(new ObjectMapper(), false, "slim", dir.toString());
+        store.open();
+        VectorStore delegate = mock(VectorStore.class);
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyList(), any(), any())).thenReturn(List.of(new float[]{1f}));
+        MultiVectorSearch multiSearch = mock(MultiVectorSearch.class);
+        SlimPayloadVectorStore slim = new SlimPayloadVectorStore(
+                delegate, multiSearch, store, embeddingModel, new PassThroughBatchingStrategy());
+
+        slim.add(List.of(new Document("a", "{\"src_method\":\"void a() {}\"}", Map.of("src_method", "void a() {}"))));
+        ArgumentCaptor<List<Document>> written = ArgumentCaptor.forClass(List.class);
+        verify(delegate).add(written.capture());
+        assertThat(written.getValue()).singleElement().satisfies(document -> {
+            assertThat(document.getText()).isEqualTo("a");
+            assertThat(document.getMetadata()).isEmpty();
+        });
+
+        when(delegate.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(
+                Document.builder().id("a").text("a").metadata(Map.of("distance", 0.1f)).score(0.9).build(),
+                Document.builder().id("missing").text("missing").score(0.8).build()));
+        assertThat(slim.similaritySearch(SearchRequest.builder().query("q").topK(2).build()))
+                .singleElement().satisfies(document -> {
+                    assertThat(document.getText()).contains("src_method");
+                    assertThat(document.getMetadata()).containsEntry("src_method", "void a() {}").containsKey("distance");
+                    assertThat(document.getScore()).isEqualTo(0.9);
+                });
+
+        when(multiSearch.similaritySearch(anyList(), anyInt(), any(), any())).thenReturn(List.of(
+                List.of(Document.builder().id("a").text("a").score(0.7).build()),
+                List.of(Document.builder().id("missing").text("missing").score(0.6).build())));
+        List<List<Document>> batch = slim.similaritySearch(List.of(new float[]{1f}, new float[]{0f}), 1, null, null);
+        assertThat(batch).hasSize(2);
+        assertThat(batch.get(0)).singleElement().satisfies(document -> {
+            assertThat(document.getMetadata()).containsEntry("src_method", "void a() {}");
+            assertThat(document.getScore()).isEqualTo(0.7);
+        });
+        assertThat(batch.get(1)).isEmpty();
+        store.close();
+    }
+}
@@ -0,0 +1,34 @@
+package com.nju.comment.backend.component.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nju.comment.backend.exception.ServiceException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 请求检索参数只接受 nprobe / ef 正整数并截断到上限，其余键与非法值被拒绝
+ */
+class VectorSearchRequestsTest {
+
+    private final VectorSearchRequests requests = new VectorSearchRequests(new ObjectMapper(), "{\"nprobe\":16}", 256, 512);
+
+    @Test
+    void clampsWhitelistedParams() {
+        assertThat(requests.sanitize(null)).isNull();
+        assertThat(requests.sanitize("{\"ef\":100000000}")).isEqualTo("{\"ef\":512}");
+        assertThat(requests.sanitize("{\"nprobe\":32}")).isEqualTo("{\"nprobe\":32}");
+        assertThat(requests.params("{\"nprobe\":100000}")).isEqualTo("{\"nprobe\":256}");
+        assertThat(requests.params("{\"radius\":1}")).isEqualTo("{\"nprobe\":16}");
+    }
+
+    @Test
+    void rejectsUnknownKeysAndInvalidValues() {
+        assertThatThrownBy(() -> requests.sanitize("{\"radius\":0.5}")).isInstanceOf(ServiceException.class);
+        assertThatThrownBy(() -> requests.sanitize("{\"ef\":-1}")).isInstanceOf(ServiceException.class);
+        assertThatThrownBy(() -> requests.sanitize("{\"ef\":1.5}")).isInstanceOf(ServiceException.class);
+        assertThatThrownBy(() -> requests.sanitize("[1]")).isInstanceOf(ServiceException.class);
+        assertThatThrownBy(() -> requests.sanitize("not json")).isInstanceOf(ServiceException.class);
+    }
+}
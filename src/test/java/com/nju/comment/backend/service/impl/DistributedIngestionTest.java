@@ -0,0 +1,236 @@
+package com.nju.comment.backend.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nju.comment.backend.component.embedding.EmbeddingRateLimiter;
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+import com.nju.comment.backend.component.embedding.PersistentEmbeddingStore;
+import com.nju.comment.backend.component.ingestion.CorpusSourceResolver;
+import com.nju.comment.backend.component.ingestion.EmbeddingTextFormats;
+import com.nju.comment.backend.component.ingestion.IngestionJobControl;
+import com.nju.comment.backend.component.ingestion.IngestionLeaseCoordinator;
+import com.nju.comment.backend.component.rag.RagExampleRenderer;
+import com.nju.comment.backend.component.vectorstore.LexicalIndex;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 两个进程内实例通过嵌入式 Redis 协同入库：分区互斥、断点集中保存、跨分区重复文档只入库一次、失联实例的分区被接手
+ */
+class DistributedIngestionTest {
+
+    private static final int LINES = 60;
+    private static final int SHARD_LINES = 10;
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    @TempDir
+    Path corpusDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<IngestionLeaseCoordinator> coordinators = new ArrayList<>();
+    private ExecutorService executor;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redisTemplate.getRequiredConnectionFactory().getConnection().serverCommands().flushAll();
+        List<String> lines = new ArrayList<>(LINES);
+        for (int i = 0; i < LINES; i++) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("src_method", "int f" + i + "() { return " + i + "; }");
+            node.put("dst_method", "int g" + i + "() { return " + i + "; }");
+            node.put("src_javadoc", "/** returns " + i + " */");
+            node.put("dst_javadoc", "/** yields " + i + " */");
+            lines.add(objectMapper.writeValueAsString(node));
+        }
+        Files.write(corpusDir.resolve("corpus.jsonl"), lines);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        coordinators.forEach(IngestionLeaseCoordinator::shutdown);
+    }
+
+    @Test
+    void twoNodesShareWorkWithoutOverlap() throws Exception {
+        List<String> insertedA = Collections.synchronizedList(new ArrayList<>());
+        List<String> insertedB = Collections.synchronizedList(new ArrayList<>());
+        VectorStoreInitializer nodeA = newNode("node-a", recordingStore(insertedA, null));
+        VectorStoreInitializer nodeB = newNode("node-b", recordingStore(insertedB, null));
+
+        Future<?> runA = executor.submit(() -> nodeA.run(new IngestionJobControl("job-a")));
+        Future<?> runB = executor.submit(() -> nodeB.run(new IngestionJobControl("job-b")));
+        runA.get(30, TimeUnit.SECONDS);
+        runB.get(30, TimeUnit.SECONDS);
+
+        assertThat(insertedA).isNotEmpty();
+        assertThat(insertedB).isNotEmpty();
+        List<String> all = new ArrayList<>(insertedA);
+        all.addAll(insertedB);
+        assertThat(all).hasSize(LINES).doesNotHaveDuplicates();
+        assertThat(redisTemplate.opsForSet().size("vectorstore:ingest:test:done")).isEqualTo((long) LINES / SHARD_LINES);
+    }
+
+    @Test
+    void duplicatesAcrossPartitionsAreInsertedOnce() throws Exception {
+        List<String> lines = Files.readAllLines(corpusDir.resolve("corpus.jsonl"));
+        List<String> duplicated = new ArrayList<>(lines.subList(0, LINES / 2));
+        duplicated.addAll(lines.subList(0, LINES / 2));
+        Files.write(corpusDir.resolve("corpus.jsonl"), duplicated);
+
+        List<String> insertedA = Collections.synchronizedList(new ArrayList<>());
+        List<String> insertedB = Collections.synchronizedList(new ArrayList<>());
+        IngestionJobControl controlA = new IngestionJobControl("job-a");
+        IngestionJobControl controlB = new IngestionJobControl("job-b");
+        VectorStoreInitializer nodeA = newNode("node-a", recordingStore(insertedA, null));
+        VectorStoreInitializer nodeB = newNode("node-b", recordingStore(insertedB, null));
+
+        Future<?> runA = executor.submit(() -> nodeA.run(controlA));
+        Future<?> runB = executor.submit(() -> nodeB.run(controlB));
+        runA.get(30, TimeUnit.SECONDS);
+        runB.get(30, TimeUnit.SECONDS);
+
+        List<String> all = new ArrayList<>(insertedA);
+        all.addAll(insertedB);
+        assertThat(all).hasSize(LINES / 2).doesNotHaveDuplicates();
+        assertThat(controlA.getDuplicateSkipped() + controlB.getDuplicateSkipped()).isEqualTo(LINES / 2);
+    }
+
+    @Test
+    void survivingNodeTakesOverExpiredLeaseFromCheckpoint() throws Exception {
+        List<String> insertedA = Collections.synchronizedList(new ArrayList<>());
+        List<String> insertedB = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch nodeAStalled = new CountDownLatch(1);
+        CountDownLatch releaseNodeA = new CountDownLatch(1);
+        AtomicInteger batchesA = new AtomicInteger();
+
+        // A 写入一个批次后卡死在第二个批次上，并停止心跳，模拟实例失联
+        VectorStoreInitializer nodeA = newNode("node-a", recordingStore(insertedA, docs -> {
+            if (batchesA.incrementAndGet() == 2) {
+                coordinators.get(0).shutdown();
+                nodeAStalled.countDown();
+                releaseNodeA.await(30, TimeUnit.SECONDS);
+            }
+        }));
+        Future<?> runA = executor.submit(() -> nodeA.run(new IngestionJobControl("job-a")));
+        assertThat(nodeAStalled.await(10, TimeUnit.SECONDS)).isTrue();
+        List<String> committedByA = new ArrayList<>(insertedA);
+
+        VectorStoreInitializer nodeB = newNode("node-b", recordingStore(insertedB, null));
+        executor.submit(() -> nodeB.run(new IngestionJobControl("job-b"))).get(30, TimeUnit.SECONDS);
+
+        // B 从中心断点继续，未重复写入 A 已提交的批次，且覆盖了全部剩余文档
+        assertThat(insertedB).doesNotContainAnyElementsOf(committedByA);
+        Set<String> covered = new HashSet<>(committedByA);
+        covered.addAll(insertedB);
+        assertThat(covered).hasSize(LINES);
+
+        // A 恢复后租约已丢失，其断点写入被拒绝，不会覆盖已完成的进度
+        releaseNodeA.countDown();
+        runA.get(30, TimeUnit.SECONDS);
+        assertThat(redisTemplate.opsForSet().size("vectorstore:ingest:test:done")).isEqualTo((long) LINES / SHARD_LINES);
+        for (Object value : redisTemplate.opsForHash().values("vectorstore:ingest:test:checkpoint")) {
+            assertThat(value).isEqualTo(String.valueOf(SHARD_LINES));
+        }
+    }
+
+    private VectorStoreInitializer newNode(String nodeId, VectorStore vectorStore) {
+        IngestionLeaseCoordinator coordinator = new IngestionLeaseCoordinator(
+                redisTemplate, true, "test", nodeId, 1000L, 200L, 100L);
+        coordinators.add(coordinator);
+
+        CorpusSourceResolver resolver = new CorpusSourceResolver(new PathMatchingResourcePatternResolver());
+        ReflectionTestUtils.setField(resolver, "locations", corpusDir.toUri() + "*.jsonl");
+        ReflectionTestUtils.setField(resolver, "shardLines", (long) SHARD_LINES);
+        ReflectionTestUtils.setField(resolver, "shardCount", 1);
+
+        VectorStoreInitializer initializer = new VectorStoreInitializer(
+                vectorStore, objectMapper, resolver, coordinator, new EmbeddingTokenEstimator(),
+                mock(EmbeddingRateLimiter.class), mock(PersistentEmbeddingStore.class),
+                new EmbeddingTextFormats("", "full", "test"), mock(LexicalIndex.class),
+                new RagExampleRenderer(objectMapper, new ClassPathResource("prompts/prompt_rag_example.txt"), 100));
+        ReflectionTestUtils.setField(initializer, "embeddingBatchSize", 5);
+        ReflectionTestUtils.setField(initializer, "embeddingBatchMaxTokens", 32000);
+        return initializer;
+    }
+
+    private VectorStore recordingStore(List<String> inserted, BatchHook hook) {
+        VectorStore vectorStore = mock(VectorStore.class);
+        doAnswer(invocation -> {
+            List<Document> docs = invocation.getArgument(0);
+            if (hook != null) {
+                hook.beforeInsert(docs);
+            }
+            Thread.sleep(20);
+            docs.forEach(doc -> inserted.add(doc.getId()));
+            return null;
+        }).when(vectorStore).add(anyList());
+        return vectorStore;
+    }
+
+    @FunctionalInterface
+    private interface BatchHook {
+        void beforeInsert(List<Document> docs) throws Exception;
+    }
+}
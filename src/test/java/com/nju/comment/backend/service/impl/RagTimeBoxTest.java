@@ -0,0 +1,132 @@
+package com.nju.comment.backend.service.impl;
+
+import com.nju.comment.backend.component.OllamaModelFactory;
+import com.nju.comment.backend.dto.request.CommentReqTag;
+import com.nju.comment.backend.dto.request.CommentRequest;
+import com.nju.comment.backend.service.PromptService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 检索超时改用无示例提示词；开启投机调用时先完成的一路胜出；检索及时完成时走 RAG（时间上限不约束之后的 LLM 调用），响应标记胜出路径
+ */
+class RagTimeBoxTest {
+
+    private ThreadPoolTaskExecutor executor;
+    private PromptService promptService;
+    private LLMServiceImpl llmService;
+    private volatile long retrievalMs;
+    private volatile long ragLlmMs;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+
+        promptService = mock(PromptService.class);
+        when(promptService.getSystemPrompt(any())).thenReturn("system");
+        when(promptService.buildUserPrompt(argThat(request -> request != null
+                && request.getTag() == CommentReqTag.UPDATE_WITH_RAG))).thenAnswer(invocation -> {
+            Thread.sleep(retrievalMs);
+            CommentRequest request = invocation.getArgument(0);
+            request.setRagMetadata(Map.of("ragExamples", 3));
+            return "rag";
+        });
+        when(promptService.buildUserPrompt(argThat(request -> request != null
+                && request.getTag() == CommentReqTag.UPDATE_WITHOUT_RAG))).thenReturn("plain");
+
+        ChatClient client = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(client.prompt().system(anyString()).user("rag").call().content()).thenAnswer(invocation -> {
+            Thread.sleep(ragLlmMs);
+            return "with examples";
+        });
+        when(client.prompt().system(anyString()).user("plain").call().content()).thenReturn("without examples");
+        OllamaModelFactory modelFactory = mock(OllamaModelFactory.class);
+        when(modelFactory.getChatModelClient(any())).thenReturn(client);
+
+        llmService = new LLMServiceImpl(modelFactory, mock(UserApiKeyService.class), promptService, executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void fallsBackWhenRetrievalExceedsTimeBox() {
+        configure(100, 0);
+        retrievalMs = 2000;
+        CommentRequest request = request();
+        long start = System.currentTimeMillis();
+
+        assertThat(llmService.generateComment(request)).isEqualTo("without examples");
+        assertThat(System.currentTimeMillis() - start).isLessThan(1500);
+        assertThat(request.getRagMetadata()).containsEntry("ragPath", "timeout");
+    }
+
+    @Test
+    void speculativeCallWinsWhileRetrievalIsSlow() {
+        configure(5000, 50);
+        retrievalMs = 1000;
+        CommentRequest request = request();
+
+        assertThat(llmService.generateComment(request)).isEqualTo("without examples");
+        assertThat(request.getRagMetadata()).containsEntry("ragPath", "speculative");
+    }
+
+    @Test
+    void usesRagWhenRetrievalIsFast() {
+        configure(5000, 500);
+        retrievalMs = 0;
+        CommentRequest request = request();
+
+        assertThat(llmService.generateComment(request)).isEqualTo("with examples");
+        assertThat(request.getRagMetadata()).containsEntry("ragPath", "rag").containsEntry("ragExamples", 3);
+    }
+
+    @Test
+    void keepsRagWhenOnlyTheLlmCallOutlastsTimeBox() {
+        configure(100, 0);
+        retrievalMs = 0;
+        ragLlmMs = 500;
+        CommentRequest request = request();
+
+        assertThat(llmService.generateComment(request)).isEqualTo("with examples");
+        assertThat(request.getRagMetadata()).containsEntry("ragPath", "rag");
+        verify(promptService, never()).buildUserPrompt(argThat(r -> r != null
+                && r.getTag() == CommentReqTag.UPDATE_WITHOUT_RAG));
+    }
+
+    private void configure(long timeoutMs, long speculativeAfterMs) {
+        ReflectionTestUtils.setField(llmService, "ragTimeoutMs", timeoutMs);
+        ReflectionTestUtils.setField(llmService, "speculativeAfterMs", speculativeAfterMs);
+    }
+
+    private static CommentRequest request() {
+        return CommentRequest.builder()
+                .requestId("r1")
+                .tag(CommentReqTag.UPDATE_WITH_RAG)
+                .ragExampleNum(3)
+                .oldMethod("int size() { return n; }")
+                .newMethod("int size(boolean all) { return n; }")
+                .build();
+    }
+}
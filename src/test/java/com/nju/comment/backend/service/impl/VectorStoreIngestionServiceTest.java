@@ -0,0 +1,125 @@
+package com.nju.comment.backend.service.impl;
+
+import com.nju.comment.backend.component.ingestion.IngestionJobState;
+import com.nju.comment.backend.dto.response.IngestionDryRunResponse;
+import com.nju.comment.backend.dto.response.IngestionDryRunStatusResponse;
+import com.nju.comment.backend.exception.ServiceException;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 提交被拒绝或开始执行前被取消时不留下活动任务；任务失败后 RAG 就绪状态恢复为启动前；入库预演在入库线程池中异步执行，运行中不可再启动任务
+ */
+class VectorStoreIngestionServiceTest {
+
+    @Test
+    void rejectedSubmitLeavesNoActiveJob() {
+        ThreadPoolTaskExecutor executor = mock(ThreadPoolTaskExecutor.class);
+        when(executor.submit(any(Runnable.class))).thenThrow(new RejectedExecutionException("busy"));
+        VectorStoreIngestionService service = newService(mock(VectorStoreInitializer.class), executor);
+
+        assertThatThrownBy(service::start).isInstanceOf(ServiceException.class);
+        assertThat(service.status().getState()).isEqualTo(IngestionJobState.IDLE);
+        assertThat(service.isRagReady()).isTrue();
+    }
+
+    @Test
+    void cancelBeforeStartFinishesJob() {
+        ThreadPoolTaskExecutor executor = mock(ThreadPoolTaskExecutor.class);
+        List<Runnable> submitted = new ArrayList<>();
+        when(executor.submit(any(Runnable.class))).thenAnswer(invocation -> {
+            Runnable task = invocation.getArgument(0);
+            submitted.add(task);
+            return new FutureTask<Void>(task, null);
+        });
+        VectorStoreInitializer initializer = mock(VectorStoreInitializer.class);
+        VectorStoreIngestionService service = newService(initializer, executor);
+
+        service.start();
+        assertThat(service.isRagReady()).isFalse();
+        assertThat(service.cancel().getState()).isEqualTo(IngestionJobState.CANCELLED);
+        assertThat(service.status().getFinishedAt()).isNotNull();
+        assertThat(service.isRagReady()).isTrue();
+
+        // 线程池此后才调度到该任务时不再执行入库
+        submitted.get(0).run();
+        verifyNoInteractions(initializer);
+        assertThat(service.status().getState()).isEqualTo(IngestionJobState.CANCELLED);
+
+        assertThat(service.start().getState()).isEqualTo(IngestionJobState.RUNNING);
+        assertThat(submitted).hasSize(2);
+    }
+
+    @Test
+    void failedJobRestoresPreviousReadiness() throws InterruptedException {
+        VectorStoreInitializer initializer = mock(VectorStoreInitializer.class);
+        doThrow(new IllegalStateException("milvus down")).when(initializer).run(any());
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+        VectorStoreIngestionService service = newService(initializer, executor);
+
+        service.start();
+        executor.getThreadPoolExecutor().shutdown();
+        executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS);
+
+        assertThat(service.status().getState()).isEqualTo(IngestionJobState.FAILED);
+        assertThat(service.isRagReady()).isTrue();
+    }
+
+    @Test
+    void dryRunRunsOnIngestPoolAndReportsResult() throws InterruptedException {
+        VectorStoreInitializer initializer = mock(VectorStoreInitializer.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(initializer.dryRun()).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return IngestionDryRunResponse.builder().totalLines(42).build();
+        });
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+        VectorStoreIngestionService service = newService(initializer, executor);
+
+        IngestionDryRunStatusResponse started = service.startDryRun();
+        assertThat(started.getState()).isEqualTo(IngestionJobState.RUNNING);
+        assertThatThrownBy(service::startDryRun).isInstanceOf(ServiceException.class);
+        assertThatThrownBy(service::start).isInstanceOf(ServiceException.class);
+
+        release.countDown();
+        executor.getThreadPoolExecutor().shutdown();
+        executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS);
+
+        IngestionDryRunStatusResponse finished = service.dryRunStatus();
+        assertThat(finished.getJobId()).isEqualTo(started.getJobId());
+        assertThat(finished.getState()).isEqualTo(IngestionJobState.COMPLETED);
+        assertThat(finished.getResult().getTotalLines()).isEqualTo(42);
+        assertThat(service.status().getState()).isEqualTo(IngestionJobState.IDLE);
+    }
+
+    private static VectorStoreIngestionService newService(VectorStoreInitializer initializer,
+                                                          ThreadPoolTaskExecutor executor) {
+        VectorStoreIngestionService service = new VectorStoreIngestionService(initializer, executor);
+        ReflectionTestUtils.setField(service, "ragReadyRatio", 1.0);
+        return service;
+    }
+}
@@ -0,0 +1,172 @@
+package com.nju.comment.backend.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nju.comment.backend.component.embedding.EmbeddingRateLimiter;
+import com.nju.comment.backend.component.embedding.EmbeddingTokenEstimator;
+import com.nju.comment.backend.component.embedding.PersistentEmbeddingStore;
+import com.nju.comment.backend.component.ingestion.CorpusSourceResolver;
+import com.nju.comment.backend.component.ingestion.EmbeddingTextFormats;
+import com.nju.comment.backend.component.ingestion.IngestionJobControl;
+import com.nju.comment.backend.component.ingestion.IngestionLeaseCoordinator;
+import com.nju.comment.backend.component.rag.RagExampleRenderer;
+import com.nju.comment.backend.component.vectorstore.LexicalIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Embedding 返回 400 时按错误体的 param 下标或二分定位坏文档，只跳过坏文档；超长文档在提交前剔除
+ */
+class VectorStoreInitializerTest {
+
+    private static final int LINES = 32;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final List<String> inserted = new ArrayList<>();
+    private final List<String> submitted = new ArrayList<>();
+
+    @Test
+    void bisectsBadRequestBatchesWithoutIndex() throws IOException {
+        writeCorpus(0);
+        VectorStore vectorStore = rejectBadDocuments(bad -> new HttpClientErrorException(HttpStatus.BAD_REQUEST, "400 Bad Request"));
+
+        IngestionJobControl control = new IngestionJobControl("job");
+        newInitializer(vectorStore, new EmbeddingTokenEstimator()).run(control);
+
+        assertThat(inserted).hasSize(LINES - 2).doesNotHaveDuplicates();
+        assertThat(control.getInvalidSkipped()).isEqualTo(2);
+        // 1 次整批 + 每条坏文档沿二分路径各约 2·log2(32) 次
+        assertThat(calls.get()).isLessThanOrEqualTo(1 + 2 * 2 * 5);
+    }
+
+    @Test
+    void peelsDocumentNamedByErrorParam() throws IOException {
+        writeCorpus(0);
+        VectorStore vectorStore = rejectBadDocuments(bad -> new NonTransientAiException("400 - {\"error\":{\"message\":"
+                + "\"Invalid 'input[" + bad + "]': string too long\",\"type\":\"invalid_request_error\","
+                + "\"param\":\"input[" + bad + "]\"}}"));
+
+        IngestionJobControl control = new IngestionJobControl("job");
+        newInitializer(vectorStore, new EmbeddingTokenEstimator()).run(control);
+
+        assertThat(inserted).hasSize(LINES - 2).doesNotHaveDuplicates();
+        assertThat(control.getInvalidSkipped()).isEqualTo(2);
+        // 整批 → 坏文档 5 单独 → 其余 31 条 → 坏文档 23 单独 → 其余 30 条
+        assertThat(calls.get()).isEqualTo(5);
+    }
+
+    @Test
+    void ignoresNumbersOutsideTheParamField() throws IOException {
+        writeCorpus(0);
+        // 消息中的 8192 与 index 3 都不是出错下标，按二分处理，文档 3 不应被跳过
+        VectorStore vectorStore = rejectBadDocuments(bad -> new NonTransientAiException("400 - {\"error\":{\"message\":"
+                + "\"input 8192 tokens exceeds the limit, see index 3\",\"type\":\"invalid_request_error\"}}"));
+
+        IngestionJobControl control = new IngestionJobControl("job");
+        newInitializer(vectorStore, new EmbeddingTokenEstimator()).run(control);
+
+        assertThat(inserted).hasSize(LINES - 2).doesNotHaveDuplicates();
+        assertThat(control.getInvalidSkipped()).isEqualTo(2);
+        assertThat(calls.get()).isLessThanOrEqualTo(1 + 2 * 2 * 5);
+    }
+
+    @Test
+    void dropsOverlongDocumentsBeforeSubmitting() throws IOException {
+        writeCorpus(400);
+        VectorStore vectorStore = rejectBadDocuments(bad -> new HttpClientErrorException(HttpStatus.BAD_REQUEST, "400 Bad Request"));
+
+        IngestionJobControl control = new IngestionJobControl("job");
+        // 无词表时单条上限按 256 个字符计
+        newInitializer(vectorStore, new EmbeddingTokenEstimator(null, 0, 16, 256)).run(control);
+
+        // 超长计入无效数，但不经过 400 回退
+        assertThat(control.getOverlongSkipped()).isEqualTo(2);
+        assertThat(control.getInvalidSkipped()).isEqualTo(2);
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(submitted).hasSize(LINES - 2);
+        assertThat(inserted).hasSize(LINES - 2);
+    }
+
+    /**
+     * 第 5、23 行为坏文档；padding 大于 0 时坏文档改为以超长文本表示
+     */
+    private void writeCorpus(int padding) throws IOException {
+        List<String> lines = new ArrayList<>(LINES);
+        for (int i = 0; i < LINES; i++) {
+            boolean bad = i == 5 || i == 23;
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("src_method", "int f" + i + "() { return " + i + "; }");
+            node.put("dst_method", (bad ? "int bad" + "x".repeat(padding) : "int g") + i + "() { return " + i + "; }");
+            node.put("src_javadoc", "/** returns " + i + " */");
+            node.put("dst_javadoc", "/** yields " + i + " */");
+            lines.add(objectMapper.writeValueAsString(node));
+        }
+        Files.createDirectories(dir.resolve("corpus"));
+        Files.write(dir.resolve("corpus").resolve("corpus.jsonl"), lines);
+    }
+
+    /**
+     * 批次包含坏文档时以第一条坏文档在批次中的下标构造 400 异常
+     */
+    private VectorStore rejectBadDocuments(IntFunction<RuntimeException> badRequest) {
+        VectorStore vectorStore = mock(VectorStore.class);
+        doAnswer(invocation -> {
+            calls.incrementAndGet();
+            List<Document> docs = invocation.getArgument(0);
+            docs.forEach(doc -> submitted.add(doc.getId()));
+            for (int i = 0; i < docs.size(); i++) {
+                if (docs.get(i).getText().contains("int bad")) {
+                    throw badRequest.apply(i);
+                }
+            }
+            docs.forEach(doc -> inserted.add(doc.getId()));
+            return null;
+        }).when(vectorStore).add(anyList());
+        return vectorStore;
+    }
+
+    private VectorStoreInitializer newInitializer(VectorStore vectorStore, EmbeddingTokenEstimator tokenEstimator) {
+        CorpusSourceResolver resolver = new CorpusSourceResolver(new PathMatchingResourcePatternResolver());
+        ReflectionTestUtils.setField(resolver, "locations", dir.resolve("corpus").toUri() + "*.jsonl");
+        ReflectionTestUtils.setField(resolver, "shardLines", (long) LINES);
+        ReflectionTestUtils.setField(resolver, "shardCount", 1);
+
+        VectorStoreInitializer initializer = new VectorStoreInitializer(
+                vectorStore, objectMapper, resolver,
+                new IngestionLeaseCoordinator(null, false, "test", "node", 1000L, 200L, 100L),
+                tokenEstimator, mock(EmbeddingRateLimiter.class), mock(PersistentEmbeddingStore.class),
+                new EmbeddingTextFormats("", "full", "test"), mock(LexicalIndex.class),
+                new RagExampleRenderer(objectMapper, new ClassPathResource("prompts/prompt_rag_example.txt"), 100));
+        ReflectionTestUtils.setField(initializer, "embeddingBatchSize", LINES);
+        ReflectionTestUtils.setField(initializer, "embeddingBatchMaxTokens", 1_000_000);
+        ReflectionTestUtils.setField(initializer, "progressFile", dir.resolve("progress.properties").toString());
+        ReflectionTestUtils.setField(initializer, "clearProgressOnSuccess", true);
+        return initializer;
+    }
+}